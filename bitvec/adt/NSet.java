@@ -1,5 +1,7 @@
 package adt;
 
+import java.util.Arrays;
+
 /**
  * NSet
  * 
@@ -62,5 +64,111 @@ public interface NSet extends Set<Integer> {
      * are in this set but not in the other set.
      */
     NSet difference(NSet other);
-    
+
+    /**
+     * Add all the elements of the given set to this one, in place.
+     * @param other Another set of the same class, whose range
+     * is no greater than this one's.
+     */
+    default void unionWith(NSet other) {
+        if (other.range() > range())
+            throw new BadNSetParameterException(range() + " / " + other.range());
+        for (int x : other)
+            add(x);
+    }
+
+    /**
+     * Remove from this set, in place, all the elements that
+     * aren't in the given set.
+     * @param other Another set of the same class.
+     */
+    default void retainAll(NSet other) {
+        int[] toRemove = new int[size()];
+        int n = 0;
+        for (int x : this)
+            if (x >= other.range() || ! other.contains(x))
+                toRemove[n++] = x;
+        for (int i = 0; i < n; i++)
+            remove(toRemove[i]);
+    }
+
+    /**
+     * Remove from this set, in place, all the elements of the
+     * given set.
+     * @param other Another set of the same class.
+     */
+    default void removeAll(NSet other) {
+        for (int x : other)
+            if (x < range())
+                remove(x);
+    }
+
+    /**
+     * Count the elements in both this and the given set, without
+     * making their intersection.
+     * @param other Another set of the same class.
+     * @return The size of the intersection
+     */
+    default int intersectionSize(NSet other) {
+        int count = 0;
+        for (int x : this)
+            if (x < other.range() && other.contains(x))
+                count++;
+        return count;
+    }
+
+    /**
+     * Compute the union of this and the given sets; classes
+     * override this to do it in one pass.
+     * @param others Zero or more sets of the same class as this one.
+     * @return A set containing all the elements that are in
+     * this set or any of the others.
+     */
+    default NSet unionOf(NSet... others) {
+        NSet result = union(others.length > 0 ? others[0] : this);
+        for (int i = 1; i < others.length; i++)
+            result = result.union(others[i]);
+        return result;
+    }
+
+    /**
+     * Compute the intersection of this and the given sets; classes
+     * override this to do it in one pass.
+     * @param others Zero or more sets of the same class as this one.
+     * @return A set containing all the elements that are in
+     * this set and every one of the others.
+     */
+    default NSet intersectionOf(NSet... others) {
+        NSet result = intersection(others.length > 0 ? others[0] : this);
+        for (int i = 1; i < others.length; i++)
+            result.retainAll(others[i]);
+        return result;
+    }
+
+    /**
+     * Compute the union of any number of sets at once, without
+     * making the unions of the sets in between.
+     * @param sets One or more sets of the same class.
+     * @return A set containing all the elements that are
+     * in any of the sets.
+     */
+    static NSet unionAll(NSet... sets) {
+        if (sets.length == 0)
+            throw new BadNSetParameterException("No sets");
+        return sets[0].unionOf(Arrays.copyOfRange(sets, 1, sets.length));
+    }
+
+    /**
+     * Compute the intersection of any number of sets at once,
+     * without making the intersections of the sets in between.
+     * @param sets One or more sets of the same class.
+     * @return A set containing all the elements that are
+     * in every one of the sets.
+     */
+    static NSet intersectAll(NSet... sets) {
+        if (sets.length == 0)
+            throw new BadNSetParameterException("No sets");
+        return sets[0].intersectionOf(Arrays.copyOfRange(sets, 1, sets.length));
+    }
+
 }
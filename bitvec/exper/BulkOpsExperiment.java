@@ -0,0 +1,111 @@
+package exper;
+
+import impl.BitVecNSet;
+import impl.RoaringNSet;
+
+import java.util.Random;
+
+import adt.NSet;
+
+/**
+ * BulkOpsExperiment
+ *
+ * Compares, for BitVecNSet and RoaringNSet, the union and
+ * intersection of k sets (half full, over a range of 2^24) done by
+ * chaining the pairwise operations, which makes k - 2 sets in between,
+ * with NSet.unionAll() and intersectAll(), which make one pass; and
+ * the size of the intersection of two sets found by making it with
+ * that found by intersectionSize(). Times are in milliseconds, each
+ * the best of ten runs after one untimed run.
+ */
+public class BulkOpsExperiment {
+
+    private static final int RANGE = 1 << 24;
+
+    private interface Maker {
+        NSet make(int range);
+    }
+
+    private interface Op {
+        Object run(NSet[] sets);
+    }
+
+    private static double time(Op op, NSet[] sets) {
+        long best = Long.MAX_VALUE;
+        for (int trial = 0; trial < 11; trial++) {
+            long fore = System.nanoTime();
+            op.run(sets);
+            long elapsed = System.nanoTime() - fore;
+            if (trial > 0)
+                best = Math.min(best, elapsed);
+        }
+        return best / 1e6;
+    }
+
+    private static void run(String name, Maker maker, int k) {
+        Random randy = new Random(345);
+        NSet[] sets = new NSet[k];
+        for (int i = 0; i < k; i++) {
+            sets[i] = maker.make(RANGE);
+            for (int j = 0; j < RANGE / 2; j++)
+                sets[i].add(randy.nextInt(RANGE));
+        }
+        double chainedUnion = time(new Op() {
+            public Object run(NSet[] sets) {
+                NSet result = sets[0];
+                for (int i = 1; i < sets.length; i++)
+                    result = result.union(sets[i]);
+                return result;
+            }
+        }, sets);
+        double unionAll = time(new Op() {
+            public Object run(NSet[] sets) {
+                return NSet.unionAll(sets);
+            }
+        }, sets);
+        double chainedIntersection = time(new Op() {
+            public Object run(NSet[] sets) {
+                NSet result = sets[0];
+                for (int i = 1; i < sets.length; i++)
+                    result = result.intersection(sets[i]);
+                return result;
+            }
+        }, sets);
+        double intersectAll = time(new Op() {
+            public Object run(NSet[] sets) {
+                return NSet.intersectAll(sets);
+            }
+        }, sets);
+        double sizeOfIntersection = time(new Op() {
+            public Object run(NSet[] sets) {
+                return sets[0].intersection(sets[1]).size();
+            }
+        }, sets);
+        double intersectionSize = time(new Op() {
+            public Object run(NSet[] sets) {
+                return sets[0].intersectionSize(sets[1]);
+            }
+        }, sets);
+        System.out.printf("%s\t%d\t%.2f\t%.2f\t%.2f\t%.2f\t%.2f\t%.2f\n", name, k,
+                chainedUnion, unionAll, chainedIntersection, intersectAll,
+                sizeOfIntersection, intersectionSize);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("set\tk\tunions\tunionAll\tinters\tintersectAll\t"
+                + "inter.size\tinterSize");
+        for (int k : new int[] {2, 4, 8}) {
+            run("bitvec", new Maker() {
+                public NSet make(int range) {
+                    return new BitVecNSet(range);
+                }
+            }, k);
+            run("roaring", new Maker() {
+                public NSet make(int range) {
+                    return new RoaringNSet(range);
+                }
+            }, k);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package exper;
+
+import impl.BitVecNSet;
+import impl.ConcurrentBitVecNSet;
+
+import java.util.Random;
+
+import adt.NSet;
+
+/**
+ * ConcurrentAddExperiment
+ *
+ * Measures how adding items to one shared set scales with the number
+ * of threads, doubling from 1 to N (the first argument, or else the
+ * number of processors, at least 4). Each thread adds its share of
+ * the same random items (over a range of 2^26); the shared set is
+ * either a BitVecNSet whose adds are synchronized on it or a
+ * ConcurrentBitVecNSet. For each number of threads it shows the
+ * milliseconds to add them all and the millions of adds per second,
+ * the best of five runs after one untimed run.
+ */
+public class ConcurrentAddExperiment {
+
+    private static final int RANGE = 1 << 26;
+
+    private static final int ADDS = 1 << 24;
+
+    private interface Maker {
+        NSet make(int range);
+    }
+
+    /**
+     * Milliseconds for the threads to add the items to a new set,
+     * each thread its own slice of them.
+     */
+    private static double time(Maker maker, final int[] items, int threads)
+            throws InterruptedException {
+        final NSet set = maker.make(RANGE);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int from = (int) ((long) items.length * t / threads);
+            final int to = (int) ((long) items.length * (t + 1) / threads);
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = from; i < to; i++)
+                        set.add(items[i]);
+                }
+            });
+        }
+        long fore = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        return (System.nanoTime() - fore) / 1e6;
+    }
+
+    private static void run(String name, Maker maker, int[] items, int threads)
+            throws InterruptedException {
+        double best = Double.MAX_VALUE;
+        for (int trial = 0; trial < 6; trial++) {
+            double millis = time(maker, items, threads);
+            if (trial > 0)
+                best = Math.min(best, millis);
+        }
+        System.out.printf("%s\t%d\t%.1f\t%.1f\n", name, threads, best,
+                ADDS / best / 1000);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(4, Runtime.getRuntime().availableProcessors());
+        Random randy = new Random(345);
+        int[] items = new int[ADDS];
+        for (int i = 0; i < items.length; i++)
+            items[i] = randy.nextInt(RANGE);
+
+        System.out.println("set\tthreads\tms\tMadds/s");
+        for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+            run("locked", new Maker() {
+                public NSet make(int range) {
+                    return new BitVecNSet(range) {
+                        public synchronized void add(Integer item) {
+                            super.add(item);
+                        }
+                    };
+                }
+            }, items, threads);
+            run("concurrent", new Maker() {
+                public NSet make(int range) {
+                    return new ConcurrentBitVecNSet(range);
+                }
+            }, items, threads);
+            if (threads == maxThreads)
+                break;
+        }
+    }
+
+}
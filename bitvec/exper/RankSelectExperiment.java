@@ -0,0 +1,70 @@
+package exper;
+
+import impl.BitVecNSet;
+
+import java.util.Random;
+
+/**
+ * RankSelectExperiment
+ *
+ * Times rank() and select() on BitVecNSets over a range of 2^26 at
+ * several densities: the milliseconds to build the directory (the
+ * first call), and nanoseconds per call after that, for random
+ * arguments. For comparison, it also shows nanoseconds per rank
+ * found by iterating over the set up to the argument.
+ */
+public class RankSelectExperiment {
+
+    private static final int RANGE = 1 << 26;
+
+    private static final int QUERIES = 1000000;
+
+    public static void main(String[] args) {
+        System.out.println("density\tbuild\trank\tselect\tscan");
+        for (double density : new double[] {.001, .01, .1, .5, .9}) {
+            Random randy = new Random(345);
+            BitVecNSet set = new BitVecNSet(RANGE);
+            for (int i = 0; i < RANGE; i++)
+                if (randy.nextDouble() < density)
+                    set.add(i);
+            int size = set.size();
+
+            long fore = System.nanoTime();
+            set.rank(0);
+            double build = (System.nanoTime() - fore) / 1e6;
+
+            long sum = 0;
+            double rank = 0, select = 0;
+            for (int trial = 0; trial < 2; trial++) {
+                randy = new Random(1);
+                fore = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++)
+                    sum += set.rank(randy.nextInt(RANGE));
+                rank = (double) (System.nanoTime() - fore) / QUERIES;
+                fore = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++)
+                    sum += set.select(randy.nextInt(size));
+                select = (double) (System.nanoTime() - fore) / QUERIES;
+            }
+
+            int scans = 20;
+            fore = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                int x = randy.nextInt(RANGE), count = 0;
+                for (int item : set) {
+                    if (item >= x)
+                        break;
+                    count++;
+                }
+                sum += count;
+            }
+            double scan = (double) (System.nanoTime() - fore) / scans;
+
+            System.out.printf("%.3f\t%.2f\t%.1f\t%.1f\t%.0f\n", density, build,
+                    rank, select, scan);
+            if (sum == 42)
+                System.out.println();
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package exper;
+
+import impl.BitVecNSet;
+import impl.RoaringNSet;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import adt.NSet;
+
+/**
+ * RoaringExperiment
+ *
+ * Compares RoaringNSet with BitVecNSet on sparse data (one item in
+ * a thousand over a range of 2^28), dense data (half of a range of
+ * 2^24), and clustered data (runs of a few hundred items over a
+ * range of 2^26, run-optimized). For each, it shows the size in
+ * bytes (the bit vector's, and the Roaring set's serialized form),
+ * nanoseconds per add and per contains, and milliseconds for the
+ * union and intersection of two such sets and for iterating over
+ * one. Each measurement is taken after one untimed run.
+ */
+public class RoaringExperiment {
+
+    private static final int LOOKUPS = 1000000;
+
+    private interface Maker {
+        NSet make(int range);
+    }
+
+    private static int[] sparse(Random randy) {
+        int range = 1 << 28;
+        int[] items = new int[range / 1000];
+        for (int i = 0; i < items.length; i++)
+            items[i] = randy.nextInt(range);
+        return items;
+    }
+
+    private static int[] dense(Random randy) {
+        int range = 1 << 24;
+        int[] items = new int[range / 2];
+        for (int i = 0; i < items.length; i++)
+            items[i] = randy.nextInt(range);
+        return items;
+    }
+
+    private static int[] clustered(Random randy) {
+        int range = 1 << 26;
+        int[] items = new int[range / 8];
+        int n = 0;
+        while (n < items.length) {
+            int start = randy.nextInt(range - 1000), length = 100 + randy.nextInt(400);
+            for (int i = 0; i < length && n < items.length; i++)
+                items[n++] = start + i;
+        }
+        return items;
+    }
+
+    private static NSet build(Maker maker, int range, int[] items) {
+        NSet set = maker.make(range);
+        for (int item : items)
+            set.add(item);
+        if (set instanceof RoaringNSet)
+            ((RoaringNSet) set).runOptimize();
+        return set;
+    }
+
+    private static void run(String name, Maker maker, int range, int[] a, int[] b) {
+        long sum = 0;
+        long[] times = new long[5];
+        long bytes = 0;
+        for (int trial = 0; trial < 6; trial++) {
+            long fore = System.nanoTime();
+            NSet x = build(maker, range, a);
+            times[0] = System.nanoTime() - fore;
+            NSet y = build(maker, range, b);
+            Random randy = new Random(1);
+            fore = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++)
+                if (x.contains(randy.nextInt(range)))
+                    sum++;
+            times[1] = System.nanoTime() - fore;
+            fore = System.nanoTime();
+            sum += x.union(y).size();
+            times[2] = System.nanoTime() - fore;
+            fore = System.nanoTime();
+            sum += x.intersection(y).size();
+            times[3] = System.nanoTime() - fore;
+            fore = System.nanoTime();
+            for (Iterator<Integer> it = x.iterator(); it.hasNext(); )
+                sum += it.next();
+            times[4] = System.nanoTime() - fore;
+            bytes = x instanceof RoaringNSet ? ((RoaringNSet) x).serializedSize()
+                    : (range + 7) / 8;
+        }
+        System.out.printf("%s\t%d\t\t%.1f\t%.1f\t\t%.2f\t%.2f\t\t%.2f\n", name, bytes,
+                (double) times[0] / a.length, (double) times[1] / LOOKUPS,
+                times[2] / 1e6, times[3] / 1e6, times[4] / 1e6);
+        if (sum == 42)
+            System.out.print("");
+    }
+
+    public static void main(String[] args) {
+        Maker bitVec = new Maker() {
+            public NSet make(int range) { return new BitVecNSet(range); }
+        };
+        Maker roaring = new Maker() {
+            public NSet make(int range) { return new RoaringNSet(range); }
+        };
+        Random randy = new Random(345);
+        String[] names = {"sparse", "dense", "clustered"};
+        int[] ranges = {1 << 28, 1 << 24, 1 << 26};
+        int[][][] data = {
+            {sparse(randy), sparse(randy)},
+            {dense(randy), dense(randy)},
+            {clustered(randy), clustered(randy)},
+        };
+        System.out.println("set\t\tbytes\t\tadd ns\tcontains ns\tunion ms\tinter ms\titerate ms");
+        for (int i = 0; i < names.length; i++) {
+            System.out.println(names[i] + ":");
+            run("bitvec", bitVec, ranges[i], data[i][0], data[i][1]);
+            run("roaring", roaring, ranges[i], data[i][0], data[i][1]);
+        }
+    }
+
+}
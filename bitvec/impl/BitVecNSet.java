@@ -1,5 +1,6 @@
 package impl;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -7,11 +8,18 @@ import adt.BadNSetParameterException;
 import adt.NSet;
 
 /**
- * BArrayNSet
- * 
+ * BitVecNSet
+ *
  * Implementation of NSet that uses bit vectors
- * to represent the set.
- * 
+ * to represent the set. The bits are kept in longs, 64 to
+ * a word, so that finding an item's bit takes a shift and
+ * a mask, and the whole-set operations and size() work a word
+ * at a time (size() with Long.bitCount, which the JIT makes a
+ * single popcount instruction). Bits in the last word at or
+ * beyond the range are always zero. rank() and select() use a
+ * directory of counts, about 3% of the size of the bit vector,
+ * that is built when they're first needed.
+ *
  * @author Thomas VanDrunen
  * CSCI 345, Wheaton College
  * June 15, 2015
@@ -19,9 +27,137 @@ import adt.NSet;
 public class BitVecNSet implements NSet {
 
     /**
-     * The array of bytes, used as a bit vector.
+     * A directory for answering rank and select queries on a bit
+     * vector without scanning it. The bits are taken in groups of
+     * 2048 (32 words), and each group has one long in counts: the
+     * high 32 bits are the number of ones before the group, and the
+     * low 30 bits are the number of ones in each of the group's
+     * first three 512-bit blocks (10 bits each), so the count before
+     * any block is at most two additions away. That's 64 bits per
+     * 2048, about 3.1% of the vector. For select, hints holds, for
+     * every SAMPLE-th one, the group it's in, which narrows the
+     * search for a group to a few groups where the ones are dense,
+     * and costs at most 32 bits per SAMPLE ones (under 0.4% of the
+     * vector) where they aren't.
      */
-    private byte[] internal;
+    private static final class RankSelect {
+
+        /**
+         * Ones between consecutive select hints.
+         */
+        static final int SAMPLE = 8192;
+
+        final long[] words;
+        final long[] counts;
+        final int[] hints;
+
+        RankSelect(long[] words) {
+            this.words = words;
+            counts = new long[(words.length >>> 5) + 1];
+            int total = 0;
+            int[] sampled = new int[16];
+            int samples = 0;
+            for (int g = 0; g < counts.length; g++) {
+                long entry = (long) total << 32;
+                for (int b = 0; b < 4; b++) {
+                    int blockCount = 0;
+                    for (int i = (g << 5) + (b << 3); i < Math.min(words.length, (g << 5) + (b << 3) + 8); i++)
+                        blockCount += Long.bitCount(words[i]);
+                    if (b < 3)
+                        entry |= (long) blockCount << (10 * b);
+                    total += blockCount;
+                }
+                counts[g] = entry;
+                // the hints for the ones in this group
+                while ((long) samples * SAMPLE < total) {
+                    if (samples == sampled.length)
+                        sampled = Arrays.copyOf(sampled, 2 * samples);
+                    sampled[samples++] = g;
+                }
+            }
+            hints = Arrays.copyOf(sampled, samples);
+        }
+
+        /**
+         * The number of ones before group g.
+         */
+        private int before(int g) {
+            return (int) (counts[g] >>> 32);
+        }
+
+        /**
+         * The number of ones before bit x, where x is at most the
+         * number of bits in the words.
+         */
+        int rank(int x) {
+            int g = x >>> 11, block = (x >>> 9) & 3;
+            long entry = counts[g];
+            int count = (int) (entry >>> 32);
+            for (int b = 0; b < block; b++)
+                count += (int) (entry >>> (10 * b)) & 0x3ff;
+            int word = x >>> 6;
+            for (int i = word & ~7; i < word; i++)
+                count += Long.bitCount(words[i]);
+            if ((x & 63) != 0)
+                count += Long.bitCount(words[word] & (-1L >>> (64 - (x & 63))));
+            return count;
+        }
+
+        /**
+         * The position of the one with k ones before it, where k is
+         * less than the number of ones.
+         */
+        int select(int k) {
+            // the last group with at most k ones before it, between
+            // the groups of the hints around k
+            int lo = hints[k / SAMPLE];
+            int hi = k / SAMPLE + 1 < hints.length ? hints[k / SAMPLE + 1] : counts.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (before(mid) <= k)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            long entry = counts[lo];
+            int rest = k - (int) (entry >>> 32);
+            int block = 0;
+            while (block < 3 && rest >= ((int) (entry >>> (10 * block)) & 0x3ff)) {
+                rest -= (int) (entry >>> (10 * block)) & 0x3ff;
+                block++;
+            }
+            int i = (lo << 5) + (block << 3);
+            while (rest >= Long.bitCount(words[i]))
+                rest -= Long.bitCount(words[i++]);
+            return (i << 6) + selectInWord(words[i], rest);
+        }
+
+        /**
+         * The position of the one in a word with r ones below it,
+         * found a byte at a time.
+         */
+        private static int selectInWord(long word, int r) {
+            int shift = 0;
+            for (int byteCount; r >= (byteCount = Long.bitCount(word >>> shift & 0xff)); shift += 8)
+                r -= byteCount;
+            long bits = word >>> shift & 0xff;
+            for (; r > 0; r--)
+                bits &= bits - 1;
+            return shift + Long.numberOfTrailingZeros(bits);
+        }
+    }
+
+    /**
+     * The number of words unionOf() and intersectionOf() work on
+     * at a time (8KB of each set).
+     */
+    private static final int BLOCK = 1024;
+
+    /**
+     * The array of longs, used as a bit vector: item i is
+     * bit i % 64 of word i / 64.
+     */
+    private long[] internal;
 
     /**
      * One greater than the largest number than can be stored
@@ -29,14 +165,21 @@ public class BitVecNSet implements NSet {
      */
     private int range;
 
+    /**
+     * The rank/select directory, built when rank() or select() is
+     * first called and dropped whenever the set changes; null if
+     * there is none.
+     */
+    private RankSelect directory;
+
     /**
      * Plain constructor
-     * @param range One greater than the largest number than 
+     * @param range One greater than the largest number than
      * can be stored in this set.
      */
     public BitVecNSet(int range) {
         this.range = range;
-        internal = new byte[range / 8 + 1];
+        internal = new long[(range + 63) >>> 6];
     }
 
     /**
@@ -51,14 +194,17 @@ public class BitVecNSet implements NSet {
     }
 
     /**
-     * Make sure the other NSet has the same class and range as
-     * this one, throw an exception otherwise.
+     * Make sure the other NSet has the same class as this one,
+     * throw an exception otherwise. (The whole-set operations
+     * allow ranges that differ.)
      * @param other The other NSet, to be checked.
+     * @return The other NSet, as a BitVecNSet
      */
-    private void checkParameter(NSet other) {
-        if (! (other instanceof BitVecNSet) || other.range() != internal.length)
-            throw new BadNSetParameterException(this.getClass() + "," + internal.length + " / " +
+    private BitVecNSet checkParameter(NSet other) {
+        if (! (other instanceof BitVecNSet))
+            throw new BadNSetParameterException(this.getClass() + "," + range + " / " +
                     other.getClass() + "," + other.range());
+        return (BitVecNSet) other;
     }
 
     /**
@@ -67,29 +213,29 @@ public class BitVecNSet implements NSet {
      */
     public void add(Integer item) {
         checkIndex(item);
-        internal[item / 8] |= 1 << (item % 8);
+        internal[item >>> 6] |= 1L << item;
+        directory = null;
     }
 
     /**
      * Does this set contain the item?
      * @param item The item to check
      * @return True if the item is in the set, false otherwise
-     */	
+     */
     public boolean contains(Integer item) {
         checkIndex(item);
-        return (internal[item / 8] & 1 << (item % 8)) != 0;
+        return (internal[item >>> 6] & 1L << item) != 0;
     }
 
     /**
      * Remove an item from the set, if it's there
      * (ignore otherwise).
      * @param item The item to remove
-     */	
+     */
     public void remove(Integer item) {
         checkIndex(item);
-        if(contains(item)){
-        	internal[item / 8] ^= 1 << (item % 8);
-        }
+        internal[item >>> 6] &= ~(1L << item);
+        directory = null;
     }
 
 
@@ -98,7 +244,10 @@ public class BitVecNSet implements NSet {
      * @return True if the set is empty, false otherwise.
      */
     public boolean isEmpty() {
-        return size() == 0;
+        for (long word : internal)
+            if (word != 0)
+                return false;
+        return true;
     }
 
 
@@ -121,16 +270,11 @@ public class BitVecNSet implements NSet {
      */
     public NSet complement() {
         BitVecNSet toReturn = new BitVecNSet(range);
-        for (int i = 0; i < internal.length - 1; i++)
-            // strangely, the negation of a byte is an integer...
-            toReturn.internal[i] = (byte) ~(internal[i]);
-        byte mask = 0;
-        for (int i = 0; i < range % 8; i++) {
-            mask <<= 1;
-            mask |= 1;
-        }
-        toReturn.internal[internal.length - 1] = (byte)
-                (mask ^ internal[internal.length - 1]);
+        for (int i = 0; i < internal.length; i++)
+            toReturn.internal[i] = ~internal[i];
+        // clear the bits beyond the range
+        if (range % 64 != 0)
+            toReturn.internal[internal.length - 1] &= -1L >>> (64 - range % 64);
         return toReturn;
     }
 
@@ -144,67 +288,185 @@ public class BitVecNSet implements NSet {
      * in either this or the other set.
      */
     public NSet union(NSet other) {
-    	BitVecNSet otherSet = (BitVecNSet) other;
-    	int otherSize = other.range() / 8 + 1;
-    	int thisSize = this.range() / 8 + 1;
-    	boolean compare = (otherSize > thisSize);
-    	int min = compare ? thisSize : otherSize;
-    	int max = compare ? otherSize : thisSize;
-    	int newRange = (other.range() > this.range()) ? other.range() : this.range();
-    	BitVecNSet toReturn = new BitVecNSet(newRange);
-    	for(int i = 0; i < max; i++){
-    		if(i < min){
-    			toReturn.internal[i] = (byte)(this.internal[i] | otherSet.internal[i]);
-    		}else{
-    			if(compare){
-    				toReturn.internal[i] = (byte)(otherSet.internal[i]);
-    			}else{
-    				toReturn.internal[i] = (byte)(this.internal[i]);
-    			}
-    		}
-    	}
-    	return toReturn;
+        BitVecNSet otherSet = checkParameter(other);
+        BitVecNSet bigger = range >= otherSet.range ? this : otherSet;
+        BitVecNSet smaller = bigger == this ? otherSet : this;
+        BitVecNSet toReturn = new BitVecNSet(bigger.range);
+        for (int i = 0; i < smaller.internal.length; i++)
+            toReturn.internal[i] = bigger.internal[i] | smaller.internal[i];
+        System.arraycopy(bigger.internal, smaller.internal.length, toReturn.internal,
+                smaller.internal.length, bigger.internal.length - smaller.internal.length);
+        return toReturn;
     }
 
     /**
      * Compute the intersection of this and the given set.
-     * @param other Another set of the same class and 
+     * @param other Another set of the same class and
      * range.
      * @return A set containing all the elements that are
      * in both this and the other set.
      */
     public NSet intersection(NSet other) {
-    	BitVecNSet otherSet = (BitVecNSet) other;
-    	int otherSize = other.range() / 8 + 1;
-    	int thisSize = this.range() / 8 + 1;
-    	int min = (otherSize > thisSize) ? thisSize : otherSize;
-    	int newRange = (other.range() > this.range()) ? this.range() : other.range();
-    	BitVecNSet toReturn = new BitVecNSet(newRange);
-    	for(int i = 0; i < min; i++){
-    		toReturn.internal[i] = (byte)(this.internal[i] & otherSet.internal[i]);
-    	}
-    	return toReturn;
+        BitVecNSet otherSet = checkParameter(other);
+        BitVecNSet toReturn = new BitVecNSet(Math.min(range, otherSet.range));
+        for (int i = 0; i < toReturn.internal.length; i++)
+            toReturn.internal[i] = internal[i] & otherSet.internal[i];
+        return toReturn;
     }
 
     /**
      * Compute the difference between this and the given
-     * set. 
-     * @param other Another set of the same class and 
+     * set.
+     * @param other Another set of the same class and
      * range.
      * @return A set containing all the elements that
      * are in this set but not in the other set.
      */
     public NSet difference(NSet other) {
-    	BitVecNSet otherSet = (BitVecNSet) other;
-    	BitVecNSet toReturn = new BitVecNSet(this.range());
-    	for(int i = 0; i < this.range() / 8 + 1; i++){
-    		if(i <= other.range() / 8 + 1){
-    			toReturn.internal[i] = (byte)((this.internal[i] ^ otherSet.internal[i]) & this.internal[i]);
-    		}else{
-    			toReturn.internal[i] = (byte)(this.internal[i]);
-    		}
-    	}
-    	return toReturn;
+        BitVecNSet otherSet = checkParameter(other);
+        BitVecNSet toReturn = new BitVecNSet(range);
+        int common = Math.min(internal.length, otherSet.internal.length);
+        for (int i = 0; i < common; i++)
+            toReturn.internal[i] = internal[i] & ~otherSet.internal[i];
+        System.arraycopy(internal, common, toReturn.internal, common,
+                internal.length - common);
+        return toReturn;
+    }
+
+    /**
+     * Add all the elements of the given set to this one, in place,
+     * a word at a time.
+     * @param other Another set of the same class, whose range
+     * is no greater than this one's.
+     */
+    public void unionWith(NSet other) {
+        BitVecNSet otherSet = checkParameter(other);
+        if (otherSet.range > range)
+            throw new BadNSetParameterException(range + " / " + otherSet.range);
+        for (int i = 0; i < otherSet.internal.length; i++)
+            internal[i] |= otherSet.internal[i];
+        directory = null;
+    }
+
+    /**
+     * Remove from this set, in place, all the elements that
+     * aren't in the given set.
+     * @param other Another set of the same class.
+     */
+    public void retainAll(NSet other) {
+        BitVecNSet otherSet = checkParameter(other);
+        int common = Math.min(internal.length, otherSet.internal.length);
+        for (int i = 0; i < common; i++)
+            internal[i] &= otherSet.internal[i];
+        for (int i = common; i < internal.length; i++)
+            internal[i] = 0;
+        directory = null;
+    }
+
+    /**
+     * Remove from this set, in place, all the elements of the
+     * given set.
+     * @param other Another set of the same class.
+     */
+    public void removeAll(NSet other) {
+        BitVecNSet otherSet = checkParameter(other);
+        int common = Math.min(internal.length, otherSet.internal.length);
+        for (int i = 0; i < common; i++)
+            internal[i] &= ~otherSet.internal[i];
+        directory = null;
+    }
+
+    /**
+     * Count the elements in both this and the given set by
+     * adding up the bit counts of the ANDed words.
+     * @param other Another set of the same class.
+     * @return The size of the intersection
+     */
+    public int intersectionSize(NSet other) {
+        BitVecNSet otherSet = checkParameter(other);
+        int common = Math.min(internal.length, otherSet.internal.length);
+        int count = 0;
+        for (int i = 0; i < common; i++)
+            count += Long.bitCount(internal[i] & otherSet.internal[i]);
+        return count;
+    }
+
+    /**
+     * Gather this set and the given ones, checking their class.
+     */
+    private BitVecNSet[] withThis(NSet[] others) {
+        BitVecNSet[] sets = new BitVecNSet[others.length + 1];
+        sets[0] = this;
+        for (int k = 0; k < others.length; k++)
+            sets[k + 1] = checkParameter(others[k]);
+        return sets;
+    }
+
+    /**
+     * The words of the given sets.
+     */
+    private static long[][] wordsOf(BitVecNSet[] sets) {
+        long[][] words = new long[sets.length][];
+        for (int k = 0; k < sets.length; k++)
+            words[k] = sets[k].internal;
+        return words;
+    }
+
+    /**
+     * Compute the union of this and the given sets in one pass over
+     * the words, each word of the result being the OR of that word
+     * in all the sets; the range is the biggest of the sets'. The
+     * words are taken BLOCK at a time, so that each block of the
+     * result stays in the cache while every set's words are ORed
+     * into it, and the inner loops run over consecutive words.
+     * @param others Sets of this class.
+     * @return A set containing all the elements that are in
+     * this set or any of the others.
+     */
+    public NSet unionOf(NSet... others) {
+        BitVecNSet[] sets = withThis(others);
+        long[][] words = wordsOf(sets);
+        int maxRange = 0;
+        for (BitVecNSet set : sets)
+            maxRange = Math.max(maxRange, set.range);
+        BitVecNSet toReturn = new BitVecNSet(maxRange);
+        long[] result = toReturn.internal;
+        for (int from = 0; from < result.length; from += BLOCK) {
+            int to = Math.min(result.length, from + BLOCK);
+            for (long[] w : words)
+                for (int i = from; i < Math.min(to, w.length); i++)
+                    result[i] |= w[i];
+        }
+        return toReturn;
+    }
+
+    /**
+     * Compute the intersection of this and the given sets in one
+     * pass over the words, each word of the result being the AND of that word
+     * in all the sets, BLOCK words at a time as in unionOf(); the
+     * range is the smallest of the sets'.
+     * @param others Sets of this class.
+     * @return A set containing all the elements that are in
+     * this set and every one of the others.
+     */
+    public NSet intersectionOf(NSet... others) {
+        BitVecNSet[] sets = withThis(others);
+        long[][] words = wordsOf(sets);
+        int minRange = Integer.MAX_VALUE;
+        for (BitVecNSet set : sets)
+            minRange = Math.min(minRange, set.range);
+        BitVecNSet toReturn = new BitVecNSet(minRange);
+        long[] result = toReturn.internal;
+        for (int from = 0; from < result.length; from += BLOCK) {
+            int to = Math.min(result.length, from + BLOCK);
+            long[] first = words[0], second = words[words.length > 1 ? 1 : 0];
+            for (int i = from; i < to; i++)
+                result[i] = first[i] & second[i];
+            for (int k = 2; k < words.length; k++)
+                for (int i = from; i < to; i++)
+                    result[i] &= words[k][i];
+        }
+        return toReturn;
     }
 
 
@@ -213,83 +475,108 @@ public class BitVecNSet implements NSet {
      * @return The number of items.
      */
     public int size() {
-        int Byte = 0;
-        int Bit = 0;
+        if (directory != null)
+            return directory.rank(range);
         int count = 0;
-        while(Byte < internal.length){
-        	while(Bit < 8){
-        		if(((1 << Bit) & internal[Byte]) != 0) count++;
-        		Bit++;
-        	}
-        	Bit = 0;
-        	Byte ++;
-        }
+        for (long word : internal)
+            count += Long.bitCount(word);
         return count;
     }
 
     /**
-     * Iterate through this set.
+     * The directory for rank() and select(), built if the set has
+     * changed since they were last called.
+     */
+    private RankSelect directory() {
+        if (directory == null)
+            directory = new RankSelect(internal);
+        return directory;
+    }
+
+    /**
+     * The number of items in the set less than x. The first call
+     * after the set changes builds a directory, in time linear in
+     * the range; after that it takes a few array reads and at most
+     * eight bit counts.
+     * @param x A number from 0 to range(), inclusive
+     * @return The number of items less than x
+     */
+    public int rank(int x) {
+        if (x < 0 || x > range)
+            throw new BadNSetParameterException(x + "");
+        return directory().rank(x);
+    }
+
+    /**
+     * The item with k items less than it, that is, the (k+1)st
+     * smallest. The first call after the set changes builds a
+     * directory, in time linear in the range; after that it takes
+     * a binary search over the few groups of 2048 bits between two
+     * select hints, and then at most three block counts, eight word
+     * counts and eight byte counts.
+     * @param k A number at least 0 and less than size()
+     * @return The item with k items less than it
+     */
+    public int select(int k) {
+        RankSelect rs = directory();
+        if (k < 0 || k >= rs.rank(range))
+            throw new BadNSetParameterException(k + "");
+        return rs.select(k);
+    }
+
+    /**
+     * Iterate through this set, in increasing order, skipping
+     * empty words and finding each item in a word by its number
+     * of trailing zeros.
      */
     public Iterator<Integer> iterator() {
-    	int Byte = 0;
-    	int Bit = 0;
-    	for(int i = 0; i<internal.length; i++){
-    		if(internal[i]!=0){ 
-    			Byte = i;
-    			break;
-    		}
-    	}
-    	for(int m = 0; m<8; m++){
-    		if(((1 << m) & internal[Byte])!=0){ 
-    			Bit = m;
-    			break;
-    		}
-    	}
-    	
-    	final int initialByte = Byte;
-    	final int initialBit = Bit;
-        return new Iterator<Integer>(){
-        	int bytePos = initialByte;
-        	int bitPos = initialBit;
-			public boolean hasNext() {
-				if(bytePos < internal.length){
-					return (internal[bytePos] & (1<<bitPos))!=0;
-				}
-				return false;
-			}
-
-			public Integer next() {
-				int oldByte = bytePos;
-				int oldBit = bitPos;
-				bitPos++;
-				while(bytePos < internal.length){
-					while(bitPos < 8){
-						if((1 << bitPos & internal[bytePos])!=0) return 8 * oldByte + oldBit;
-						bitPos ++;
-					}
-					bitPos = 0;
-					bytePos++;
-				}
-				// TODO Auto-generated method stub
-				return 8 * oldByte + oldBit;
-			}
-        	
+        return new Iterator<Integer>() {
+            /**
+             * The index of the word being iterated over
+             */
+            int wordPos = -1;
+
+            /**
+             * The bits of that word not yet returned
+             */
+            long remaining = 0;
+
+            {
+                advance();
+            }
+
+            /**
+             * Move on to the next nonempty word, if remaining
+             * is used up.
+             */
+            void advance() {
+                while (remaining == 0 && ++wordPos < internal.length)
+                    remaining = internal[wordPos];
+            }
+
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            public Integer next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                int item = (wordPos << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                advance();
+                return item;
+            }
         };
     }
 
     public String toString() {
-        String toReturn = "[";
-        for (int i = 0; i < internal.length - 1; i++)
-            for (int j = 0; j < 8; j++)
-                if ((internal[i] & (1 << j)) == 0)  toReturn += " ";
-                else toReturn += ".";
-        for (int j = 0; j < range % 8; j++)
-            if ((internal[internal.length - 1] & (1 << j)) == 0)  toReturn += " ";
-            else toReturn += ".";
+        StringBuilder toReturn = new StringBuilder("[");
+        for (int i = 0; i < range; i++)
+            toReturn.append((internal[i >>> 6] & 1L << i) == 0 ? " " : ".");
         for (int j = range % 8; j < 8; j++)
-            toReturn += "x";
-        toReturn += "]";
-        return toReturn;
+            toReturn.append("x");
+        toReturn.append("]");
+        return toReturn.toString();
     }
 
 }
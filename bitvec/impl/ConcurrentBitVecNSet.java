@@ -0,0 +1,350 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import adt.BadNSetParameterException;
+import adt.NSet;
+
+/**
+ * ConcurrentBitVecNSet
+ *
+ * A bit vector NSet, laid out as BitVecNSet is, that any number of
+ * threads may use at once without locking. The words are kept in an
+ * AtomicLongArray, and add() and remove() set or clear a bit with a
+ * compare-and-set on its word, retrying if another thread changed the
+ * word in between (as the in-place whole-set operations do for each
+ * word); a thread never waits for another, and threads changing
+ * different words never even retry. contains() is a single volatile
+ * read.
+ *
+ * Counting the bits on every size() would read the whole array, so
+ * the set keeps a count instead, changed by whichever add or remove
+ * actually flips a bit. The count is a LongAdder, whose striped cells
+ * keep threads from contending over one counter; size() adds up the
+ * cells, so it's exact when no changes are under way and otherwise
+ * off by at most the number of changes in progress (but never below
+ * zero).
+ *
+ * The iterator, like the whole-set operations, reads each word once,
+ * in order, and sees it as it was at that moment: it never throws
+ * ConcurrentModificationException, returns each item at most once,
+ * and returns every item that was in the set for the whole iteration,
+ * but may or may not see items added or removed while it runs.
+ */
+public class ConcurrentBitVecNSet implements NSet {
+
+    /**
+     * The bit vector: item i is bit i % 64 of word i / 64.
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * The number of items, changed after each bit is flipped.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * One greater than the largest number than can be stored
+     * in this set.
+     */
+    private final int range;
+
+    /**
+     * Plain constructor
+     * @param range One greater than the largest number than
+     * can be stored in this set.
+     */
+    public ConcurrentBitVecNSet(int range) {
+        if (range < 0)
+            throw new BadNSetParameterException("Range: " + range);
+        this.range = range;
+        words = new AtomicLongArray((range + 63) >>> 6);
+    }
+
+    /**
+     * Check to see if a value could possibly be in this set,
+     * and throw an exception if it is out of range.
+     * @param x The value in question
+     */
+    private void checkIndex(int x) {
+        if (x < 0 || x >= range)
+            throw new BadNSetParameterException(x + "");
+    }
+
+    /**
+     * Make sure the other NSet has the same class as this one,
+     * throw an exception otherwise. (The whole-set operations
+     * allow ranges that differ, as BitVecNSet's do.)
+     * @param other The other NSet, to be checked.
+     * @return The other NSet, as a ConcurrentBitVecNSet
+     */
+    private ConcurrentBitVecNSet checkParameter(NSet other) {
+        if (! (other instanceof ConcurrentBitVecNSet))
+            throw new BadNSetParameterException(this.getClass() + "," + range + " / " +
+                    other.getClass() + "," + other.range());
+        return (ConcurrentBitVecNSet) other;
+    }
+
+    /**
+     * Make a set from words read from other sets, counting them.
+     */
+    private static ConcurrentBitVecNSet fromWords(int range, long[] bits) {
+        ConcurrentBitVecNSet toReturn = new ConcurrentBitVecNSet(range);
+        long total = 0;
+        for (int i = 0; i < bits.length; i++) {
+            toReturn.words.set(i, bits[i]);
+            total += Long.bitCount(bits[i]);
+        }
+        toReturn.count.add(total);
+        return toReturn;
+    }
+
+    /**
+     * Set or clear some bits of a word with a compare-and-set,
+     * retrying if another thread changes the word first, and count
+     * the bits this thread flipped. Nothing is written if none of
+     * the bits would change.
+     * @param i The index of the word
+     * @param bits The bits to set or clear
+     * @param set True to set them, false to clear them
+     */
+    private void change(int i, long bits, boolean set) {
+        long word, updated;
+        do {
+            word = words.get(i);
+            updated = set ? word | bits : word & ~bits;
+            if (updated == word)
+                return;
+        } while (! words.compareAndSet(i, word, updated));
+        int flipped = Long.bitCount(word ^ updated);
+        if (set)
+            count.add(flipped);
+        else
+            count.add(-flipped);
+    }
+
+    /**
+     * Add an item to the set. (No problem if it's already there.)
+     * @param item The item to add
+     */
+    public void add(Integer item) {
+        checkIndex(item);
+        change(item >>> 6, 1L << item, true);
+    }
+
+    /**
+     * Does this set contain the item?
+     * @param item The item to check
+     * @return True if the item is in the set, false otherwise
+     */
+    public boolean contains(Integer item) {
+        checkIndex(item);
+        return (words.get(item >>> 6) & 1L << item) != 0;
+    }
+
+    /**
+     * Remove an item from the set, if it's there
+     * (ignore otherwise).
+     * @param item The item to remove
+     */
+    public void remove(Integer item) {
+        checkIndex(item);
+        change(item >>> 6, 1L << item, false);
+    }
+
+    /**
+     * Is the set empty? This reads the words rather than the
+     * count, so it doesn't say a set is empty while some item
+     * has been in it throughout.
+     * @return True if the set is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < words.length(); i++)
+            if (words.get(i) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * The number of items in the set, exact if no items are being
+     * added or removed, and otherwise approximate. A remove can
+     * count its item before the add that put it there does, so the
+     * approximation is clamped at zero.
+     * @return The number of items.
+     */
+    public int size() {
+        return (int) Math.max(0, count.sum());
+    }
+
+    /**
+     * The range of this set, that is, one greater
+     * than the largest number than can be stored
+     * in this set.
+     * @return n such that the elements of this set are
+     * drawn from the range [0, n).
+     */
+    public int range() {
+        return range;
+    }
+
+    /**
+     * Compute the complement of of this set.
+     * @return A set containing all the elements that
+     * aren't in this one and none of the elements that
+     * are.
+     */
+    public NSet complement() {
+        long[] bits = new long[words.length()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = ~words.get(i);
+        // clear the bits beyond the range
+        if (range % 64 != 0)
+            bits[bits.length - 1] &= -1L >>> (64 - range % 64);
+        return fromWords(range, bits);
+    }
+
+    /**
+     * Compute the union of this and the given set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that are
+     * in either this or the other set.
+     */
+    public NSet union(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        ConcurrentBitVecNSet bigger = range >= otherSet.range ? this : otherSet;
+        ConcurrentBitVecNSet smaller = bigger == this ? otherSet : this;
+        long[] bits = new long[bigger.words.length()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = bigger.words.get(i)
+                    | (i < smaller.words.length() ? smaller.words.get(i) : 0);
+        return fromWords(bigger.range, bits);
+    }
+
+    /**
+     * Compute the intersection of this and the given set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that are
+     * in both this and the other set.
+     */
+    public NSet intersection(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        long[] bits = new long[Math.min(words.length(), otherSet.words.length())];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = words.get(i) & otherSet.words.get(i);
+        return fromWords(Math.min(range, otherSet.range), bits);
+    }
+
+    /**
+     * Compute the difference between this and the given
+     * set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that
+     * are in this set but not in the other set.
+     */
+    public NSet difference(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        long[] bits = new long[words.length()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = words.get(i)
+                    & ~(i < otherSet.words.length() ? otherSet.words.get(i) : 0);
+        return fromWords(range, bits);
+    }
+
+    /**
+     * Add all the elements of the given set to this one, in place,
+     * setting each word's bits with one compare-and-set.
+     * @param other Another set of the same class, whose range
+     * is no greater than this one's.
+     */
+    public void unionWith(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        if (otherSet.range > range)
+            throw new BadNSetParameterException(range + " / " + otherSet.range);
+        for (int i = 0; i < otherSet.words.length(); i++)
+            change(i, otherSet.words.get(i), true);
+    }
+
+    /**
+     * Remove from this set, in place, all the elements that
+     * aren't in the given set, a word at a time.
+     * @param other Another set of the same class.
+     */
+    public void retainAll(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        for (int i = 0; i < words.length(); i++)
+            change(i, i < otherSet.words.length() ? ~otherSet.words.get(i) : -1L, false);
+    }
+
+    /**
+     * Remove from this set, in place, all the elements of the
+     * given set, a word at a time.
+     * @param other Another set of the same class.
+     */
+    public void removeAll(NSet other) {
+        ConcurrentBitVecNSet otherSet = checkParameter(other);
+        int common = Math.min(words.length(), otherSet.words.length());
+        for (int i = 0; i < common; i++)
+            change(i, otherSet.words.get(i), false);
+    }
+
+    /**
+     * Iterate through this set, in increasing order, reading each
+     * word once, when the iteration reaches it.
+     */
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            /**
+             * The index of the word being iterated over
+             */
+            int wordPos = -1;
+
+            /**
+             * The bits of that word, as read, not yet returned
+             */
+            long remaining = 0;
+
+            {
+                advance();
+            }
+
+            /**
+             * Move on to the next nonempty word, if remaining
+             * is used up.
+             */
+            void advance() {
+                while (remaining == 0 && ++wordPos < words.length())
+                    remaining = words.get(wordPos);
+            }
+
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            public Integer next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                int item = (wordPos << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                advance();
+                return item;
+            }
+        };
+    }
+
+    public String toString() {
+        StringBuilder toReturn = new StringBuilder("[");
+        for (int i = 0; i < range; i++)
+            toReturn.append((words.get(i >>> 6) & 1L << i) == 0 ? " " : ".");
+        for (int j = range % 8; j < 8; j++)
+            toReturn.append("x");
+        toReturn.append("]");
+        return toReturn.toString();
+    }
+
+}
@@ -0,0 +1,1399 @@
+package impl;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import adt.BadNSetParameterException;
+import adt.NSet;
+
+/**
+ * RoaringNSet
+ *
+ * Implementation of NSet in the style of Roaring bitmaps, for sets
+ * that may be sparse over a big range. The range is cut into chunks
+ * of 2^16 numbers, by the high 16 bits of each number, and only the
+ * chunks that have items in them are kept, in order of their high
+ * bits, each in the kind of container that suits it:
+ *   an array container keeps the low 16 bits of its items in a
+ *     sorted array, for a chunk with at most 4096 items (8KB);
+ *   a bitmap container keeps a bit vector of 1024 longs (8KB),
+ *     for a chunk with more;
+ *   a run container keeps the chunk's runs of consecutive items
+ *     as pairs of (start, length - 1), which can be far smaller
+ *     for items that come in runs.
+ * Array and bitmap containers switch between themselves as items
+ * are added and removed. Run containers are made by runOptimize()
+ * and by complement(); adding or removing an item in one turns it
+ * back into an array or bitmap.
+ *
+ * Union and intersection work chunk by chunk, skipping chunks that
+ * only one side has (for intersection) or copying them (for union),
+ * and for each pair of containers using merges of sorted arrays or
+ * of runs, lookups of an array's items in the other container, or
+ * word-wise operations on bitmaps, whichever fits.
+ *
+ * writeTo() saves a set (big-endian) as: a magic number, the range,
+ * and the number of containers; then for each container, its high
+ * bits (a char), its kind (a byte), and a count (an int: the number
+ * of items for an array, of runs for a run container, 1024 for a
+ * bitmap), followed by its items, runs, or words.
+ */
+public class RoaringNSet implements NSet {
+
+    /**
+     * The most items an array container holds.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /**
+     * Identifies the serialized form.
+     */
+    private static final int MAGIC = 0x524e5331; // "RNS1"
+
+    /**
+     * The kinds of containers, in the serialized form.
+     */
+    private static final byte ARRAY = 0, BITMAP = 1, RUN = 2;
+
+    /**
+     * The low 16 bits of the items in one chunk. The values are
+     * treated as unsigned, in chars.
+     */
+    private abstract static class Container {
+
+        /**
+         * Add a value, returning the container that then holds
+         * the chunk (this one or a new one).
+         */
+        abstract Container add(char x);
+
+        /**
+         * Remove a value, returning the container that then holds
+         * the chunk (this one or a new one, possibly empty).
+         */
+        abstract Container remove(char x);
+
+        abstract boolean contains(char x);
+
+        abstract int cardinality();
+
+        /**
+         * @return The least value at least from, or -1 if none
+         */
+        abstract int nextValue(int from);
+
+        /**
+         * @return The greatest value (the container isn't empty)
+         */
+        abstract int last();
+
+        /**
+         * @return A new bitmap container holding the same values
+         */
+        abstract BitmapContainer toBitmap();
+
+        abstract int numberOfRuns();
+
+        abstract Container copy();
+
+        abstract byte kind();
+
+        /**
+         * @return The count written before the contents
+         */
+        abstract int count();
+
+        /**
+         * @return Bytes in the serialized contents
+         */
+        abstract int contentSize();
+
+        abstract void writeContents(ByteBuffer buffer);
+
+        /**
+         * @return This container in the smallest of the three forms
+         */
+        Container optimize() {
+            int runs = numberOfRuns();
+            int card = cardinality();
+            int runBytes = 4 * runs;
+            int otherBytes = card <= ARRAY_MAX ? 2 * card : 8192;
+            if (runBytes < otherBytes)
+                return kind() == RUN ? this : RunContainer.from(this, runs);
+            if (card <= ARRAY_MAX)
+                return kind() == ARRAY ? this : ArrayContainer.from(this, card);
+            return kind() == BITMAP ? this : toBitmap();
+        }
+    }
+
+    /**
+     * A sorted array of values.
+     */
+    private static final class ArrayContainer extends Container {
+        char[] values;
+        int card;
+
+        ArrayContainer(int capacity) {
+            values = new char[capacity];
+        }
+
+        static ArrayContainer from(Container other, int card) {
+            ArrayContainer result = new ArrayContainer(card);
+            for (int x = other.nextValue(0); x != -1; x = other.nextValue(x + 1))
+                result.values[result.card++] = (char) x;
+            return result;
+        }
+
+        private int find(char x) {
+            return Arrays.binarySearch(values, 0, card, x);
+        }
+
+        Container add(char x) {
+            int i = find(x);
+            if (i >= 0)
+                return this;
+            if (card == ARRAY_MAX)
+                return toBitmap().add(x);
+            i = -i - 1;
+            if (card == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, 2 * card)));
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = x;
+            card++;
+            return this;
+        }
+
+        Container remove(char x) {
+            int i = find(x);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, card - i - 1);
+                card--;
+            }
+            return this;
+        }
+
+        boolean contains(char x) {
+            return find(x) >= 0;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xffff)
+                return -1;
+            int i = find((char) from);
+            if (i < 0)
+                i = -i - 1;
+            return i < card ? values[i] : -1;
+        }
+
+        int last() {
+            return values[card - 1];
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < card; i++)
+                result.words[values[i] >>> 6] |= 1L << values[i];
+            result.card = card;
+            return result;
+        }
+
+        int numberOfRuns() {
+            int runs = card == 0 ? 0 : 1;
+            for (int i = 1; i < card; i++)
+                if (values[i] != values[i - 1] + 1)
+                    runs++;
+            return runs;
+        }
+
+        Container copy() {
+            ArrayContainer result = new ArrayContainer(card);
+            System.arraycopy(values, 0, result.values, 0, card);
+            result.card = card;
+            return result;
+        }
+
+        byte kind() {
+            return ARRAY;
+        }
+
+        int count() {
+            return card;
+        }
+
+        int contentSize() {
+            return 2 * card;
+        }
+
+        void writeContents(ByteBuffer buffer) {
+            for (int i = 0; i < card; i++)
+                buffer.putChar(values[i]);
+        }
+    }
+
+    /**
+     * A bit vector of all 2^16 values.
+     */
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[1024];
+        int card;
+
+        Container add(char x) {
+            long bit = 1L << x;
+            if ((words[x >>> 6] & bit) == 0) {
+                words[x >>> 6] |= bit;
+                card++;
+            }
+            return this;
+        }
+
+        Container remove(char x) {
+            long bit = 1L << x;
+            if ((words[x >>> 6] & bit) != 0) {
+                words[x >>> 6] &= ~bit;
+                card--;
+                if (card <= ARRAY_MAX)
+                    return ArrayContainer.from(this, card);
+            }
+            return this;
+        }
+
+        boolean contains(char x) {
+            return (words[x >>> 6] & 1L << x) != 0;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xffff)
+                return -1;
+            int i = from >>> 6;
+            long word = words[i] & (-1L << from);
+            while (word == 0) {
+                if (++i == words.length)
+                    return -1;
+                word = words[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * @return The least value at least from not in the
+         * container, or 0x10000 if none
+         */
+        int nextAbsent(int from) {
+            if (from > 0xffff)
+                return 0x10000;
+            int i = from >>> 6;
+            long word = ~words[i] & (-1L << from);
+            while (word == 0) {
+                if (++i == words.length)
+                    return 0x10000;
+                word = ~words[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        int last() {
+            int i = words.length - 1;
+            while (words[i] == 0)
+                i--;
+            return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+
+        /**
+         * Set the values from start to end, inclusive.
+         */
+        void setRange(int start, int end) {
+            int first = start >>> 6, lastWord = end >>> 6;
+            long firstMask = -1L << start, lastMask = -1L >>> (63 - (end & 63));
+            if (first == lastWord)
+                words[first] |= firstMask & lastMask;
+            else {
+                words[first] |= firstMask;
+                for (int i = first + 1; i < lastWord; i++)
+                    words[i] = -1L;
+                words[lastWord] |= lastMask;
+            }
+        }
+
+        void recount() {
+            card = 0;
+            for (long word : words)
+                card += Long.bitCount(word);
+        }
+
+        /**
+         * @return This container, or an array container if it's
+         * small enough, or null if it's empty
+         */
+        Container normalize() {
+            if (card == 0)
+                return null;
+            return card <= ARRAY_MAX ? ArrayContainer.from(this, card) : this;
+        }
+
+        BitmapContainer toBitmap() {
+            return (BitmapContainer) copy();
+        }
+
+        int numberOfRuns() {
+            // a run starts at each set bit whose lower neighbor is clear
+            int runs = 0;
+            long carry = 0;
+            for (long word : words) {
+                runs += Long.bitCount(word & ~((word << 1) | carry));
+                carry = word >>> 63;
+            }
+            return runs;
+        }
+
+        Container copy() {
+            BitmapContainer result = new BitmapContainer();
+            System.arraycopy(words, 0, result.words, 0, words.length);
+            result.card = card;
+            return result;
+        }
+
+        byte kind() {
+            return BITMAP;
+        }
+
+        int count() {
+            return words.length;
+        }
+
+        int contentSize() {
+            return 8 * words.length;
+        }
+
+        void writeContents(ByteBuffer buffer) {
+            for (long word : words)
+                buffer.putLong(word);
+        }
+    }
+
+    /**
+     * Runs of consecutive values: runs[2i] is the start of
+     * run i and runs[2i + 1] its length less one.
+     */
+    private static final class RunContainer extends Container {
+        final char[] runs;
+        final int card;
+
+        RunContainer(char[] runs) {
+            this.runs = runs;
+            int sum = 0;
+            for (int i = 1; i < runs.length; i += 2)
+                sum += runs[i] + 1;
+            card = sum;
+        }
+
+        static RunContainer from(Container other, int numberOfRuns) {
+            BitmapContainer bits = other instanceof BitmapContainer
+                    ? (BitmapContainer) other : other.toBitmap();
+            char[] runs = new char[2 * numberOfRuns];
+            int i = 0;
+            for (int start = bits.nextValue(0); start != -1;
+                    start = bits.nextValue(runs[i - 1] + runs[i - 2] + 1)) {
+                int end = bits.nextAbsent(start) - 1;
+                runs[i++] = (char) start;
+                runs[i++] = (char) (end - start);
+            }
+            return new RunContainer(runs);
+        }
+
+        /**
+         * @return The index of the last run starting at or before x,
+         * or -1 if x is before the first run
+         */
+        private int runBefore(int x) {
+            int lo = 0, hi = runs.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= x)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            return hi;
+        }
+
+        /**
+         * @return The last value of the run holding x
+         */
+        int endOfRun(int x) {
+            int i = runBefore(x);
+            return runs[2 * i] + runs[2 * i + 1];
+        }
+
+        Container add(char x) {
+            return contains(x) ? this : optimizeAfterChange().add(x);
+        }
+
+        Container remove(char x) {
+            return contains(x) ? optimizeAfterChange().remove(x) : this;
+        }
+
+        /**
+         * @return An array or bitmap container to change
+         */
+        private Container optimizeAfterChange() {
+            return card <= ARRAY_MAX ? ArrayContainer.from(this, card) : toBitmap();
+        }
+
+        boolean contains(char x) {
+            int i = runBefore(x);
+            return i >= 0 && x - runs[2 * i] <= runs[2 * i + 1];
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xffff)
+                return -1;
+            int i = runBefore(from);
+            if (i >= 0 && from - runs[2 * i] <= runs[2 * i + 1])
+                return from;
+            return 2 * (i + 1) < runs.length ? runs[2 * (i + 1)] : -1;
+        }
+
+        int last() {
+            return runs[runs.length - 2] + runs[runs.length - 1];
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < runs.length; i += 2)
+                result.setRange(runs[i], runs[i] + runs[i + 1]);
+            result.card = card;
+            return result;
+        }
+
+        int numberOfRuns() {
+            return runs.length / 2;
+        }
+
+        Container copy() {
+            // immutable
+            return this;
+        }
+
+        byte kind() {
+            return RUN;
+        }
+
+        int count() {
+            return runs.length / 2;
+        }
+
+        int contentSize() {
+            return 2 * runs.length;
+        }
+
+        void writeContents(ByteBuffer buffer) {
+            for (char c : runs)
+                buffer.putChar(c);
+        }
+    }
+
+    /**
+     * The union of two containers, sharing neither.
+     */
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer
+                && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            ArrayContainer result = new ArrayContainer(x.card + y.card);
+            int i = 0, j = 0;
+            while (i < x.card && j < y.card) {
+                char u = x.values[i], v = y.values[j];
+                result.values[result.card++] = u <= v ? u : v;
+                if (u <= v) i++;
+                if (v <= u) j++;
+            }
+            while (i < x.card)
+                result.values[result.card++] = x.values[i++];
+            while (j < y.card)
+                result.values[result.card++] = y.values[j++];
+            return result;
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            // merge the runs, joining those that overlap or touch
+            char[] x = ((RunContainer) a).runs, y = ((RunContainer) b).runs;
+            char[] runs = new char[x.length + y.length];
+            int i = 0, j = 0, n = 0;
+            while (i < x.length || j < y.length) {
+                char[] from;
+                int k;
+                if (j == y.length || i < x.length && x[i] <= y[j]) {
+                    from = x;
+                    k = i;
+                    i += 2;
+                }
+                else {
+                    from = y;
+                    k = j;
+                    j += 2;
+                }
+                int start = from[k], end = start + from[k + 1];
+                if (n > 0 && start <= runs[n - 2] + runs[n - 1] + 1)
+                    runs[n - 1] = (char) (Math.max(runs[n - 2] + runs[n - 1], end) - runs[n - 2]);
+                else {
+                    runs[n++] = (char) start;
+                    runs[n++] = (char) (end - start);
+                }
+            }
+            return new RunContainer(Arrays.copyOf(runs, n));
+        }
+        if (! (a instanceof BitmapContainer) && b instanceof BitmapContainer) {
+            Container temp = a;
+            a = b;
+            b = temp;
+        }
+        BitmapContainer result = a.toBitmap();
+        orInto(result, b);
+        result.recount();
+        return result.normalize();
+    }
+
+    /**
+     * Set the bits of a bitmap for a container's values, leaving
+     * the bitmap's cardinality to be recounted.
+     */
+    private static void orInto(BitmapContainer result, Container b) {
+        if (b instanceof BitmapContainer) {
+            long[] other = ((BitmapContainer) b).words;
+            for (int i = 0; i < other.length; i++)
+                result.words[i] |= other[i];
+        }
+        else if (b instanceof ArrayContainer) {
+            ArrayContainer y = (ArrayContainer) b;
+            for (int i = 0; i < y.card; i++)
+                result.words[y.values[i] >>> 6] |= 1L << y.values[i];
+        }
+        else {
+            char[] runs = ((RunContainer) b).runs;
+            for (int i = 0; i < runs.length; i += 2)
+                result.setRange(runs[i], runs[i] + runs[i + 1]);
+        }
+    }
+
+    /**
+     * The intersection of two containers, sharing neither, or null
+     * if it's empty.
+     */
+    private static Container and(Container a, Container b) {
+        if (b instanceof ArrayContainer && ! (a instanceof ArrayContainer)) {
+            Container temp = a;
+            a = b;
+            b = temp;
+        }
+        if (a instanceof ArrayContainer) {
+            // look up the array's values in the other container
+            ArrayContainer x = (ArrayContainer) a;
+            ArrayContainer result = new ArrayContainer(Math.min(x.card, b.cardinality()));
+            for (int i = 0; i < x.card; i++)
+                if (b.contains(x.values[i]))
+                    result.values[result.card++] = x.values[i];
+            return result.card == 0 ? null : result;
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            // the overlaps of the runs
+            char[] x = ((RunContainer) a).runs, y = ((RunContainer) b).runs;
+            char[] runs = new char[x.length + y.length];
+            int i = 0, j = 0, n = 0;
+            while (i < x.length && j < y.length) {
+                int xEnd = x[i] + x[i + 1], yEnd = y[j] + y[j + 1];
+                int start = Math.max(x[i], y[j]), end = Math.min(xEnd, yEnd);
+                if (start <= end) {
+                    runs[n++] = (char) start;
+                    runs[n++] = (char) (end - start);
+                }
+                if (xEnd <= yEnd)
+                    i += 2;
+                else
+                    j += 2;
+            }
+            return n == 0 ? null : new RunContainer(Arrays.copyOf(runs, n));
+        }
+        BitmapContainer result = a.toBitmap();
+        long[] other = b instanceof BitmapContainer
+                ? ((BitmapContainer) b).words : b.toBitmap().words;
+        for (int i = 0; i < other.length; i++)
+            result.words[i] &= other[i];
+        result.recount();
+        return result.normalize();
+    }
+
+    /**
+     * The difference of two containers, sharing neither, or null
+     * if it's empty.
+     */
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            ArrayContainer result = new ArrayContainer(x.card);
+            for (int i = 0; i < x.card; i++)
+                if (! b.contains(x.values[i]))
+                    result.values[result.card++] = x.values[i];
+            return result.card == 0 ? null : result;
+        }
+        BitmapContainer result = a.toBitmap();
+        if (b instanceof ArrayContainer) {
+            ArrayContainer y = (ArrayContainer) b;
+            for (int i = 0; i < y.card; i++)
+                result.words[y.values[i] >>> 6] &= ~(1L << y.values[i]);
+        }
+        else {
+            long[] other = b instanceof BitmapContainer
+                    ? ((BitmapContainer) b).words : b.toBitmap().words;
+            for (int i = 0; i < other.length; i++)
+                result.words[i] &= ~other[i];
+        }
+        result.recount();
+        return result.normalize();
+    }
+
+    /**
+     * The number of values in both of two containers, without
+     * making their intersection.
+     */
+    private static int andCardinality(Container a, Container b) {
+        if (b instanceof ArrayContainer && ! (a instanceof ArrayContainer)) {
+            Container temp = a;
+            a = b;
+            b = temp;
+        }
+        int count = 0;
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            for (int i = 0; i < x.card; i++)
+                if (b.contains(x.values[i]))
+                    count++;
+        }
+        else if (a instanceof RunContainer && b instanceof RunContainer) {
+            char[] x = ((RunContainer) a).runs, y = ((RunContainer) b).runs;
+            int i = 0, j = 0;
+            while (i < x.length && j < y.length) {
+                int xEnd = x[i] + x[i + 1], yEnd = y[j] + y[j + 1];
+                count += Math.max(0, Math.min(xEnd, yEnd) - Math.max(x[i], y[j]) + 1);
+                if (xEnd <= yEnd)
+                    i += 2;
+                else
+                    j += 2;
+            }
+        }
+        else {
+            long[] x = a instanceof BitmapContainer
+                    ? ((BitmapContainer) a).words : a.toBitmap().words;
+            long[] y = b instanceof BitmapContainer
+                    ? ((BitmapContainer) b).words : b.toBitmap().words;
+            for (int i = 0; i < x.length; i++)
+                count += Long.bitCount(x[i] & y[i]);
+        }
+        return count;
+    }
+
+    /**
+     * The high 16 bits of the chunks that have items, in order.
+     */
+    private char[] keys;
+
+    /**
+     * The containers for those chunks, never empty.
+     */
+    private Container[] containers;
+
+    /**
+     * The number of chunks that have items.
+     */
+    private int chunks;
+
+    /**
+     * One greater than the largest number than can be stored
+     * in this set.
+     */
+    private final int range;
+
+    /**
+     * Plain constructor
+     * @param range One greater than the largest number than
+     * can be stored in this set.
+     */
+    public RoaringNSet(int range) {
+        if (range < 0)
+            throw new BadNSetParameterException("Range: " + range);
+        this.range = range;
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * Check to see if a value could possibly be in this set,
+     * and throw an exception if it is out of range.
+     * @param x The value in question
+     */
+    private void checkIndex(int x) {
+        if (x < 0 || x >= range)
+            throw new BadNSetParameterException(x + "");
+    }
+
+    /**
+     * Make sure the other NSet has the same class as this one,
+     * throw an exception otherwise. (The whole-set operations
+     * allow ranges that differ, as BitVecNSet's do.)
+     * @param other The other NSet, to be checked.
+     * @return The other NSet, as a RoaringNSet
+     */
+    private RoaringNSet checkParameter(NSet other) {
+        if (! (other instanceof RoaringNSet))
+            throw new BadNSetParameterException(this.getClass() + "," + range + " / " +
+                    other.getClass() + "," + other.range());
+        return (RoaringNSet) other;
+    }
+
+    /**
+     * Find the chunk with the given high bits.
+     * @return Its index, or (-(insertion point) - 1) if there's none
+     */
+    private int findChunk(char key) {
+        return Arrays.binarySearch(keys, 0, chunks, key);
+    }
+
+    /**
+     * Add a chunk at the end, in building a set.
+     */
+    private void append(char key, Container container) {
+        if (chunks == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * chunks);
+            containers = Arrays.copyOf(containers, 2 * chunks);
+        }
+        keys[chunks] = key;
+        containers[chunks] = container;
+        chunks++;
+    }
+
+    /**
+     * Add an item to the set. (No problem if it's already there.)
+     * @param item The item to add
+     */
+    public void add(Integer item) {
+        checkIndex(item);
+        char key = (char) (item >>> 16), low = (char) (int) item;
+        int i = findChunk(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add(low);
+            return;
+        }
+        i = -i - 1;
+        append(key, null);
+        System.arraycopy(keys, i, keys, i + 1, chunks - 1 - i);
+        System.arraycopy(containers, i, containers, i + 1, chunks - 1 - i);
+        keys[i] = key;
+        containers[i] = new ArrayContainer(4).add(low);
+    }
+
+    /**
+     * Does this set contain the item?
+     * @param item The item to check
+     * @return True if the item is in the set, false otherwise
+     */
+    public boolean contains(Integer item) {
+        checkIndex(item);
+        int i = findChunk((char) (item >>> 16));
+        return i >= 0 && containers[i].contains((char) (int) item);
+    }
+
+    /**
+     * Remove an item from the set, if it's there
+     * (ignore otherwise).
+     * @param item The item to remove
+     */
+    public void remove(Integer item) {
+        checkIndex(item);
+        int i = findChunk((char) (item >>> 16));
+        if (i < 0)
+            return;
+        Container container = containers[i].remove((char) (int) item);
+        if (container.cardinality() != 0) {
+            containers[i] = container;
+            return;
+        }
+        System.arraycopy(keys, i + 1, keys, i, chunks - 1 - i);
+        System.arraycopy(containers, i + 1, containers, i, chunks - 1 - i);
+        chunks--;
+        containers[chunks] = null;
+    }
+
+    /**
+     * Is the set empty?
+     * @return True if the set is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return chunks == 0;
+    }
+
+    /**
+     * The number of items in the set
+     * @return The number of items.
+     */
+    public int size() {
+        int count = 0;
+        for (int i = 0; i < chunks; i++)
+            count += containers[i].cardinality();
+        return count;
+    }
+
+    /**
+     * The range of this set, that is, one greater
+     * than the largest number than can be stored
+     * in this set.
+     * @return n such that the elements of this set are
+     * drawn from the range [0, n).
+     */
+    public int range() {
+        return range;
+    }
+
+    /**
+     * Convert each container to whichever of the three kinds is
+     * smallest, which makes run containers of chunks whose items
+     * mostly come in runs.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < chunks; i++)
+            containers[i] = containers[i].optimize();
+    }
+
+    /**
+     * Compute the complement of of this set.
+     * @return A set containing all the elements that
+     * aren't in this one and none of the elements that
+     * are.
+     */
+    public NSet complement() {
+        RoaringNSet toReturn = new RoaringNSet(range);
+        if (range == 0)
+            return toReturn;
+        int lastKey = (range - 1) >>> 16;
+        int j = 0;
+        for (int key = 0; key <= lastKey; key++) {
+            int limit = key == lastKey ? (range - 1) & 0xffff : 0xffff;
+            if (j < chunks && keys[j] == key) {
+                BitmapContainer flipped = containers[j++].toBitmap();
+                for (int i = 0; i < flipped.words.length; i++)
+                    flipped.words[i] = ~flipped.words[i];
+                // clear the values past the range
+                int lastWord = limit >>> 6;
+                flipped.words[lastWord] &= -1L >>> (63 - (limit & 63));
+                for (int i = lastWord + 1; i < flipped.words.length; i++)
+                    flipped.words[i] = 0;
+                flipped.recount();
+                if (flipped.card != 0)
+                    toReturn.append((char) key, flipped.optimize());
+            }
+            else
+                toReturn.append((char) key, new RunContainer(new char[] {0, (char) limit}));
+        }
+        return toReturn;
+    }
+
+    /**
+     * Compute the union of this and the given set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that are
+     * in either this or the other set.
+     */
+    public NSet union(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        RoaringNSet toReturn = new RoaringNSet(Math.max(range, otherSet.range));
+        int i = 0, j = 0;
+        while (i < chunks || j < otherSet.chunks) {
+            if (j == otherSet.chunks || i < chunks && keys[i] < otherSet.keys[j]) {
+                toReturn.append(keys[i], containers[i].copy());
+                i++;
+            }
+            else if (i == chunks || otherSet.keys[j] < keys[i]) {
+                toReturn.append(otherSet.keys[j], otherSet.containers[j].copy());
+                j++;
+            }
+            else {
+                toReturn.append(keys[i], or(containers[i], otherSet.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Compute the intersection of this and the given set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that are
+     * in both this and the other set.
+     */
+    public NSet intersection(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        RoaringNSet toReturn = new RoaringNSet(Math.min(range, otherSet.range));
+        int i = 0, j = 0;
+        while (i < chunks && j < otherSet.chunks) {
+            if (keys[i] < otherSet.keys[j])
+                i++;
+            else if (otherSet.keys[j] < keys[i])
+                j++;
+            else {
+                Container both = and(containers[i], otherSet.containers[j]);
+                if (both != null)
+                    toReturn.append(keys[i], both);
+                i++;
+                j++;
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Compute the difference between this and the given
+     * set.
+     * @param other Another set of the same class and
+     * range.
+     * @return A set containing all the elements that
+     * are in this set but not in the other set.
+     */
+    public NSet difference(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        RoaringNSet toReturn = new RoaringNSet(range);
+        int j = 0;
+        for (int i = 0; i < chunks; i++) {
+            while (j < otherSet.chunks && otherSet.keys[j] < keys[i])
+                j++;
+            if (j < otherSet.chunks && otherSet.keys[j] == keys[i]) {
+                Container rest = andNot(containers[i], otherSet.containers[j]);
+                if (rest != null)
+                    toReturn.append(keys[i], rest);
+            }
+            else
+                toReturn.append(keys[i], containers[i].copy());
+        }
+        return toReturn;
+    }
+
+    /**
+     * Add all the elements of the given set to this one, in place;
+     * bitmap containers here take the other set's values into their
+     * own words.
+     * @param other Another set of the same class, whose range
+     * is no greater than this one's.
+     */
+    public void unionWith(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        if (otherSet.range > range)
+            throw new BadNSetParameterException(range + " / " + otherSet.range);
+        char[] newKeys = new char[Math.max(4, chunks + otherSet.chunks)];
+        Container[] newContainers = new Container[newKeys.length];
+        int i = 0, j = 0, n = 0;
+        while (i < chunks || j < otherSet.chunks) {
+            if (j == otherSet.chunks || i < chunks && keys[i] < otherSet.keys[j]) {
+                newKeys[n] = keys[i];
+                newContainers[n++] = containers[i++];
+            }
+            else if (i == chunks || otherSet.keys[j] < keys[i]) {
+                newKeys[n] = otherSet.keys[j];
+                newContainers[n++] = otherSet.containers[j++].copy();
+            }
+            else {
+                Container mine = containers[i++], theirs = otherSet.containers[j++];
+                newKeys[n] = keys[i - 1];
+                if (mine instanceof BitmapContainer) {
+                    orInto((BitmapContainer) mine, theirs);
+                    ((BitmapContainer) mine).recount();
+                    newContainers[n++] = mine;
+                }
+                else
+                    newContainers[n++] = or(mine, theirs);
+            }
+        }
+        keys = newKeys;
+        containers = newContainers;
+        chunks = n;
+    }
+
+    /**
+     * Remove from this set, in place, all the elements that
+     * aren't in the given set, dropping the chunks that become
+     * empty.
+     * @param other Another set of the same class.
+     */
+    public void retainAll(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        int j = 0, n = 0;
+        for (int i = 0; i < chunks; i++) {
+            while (j < otherSet.chunks && otherSet.keys[j] < keys[i])
+                j++;
+            if (j < otherSet.chunks && otherSet.keys[j] == keys[i]) {
+                Container both = and(containers[i], otherSet.containers[j]);
+                if (both != null) {
+                    keys[n] = keys[i];
+                    containers[n++] = both;
+                }
+            }
+        }
+        for (int i = n; i < chunks; i++)
+            containers[i] = null;
+        chunks = n;
+    }
+
+    /**
+     * Remove from this set, in place, all the elements of the
+     * given set, dropping the chunks that become empty.
+     * @param other Another set of the same class.
+     */
+    public void removeAll(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        int j = 0, n = 0;
+        for (int i = 0; i < chunks; i++) {
+            while (j < otherSet.chunks && otherSet.keys[j] < keys[i])
+                j++;
+            Container rest = containers[i];
+            if (j < otherSet.chunks && otherSet.keys[j] == keys[i])
+                rest = andNot(rest, otherSet.containers[j]);
+            if (rest != null) {
+                keys[n] = keys[i];
+                containers[n++] = rest;
+            }
+        }
+        for (int i = n; i < chunks; i++)
+            containers[i] = null;
+        chunks = n;
+    }
+
+    /**
+     * Count the elements in both this and the given set, chunk by
+     * chunk, without making any containers for the intersection
+     * (except to look at a run container's values as a bitmap).
+     * @param other Another set of the same class.
+     * @return The size of the intersection
+     */
+    public int intersectionSize(NSet other) {
+        RoaringNSet otherSet = checkParameter(other);
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < chunks && j < otherSet.chunks) {
+            if (keys[i] < otherSet.keys[j])
+                i++;
+            else if (otherSet.keys[j] < keys[i])
+                j++;
+            else
+                count += andCardinality(containers[i++], otherSet.containers[j++]);
+        }
+        return count;
+    }
+
+    /**
+     * Gather this set and the given ones, checking their class.
+     */
+    private RoaringNSet[] withThis(NSet[] others) {
+        RoaringNSet[] sets = new RoaringNSet[others.length + 1];
+        sets[0] = this;
+        for (int k = 0; k < others.length; k++)
+            sets[k + 1] = checkParameter(others[k]);
+        return sets;
+    }
+
+    /**
+     * Compute the union of this and the given sets in one pass
+     * over their chunks: a chunk that only one set has is copied, and the
+     * containers of a chunk that several have are all ORed into
+     * one bitmap.
+     * @param others Sets of this class.
+     * @return A set containing all the elements that are in
+     * this set or any of the others.
+     */
+    public NSet unionOf(NSet... others) {
+        RoaringNSet[] all = withThis(others);
+        int maxRange = 0;
+        for (RoaringNSet set : all)
+            maxRange = Math.max(maxRange, set.range);
+        RoaringNSet toReturn = new RoaringNSet(maxRange);
+        int[] pos = new int[all.length];
+        while (true) {
+            int key = -1, holders = 0, holder = 0;
+            for (int k = 0; k < all.length; k++) {
+                if (pos[k] == all[k].chunks)
+                    continue;
+                int next = all[k].keys[pos[k]];
+                if (key == -1 || next < key) {
+                    key = next;
+                    holders = 0;
+                }
+                if (next == key) {
+                    holders++;
+                    holder = k;
+                }
+            }
+            if (key == -1)
+                return toReturn;
+            if (holders == 1) {
+                toReturn.append((char) key, all[holder].containers[pos[holder]++].copy());
+                continue;
+            }
+            BitmapContainer merged = new BitmapContainer();
+            for (int k = 0; k < all.length; k++)
+                if (pos[k] < all[k].chunks && all[k].keys[pos[k]] == key)
+                    orInto(merged, all[k].containers[pos[k]++]);
+            merged.recount();
+            toReturn.append((char) key, merged.normalize());
+        }
+    }
+
+    /**
+     * Compute the intersection of this and the given sets in one
+     * pass over their chunks, only where every set has the chunk: the values
+     * of the smallest of its containers are looked up in the others
+     * if it's an array, and otherwise its words are ANDed with the
+     * others'.
+     * @param others Sets of this class.
+     * @return A set containing all the elements that are in
+     * this set and every one of the others.
+     */
+    public NSet intersectionOf(NSet... others) {
+        RoaringNSet[] all = withThis(others);
+        int minRange = Integer.MAX_VALUE;
+        for (RoaringNSet set : all)
+            minRange = Math.min(minRange, set.range);
+        RoaringNSet toReturn = new RoaringNSet(minRange);
+        int[] pos = new int[all.length];
+        Container[] found = new Container[all.length];
+        while (true) {
+            // find a key that every set has, skipping to the
+            // greatest of their next keys until they agree
+            int key = 0;
+            for (int k = 0; k < all.length; k++) {
+                while (pos[k] < all[k].chunks && all[k].keys[pos[k]] < key)
+                    pos[k]++;
+                if (pos[k] == all[k].chunks)
+                    return toReturn;
+                if (all[k].keys[pos[k]] > key) {
+                    key = all[k].keys[pos[k]];
+                    k = -1;
+                }
+            }
+            int smallest = 0;
+            for (int k = 0; k < all.length; k++) {
+                found[k] = all[k].containers[pos[k]++];
+                if (found[k].cardinality() < found[smallest].cardinality())
+                    smallest = k;
+            }
+            Container both;
+            if (found[smallest] instanceof ArrayContainer) {
+                ArrayContainer x = (ArrayContainer) found[smallest];
+                ArrayContainer result = new ArrayContainer(x.card);
+                values:
+                for (int i = 0; i < x.card; i++) {
+                    for (Container c : found)
+                        if (! c.contains(x.values[i]))
+                            continue values;
+                    result.values[result.card++] = x.values[i];
+                }
+                both = result.card == 0 ? null : result;
+            }
+            else {
+                BitmapContainer result = found[smallest].toBitmap();
+                for (int k = 0; k < found.length; k++) {
+                    if (k == smallest)
+                        continue;
+                    Container c = found[k];
+                    long[] words = c instanceof BitmapContainer
+                            ? ((BitmapContainer) c).words : c.toBitmap().words;
+                    for (int i = 0; i < words.length; i++)
+                        result.words[i] &= words[i];
+                }
+                result.recount();
+                both = result.normalize();
+            }
+            if (both != null)
+                toReturn.append((char) key, both);
+        }
+    }
+
+    /**
+     * Iterate through this set, in increasing order.
+     */
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            /**
+             * The index of the chunk being iterated over
+             */
+            int chunk = -1;
+
+            /**
+             * The low bits of the next item in that chunk, or -1
+             * if there are no more
+             */
+            int low = -1;
+
+            /**
+             * The low bits of the last item in the run the next item
+             * begins, in a run container (so the items up to it can
+             * be returned without searching), or else just low
+             */
+            int runEnd = -1;
+
+            {
+                nextChunk();
+            }
+
+            /**
+             * Move on to the first item of the next chunk, if any.
+             */
+            void nextChunk() {
+                if (++chunk < chunks)
+                    find(0);
+            }
+
+            /**
+             * Find the first item of the current chunk at least from.
+             */
+            void find(int from) {
+                Container container = containers[chunk];
+                low = container.nextValue(from);
+                runEnd = low != -1 && container instanceof RunContainer
+                        ? ((RunContainer) container).endOfRun(low) : low;
+            }
+
+            public boolean hasNext() {
+                return low != -1;
+            }
+
+            public Integer next() {
+                if (low == -1)
+                    throw new NoSuchElementException();
+                int item = keys[chunk] << 16 | low;
+                if (low < runEnd)
+                    low++;
+                else {
+                    find(low + 1);
+                    if (low == -1)
+                        nextChunk();
+                }
+                return item;
+            }
+        };
+    }
+
+    /**
+     * @return The number of bytes writeTo() writes
+     */
+    public int serializedSize() {
+        int size = 12;
+        for (int i = 0; i < chunks; i++)
+            size += 7 + containers[i].contentSize();
+        return size;
+    }
+
+    /**
+     * Write this set to a buffer, at its position.
+     * @param buffer A buffer with serializedSize() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(range).putInt(chunks);
+        for (int i = 0; i < chunks; i++) {
+            buffer.putChar(keys[i]).put(containers[i].kind()).putInt(containers[i].count());
+            containers[i].writeContents(buffer);
+        }
+    }
+
+    /**
+     * @return This set in serialized form
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(serializedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Read a set written by writeTo(), from the buffer's
+     * position (leaving the position after it).
+     * @param buffer The buffer to read
+     * @return The set
+     * @throws IllegalArgumentException if the buffer doesn't hold one
+     */
+    public static RoaringNSet readFrom(ByteBuffer buffer) {
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a RoaringNSet");
+        int range = buffer.getInt(), chunks = buffer.getInt();
+        if (range < 0 || chunks < 0 || chunks > 0x10000)
+            throw new IllegalArgumentException("Corrupt RoaringNSet");
+        RoaringNSet result = new RoaringNSet(range);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                char key = buffer.getChar();
+                byte kind = buffer.get();
+                int count = buffer.getInt();
+                Container container;
+                if (kind == ARRAY && count >= 1 && count <= ARRAY_MAX) {
+                    ArrayContainer array = new ArrayContainer(count);
+                    for (int j = 0; j < count; j++) {
+                        array.values[j] = buffer.getChar();
+                        if (j > 0 && array.values[j] <= array.values[j - 1])
+                            throw new IllegalArgumentException("Corrupt RoaringNSet");
+                    }
+                    array.card = count;
+                    container = array;
+                }
+                else if (kind == BITMAP && count == 1024) {
+                    BitmapContainer bitmap = new BitmapContainer();
+                    for (int j = 0; j < count; j++)
+                        bitmap.words[j] = buffer.getLong();
+                    bitmap.recount();
+                    container = bitmap;
+                }
+                else if (kind == RUN && count >= 1 && count <= 0x8000) {
+                    char[] runs = new char[2 * count];
+                    for (int j = 0; j < runs.length; j++)
+                        runs[j] = buffer.getChar();
+                    for (int j = 0; j < runs.length; j += 2)
+                        if (runs[j] + runs[j + 1] > 0xffff
+                                || j > 0 && runs[j] <= runs[j - 2] + runs[j - 1] + 1)
+                            throw new IllegalArgumentException("Corrupt RoaringNSet");
+                    container = new RunContainer(runs);
+                }
+                else
+                    throw new IllegalArgumentException("Corrupt RoaringNSet");
+                if (container.cardinality() == 0
+                        || i > 0 && key <= result.keys[i - 1]
+                        || ((long) key << 16 | container.last()) >= range)
+                    throw new IllegalArgumentException("Corrupt RoaringNSet");
+                result.append(key, container);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated RoaringNSet");
+        }
+        return result;
+    }
+
+    /**
+     * Read a set from the bytes toByteArray() returned.
+     * @param bytes The bytes
+     * @return The set
+     * @throws IllegalArgumentException if the bytes don't hold one
+     */
+    public static RoaringNSet fromByteArray(byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+
+}
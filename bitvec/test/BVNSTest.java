@@ -1,5 +1,16 @@
 package test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import adt.BadNSetParameterException;
+import adt.NSet;
 import impl.BitVecNSet;
 
 public class BVNSTest extends NSetTest {
@@ -8,4 +19,151 @@ public class BVNSTest extends NSetTest {
         testSet = new BitVecNSet(data.length);
     }
 
+    private static void assertSame(BitSet expected, NSet actual) {
+        assertEquals(expected.cardinality(), actual.size());
+        Iterator<Integer> it = actual.iterator();
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1))
+            assertEquals(Integer.valueOf(i), it.next());
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Sets spanning several words, with ranges not a multiple of 64,
+     * checked against java.util.BitSet.
+     */
+    @Test
+    public void acrossWords() {
+        Random randy = new Random(345);
+        for (int range : new int[] {1, 63, 64, 65, 200, 1000}) {
+            BitVecNSet a = new BitVecNSet(range), b = new BitVecNSet(range);
+            BitSet ea = new BitSet(), eb = new BitSet();
+            for (int i = 0; i < range; i++) {
+                int x = randy.nextInt(range), y = randy.nextInt(range);
+                a.add(x);
+                ea.set(x);
+                b.add(y);
+                eb.set(y);
+                if (i % 3 == 0) {
+                    a.remove(y);
+                    ea.clear(y);
+                }
+            }
+            assertSame(ea, a);
+            BitSet expected = (BitSet) ea.clone();
+            expected.or(eb);
+            assertSame(expected, a.union(b));
+            expected = (BitSet) ea.clone();
+            expected.and(eb);
+            assertSame(expected, a.intersection(b));
+            expected = (BitSet) ea.clone();
+            expected.andNot(eb);
+            assertSame(expected, a.difference(b));
+            expected = (BitSet) ea.clone();
+            expected.flip(0, range);
+            assertSame(expected, a.complement());
+        }
+    }
+
+    /**
+     * The in-place and n-ary operations and intersectionSize, on
+     * sets of differing ranges, checked against java.util.BitSet.
+     */
+    @Test
+    public void bulkOperations() {
+        Random randy = new Random(345);
+        int[] ranges = {1000, 700, 1000, 65};
+        BitSet[] expected = new BitSet[ranges.length];
+        BitVecNSet[] sets = new BitVecNSet[ranges.length];
+        for (int k = 0; k < sets.length; k++) {
+            expected[k] = new BitSet();
+            sets[k] = new BitVecNSet(ranges[k]);
+            for (int i = 0; i < ranges[k] / 2; i++) {
+                int x = randy.nextInt(ranges[k]);
+                sets[k].add(x);
+                expected[k].set(x);
+            }
+        }
+        BitSet both = (BitSet) expected[0].clone();
+        both.and(expected[1]);
+        assertEquals(both.cardinality(), sets[0].intersectionSize(sets[1]));
+        assertEquals(both.cardinality(), sets[1].intersectionSize(sets[0]));
+        BitSet all = new BitSet();
+        BitSet every = (BitSet) expected[0].clone();
+        for (BitSet e : expected) {
+            all.or(e);
+            every.and(e);
+        }
+        NSet union = NSet.unionAll(sets);
+        assertEquals(1000, union.range());
+        assertSame(all, union);
+        NSet intersection = NSet.intersectAll(sets);
+        assertEquals(65, intersection.range());
+        assertSame(every, intersection);
+
+        sets[0].unionWith(sets[1]);
+        expected[0].or(expected[1]);
+        assertSame(expected[0], sets[0]);
+        sets[0].retainAll(sets[3]);
+        expected[0].and(expected[3]);
+        assertSame(expected[0], sets[0]);
+        sets[2].removeAll(sets[1]);
+        expected[2].andNot(expected[1]);
+        assertSame(expected[2], sets[2]);
+    }
+
+    @Test(expected = BadNSetParameterException.class)
+    public void unionWithBiggerRange() {
+        new BitVecNSet(64).unionWith(new BitVecNSet(65));
+    }
+
+    /**
+     * rank() and select() on sets of various densities and ranges,
+     * checked against java.util.BitSet, before and after changes.
+     */
+    @Test
+    public void rankAndSelect() {
+        Random randy = new Random(345);
+        for (int range : new int[] {1, 64, 2048, 5000, 100000, 1 << 20}) {
+            for (int percent : new int[] {0, 1, 50, 99, 100}) {
+                BitVecNSet set = new BitVecNSet(range);
+                BitSet expected = new BitSet();
+                for (int i = 0; i < range; i++)
+                    if (randy.nextInt(100) < percent) {
+                        set.add(i);
+                        expected.set(i);
+                    }
+                for (int round = 0; round < 2; round++) {
+                    int count = 0;
+                    for (int x = 0; x <= range; x++) {
+                        assertEquals(count, set.rank(x));
+                        if (x < range && expected.get(x))
+                            assertEquals(x, set.select(count++));
+                    }
+                    assertEquals(count, set.size());
+                    int x = randy.nextInt(range);
+                    if (expected.get(x)) {
+                        set.remove(x);
+                        expected.clear(x);
+                    }
+                    else {
+                        set.add(x);
+                        expected.set(x);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = BadNSetParameterException.class)
+    public void selectBeyondSize() {
+        BitVecNSet set = new BitVecNSet(100);
+        set.add(7);
+        set.select(1);
+    }
+
+    @Test(expected = BadNSetParameterException.class)
+    public void rankBeyondRange() {
+        new BitVecNSet(100).rank(101);
+    }
+
 }
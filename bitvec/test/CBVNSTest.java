@@ -0,0 +1,162 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import adt.NSet;
+import impl.ConcurrentBitVecNSet;
+
+public class CBVNSTest extends NSetTest {
+
+    private static final int THREADS = 4;
+
+    protected void reset() {
+        testSet = new ConcurrentBitVecNSet(data.length);
+    }
+
+    private interface Work {
+        void run(int thread);
+    }
+
+    /**
+     * Run the work on THREADS threads at once, and wait for them.
+     */
+    private static void inParallel(final Work work) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    work.run(thread);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * Threads adding overlapping items, many in the same words,
+     * lose none of them and count each once.
+     */
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final int range = 100000;
+        final ConcurrentBitVecNSet set = new ConcurrentBitVecNSet(range);
+        inParallel(new Work() {
+            public void run(int thread) {
+                // each thread adds the multiples of 2 and of 3, from
+                // a different starting point
+                for (int i = 0; i < range; i++) {
+                    int x = (i + thread * range / THREADS) % range;
+                    if (x % 2 == 0 || x % 3 == 0)
+                        set.add(x);
+                }
+            }
+        });
+        int expected = 0;
+        for (int x = 0; x < range; x++) {
+            assertEquals(x % 2 == 0 || x % 3 == 0, set.contains(x));
+            if (x % 2 == 0 || x % 3 == 0)
+                expected++;
+        }
+        assertEquals(expected, set.size());
+    }
+
+    /**
+     * Threads adding and removing items in the same words, each
+     * its own residue mod THREADS, leave each one's last change.
+     */
+    @Test
+    public void concurrentAddsAndRemoves() throws InterruptedException {
+        final int range = 1 << 16;
+        final ConcurrentBitVecNSet set = new ConcurrentBitVecNSet(range);
+        inParallel(new Work() {
+            public void run(int thread) {
+                for (int round = 0; round < 5; round++)
+                    for (int x = thread; x < range; x += THREADS) {
+                        set.add(x);
+                        if (x % 5 != 0)
+                            set.remove(x);
+                    }
+            }
+        });
+        int expected = 0;
+        for (Iterator<Integer> it = set.iterator(); it.hasNext(); ) {
+            assertEquals(0, it.next() % 5);
+            expected++;
+        }
+        assertEquals((range + 4) / 5, expected);
+        assertEquals(expected, set.size());
+    }
+
+    /**
+     * An iterator running while other threads add and remove items
+     * returns, in order, every item that is there throughout.
+     */
+    @Test
+    public void iterateWhileChanging() throws InterruptedException {
+        final int range = 1 << 16;
+        final ConcurrentBitVecNSet set = new ConcurrentBitVecNSet(range);
+        for (int x = 0; x < range; x += 2)
+            set.add(x);
+        final boolean[] ok = new boolean[THREADS];
+        inParallel(new Work() {
+            public void run(int thread) {
+                if (thread == 0) {
+                    // the even items are never removed
+                    int expected = 0, previous = -1;
+                    boolean good = true;
+                    for (int x : set) {
+                        good &= x > previous;
+                        previous = x;
+                        if (x % 2 == 0) {
+                            good &= x == expected;
+                            expected += 2;
+                        }
+                    }
+                    ok[thread] = good && expected == range;
+                }
+                else {
+                    for (int x = thread * 2 - 1; x < range; x += 2 * THREADS) {
+                        set.add(x);
+                        set.remove(x);
+                    }
+                    ok[thread] = true;
+                }
+            }
+        });
+        for (boolean good : ok)
+            assertTrue(good);
+        assertEquals(range / 2, set.size());
+    }
+
+    @Test
+    public void wholeSetOperationsCount() {
+        ConcurrentBitVecNSet a = new ConcurrentBitVecNSet(200), b = new ConcurrentBitVecNSet(130);
+        for (int x = 0; x < 200; x += 3)
+            a.add(x);
+        for (int x = 0; x < 130; x += 2)
+            b.add(x);
+        assertEquals(200 - 67, a.complement().size());
+        assertEquals(67 + 65 - 22, a.union(b).size());
+        assertEquals(22, a.intersection(b).size());
+        assertEquals(67 - 22, a.difference(b).size());
+        a.removeAll(b);
+        assertEquals(67 - 22, a.size());
+        a.unionWith(b);
+        assertEquals(67 + 65 - 22, a.size());
+        a.retainAll(b);
+        assertEquals(65, a.size());
+        NSet none = a.difference(b);
+        assertTrue(none.isEmpty());
+        assertFalse(a.isEmpty());
+    }
+
+}
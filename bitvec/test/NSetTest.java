@@ -598,6 +598,49 @@ public abstract class NSetTest {
             assertEquals(0, marks[i]);
     }
 
-	
-	
+	@Test
+	public void inPlaceAndNAry() {
+		reset();
+		NSet a = testSet;
+		reset();
+		NSet b = testSet;
+		reset();
+		NSet c = testSet;
+		boolean[] inA = new boolean[data.length], inB = new boolean[data.length],
+				inC = new boolean[data.length];
+		for (int i = 0; i < data.length; i++) {
+			inA[i] = i % 2 == 0;
+			inB[i] = i % 3 == 0;
+			inC[i] = i % 5 != 1;
+			if (inA[i]) a.add(i);
+			if (inB[i]) b.add(i);
+			if (inC[i]) c.add(i);
+		}
+		int both = 0;
+		for (int i = 0; i < data.length; i++)
+			if (inA[i] && inB[i])
+				both++;
+		assertEquals(both, a.intersectionSize(b));
+		NSet union = NSet.unionAll(a, b, c), intersection = NSet.intersectAll(a, b, c);
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(inA[i] || inB[i] || inC[i], union.contains(i));
+			assertEquals(inA[i] && inB[i] && inC[i], intersection.contains(i));
+		}
+		// the receiver is one of the sets
+		NSet aOrB = a.unionOf(b), aAndC = a.intersectionOf(c), justA = a.unionOf();
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(inA[i] || inB[i], aOrB.contains(i));
+			assertEquals(inA[i] && inC[i], aAndC.contains(i));
+			assertEquals(inA[i], justA.contains(i));
+		}
+		a.unionWith(b);
+		c.retainAll(b);
+		b.removeAll(a);
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(inA[i] || inB[i], a.contains(i));
+			assertEquals(inC[i] && inB[i], c.contains(i));
+		}
+		assertTrue(b.isEmpty());
+	}
+
 }
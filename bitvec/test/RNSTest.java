@@ -0,0 +1,211 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import adt.NSet;
+import impl.RoaringNSet;
+
+public class RNSTest extends NSetTest {
+
+    protected void reset() {
+        testSet = new RoaringNSet(data.length);
+    }
+
+    private static void assertSame(BitSet expected, NSet actual) {
+        assertEquals(expected.cardinality(), actual.size());
+        Iterator<Integer> it = actual.iterator();
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1))
+            assertEquals(Integer.valueOf(i), it.next());
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Fill a set with a mix of chunks: sparse ones (array
+     * containers), dense ones (bitmaps), and ones made of runs.
+     */
+    private static RoaringNSet fill(int range, BitSet expected, Random randy) {
+        RoaringNSet set = new RoaringNSet(range);
+        for (int chunk = 0; chunk <= (range - 1) >>> 16; chunk++) {
+            int base = chunk << 16, end = Math.min(range, base + 0x10000);
+            switch (randy.nextInt(4)) {
+            case 0:
+                break;
+            case 1:
+                for (int i = 0; i < 100; i++) {
+                    int x = base + randy.nextInt(end - base);
+                    set.add(x);
+                    expected.set(x);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < 10000; i++) {
+                    int x = base + randy.nextInt(end - base);
+                    set.add(x);
+                    expected.set(x);
+                }
+                break;
+            default:
+                for (int x = base; x < end; x += 1000)
+                    for (int y = x; y < Math.min(end, x + 1 + randy.nextInt(500)); y++) {
+                        set.add(y);
+                        expected.set(y);
+                    }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * The set operations, checked against java.util.BitSet, with
+     * and without run containers.
+     */
+    @Test
+    public void againstBitSet() {
+        Random randy = new Random(345);
+        for (int trial = 0; trial < 20; trial++) {
+            int range = 1 + randy.nextInt(10 << 16);
+            BitSet ea = new BitSet(), eb = new BitSet();
+            RoaringNSet a = fill(range, ea, randy), b = fill(range, eb, randy);
+            for (int i = 0; i < 2000; i++) {
+                int x = randy.nextInt(range);
+                a.remove(x);
+                ea.clear(x);
+                assertEquals(eb.get(x), b.contains(x));
+            }
+            if (trial % 2 == 0) {
+                a.runOptimize();
+                b.runOptimize();
+            }
+            assertSame(ea, a);
+            assertSame(eb, b);
+            BitSet expected = (BitSet) ea.clone();
+            expected.or(eb);
+            assertSame(expected, a.union(b));
+            expected = (BitSet) ea.clone();
+            expected.and(eb);
+            assertSame(expected, a.intersection(b));
+            expected = (BitSet) ea.clone();
+            expected.andNot(eb);
+            assertSame(expected, a.difference(b));
+            expected = (BitSet) ea.clone();
+            expected.flip(0, range);
+            NSet complement = a.complement();
+            assertSame(expected, complement);
+            // and changes to a set with run containers
+            int x = randy.nextInt(range);
+            complement.remove(x);
+            expected.clear(x);
+            assertSame(expected, complement);
+        }
+    }
+
+    /**
+     * The in-place and n-ary operations and intersectionSize,
+     * checked against java.util.BitSet.
+     */
+    @Test
+    public void bulkOperations() {
+        Random randy = new Random(345);
+        for (int trial = 0; trial < 10; trial++) {
+            int range = 1 + randy.nextInt(6 << 16);
+            BitSet[] expected = new BitSet[4];
+            RoaringNSet[] sets = new RoaringNSet[4];
+            for (int k = 0; k < sets.length; k++) {
+                expected[k] = new BitSet();
+                sets[k] = fill(range, expected[k], randy);
+                if (trial % 2 == 0)
+                    sets[k].runOptimize();
+            }
+            BitSet both = (BitSet) expected[0].clone();
+            both.and(expected[1]);
+            assertEquals(both.cardinality(), sets[0].intersectionSize(sets[1]));
+            BitSet all = new BitSet();
+            BitSet every = (BitSet) expected[0].clone();
+            for (BitSet e : expected) {
+                all.or(e);
+                every.and(e);
+            }
+            assertSame(all, NSet.unionAll(sets));
+            assertSame(every, NSet.intersectAll(sets));
+            assertSame(expected[2], NSet.unionAll(sets[2]));
+
+            sets[0].unionWith(sets[1]);
+            expected[0].or(expected[1]);
+            assertSame(expected[0], sets[0]);
+            sets[0].retainAll(sets[2]);
+            expected[0].and(expected[2]);
+            assertSame(expected[0], sets[0]);
+            sets[3].removeAll(sets[1]);
+            expected[3].andNot(expected[1]);
+            assertSame(expected[3], sets[3]);
+            // the arguments are left alone
+            assertSame(expected[1], sets[1]);
+            assertSame(expected[2], sets[2]);
+        }
+    }
+
+    @Test
+    public void sparseOverWholeRange() {
+        RoaringNSet set = new RoaringNSet(Integer.MAX_VALUE);
+        for (int x = Integer.MAX_VALUE - 1; x > 0; x /= 3)
+            set.add(x);
+        assertTrue(set.contains(Integer.MAX_VALUE - 1));
+        assertEquals(20, set.size());
+        assertTrue(set.serializedSize() < 20 * 10);
+        NSet complement = set.complement();
+        assertEquals(Integer.MAX_VALUE - 20, complement.size());
+        assertFalse(complement.contains(Integer.MAX_VALUE - 1));
+        assertTrue(complement.contains(Integer.MAX_VALUE - 2));
+    }
+
+    @Test
+    public void serialization() {
+        Random randy = new Random(12);
+        BitSet expected = new BitSet();
+        RoaringNSet set = fill(20 << 16, expected, randy);
+        set.runOptimize();
+        byte[] bytes = set.toByteArray();
+        assertEquals(set.serializedSize(), bytes.length);
+        RoaringNSet copy = RoaringNSet.fromByteArray(bytes);
+        assertEquals(set.range(), copy.range());
+        assertSame(expected, copy);
+        assertSame(new BitSet(), RoaringNSet.fromByteArray(new RoaringNSet(0).toByteArray()));
+    }
+
+    @Test
+    public void corruptBytes() {
+        RoaringNSet set = new RoaringNSet(1000);
+        set.add(5);
+        set.add(7);
+        byte[] bytes = set.toByteArray();
+        // values out of order
+        bytes[bytes.length - 1] = 3;
+        try {
+            RoaringNSet.fromByteArray(bytes);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {}
+        // truncated
+        try {
+            RoaringNSet.fromByteArray(java.util.Arrays.copyOf(bytes, bytes.length - 1));
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {}
+        // value beyond the range
+        set = new RoaringNSet(1000);
+        set.add(999);
+        bytes = set.toByteArray();
+        bytes[bytes.length - 2] = 0x10;
+        try {
+            RoaringNSet.fromByteArray(bytes);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {}
+    }
+
+}
@@ -0,0 +1,92 @@
+package exper;
+
+import impl.BTreeMap;
+import impl.ConcurrentBTreeMap;
+
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * ConcurrentExperiment
+ *
+ * Throughput of ConcurrentBTreeMap against a BTreeMap behind a
+ * single lock, for a read-mostly and a write-heavy mix of operations
+ * at increasing numbers of threads.
+ */
+public class ConcurrentExperiment {
+
+    private static final int RANGE = 1000000;
+
+    private static final int OPS_PER_THREAD = 500000;
+
+    /**
+     * A BTreeMap with every operation synchronized on one lock
+     */
+    private static class LockedBTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+        private final BTreeMap<K, V> map;
+        LockedBTreeMap(int minDegree) { map = new BTreeMap<K, V>(minDegree); }
+        public synchronized void put(K key, V val) { map.put(key, val); }
+        public synchronized V get(K key) { return map.get(key); }
+        public synchronized boolean containsKey(K key) { return map.containsKey(key); }
+        public synchronized void remove(K key) { map.remove(key); }
+        public java.util.Iterator<K> iterator() { return map.iterator(); }
+    }
+
+    /**
+     * Run the given number of threads against the map.
+     * @param readPercent The percentage of operations that are gets;
+     * the rest are split between puts and removes
+     * @return Operations per second
+     */
+    private static double runExperiment(final Map<Integer, Integer> map, int threads,
+            final int readPercent) throws InterruptedException {
+        Random randy = new Random(345);
+        for (int i = 0; i < RANGE / 2; i++)
+            map.put(randy.nextInt(RANGE), i);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random randy = new Random(seed);
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        int key = randy.nextInt(RANGE);
+                        int op = randy.nextInt(100);
+                        if (op < readPercent)
+                            map.get(key);
+                        else if (op % 2 == 0)
+                            map.put(key, i);
+                        else
+                            map.remove(key);
+                    }
+                }
+            });
+        }
+        long fore = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        long aft = System.nanoTime();
+        return (double) threads * OPS_PER_THREAD / ((aft - fore) / 1e9);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        int[] mixes = {95, 50};
+        for (int readPercent : mixes) {
+            System.out.println(readPercent + "% reads (ops/sec):");
+            System.out.println("threads\tlocked\t\tconcurrent");
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double locked = runExperiment(new LockedBTreeMap<Integer, Integer>(16),
+                        threads, readPercent);
+                double concurrent = runExperiment(new ConcurrentBTreeMap<Integer, Integer>(16),
+                        threads, readPercent);
+                System.out.printf("%d\t%.0f\t%.0f\n", threads, locked, concurrent);
+            }
+        }
+    }
+
+}
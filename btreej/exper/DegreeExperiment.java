@@ -0,0 +1,169 @@
+package exper;
+
+import impl.BTreeMap;
+import impl.LongBTreeMap;
+import impl.NodeSizing;
+import impl.PrefixBTreeMap;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * DegreeExperiment
+ *
+ * Times get, put, remove, and iteration on BTreeMaps over a sweep
+ * of minimum degrees, for several key types (Integer, Long, and
+ * String keys in a BTreeMap, String keys in a PrefixBTreeMap, and
+ * long keys in a LongBTreeMap), to
+ * show how node size affects each operation. Each configuration is
+ * run a few times first to let the JIT warm up, then timed several
+ * times and averaged. Results are nanoseconds per operation.
+ * After each table is the minimum degree NodeSizing picks for
+ * that kind of node.
+ */
+public class DegreeExperiment {
+
+    private static final int SIZE = 200000;
+
+    private static final int WARMUPS = 2, TRIALS = 5;
+
+    private static final int[] DEGREES = {2, 4, 8, 16, 32, 64, 128, 256};
+
+    /**
+     * Function object for making keys of one type and maps of
+     * a given degree to hold them
+     */
+    private interface KeyType<K> {
+        String name();
+        int defaultDegree();
+        K key(long x);
+        Map<K, Integer> makeMap(int minDegree);
+    }
+
+    /**
+     * The times, in nanoseconds per operation, of one trial
+     */
+    private static class Times {
+        double put, get, iterate, remove;
+        void add(Times other) {
+            put += other.put;
+            get += other.get;
+            iterate += other.iterate;
+            remove += other.remove;
+        }
+    }
+
+    private static <K> Times runTrial(KeyType<K> type, int minDegree, long[] order) {
+        @SuppressWarnings("unchecked")
+        K[] keys = (K[]) new Object[order.length];
+        for (int i = 0; i < order.length; i++)
+            keys[i] = type.key(order[i]);
+        Map<K, Integer> map = type.makeMap(minDegree);
+        Integer val = 345;
+        Times times = new Times();
+
+        long fore = System.nanoTime();
+        for (int i = 0; i < keys.length; i++)
+            map.put(keys[i], val);
+        times.put = (System.nanoTime() - fore) / (double) keys.length;
+
+        int found = 0;
+        fore = System.nanoTime();
+        for (int i = keys.length - 1; i >= 0; i--)
+            if (map.get(keys[i]) != null)
+                found++;
+        times.get = (System.nanoTime() - fore) / (double) keys.length;
+
+        int count = 0;
+        fore = System.nanoTime();
+        for (Iterator<K> it = map.iterator(); it.hasNext(); it.next())
+            count++;
+        times.iterate = (System.nanoTime() - fore) / (double) keys.length;
+
+        fore = System.nanoTime();
+        for (int i = 0; i < keys.length; i++)
+            map.remove(keys[i]);
+        times.remove = (System.nanoTime() - fore) / (double) keys.length;
+
+        if (found != keys.length || count != keys.length)
+            throw new AssertionError("Lost keys");
+        return times;
+    }
+
+    private static <K> void runSweep(KeyType<K> type) {
+        Random randy = new Random(345);
+        long[] order = new long[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            order[i] = i * 2654435761L;
+        for (int i = SIZE - 1; i > 0; i--) {
+            int j = randy.nextInt(i + 1);
+            long temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        System.out.println(type.name() + " keys (ns/op):");
+        System.out.println("degree\tput\tget\titerate\tremove");
+        for (int minDegree : DEGREES) {
+            for (int i = 0; i < WARMUPS; i++)
+                runTrial(type, minDegree, order);
+            Times total = new Times();
+            for (int i = 0; i < TRIALS; i++)
+                total.add(runTrial(type, minDegree, order));
+            System.out.printf("%d\t%.1f\t%.1f\t%.1f\t%.1f\n", minDegree,
+                    total.put / TRIALS, total.get / TRIALS,
+                    total.iterate / TRIALS, total.remove / TRIALS);
+        }
+        System.out.println("default degree: " + type.defaultDegree() + "\n");
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) {
+        KeyType<?>[] types = {
+            new KeyType<Integer>() {
+                public String name() { return "Integer"; }
+                public int defaultDegree() { return NodeSizing.referenceKeysMinDegree(); }
+                public Integer key(long x) { return (int) x; }
+                public Map<Integer, Integer> makeMap(int minDegree) {
+                    return new BTreeMap<Integer, Integer>(minDegree);
+                }
+            },
+            new KeyType<Long>() {
+                public String name() { return "Long"; }
+                public int defaultDegree() { return NodeSizing.referenceKeysMinDegree(); }
+                public Long key(long x) { return x; }
+                public Map<Long, Integer> makeMap(int minDegree) {
+                    return new BTreeMap<Long, Integer>(minDegree);
+                }
+            },
+            new KeyType<String>() {
+                public String name() { return "String"; }
+                public int defaultDegree() { return NodeSizing.referenceKeysMinDegree(); }
+                public String key(long x) { return "http://example.com/item/" + x; }
+                public Map<String, Integer> makeMap(int minDegree) {
+                    return new BTreeMap<String, Integer>(minDegree);
+                }
+            },
+            new KeyType<String>() {
+                public String name() { return "String (PrefixBTreeMap)"; }
+                public int defaultDegree() { return NodeSizing.referenceKeysMinDegree(); }
+                public String key(long x) { return "http://example.com/item/" + x; }
+                public Map<String, Integer> makeMap(int minDegree) {
+                    return new PrefixBTreeMap<Integer>(minDegree);
+                }
+            },
+            new KeyType<Long>() {
+                public String name() { return "long (LongBTreeMap)"; }
+                public int defaultDegree() { return NodeSizing.inlineKeysMinDegree(8); }
+                public Long key(long x) { return x; }
+                public Map<Long, Integer> makeMap(int minDegree) {
+                    return new LongBTreeMap<Integer>(minDegree);
+                }
+            },
+        };
+        for (KeyType<?> type : types)
+            runSweep((KeyType<Object>) type);
+    }
+
+}
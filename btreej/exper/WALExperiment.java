@@ -0,0 +1,75 @@
+package exper;
+
+import impl.LoggedBTreeMap;
+import impl.PageCodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * WALExperiment
+ *
+ * Throughput of durable puts into a LoggedBTreeMap, forcing the
+ * log once per operation versus with group commit, at increasing
+ * numbers of threads. Also reports how many operations shared each
+ * force of the log.
+ */
+public class WALExperiment {
+
+    private static final int OPS = 4000;
+
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * Run the given number of threads, each doing its share of
+     * OPS puts.
+     * @return Operations per second
+     */
+    private static double runExperiment(boolean groupCommit, int threads)
+            throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("walexper");
+        Path treePath = dir.resolve("tree"),
+                logPath = dir.resolve("log");
+        final LoggedBTreeMap<Integer, Integer> map = new LoggedBTreeMap<Integer, Integer>(
+                treePath, logPath, 16, PageCodecs.forIntegers(), PageCodecs.forIntegers(),
+                256, groupCommit, CHECKPOINT_INTERVAL);
+        final int perThread = OPS / threads;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random randy = new Random(seed);
+                    for (int i = 0; i < perThread; i++)
+                        map.put(randy.nextInt(1000000), i);
+                }
+            });
+        }
+        long fore = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        long aft = System.nanoTime();
+        long forces = map.logForces();
+        map.close();
+        Files.delete(treePath);
+        Files.delete(logPath);
+        Files.delete(dir);
+        System.out.printf("%s\t%d\t%.1f ops/force\t",
+                groupCommit ? "group" : "per-op", threads,
+                (double) perThread * threads / forces);
+        return (double) perThread * threads / ((aft - fore) / 1e9);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.println("commit\tthreads\tbatching\t\tops/sec");
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            System.out.printf("%.0f\n", runExperiment(false, threads));
+            System.out.printf("%.0f\n", runExperiment(true, threads));
+        }
+    }
+
+}
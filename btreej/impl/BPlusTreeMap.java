@@ -0,0 +1,609 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import adt.Map;
+
+/**
+ * BPlusTreeMap
+ *
+ * A B+-tree variant of BTreeMap. All the associations live in
+ * the leaves, and the leaves are chained left to right, so an
+ * in-order traversal (or a range scan) walks along the chain
+ * instead of climbing back up the tree between leaves. Internal
+ * nodes hold only separator keys: every key in children[i] is less
+ * than keys[i], and every key in children[i+1] is greater than or
+ * equal to it.
+ *
+ * As in BTreeMap, full nodes are split on the way down during
+ * insertion, and nodes with the minimum number of keys are
+ * fortified on the way down during deletion, so neither
+ * operation needs to come back up the tree.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+
+public class BPlusTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+
+    /**
+     * Every node (except the root) has at least minDegree - 1
+     * and at most 2 * minDegree - 1 keys; internal nodes have
+     * one more child than keys.
+     */
+    private final int minDegree;
+
+    // --------- Classes for nodes in the tree --------------
+
+    /**
+     * Things common between leaves and internals
+     */
+    abstract class BNode {
+        /**
+         * Array of keys, partially filled
+         */
+        K[] keys;
+
+        /**
+         * The number of keys currently stored
+         */
+        int n;
+
+        @SuppressWarnings("unchecked")
+        BNode() {
+            keys = (K[]) new Comparable[2 * minDegree - 1];
+            n = 0;
+        }
+
+        boolean isFull() { return n == keys.length; }
+
+        /**
+         * Find the index of the smallest key greater than
+         * or equal to the given key.
+         * @param key
+         * @return An index in [0, n]
+         */
+        int lowerBound(K key) {
+            int start = 0,
+                stop = n;
+            // Invariant: keys in [0, start) are less than the key,
+            // keys in [stop, n) are greater than or equal to it
+            while (start < stop) {
+                int mid = (start + stop) / 2;
+                if (keys[mid].compareTo(key) < 0)
+                    start = mid + 1;
+                else
+                    stop = mid;
+            }
+            return start;
+        }
+
+        /**
+         * Find the index of the smallest key strictly greater
+         * than the given key.
+         * @param key
+         * @return An index in [0, n]
+         */
+        int upperBound(K key) {
+            int start = 0,
+                stop = n;
+            // Invariant: keys in [0, start) are less than or equal
+            // to the key, keys in [stop, n) are greater than it
+            while (start < stop) {
+                int mid = (start + stop) / 2;
+                if (keys[mid].compareTo(key) <= 0)
+                    start = mid + 1;
+                else
+                    stop = mid;
+            }
+            return start;
+        }
+
+        /**
+         * Find the leaf where the given key is or would be.
+         */
+        abstract Leaf findLeaf(K key);
+
+        /**
+         * Find the leftmost leaf in the subtree rooted here.
+         */
+        abstract Leaf leftmostLeaf();
+
+        /**
+         * Split this full node into two.
+         * @return The key that separates this node from its new
+         * sibling, and the new sibling
+         */
+        abstract Split split();
+
+        /**
+         * Insert the key and value into the subtree rooted here.
+         * PRECONDITION: This node is not full.
+         */
+        abstract void insertNonFull(K key, V val);
+
+        /**
+         * Delete the key from the subtree rooted here, if it's there.
+         * PRECONDITION: This node is the root or has at least
+         * minDegree keys.
+         */
+        abstract void delete(K key);
+    }
+
+    /**
+     * Leaves hold the associations and a link to the next leaf.
+     */
+    class Leaf extends BNode {
+
+        /**
+         * Array of vals, parallel to keys
+         */
+        V[] vals;
+
+        /**
+         * The leaf to the right of this one, null if this
+         * is the last
+         */
+        Leaf next;
+
+        @SuppressWarnings("unchecked")
+        Leaf() {
+            vals = (V[]) new Object[2 * minDegree - 1];
+        }
+
+        Leaf findLeaf(K key) {
+            return this;
+        }
+
+        Leaf leftmostLeaf() {
+            return this;
+        }
+
+        /**
+         * Move the upper half of the associations to a new
+         * leaf, which is linked in after this one. The first key
+         * of the new leaf is copied up as the separator.
+         */
+        Split split() {
+            assert isFull();
+            Leaf sibling = new Leaf();
+            sibling.n = minDegree;
+            for (int j = 0; j < sibling.n; j++) {
+                sibling.keys[j] = keys[j + minDegree - 1];
+                sibling.vals[j] = vals[j + minDegree - 1];
+                keys[j + minDegree - 1] = null;
+                vals[j + minDegree - 1] = null;
+            }
+            n = minDegree - 1;
+            sibling.next = next;
+            next = sibling;
+            return new Split(sibling.keys[0], sibling);
+        }
+
+        void insertNonFull(K key, V val) {
+            int pos = lowerBound(key);
+            if (pos < n && keys[pos].compareTo(key) == 0) {
+                vals[pos] = val;
+                return;
+            }
+            assert ! isFull();
+            insertAt(pos, key, val);
+        }
+
+        void delete(K key) {
+            int pos = lowerBound(key);
+            if (pos < n && keys[pos].compareTo(key) == 0)
+                removeAt(pos);
+        }
+
+        void insertAt(int pos, K key, V val) {
+            for (int i = n; i > pos; i--) {
+                keys[i] = keys[i-1];
+                vals[i] = vals[i-1];
+            }
+            keys[pos] = key;
+            vals[pos] = val;
+            n++;
+        }
+
+        void removeAt(int pos) {
+            for (int i = pos; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                vals[i] = vals[i+1];
+            }
+            n--;
+            keys[n] = null;
+            vals[n] = null;
+        }
+    }
+
+    /**
+     * Internals hold separator keys and children.
+     */
+    class Internal extends BNode {
+
+        /**
+         * Array for children, partially filled (one more
+         * than keys).
+         */
+        BNode[] children;
+
+        @SuppressWarnings("unchecked")
+        Internal() {
+            children = new BPlusTreeMap.BNode[2 * minDegree];
+        }
+
+        Leaf findLeaf(K key) {
+            return children[upperBound(key)].findLeaf(key);
+        }
+
+        Leaf leftmostLeaf() {
+            return children[0].leftmostLeaf();
+        }
+
+        /**
+         * Move the upper half of the keys and children to a new
+         * internal node. The middle key moves up as the separator.
+         */
+        Split split() {
+            assert isFull();
+            Internal sibling = new Internal();
+            sibling.n = minDegree - 1;
+            for (int j = 0; j < sibling.n; j++) {
+                sibling.keys[j] = keys[j + minDegree];
+                keys[j + minDegree] = null;
+            }
+            for (int j = 0; j <= sibling.n; j++) {
+                sibling.children[j] = children[j + minDegree];
+                children[j + minDegree] = null;
+            }
+            K separator = keys[minDegree - 1];
+            keys[minDegree - 1] = null;
+            n = minDegree - 1;
+            return new Split(separator, sibling);
+        }
+
+        /**
+         * Split the child at the given position, adding its new
+         * sibling and the separator to this node.
+         * PRECONDITION: This node is not full but the child is
+         */
+        void splitChild(int pos) {
+            assert ! isFull() && children[pos].isFull();
+            Split split = children[pos].split();
+            for (int j = n; j > pos; j--) {
+                keys[j] = keys[j-1];
+                children[j+1] = children[j];
+            }
+            keys[pos] = split.separator;
+            children[pos+1] = split.sibling;
+            n++;
+        }
+
+        void insertNonFull(K key, V val) {
+            assert ! isFull();
+            int i = upperBound(key);
+            if (children[i].isFull()) {
+                splitChild(i);
+                if (key.compareTo(keys[i]) >= 0)
+                    i++;
+            }
+            children[i].insertNonFull(key, val);
+        }
+
+        void delete(K key) {
+            children[fortifyChild(upperBound(key))].delete(key);
+        }
+
+        /**
+         * Make sure the indicated child has at least minDegree
+         * keys before we descend into it, borrowing from a sibling
+         * or merging with one.
+         * @param pos The position of the child we want to descend into
+         * @return The position of the child to descend into now
+         */
+        int fortifyChild(int pos) {
+            BNode child = children[pos];
+            if (child.n >= minDegree)
+                return pos;
+            if (pos > 0 && children[pos-1].n >= minDegree) {
+                borrowFromLeft(pos);
+                return pos;
+            }
+            if (pos < n && children[pos+1].n >= minDegree) {
+                borrowFromRight(pos);
+                return pos;
+            }
+            if (pos < n) {
+                mergeChildren(pos);
+                return pos;
+            }
+            assert pos > 0;
+            mergeChildren(pos-1);
+            return pos-1;
+        }
+
+        /**
+         * Move the last association (or key and child) of the
+         * child at pos-1 to the front of the child at pos.
+         */
+        void borrowFromLeft(int pos) {
+            if (children[pos] instanceof BPlusTreeMap.Leaf) {
+                Leaf left = (Leaf) children[pos-1],
+                        child = (Leaf) children[pos];
+                child.insertAt(0, left.keys[left.n-1], left.vals[left.n-1]);
+                left.removeAt(left.n-1);
+                keys[pos-1] = child.keys[0];
+            }
+            else {
+                Internal left = (Internal) children[pos-1],
+                        child = (Internal) children[pos];
+                child.children[child.n+1] = child.children[child.n];
+                for (int i = child.n; i > 0; i--) {
+                    child.keys[i] = child.keys[i-1];
+                    child.children[i] = child.children[i-1];
+                }
+                child.keys[0] = keys[pos-1];
+                child.children[0] = left.children[left.n];
+                child.n++;
+                keys[pos-1] = left.keys[left.n-1];
+                left.keys[left.n-1] = null;
+                left.children[left.n] = null;
+                left.n--;
+            }
+        }
+
+        /**
+         * Move the first association (or key and child) of the
+         * child at pos+1 to the end of the child at pos.
+         */
+        void borrowFromRight(int pos) {
+            if (children[pos] instanceof BPlusTreeMap.Leaf) {
+                Leaf right = (Leaf) children[pos+1],
+                        child = (Leaf) children[pos];
+                child.insertAt(child.n, right.keys[0], right.vals[0]);
+                right.removeAt(0);
+                keys[pos] = right.keys[0];
+            }
+            else {
+                Internal right = (Internal) children[pos+1],
+                        child = (Internal) children[pos];
+                child.keys[child.n] = keys[pos];
+                child.children[child.n+1] = right.children[0];
+                child.n++;
+                keys[pos] = right.keys[0];
+                for (int i = 0; i < right.n - 1; i++) {
+                    right.keys[i] = right.keys[i+1];
+                    right.children[i] = right.children[i+1];
+                }
+                right.children[right.n-1] = right.children[right.n];
+                right.children[right.n] = null;
+                right.n--;
+                right.keys[right.n] = null;
+            }
+        }
+
+        /**
+         * Merge the child at pos+1 into the child at pos, and
+         * remove the separator between them from this node.
+         */
+        void mergeChildren(int pos) {
+            if (children[pos] instanceof BPlusTreeMap.Leaf) {
+                Leaf left = (Leaf) children[pos],
+                        right = (Leaf) children[pos+1];
+                for (int i = 0; i < right.n; i++) {
+                    left.keys[left.n + i] = right.keys[i];
+                    left.vals[left.n + i] = right.vals[i];
+                }
+                left.n += right.n;
+                left.next = right.next;
+            }
+            else {
+                Internal left = (Internal) children[pos],
+                        right = (Internal) children[pos+1];
+                left.keys[left.n] = keys[pos];
+                for (int i = 0; i < right.n; i++) {
+                    left.keys[left.n + 1 + i] = right.keys[i];
+                    left.children[left.n + 1 + i] = right.children[i];
+                }
+                left.children[left.n + 1 + right.n] = right.children[right.n];
+                left.n += right.n + 1;
+            }
+            for (int i = pos; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                children[i+1] = children[i+2];
+            }
+            n--;
+            keys[n] = null;
+            children[n+1] = null;
+        }
+    }
+
+    /**
+     * The result of splitting a node: the new right sibling
+     * and the key that goes up to the parent to separate them.
+     */
+    private class Split {
+        K separator;
+        BNode sibling;
+        Split(K separator, BNode sibling) {
+            this.separator = separator;
+            this.sibling = sibling;
+        }
+    }
+
+    // ---- The B+-Tree class itself begins here ----
+
+    /**
+     * The root of the tree, which may have fewer than the
+     * minimum number of keys.
+     */
+    BNode root;
+
+    /**
+     * To initialize a B+-tree, specify a minimum degree.
+     * The root is initially an empty leaf.
+     * @param minDegree
+     */
+    public BPlusTreeMap(int minDegree) {
+        if (minDegree < 2)
+            throw new IllegalArgumentException("Minimum degree: " + minDegree);
+        this.minDegree = minDegree;
+        root = new Leaf();
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        if (root.isFull()) {
+            Internal newRoot = new Internal();
+            newRoot.children[0] = root;
+            root = newRoot;
+            newRoot.splitChild(0);
+        }
+        root.insertNonFull(key, val);
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        Leaf leaf = root.findLeaf(key);
+        int pos = leaf.lowerBound(key);
+        if (pos < leaf.n && leaf.keys[pos].compareTo(key) == 0)
+            return leaf.vals[pos];
+        else
+            return null;
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        Leaf leaf = root.findLeaf(key);
+        int pos = leaf.lowerBound(key);
+        return pos < leaf.n && leaf.keys[pos].compareTo(key) == 0;
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        root.delete(key);
+        // If the root lost its last key to a merge,
+        // its only child becomes the new root.
+        if (root.n == 0 && root instanceof BPlusTreeMap.Internal)
+            root = ((Internal) root).children[0];
+    }
+
+    /**
+     * Iterate over the keys in this map in order, by walking
+     * the chain of leaves.
+     * @return An iterator for the keys in this map.
+     */
+    public Iterator<K> iterator() {
+        return new LeafChainIterator(root.leftmostLeaf(), 0, null);
+    }
+
+    /**
+     * Iterate over the keys in the range [from, to) in order.
+     * @param from The least key to include
+     * @param to The key to stop before
+     * @return An iterator for the keys in range
+     */
+    public Iterator<K> range(K from, K to) {
+        Leaf leaf = root.findLeaf(from);
+        return new LeafChainIterator(leaf, leaf.lowerBound(from), to);
+    }
+
+    /**
+     * Iterate over the keys greater than or equal to the
+     * given key, in order.
+     * @param from The least key to include
+     * @return An iterator for the keys in range
+     */
+    public Iterator<K> tailMap(K from) {
+        Leaf leaf = root.findLeaf(from);
+        return new LeafChainIterator(leaf, leaf.lowerBound(from), null);
+    }
+
+    /**
+     * Iterate over the keys less than the given key, in order.
+     * @param to The key to stop before
+     * @return An iterator for the keys in range
+     */
+    public Iterator<K> headMap(K to) {
+        return new LeafChainIterator(root.leftmostLeaf(), 0, to);
+    }
+
+    /**
+     * Iterator that walks along the chain of leaves from a given
+     * starting place, stopping at an (exclusive) upper bound,
+     * if any.
+     */
+    private class LeafChainIterator implements Iterator<K> {
+
+        /**
+         * The leaf containing the next key, null if done
+         */
+        Leaf leaf;
+
+        /**
+         * The position of the next key in that leaf
+         */
+        int pos;
+
+        /**
+         * The key to stop before, null if none
+         */
+        final K to;
+
+        // Invariant: either leaf is null, or pos < leaf.n and
+        // the key at pos is the next to return (if it is in range)
+
+        LeafChainIterator(Leaf leaf, int pos, K to) {
+            this.leaf = leaf;
+            this.pos = pos;
+            this.to = to;
+            skipExhausted();
+        }
+
+        /**
+         * Move along the chain past leaves with nothing left to return.
+         */
+        private void skipExhausted() {
+            while (leaf != null && pos >= leaf.n) {
+                leaf = leaf.next;
+                pos = 0;
+            }
+        }
+
+        public boolean hasNext() {
+            return leaf != null
+                    && (to == null || leaf.keys[pos].compareTo(to) < 0);
+        }
+
+        public K next() {
+            if (! hasNext())
+                throw new NoSuchElementException();
+            K toReturn = leaf.keys[pos];
+            pos++;
+            skipExhausted();
+            return toReturn;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
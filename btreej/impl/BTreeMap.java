@@ -1,6 +1,8 @@
 package impl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Stack;
 
 import adt.Map;
@@ -52,11 +54,29 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          */
         int n;
 
+        /**
+         * The generation this node was made in. Nodes from
+         * earlier generations may be shared with snapshots, so
+         * they must be copied before they are changed.
+         */
+        final int gen;
+
         @SuppressWarnings("unchecked")
         BNode() {
             keys = (K[]) new Comparable[2 * minDegree - 1];
             vals = (V[]) new Object[2 * minDegree - 1];
             n = 0;
+            gen = generation;
+        }
+
+        /**
+         * Copy the keys and vals of this node into a new node of
+         * the current generation.
+         */
+        void copyInto(BNode copy) {
+            System.arraycopy(keys, 0, copy.keys, 0, n);
+            System.arraycopy(vals, 0, copy.vals, 0, n);
+            copy.n = n;
         }
 
         boolean isFull() { return n == keys.length;  }
@@ -152,6 +172,13 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          */
         abstract BNode makeSibling();
 
+        /**
+         * Make a copy of this node in the current generation
+         * (sharing its children, if any), for path copying.
+         * @return The copy
+         */
+        abstract BNode copy();
+
         /**
          * Insert the key and value into the subtree rooted here.
          * PRECONDITION: This node is not full.
@@ -160,6 +187,32 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          */
         abstract void insertNonFull(K key, V val);
         
+        // The next two are for the batched operations
+
+        /**
+         * Look up a run of sorted keys in the subtree rooted here,
+         * storing their values (or null) in the parallel positions
+         * of results.
+         * @param sortedKeys The keys, in non-decreasing order
+         * @param results Where to put the values
+         * @param lo The first position of the run
+         * @param hi One past the last position of the run
+         */
+        abstract void searchRun(K[] sortedKeys, V[] results, int lo, int hi);
+
+        /**
+         * Insert as much of a run of sorted associations as possible
+         * into the subtree rooted here, stopping early if this node
+         * fills up and would need to be split by its parent.
+         * PRECONDITION: This node is not full.
+         * @param sortedKeys The keys, in non-decreasing order
+         * @param vals The values, parallel to the keys
+         * @param lo The first position of the run
+         * @param hi One past the last position of the run
+         * @return The position of the first association not inserted
+         */
+        abstract int insertRun(K[] sortedKeys, V[] vals, int lo, int hi);
+
         // The next two are for use in the iterator
 
         /**
@@ -291,6 +344,12 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             return sibling;
         }
 
+        BNode copy() {
+            Leaf copy = new Leaf();
+            copyInto(copy);
+            return copy;
+        }
+
 
         /**
          * Insert the key and value into the subtree rooted here.
@@ -316,6 +375,42 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             n++;
         }
 
+        /**
+         * Look up a run of sorted keys. Since the keys here are
+         * sorted too, we can march through both together.
+         */
+        void searchRun(K[] sortedKeys, V[] results, int lo, int hi) {
+            int pos = 0;
+            for (int i = lo; i < hi; i++) {
+                while (pos < n && keys[pos].compareTo(sortedKeys[i]) < 0)
+                    pos++;
+                if (pos < n && keys[pos].compareTo(sortedKeys[i]) == 0)
+                    results[i] = vals[pos];
+                else
+                    results[i] = null;
+            }
+        }
+
+        /**
+         * Insert associations from the run until it's done or this
+         * leaf is full (replacing values for keys already here
+         * even when full).
+         */
+        int insertRun(K[] sortedKeys, V[] vals, int lo, int hi) {
+            int i = lo;
+            while (i < hi) {
+                int pos = binarySearchKeys(sortedKeys[i]);
+                if (pos < n && keys[pos].compareTo(sortedKeys[i]) == 0)
+                    this.vals[pos] = vals[i];
+                else if (isFull())
+                    break;
+                else
+                    insertNonFull(sortedKeys[i], vals[i]);
+                i++;
+            }
+            return i;
+        }
+
         /**
          * Is the given index a valid index into the children array?
          * Since this is a leaf (no children), the answer is always
@@ -350,9 +445,18 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         void delete(K key) {
             assert this == root || n >= minDegree;
 
-            // TODO
-            // 8 LOC
-            
+            int pos = binarySearchKeys(key);
+            if (pos < n && keys[pos].compareTo(key) == 0) {
+                // Invariant: positions [pos, i) hold what
+                // was in [pos+1, i+1)
+                for (int i = pos; i < n - 1; i++) {
+                    keys[i] = keys[i+1];
+                    vals[i] = vals[i+1];
+                }
+                n--;
+                keys[n] = null;
+                vals[n] = null;
+            }
         }
 
 
@@ -364,11 +468,11 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          * @return The association that is the predecessor
          */
        BTreeMap<K, V>.Association deletePred() {
-
-           // TODO (recommended)
-           // 3 LOC
-           
-           return null;
+           n--;
+           Association toReturn = new Association(keys[n], vals[n]);
+           keys[n] = null;
+           vals[n] = null;
+           return toReturn;
        }
 
        /**
@@ -379,11 +483,15 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         * @return The association that is the successor
         */
         BTreeMap<K, V>.Association deleteSucc() {
-
-            // TODO (recommended)
-            // 7 LOC
-
-            return null;
+            Association toReturn = new Association(keys[0], vals[0]);
+            for (int i = 0; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                vals[i] = vals[i+1];
+            }
+            n--;
+            keys[n] = null;
+            vals[n] = null;
+            return toReturn;
         }
 
         /**
@@ -398,10 +506,16 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             assert n == minDegree - 1 && sibling.n == minDegree - 1
                     && sibling instanceof BTreeMap.Leaf;
 
-            // TODO (recommended)
-            // 8 LOC
-            
-            
+            keys[n] = key;
+            vals[n] = val;
+            n++;
+            // Invariant: keys and values from positions [0, i)
+            // in the sibling have been copied to positions [n, i+n) here.
+            for (int i = 0; i < sibling.n; i++) {
+                keys[i + n] = sibling.keys[i];
+                vals[i + n] = sibling.vals[i];
+            }
+            n += sibling.n;
         }
 
         /**
@@ -419,10 +533,20 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             assert n == minDegree - 1 && sibling.n >= minDegree
                     && sibling instanceof BTreeMap.Leaf;
 
-            // TODO (recommended)
-            // 10 LOC
-
-            return null;
+            keys[n] = key;
+            vals[n] = val;
+            n++;
+            Association toReturn = new Association(sibling.keys[0], sibling.vals[0]);
+            // Invariant: keys and values from positions [1, i)
+            // in the sibling have been copied to positions [0, i-1).
+            for (int i = 1; i < sibling.n; i++) {
+                sibling.keys[i-1] = sibling.keys[i];
+                sibling.vals[i-1] = sibling.vals[i];
+            }
+            sibling.n--;
+            sibling.keys[sibling.n] = null;
+            sibling.vals[sibling.n] = null;
+            return toReturn;
         }
 
         /**
@@ -440,11 +564,19 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             assert n == minDegree - 1 && sibling.n >= minDegree
                     && sibling instanceof BTreeMap.Leaf;
 
-            
-            // TODO (recommended)
-            // 10 LOC
-
-            return null;
+            for (int i = n; i > 0; i--) {
+                keys[i] = keys[i-1];
+                vals[i] = vals[i-1];
+            }
+            keys[0] = key;
+            vals[0] = val;
+            n++;
+            sibling.n--;
+            Association toReturn = new Association(sibling.keys[sibling.n],
+                    sibling.vals[sibling.n]);
+            sibling.keys[sibling.n] = null;
+            sibling.vals[sibling.n] = null;
+            return toReturn;
         }
     }
 
@@ -500,6 +632,24 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             return sibling;
         }
 
+        BTreeMap<K, V>.BNode copy() {
+            Internal copy = new Internal();
+            copyInto(copy);
+            System.arraycopy(children, 0, copy.children, 0, n + 1);
+            return copy;
+        }
+
+        /**
+         * Make sure the child at the given position belongs to the
+         * current generation (copying it if need be) so that it can
+         * be changed.
+         * @return The child
+         */
+        BNode writableChild(int pos) {
+            children[pos] = writable(children[pos]);
+            return children[pos];
+        }
+
         /**
          * Insert the key and value into the subtree rooted here.
          * PRECONDITION: This node is not full.
@@ -515,7 +665,7 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         	assert !isFull();
         	
             int i = binarySearchKeys(key);
-            if (children[i].isFull()) {
+            if (writableChild(i).isFull()) {
                 splitChild(i);
                 if (key.compareTo(keys[i])>0)
                     i++;
@@ -534,10 +684,9 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          * @param pos The position of the child to split.
          */
         void splitChild(int pos) {
-            assert ! isFull();
+            assert ! isFull() && children[pos].isFull();
             BNode child = children[pos],    // old child
                     sibling = child.split();   // new child
-            assert child.isFull();
             // Move the children over to make room
             for (int j = n; j >= pos+1; j--)
                 children[j+1] = children[j];
@@ -545,8 +694,8 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             children[pos+1] = sibling;
             // Move the corresponding keys and values
             for (int j = n-1; j >= pos; j--) {
-                keys[pos+1] = keys[pos];
-                vals[pos+1] = vals[pos];
+                keys[j+1] = keys[j];
+                vals[j+1] = vals[j];
             }
             // bring up the last pair in the origina
             // child to differentiate it from the new sibling
@@ -555,6 +704,69 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             n++;
         }
 
+        /**
+         * Find where the run of keys beginning at lo stops going
+         * to the child at pos, that is, the first key not less
+         * than the key at pos.
+         */
+        private int runEnd(K[] sortedKeys, int lo, int hi, int pos) {
+            int j = lo + 1;
+            if (pos < n)
+                while (j < hi && sortedKeys[j].compareTo(keys[pos]) < 0)
+                    j++;
+            else
+                j = hi;
+            return j;
+        }
+
+        /**
+         * Look up a run of sorted keys. Keys found here are
+         * answered here; the others are split into sub-runs at
+         * the boundaries between children, and each sub-run goes
+         * down to its child together.
+         */
+        void searchRun(K[] sortedKeys, V[] results, int lo, int hi) {
+            int i = lo;
+            while (i < hi) {
+                int pos = binarySearchKeys(sortedKeys[i]);
+                if (pos < n && keys[pos].compareTo(sortedKeys[i]) == 0) {
+                    results[i] = vals[pos];
+                    i++;
+                }
+                else {
+                    int j = runEnd(sortedKeys, i, hi, pos);
+                    children[pos].searchRun(sortedKeys, results, i, j);
+                    i = j;
+                }
+            }
+        }
+
+        /**
+         * Insert associations from the run, sending each sub-run
+         * down to its child together. A full child is split first;
+         * if this node is full itself and can't take the key from
+         * such a split, stop and let the parent split this node.
+         */
+        int insertRun(K[] sortedKeys, V[] vals, int lo, int hi) {
+            int i = lo;
+            while (i < hi) {
+                int pos = binarySearchKeys(sortedKeys[i]);
+                if (pos < n && keys[pos].compareTo(sortedKeys[i]) == 0) {
+                    this.vals[pos] = vals[i];
+                    i++;
+                }
+                else if (writableChild(pos).isFull()) {
+                    if (isFull())
+                        break;
+                    splitChild(pos);
+                }
+                else
+                    i = children[pos].insertRun(sortedKeys, vals, i,
+                            runEnd(sortedKeys, i, hi, pos));
+            }
+            return i;
+        }
+
         /**
          * Is the given index a valid index into the children array?
          * Check to see if it is in range.
@@ -594,32 +806,99 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             // either is or would be
             int pos = binarySearchKeys(key);
 
-            // TODO (biggie)
-
-            // 60 LOC
-            
             // Based on the cases presented in CLRS pg 500-501 
             
             // 1. Is the key here at this node?
+            if (pos < n && keys[pos].compareTo(key) == 0) {
                 // 1a. Does the child before the key have
                 // a key/val to spare?
+                if (children[pos].n >= minDegree) {
+                    Association pred = writableChild(pos).deletePred();
+                    keys[pos] = pred.key;
+                    vals[pos] = pred.val;
+                }
                 // 1b. If not, does the child after the key have
                 // a key/val to spare?
+                else if (children[pos+1].n >= minDegree) {
+                    Association succ = writableChild(pos+1).deleteSucc();
+                    keys[pos] = succ.key;
+                    vals[pos] = succ.val;
+                }
                 // 1c. Ok, neither child on either side of the key
                 // have a key/val to spare.
+                else {
+                    writableChild(pos).merge(children[pos+1], keys[pos], vals[pos]);
+                    removeAt(pos);
+                    children[pos].delete(key);
+                }
+            }
             // 2. Ok, if the key is anywhere in the tree, 
             // it's in the indicated child
-                // 2a. Does that child have at least minDegree keys?
-                // 2b. Ok, that child does not have minDegree keys
-                    // 2bi. Does the sibling to the left have at least minDegree keys?
-                    // 2bii. If not, does the sibling to the right have at least minDegree keys?
-                    // 2biii. If not, is this child NOT the last child?
-                    // 2biv. Ok, neither sibling can spare a key/val and this 
-                    // is the last child. (Note it can't be the zeroth child.)
-                        //assert pos > 0;
-                    // In ALL 2b cases, delete the key from the subtree
-                    // rooted in the indicated child
-            
+            else 
+                children[fortifyChild(pos)].delete(key);
+        }
+
+        /**
+         * Make sure the indicated child has at least minDegree
+         * keys (and so can spare one) before we descend into it,
+         * borrowing from or merging with a sibling if necessary.
+         * (This is case 2 of CLRS pg 501.)
+         * @param pos The position of the child we want to descend into
+         * @return The position of the child to descend into now, which
+         * is one less than pos if the child was merged into its left sibling.
+         */
+        int fortifyChild(int pos) {
+            BNode child = writableChild(pos);
+            // 2a. Does that child have at least minDegree keys?
+            if (child.n >= minDegree)
+                return pos;
+            // 2b. Ok, that child does not have minDegree keys
+            // 2bi. Does the sibling to the left have at least minDegree keys?
+            if (pos > 0 && children[pos-1].n >= minDegree) {
+                Association up = child.shareLeft(writableChild(pos-1), keys[pos-1], vals[pos-1]);
+                keys[pos-1] = up.key;
+                vals[pos-1] = up.val;
+                return pos;
+            }
+            // 2bii. If not, does the sibling to the right have at least minDegree keys?
+            if (pos < n && children[pos+1].n >= minDegree) {
+                Association up = child.shareRight(writableChild(pos+1), keys[pos], vals[pos]);
+                keys[pos] = up.key;
+                vals[pos] = up.val;
+                return pos;
+            }
+            // 2biii. If not, is this child NOT the last child?
+            if (pos < n) {
+                child.merge(children[pos+1], keys[pos], vals[pos]);
+                removeAt(pos);
+                return pos;
+            }
+            // 2biv. Ok, neither sibling can spare a key/val and this 
+            // is the last child. (Note it can't be the zeroth child.)
+            assert pos > 0;
+            writableChild(pos-1).merge(child, keys[pos-1], vals[pos-1]);
+            removeAt(pos-1);
+            return pos-1;
+        }
+
+        /**
+         * Remove the key/val at the given position and the child
+         * just after it, as happens when that child has been merged
+         * into the child at pos.
+         * @param pos The position of the key to remove
+         */
+        void removeAt(int pos) {
+            // Invariant: keys, vals, and children in [pos, i)
+            // (children [pos+1, i+1)) hold what was one to the right
+            for (int i = pos; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                vals[i] = vals[i+1];
+                children[i+1] = children[i+2];
+            }
+            n--;
+            keys[n] = null;
+            vals[n] = null;
+            children[n+1] = null;
         }
 
          // I'm giving you the next five helpers.
@@ -633,7 +912,7 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
           * @return The association that is the predecessor
           */
         BTreeMap<K, V>.Association deletePred() {
-            return children[n].deletePred();
+            return children[fortifyChild(n)].deletePred();
         }
 
         /**
@@ -644,7 +923,7 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
          * @return The association that is the successor
          */
         BTreeMap<K, V>.Association deleteSucc() {
-            return children[0].deleteSucc();
+            return children[fortifyChild(0)].deleteSucc();
         }
         
         /**
@@ -740,7 +1019,8 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             keys[0] = key;
             vals[0] = val;
             children[0] = sib.children[sibling.n];
-            Association toReturn = new Association(sibling.keys[n-1], sibling.vals[n-1]);
+            Association toReturn = new Association(sibling.keys[sibling.n-1],
+                    sibling.vals[sibling.n-1]);
             n++;
             sibling.n--;
             return toReturn;
@@ -756,6 +1036,13 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
      * B-tree properties if it is a leaf and not full.
      */
     BNode root;
+
+    /**
+     * The current generation; nodes made before the latest
+     * snapshot belong to earlier ones. This starts at zero and
+     * counts the snapshots taken.
+     */
+    private int generation;
     
     /**
      * To initialize a BTree, specify a minimum degree.
@@ -767,6 +1054,139 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         root = new Leaf();
     }
 
+    /**
+     * Make a BTreeMap with a minimum degree chosen so that each
+     * node's array of key references spans a few cache lines
+     * (see NodeSizing).
+     * @return An empty map
+     */
+    public static <K extends Comparable<K>, V> BTreeMap<K, V> withDefaultDegree() {
+        return new BTreeMap<K, V>(NodeSizing.referenceKeysMinDegree());
+    }
+
+    /**
+     * Bulk-load a BTree from associations given in sorted order,
+     * building it bottom-up instead of by repeated insertion:
+     * first the leaves, filled to the given fraction of capacity,
+     * then each level of internals above them, with the key between
+     * two neighboring nodes going up as the separator in their
+     * parent. This takes linear time. (If a key is repeated, the
+     * last value given for it wins, as with put().)
+     * @param minDegree
+     * @param sortedKeys The keys, in increasing order
+     * @param vals The values, parallel to the keys
+     * @param fillFactor The fraction of each node to fill, in (0, 1];
+     * nodes are never filled to less than the minimum
+     * @throws IllegalArgumentException If the keys aren't sorted, or
+     * there are fewer values than keys
+     */
+    @SuppressWarnings("unchecked")
+    public BTreeMap(int minDegree, Iterator<K> sortedKeys, Iterator<V> vals,
+            double fillFactor) {
+        this.minDegree = minDegree;
+        if (fillFactor <= 0 || fillFactor > 1)
+            throw new IllegalArgumentException("Fill factor: " + fillFactor);
+
+        // Gather the associations, so we know how many there are
+        ArrayList<K> keyList = new ArrayList<K>();
+        ArrayList<V> valList = new ArrayList<V>();
+        while (sortedKeys.hasNext()) {
+            K key = sortedKeys.next();
+            if (! vals.hasNext())
+                throw new IllegalArgumentException("Fewer values than keys");
+            V val = vals.next();
+            int last = keyList.size() - 1;
+            if (last >= 0 && keyList.get(last).compareTo(key) >= 0) {
+                if (keyList.get(last).compareTo(key) > 0)
+                    throw new IllegalArgumentException("Keys out of order: "
+                            + keyList.get(last) + ", " + key);
+                valList.set(last, val);
+            }
+            else {
+                keyList.add(key);
+                valList.add(val);
+            }
+        }
+        
+        // Build the leaves. A leaf with s keys, plus the separator
+        // after it, accounts for s + 1 of the associations (counting
+        // one extra for the last leaf, which has no separator after it).
+        int[] groups = groupSizes(keyList.size() + 1,
+                Math.max(minDegree, (int) Math.round(fillFactor * (2 * minDegree - 1)) + 1));
+        BNode[] level = new BTreeMap.BNode[groups.length];
+        K[] sepKeys = (K[]) new Comparable[groups.length - 1];
+        V[] sepVals = (V[]) new Object[groups.length - 1];
+        int next = 0;
+        for (int i = 0; i < groups.length; i++) {
+            Leaf leaf = new Leaf();
+            for (int j = 0; j < groups[i] - 1; j++) {
+                leaf.keys[j] = keyList.get(next);
+                leaf.vals[j] = valList.get(next);
+                next++;
+            }
+            leaf.n = groups[i] - 1;
+            level[i] = leaf;
+            if (i < sepKeys.length) {
+                sepKeys[i] = keyList.get(next);
+                sepVals[i] = valList.get(next);
+                next++;
+            }
+        }
+
+        // Build the internals, a level at a time. An internal with c
+        // children takes the c - 1 separators among them; the separator
+        // after its last child goes up to the next level.
+        int childTarget = Math.max(minDegree, (int) Math.round(fillFactor * 2 * minDegree));
+        while (level.length > 1) {
+            groups = groupSizes(level.length, childTarget);
+            BNode[] parents = new BTreeMap.BNode[groups.length];
+            K[] upKeys = (K[]) new Comparable[groups.length - 1];
+            V[] upVals = (V[]) new Object[groups.length - 1];
+            int child = 0;
+            for (int i = 0; i < groups.length; i++) {
+                Internal parent = new Internal();
+                for (int j = 0; j < groups[i]; j++) {
+                    parent.children[j] = level[child];
+                    if (j < groups[i] - 1) {
+                        parent.keys[j] = sepKeys[child];
+                        parent.vals[j] = sepVals[child];
+                    }
+                    child++;
+                }
+                parent.n = groups[i] - 1;
+                parents[i] = parent;
+                if (i < upKeys.length) {
+                    upKeys[i] = sepKeys[child - 1];
+                    upVals[i] = sepVals[child - 1];
+                }
+            }
+            level = parents;
+            sepKeys = upKeys;
+            sepVals = upVals;
+        }
+        root = level[0];
+    }
+
+    /**
+     * Divide a number of items into groups of as close to the
+     * target size as possible, keeping every group (if there is
+     * more than one) between minDegree and 2 * minDegree in size.
+     * @param items The number of items to divide
+     * @param target The desired group size, in [minDegree, 2 * minDegree]
+     * @return The sizes of the groups, which add up to items
+     */
+    private int[] groupSizes(int items, int target) {
+        int groups = (items + target - 1) / target;
+        // Too many groups would leave them too small; in that
+        // case one fewer group can't make them too big.
+        if (groups > 1 && items / groups < minDegree)
+            groups--;
+        int[] sizes = new int[groups];
+        for (int i = 0; i < groups; i++)
+            sizes[i] = items / groups + (i < items % groups ? 1 : 0);
+        return sizes;
+    }
+
     /**
      * Simple class to encapsulate the result of a search
      * for a key: Was it found, and, if so, where is it?
@@ -807,10 +1227,15 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         // search for the key
         Found result = root.search(key);
         // if it's already there, update the value
-        if (result.found)
-            result.location.vals[result.index] = val;
+        if (result.found) {
+            if (result.location.gen == generation)
+                result.location.vals[result.index] = val;
+            else
+                replaceVal(key, val);
+        }
         // otherwise, insert
         else {
+            root = writable(root);
             // Taking the speculatively-insert approach,
             // we split a full node before we enter it.
             // Handle a full root here.
@@ -840,6 +1265,61 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     }
 
     
+    /**
+     * Get the values for a batch of keys, descending the tree once
+     * for the whole batch rather than once per key.
+     * @param sortedKeys The keys whose values we're retrieving, in
+     * non-decreasing order
+     * @param results An array at least as long as sortedKeys, to be
+     * filled with the value for each key, null if none exists
+     * @throws IllegalArgumentException If the keys aren't sorted or
+     * results is too short
+     */
+    public void getAll(K[] sortedKeys, V[] results) {
+        checkBatch(sortedKeys, results.length);
+        if (sortedKeys.length > 0)
+            root.searchRun(sortedKeys, results, 0, sortedKeys.length);
+    }
+
+    /**
+     * Add a batch of associations to the map, descending the tree
+     * once for the whole batch (plus once more each time the root
+     * fills up and has to be split) rather than once per key.
+     * If a key is repeated, the last value given for it wins.
+     * @param sortedKeys The keys, in non-decreasing order
+     * @param vals The values, parallel to the keys
+     * @throws IllegalArgumentException If the keys aren't sorted or
+     * there are fewer values than keys
+     */
+    public void putAll(K[] sortedKeys, V[] vals) {
+        checkBatch(sortedKeys, vals.length);
+        root = writable(root);
+        int i = 0;
+        while (i < sortedKeys.length) {
+            if (root.isFull()) {
+                Internal newRoot = new Internal();
+                newRoot.children[0] = root;
+                root = newRoot;
+                newRoot.splitChild(0);
+            }
+            i = root.insertRun(sortedKeys, vals, i, sortedKeys.length);
+        }
+    }
+
+    /**
+     * Make sure a batch of keys is sorted and its parallel array
+     * is long enough.
+     */
+    private void checkBatch(K[] sortedKeys, int parallelLength) {
+        if (parallelLength < sortedKeys.length)
+            throw new IllegalArgumentException("Parallel array too short: "
+                    + parallelLength + " < " + sortedKeys.length);
+        for (int i = 1; i < sortedKeys.length; i++)
+            if (sortedKeys[i-1].compareTo(sortedKeys[i]) > 0)
+                throw new IllegalArgumentException("Keys out of order: "
+                        + sortedKeys[i-1] + ", " + sortedKeys[i]);
+    }
+
     /**
      * Test if this map contains an association for this key.
      * @param key The key to test.
@@ -854,7 +1334,78 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
      * @param key The key to remove
      */
     public void remove(K key) {
+        root = writable(root);
         root.delete(key);
+        // If the root lost its last key to a merge,
+        // its only child becomes the new root.
+        if (root.n == 0 && root.canDescend(0))
+            root = root.descend(0);
+    }
+
+    // ---- Snapshots ----
+
+    /**
+     * Return the given node if it belongs to the current
+     * generation, or else a copy that does. (The copy replaces
+     * the node only in the current tree; snapshots keep the
+     * original.)
+     */
+    private BNode writable(BNode node) {
+        return node.gen == generation ? node : node.copy();
+    }
+
+    /**
+     * Replace the value for a key found in a node of an earlier
+     * generation, copying the path down to it.
+     * PRECONDITION: The key is in the tree
+     */
+    private void replaceVal(K key, V val) {
+        root = writable(root);
+        BNode node = root;
+        int pos = node.binarySearchKeys(key);
+        while (pos >= node.n || node.keys[pos].compareTo(key) != 0) {
+            @SuppressWarnings("unchecked")
+            Internal internal = (Internal) node;
+            node = internal.writableChild(pos);
+            pos = node.binarySearchKeys(key);
+        }
+        node.vals[pos] = val;
+    }
+
+    /**
+     * Take a read-only snapshot of this map. The snapshot keeps
+     * showing the associations the map has now, however the map
+     * is changed afterwards, so it can be scanned at leisure while
+     * the map is being updated. Taking a snapshot takes constant
+     * time: it shares the whole tree, and afterwards the map copies
+     * each node (and the path down to it) the first time the node
+     * is changed, leaving the original to the snapshot.
+     * @return A map whose put() and remove() throw
+     * UnsupportedOperationException
+     */
+    public Map<K, V> snapshot() {
+        final BNode snapRoot = root;
+        generation++;
+        return new Map<K, V>() {
+            public V get(K key) {
+                if (snapRoot.n == 0)
+                    return null;
+                Found result = snapRoot.search(key);
+                return result.found ? result.location.vals[result.index] : null;
+            }
+            public boolean containsKey(K key) {
+                return snapRoot.n > 0 && snapRoot.search(key).found;
+            }
+            public void put(K key, V val) {
+                throw new UnsupportedOperationException();
+            }
+            public void remove(K key) {
+                throw new UnsupportedOperationException();
+            }
+            public Iterator<K> iterator() {
+                return iterateFrom(snapRoot);
+            }
+        };
     }
 
     /**
@@ -880,13 +1431,61 @@ public class BTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
      * @return An iterator for the keys in this map.
      */
     public Iterator<K> iterator() {
+        return iterateFrom(root);
+    }
 
-        // TODO
-        
-        // 25 LOC
-        
-        return null;
+    /**
+     * Iterate over the keys in the tree with the given root,
+     * which may be the root of a snapshot.
+     */
+    private Iterator<K> iterateFrom(BNode from) {
+        final Stack<IteratorRecord> breadcrumbs = new Stack<IteratorRecord>();
+        if (from.n > 0)
+            pushLeftmost(breadcrumbs, from);
         
+        return new Iterator<K>() {
+
+            // Invariant: either the stack is empty (the iteration
+            // is done) or the record on top has pos < n, and the
+            // key at pos is the next one to return.
+            
+            public boolean hasNext() {
+                return ! breadcrumbs.isEmpty();
+            }
+
+            public K next() {
+                if (breadcrumbs.isEmpty())
+                    throw new NoSuchElementException();
+                IteratorRecord top = breadcrumbs.peek();
+                K toReturn = top.node.keys[top.pos];
+                top.pos++;
+                if (top.node.canDescend(top.pos))
+                    pushLeftmost(breadcrumbs, top.node.descend(top.pos));
+                // pop the nodes that have no keys left to return
+                while (! breadcrumbs.isEmpty() 
+                        && breadcrumbs.peek().pos >= breadcrumbs.peek().node.n)
+                    breadcrumbs.pop();
+                return toReturn;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Push breadcrumbs for the given node and its leftmost
+     * descendants, down to a leaf.
+     * @param breadcrumbs The iterator's stack
+     * @param node The root of the subtree to start at
+     */
+    private void pushLeftmost(Stack<IteratorRecord> breadcrumbs, BNode node) {
+        breadcrumbs.push(new IteratorRecord(node));
+        while (node.canDescend(0)) {
+            node = node.descend(0);
+            breadcrumbs.push(new IteratorRecord(node));
+        }
     }
 
 }
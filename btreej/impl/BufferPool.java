@@ -0,0 +1,245 @@
+package impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * BufferPool
+ *
+ * A cache of decoded pages from a PageFile. Frames are kept in
+ * least-recently-used order; a frame can be evicted only when no
+ * one has it pinned, and a dirty frame is encoded and written back
+ * when it is evicted (or flushed). If every frame is pinned the pool
+ * grows past its capacity rather than fail, and shrinks back as
+ * frames are unpinned.
+ *
+ * @param <P> The type of decoded pages
+ */
+
+public class BufferPool<P> {
+
+    /**
+     * Function object for turning pages to and from bytes.
+     */
+    public interface PageFormat<P> {
+
+        /**
+         * Decode a page.
+         * @param pageId The page's id
+         * @param page The page's bytes, positioned at 0
+         * @return The decoded page
+         */
+        P decode(long pageId, ByteBuffer page);
+
+        /**
+         * Encode a page.
+         * @param item The decoded page
+         * @param page The buffer to write to, positioned at 0
+         */
+        void encode(P item, ByteBuffer page);
+    }
+
+    /**
+     * Function object to make an item once its page id is known.
+     */
+    public interface Maker<P> {
+        P make(long pageId);
+    }
+
+    /**
+     * A slot in the pool
+     */
+    private class Frame {
+        final long pageId;
+        final P item;
+        int pins;
+        boolean dirty;
+        Frame(long pageId, P item) {
+            this.pageId = pageId;
+            this.item = item;
+        }
+    }
+
+    /**
+     * The file the pages live in
+     */
+    private final PageFile file;
+
+    /**
+     * How to decode and encode pages
+     */
+    private final PageFormat<P> format;
+
+    /**
+     * The number of frames to keep when they aren't pinned
+     */
+    private final int capacity;
+
+    /**
+     * The frames, in access order (least recent first)
+     */
+    private final LinkedHashMap<Long, Frame> frames;
+
+    /**
+     * Buffer for reading and writing pages
+     */
+    private final ByteBuffer scratch;
+
+    /**
+     * Counts for monitoring how well the pool is doing
+     */
+    private long hits, misses, writeBacks;
+
+    /**
+     * Constructor.
+     * @param file The file the pages live in
+     * @param format How to decode and encode pages
+     * @param capacity The number of frames to keep
+     */
+    public BufferPool(PageFile file, PageFormat<P> format, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity: " + capacity);
+        this.file = file;
+        this.format = format;
+        this.capacity = capacity;
+        frames = new LinkedHashMap<Long, Frame>(capacity * 2, .75f, true);
+        scratch = ByteBuffer.allocate(file.pageSize());
+    }
+
+    /**
+     * Retrieve a page, reading it from the file if it isn't
+     * cached, and pin it.
+     * @param pageId The page to retrieve
+     * @return The decoded page
+     */
+    public P pin(long pageId) {
+        Frame frame = frames.get(pageId);
+        if (frame == null) {
+            misses++;
+            try {
+                file.readPage(pageId, scratch);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            frame = new Frame(pageId, format.decode(pageId, scratch));
+            frames.put(pageId, frame);
+        }
+        else
+            hits++;
+        frame.pins++;
+        evictIfOver();
+        return frame.item;
+    }
+
+    /**
+     * Release one pin on a page.
+     * @param pageId The page to unpin; it must be pinned
+     */
+    public void unpin(long pageId) {
+        Frame frame = frames.get(pageId);
+        assert frame != null && frame.pins > 0;
+        frame.pins--;
+        evictIfOver();
+    }
+
+    /**
+     * Note that a pinned page has been modified and needs to be
+     * written back before it leaves the pool.
+     * @param pageId The page that was modified
+     */
+    public void markDirty(long pageId) {
+        Frame frame = frames.get(pageId);
+        assert frame != null && frame.pins > 0;
+        frame.dirty = true;
+    }
+
+    /**
+     * Allocate a page in the file for a new item and put it in the
+     * pool, pinned and dirty.
+     * @param maker Makes the item, given its page id
+     * @return The new item
+     */
+    public P allocate(Maker<P> maker) {
+        long pageId;
+        try {
+            pageId = file.allocatePage();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        Frame frame = new Frame(pageId, maker.make(pageId));
+        frame.pins = 1;
+        frame.dirty = true;
+        frames.put(pageId, frame);
+        evictIfOver();
+        return frame.item;
+    }
+
+    /**
+     * Drop a page from the pool (without writing it) and return
+     * it to the file's free list.
+     * @param pageId The page to free
+     */
+    public void free(long pageId) {
+        frames.remove(pageId);
+        try {
+            file.freePage(pageId);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Write every dirty page back to the file. (This does not
+     * force the file to the disk; see PageFile.sync().)
+     */
+    public void flush() {
+        for (Frame frame : frames.values())
+            if (frame.dirty)
+                writeBack(frame);
+    }
+
+    /**
+     * Evict unpinned frames, least recently used first, while
+     * there are more frames than the capacity.
+     */
+    private void evictIfOver() {
+        for (Iterator<Frame> it = frames.values().iterator();
+                frames.size() > capacity && it.hasNext(); ) {
+            Frame frame = it.next();
+            if (frame.pins == 0) {
+                if (frame.dirty)
+                    writeBack(frame);
+                it.remove();
+            }
+        }
+    }
+
+    private void writeBack(Frame frame) {
+        scratch.clear();
+        format.encode(frame.item, scratch);
+        try {
+            file.writePage(frame.pageId, scratch);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        frame.dirty = false;
+        writeBacks++;
+    }
+
+    /**
+     * The number of frames currently in the pool
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    public long hits() { return hits; }
+
+    public long misses() { return misses; }
+
+    public long writeBacks() { return writeBacks; }
+
+}
@@ -0,0 +1,726 @@
+package impl;
+
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import adt.Map;
+
+/**
+ * ConcurrentBTreeMap
+ *
+ * A thread-safe version of BTreeMap using optimistic lock coupling.
+ * Every node has a version latch. Readers never write to shared
+ * memory: they note a node's version, read the node, and check
+ * that the version hasn't changed before trusting what they read
+ * (or moving on to a child); if it has, they restart from the root.
+ * Writers traverse the same way and upgrade to a write latch (by
+ * compare-and-swap on the version) only on the nodes they actually
+ * modify: the node where a key is added, replaced, or removed, and
+ * the parent, child, and sibling involved in a split, a share
+ * (shareLeft/shareRight), or a merge.
+ *
+ * The structure follows BTreeMap (CLRS, chapter 18): full nodes
+ * are split on the way down during put(), and nodes with the minimum
+ * number of keys are fortified on the way down during remove(). After
+ * each split, share, or merge, the operation restarts from the root,
+ * which keeps each restructuring step small and local.
+ *
+ * The iterator is weakly consistent: each call to next() finds
+ * the least key greater than the one returned before, so it never
+ * fails because of concurrent modification, and it reflects some
+ * but not necessarily all of the changes made while it runs.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+
+public class ConcurrentBTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+
+    /**
+     * All internal nodes (except the root) must have at least
+     * this many children--and no more than twice this many.
+     * This is equivalent to t in CLRS.
+     */
+    private final int minDegree;
+
+    // --------- Version latches --------------
+
+    /**
+     * Version bit marking a node that has been merged away
+     */
+    private static final long OBSOLETE = 1;
+
+    /**
+     * Version bit marking a node that is write-latched
+     */
+    private static final long LOCKED = 2;
+
+    /**
+     * Thrown (without a stack trace, since it's shared) when an
+     * optimistic read or latch upgrade fails and the operation
+     * must start over from the root.
+     */
+    private static class Restart extends RuntimeException {
+        private static final long serialVersionUID = -4093612750283104427L;
+        Restart() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Restart RESTART = new Restart();
+
+    /**
+     * A version latch. The version counts up by LOCKED each time
+     * a write latch is taken and again when it is released, so any
+     * modification shows up as a changed version.
+     */
+    private static class Latch {
+
+        final AtomicLong version = new AtomicLong();
+
+        /**
+         * Begin an optimistic read, waiting out any writer.
+         * @return The version to check later
+         */
+        long readLockOrRestart() {
+            long v = version.get();
+            while ((v & LOCKED) != 0) {
+                Thread.onSpinWait();
+                v = version.get();
+            }
+            if ((v & OBSOLETE) != 0)
+                throw RESTART;
+            return v;
+        }
+
+        /**
+         * Make sure nothing has changed since the given version
+         * was read (so everything read since then is consistent).
+         */
+        void checkOrRestart(long v) {
+            VarHandle.acquireFence();
+            if (version.get() != v)
+                throw RESTART;
+        }
+
+        /**
+         * Take the write latch, provided nothing has changed since
+         * the given version was read.
+         */
+        void upgradeToWriteLockOrRestart(long v) {
+            if (! version.compareAndSet(v, v + LOCKED))
+                throw RESTART;
+        }
+
+        void writeUnlock() {
+            version.addAndGet(LOCKED);
+        }
+
+        void writeUnlockObsolete() {
+            version.addAndGet(LOCKED + OBSOLETE);
+        }
+    }
+
+    /**
+     * Take the write latches on several latches, all or none.
+     * @param latches The latches, in top-down, left-to-right order
+     * @param versions The versions read for each
+     */
+    private static void upgradeAll(Latch[] latches, long[] versions) {
+        for (int i = 0; i < latches.length; i++) {
+            try {
+                latches[i].upgradeToWriteLockOrRestart(versions[i]);
+            } catch (Restart r) {
+                for (int j = 0; j < i; j++)
+                    latches[j].writeUnlock();
+                throw r;
+            }
+        }
+    }
+
+    // --------- Nodes --------------
+
+    /**
+     * A node in the tree. Leaves have no children array. (Since
+     * the operations here restart from the root instead of
+     * recursing, leaves and internals share one class.)
+     */
+    private class Node extends Latch {
+
+        /**
+         * Array of keys, partially filled
+         */
+        final K[] keys;
+
+        /**
+         * Array of vals, partially filled
+         */
+        final V[] vals;
+
+        /**
+         * Array of children (one more than keys), null for leaves
+         */
+        final Node[] children;
+
+        /**
+         * The number of pairs currently stored
+         */
+        int n;
+
+        @SuppressWarnings("unchecked")
+        Node(boolean leaf) {
+            keys = (K[]) new Comparable[2 * minDegree - 1];
+            vals = (V[]) new Object[2 * minDegree - 1];
+            children = leaf ? null : new ConcurrentBTreeMap.Node[2 * minDegree];
+        }
+
+        boolean isLeaf() { return children == null; }
+
+        boolean isFull() { return n == keys.length; }
+
+        /**
+         * Find the location of the key, or where it would go,
+         * as in BTreeMap.BNode.binarySearchKeys(). Since this may
+         * read the node while it is being modified, a failure is
+         * only trusted if the node hasn't changed.
+         * @param key
+         * @param v The version this node was read at
+         * @return The index of the key if it is here; otherwise,
+         * -(i + 1) where i is the index of the child where it would be
+         */
+        int locate(K key, long v) {
+            try {
+                int start = 0,
+                    stop = n;
+                while (start < stop) {
+                    int mid = (start + stop) / 2;
+                    int comparison = keys[mid].compareTo(key);
+                    if (comparison == 0)
+                        return mid;
+                    else if (comparison < 0)
+                        start = mid + 1;
+                    else
+                        stop = mid;
+                }
+                return -(start + 1);
+            } catch (RuntimeException e) {
+                checkOrRestart(v);
+                throw e;
+            }
+        }
+
+        void insertKeyAt(int pos, K key, V val) {
+            for (int i = n; i > pos; i--) {
+                keys[i] = keys[i-1];
+                vals[i] = vals[i-1];
+            }
+            keys[pos] = key;
+            vals[pos] = val;
+            n++;
+        }
+
+        void removeKeyAt(int pos) {
+            for (int i = pos; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                vals[i] = vals[i+1];
+            }
+            n--;
+            keys[n] = null;
+            vals[n] = null;
+        }
+    }
+
+    // ---- The B-Tree class itself begins here ----
+
+    /**
+     * The root of the tree
+     */
+    private volatile Node root;
+
+    /**
+     * Latch standing in for the root's parent, taken when the
+     * root is replaced (as the tree grows or shrinks)
+     */
+    private final Latch rootLatch;
+
+    /**
+     * To initialize a BTree, specify a minimum degree.
+     * The root is initially an empty leaf.
+     * @param minDegree
+     */
+    public ConcurrentBTreeMap(int minDegree) {
+        if (minDegree < 2)
+            throw new IllegalArgumentException("Minimum degree: " + minDegree);
+        this.minDegree = minDegree;
+        root = new Node(true);
+        rootLatch = new Latch();
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        while (true) {
+            try {
+                tryPut(key, val);
+                return;
+            } catch (Restart r) { }
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        while (true) {
+            try {
+                return tryGet(key);
+            } catch (Restart r) { }
+        }
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * (Null values are allowed, so this can't rely on get().)
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        while (true) {
+            try {
+                return tryContainsKey(key);
+            } catch (Restart r) { }
+        }
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        while (true) {
+            try {
+                tryRemove(key);
+                return;
+            } catch (Restart r) { }
+        }
+    }
+
+    // ---- Each operation, attempted once (throwing RESTART if it fails) ----
+
+    private V tryGet(K key) {
+        long rv = rootLatch.readLockOrRestart();
+        Node node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rv);
+        while (true) {
+            int loc = node.locate(key, v);
+            if (loc >= 0) {
+                V val = node.vals[loc];
+                node.checkOrRestart(v);
+                return val;
+            }
+            if (node.isLeaf()) {
+                node.checkOrRestart(v);
+                return null;
+            }
+            Node child = node.children[-loc - 1];
+            node.checkOrRestart(v);
+            long cv = child.readLockOrRestart();
+            node.checkOrRestart(v);
+            node = child;
+            v = cv;
+        }
+    }
+
+    private boolean tryContainsKey(K key) {
+        long rv = rootLatch.readLockOrRestart();
+        Node node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rv);
+        while (true) {
+            int loc = node.locate(key, v);
+            if (loc >= 0 || node.isLeaf()) {
+                node.checkOrRestart(v);
+                return loc >= 0;
+            }
+            Node child = node.children[-loc - 1];
+            node.checkOrRestart(v);
+            long cv = child.readLockOrRestart();
+            node.checkOrRestart(v);
+            node = child;
+            v = cv;
+        }
+    }
+
+    private void tryPut(K key, V val) {
+        long rv = rootLatch.readLockOrRestart();
+        Node node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rv);
+
+        // Handle a full root here, as in BTreeMap.put()
+        if (node.isFull()) {
+            upgradeAll(new Latch[] {rootLatch, node}, new long[] {rv, v});
+            Node newRoot = new Node(false);
+            newRoot.children[0] = node;
+            splitChild(newRoot, 0);
+            root = newRoot;
+            node.writeUnlock();
+            rootLatch.writeUnlock();
+            throw RESTART;
+        }
+
+        // Invariant: node is not full (as of version v)
+        while (true) {
+            int loc = node.locate(key, v);
+            if (loc >= 0) {
+                node.upgradeToWriteLockOrRestart(v);
+                node.vals[loc] = val;
+                node.writeUnlock();
+                return;
+            }
+            int pos = -loc - 1;
+            if (node.isLeaf()) {
+                node.upgradeToWriteLockOrRestart(v);
+                node.insertKeyAt(pos, key, val);
+                node.writeUnlock();
+                return;
+            }
+            Node child = node.children[pos];
+            node.checkOrRestart(v);
+            long cv = child.readLockOrRestart();
+            node.checkOrRestart(v);
+            if (child.isFull()) {
+                upgradeAll(new Latch[] {node, child}, new long[] {v, cv});
+                splitChild(node, pos);
+                child.writeUnlock();
+                node.writeUnlock();
+                throw RESTART;
+            }
+            node = child;
+            v = cv;
+        }
+    }
+
+    private void tryRemove(K key) {
+        long rv = rootLatch.readLockOrRestart();
+        Node node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rv);
+        boolean atRoot = true;
+
+        // Invariant: node is the root or has at least minDegree
+        // keys (as of version v), so it can spare one
+        while (true) {
+            int loc = node.locate(key, v);
+            if (node.isLeaf()) {
+                if (loc < 0)
+                    node.checkOrRestart(v);
+                else {
+                    node.upgradeToWriteLockOrRestart(v);
+                    node.removeKeyAt(loc);
+                    node.writeUnlock();
+                }
+                return;
+            }
+            if (loc >= 0) {
+                replaceWithPredecessor(node, v, loc, atRoot, rv);
+                return;
+            }
+            int pos = -loc - 1;
+            Node child = node.children[pos];
+            node.checkOrRestart(v);
+            long cv = child.readLockOrRestart();
+            node.checkOrRestart(v);
+            if (child.n < minDegree)
+                fortify(node, v, pos, atRoot, rv);
+            node = child;
+            v = cv;
+            atRoot = false;
+        }
+    }
+
+    /**
+     * Remove the key at the given position of an internal node by
+     * replacing it with its predecessor, which is removed from the
+     * leaf at the bottom of the rightmost path in the subtree before
+     * the key. Nodes on that path with only the minimum number of keys
+     * are fortified first (restarting the operation each time),
+     * so the leaf can spare its last key. This combines cases 1a-1c
+     * of CLRS pg 501: fortifying the child before the key borrows from
+     * the child after it or merges with it when need be.
+     */
+    private void replaceWithPredecessor(Node node, long v, int pos,
+            boolean atRoot, long rv) {
+        Node parent = node;
+        long pv = v;
+        int childPos = pos;
+        boolean parentAtRoot = atRoot;
+        while (true) {
+            Node child = parent.children[childPos];
+            parent.checkOrRestart(pv);
+            long cv = child.readLockOrRestart();
+            parent.checkOrRestart(pv);
+            if (child.n < minDegree)
+                fortify(parent, pv, childPos, parentAtRoot, rv);
+            if (child.isLeaf()) {
+                // The nodes between aren't changed, so only the
+                // node with the key and the leaf need latching
+                upgradeAll(new Latch[] {node, child}, new long[] {v, cv});
+                node.keys[pos] = child.keys[child.n - 1];
+                node.vals[pos] = child.vals[child.n - 1];
+                child.removeKeyAt(child.n - 1);
+                child.writeUnlock();
+                node.writeUnlock();
+                return;
+            }
+            parent = child;
+            pv = cv;
+            childPos = child.n;
+            parentAtRoot = false;
+            // make sure the child position read is consistent
+            parent.checkOrRestart(pv);
+        }
+    }
+
+    /**
+     * Make sure the indicated child has at least minDegree keys, by
+     * borrowing from a sibling (shareLeft/shareRight) or merging with
+     * one, as in BTreeMap.Internal.fortifyChild(). The parent, the
+     * child, and the sibling are write-latched for the change (and
+     * the root latch too, if the root might be replaced). This
+     * always ends by restarting the operation.
+     * PRECONDITION: The parent is the root or has at least minDegree
+     * keys, as of version pv.
+     */
+    private void fortify(Node parent, long pv, int pos, boolean parentIsRoot, long rv) {
+        Node child = parent.children[pos];
+        Node left = pos > 0 ? parent.children[pos-1] : null;
+        Node right = pos < parent.n ? parent.children[pos+1] : null;
+        parent.checkOrRestart(pv);
+        long cv = child.readLockOrRestart();
+        long lv = left == null ? 0 : left.readLockOrRestart();
+        long rightV = right == null ? 0 : right.readLockOrRestart();
+        parent.checkOrRestart(pv);
+
+        if (left != null && left.n >= minDegree) {
+            upgradeAll(new Latch[] {parent, left, child}, new long[] {pv, lv, cv});
+            shareLeft(parent, pos);
+            child.writeUnlock();
+            left.writeUnlock();
+            parent.writeUnlock();
+        }
+        else if (right != null && right.n >= minDegree) {
+            upgradeAll(new Latch[] {parent, child, right}, new long[] {pv, cv, rightV});
+            shareRight(parent, pos);
+            right.writeUnlock();
+            child.writeUnlock();
+            parent.writeUnlock();
+        }
+        else {
+            // Merge with a sibling, the right one if there is one
+            int mergePos = right != null ? pos : pos - 1;
+            Node mergeLeft = right != null ? child : left,
+                    mergeRight = right != null ? right : child;
+            long mlv = right != null ? cv : lv,
+                    mrv = right != null ? rightV : cv;
+            boolean collapse = parentIsRoot && parent.n == 1;
+            if (collapse)
+                upgradeAll(new Latch[] {rootLatch, parent, mergeLeft, mergeRight},
+                        new long[] {rv, pv, mlv, mrv});
+            else
+                upgradeAll(new Latch[] {parent, mergeLeft, mergeRight},
+                        new long[] {pv, mlv, mrv});
+            merge(parent, mergePos);
+            mergeRight.writeUnlockObsolete();
+            mergeLeft.writeUnlock();
+            if (collapse) {
+                // The root lost its last key to a merge, so
+                // its only child becomes the new root.
+                root = mergeLeft;
+                parent.writeUnlockObsolete();
+                rootLatch.writeUnlock();
+            }
+            else
+                parent.writeUnlock();
+        }
+        throw RESTART;
+    }
+
+    // ---- Restructuring, done while holding the write latches ----
+
+    /**
+     * Split the full child at the given position, as in
+     * BTreeMap.Internal.splitChild().
+     */
+    private void splitChild(Node parent, int pos) {
+        Node child = parent.children[pos];
+        Node sibling = new Node(child.isLeaf());
+        sibling.n = minDegree - 1;
+        for (int j = 0; j < sibling.n; j++) {
+            sibling.keys[j] = child.keys[j + minDegree];
+            sibling.vals[j] = child.vals[j + minDegree];
+        }
+        if (! child.isLeaf())
+            for (int j = 0; j <= sibling.n; j++)
+                sibling.children[j] = child.children[j + minDegree];
+        K upKey = child.keys[minDegree - 1];
+        V upVal = child.vals[minDegree - 1];
+        for (int j = minDegree - 1; j < child.n; j++) {
+            child.keys[j] = null;
+            child.vals[j] = null;
+            if (! child.isLeaf())
+                child.children[j + 1] = null;
+        }
+        child.n = minDegree - 1;
+        for (int j = parent.n; j > pos; j--)
+            parent.children[j+1] = parent.children[j];
+        parent.children[pos+1] = sibling;
+        parent.insertKeyAt(pos, upKey, upVal);
+    }
+
+    /**
+     * Move an association from the child at pos-1 through the
+     * parent to the child at pos, as in BTreeMap's shareLeft().
+     */
+    private void shareLeft(Node parent, int pos) {
+        Node left = parent.children[pos-1],
+                child = parent.children[pos];
+        if (! child.isLeaf()) {
+            for (int i = child.n + 1; i > 0; i--)
+                child.children[i] = child.children[i-1];
+            child.children[0] = left.children[left.n];
+            left.children[left.n] = null;
+        }
+        child.insertKeyAt(0, parent.keys[pos-1], parent.vals[pos-1]);
+        parent.keys[pos-1] = left.keys[left.n-1];
+        parent.vals[pos-1] = left.vals[left.n-1];
+        left.removeKeyAt(left.n-1);
+    }
+
+    /**
+     * Move an association from the child at pos+1 through the
+     * parent to the child at pos, as in BTreeMap's shareRight().
+     */
+    private void shareRight(Node parent, int pos) {
+        Node child = parent.children[pos],
+                right = parent.children[pos+1];
+        if (! child.isLeaf()) {
+            child.children[child.n+1] = right.children[0];
+            for (int i = 0; i < right.n; i++)
+                right.children[i] = right.children[i+1];
+            right.children[right.n] = null;
+        }
+        child.insertKeyAt(child.n, parent.keys[pos], parent.vals[pos]);
+        parent.keys[pos] = right.keys[0];
+        parent.vals[pos] = right.vals[0];
+        right.removeKeyAt(0);
+    }
+
+    /**
+     * Absorb the child at pos+1 and the key between into the
+     * child at pos, as in BTreeMap's merge().
+     */
+    private void merge(Node parent, int pos) {
+        Node left = parent.children[pos],
+                right = parent.children[pos+1];
+        left.keys[left.n] = parent.keys[pos];
+        left.vals[left.n] = parent.vals[pos];
+        for (int i = 0; i < right.n; i++) {
+            left.keys[left.n + 1 + i] = right.keys[i];
+            left.vals[left.n + 1 + i] = right.vals[i];
+        }
+        if (! left.isLeaf())
+            for (int i = 0; i <= right.n; i++)
+                left.children[left.n + 1 + i] = right.children[i];
+        left.n += right.n + 1;
+        for (int i = pos + 1; i < parent.n; i++)
+            parent.children[i] = parent.children[i+1];
+        parent.children[parent.n] = null;
+        parent.removeKeyAt(pos);
+    }
+
+    // ---- Iteration ----
+
+    /**
+     * Find the least key strictly greater than the given one.
+     * @param key The lower bound, or null to find the least key
+     * @return The key, null if there is none
+     */
+    private K higherKey(K key) {
+        while (true) {
+            try {
+                return tryHigherKey(key);
+            } catch (Restart r) { }
+        }
+    }
+
+    private K tryHigherKey(K key) {
+        long rv = rootLatch.readLockOrRestart();
+        Node node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rv);
+        // the least key greater than the given one seen so far
+        K candidate = null;
+        while (true) {
+            int pos;
+            if (key == null)
+                pos = 0;
+            else {
+                int loc = node.locate(key, v);
+                pos = loc >= 0 ? loc + 1 : -loc - 1;
+            }
+            if (pos < node.n)
+                candidate = node.keys[pos];
+            if (node.isLeaf()) {
+                node.checkOrRestart(v);
+                return candidate;
+            }
+            Node child = node.children[pos];
+            node.checkOrRestart(v);
+            long cv = child.readLockOrRestart();
+            node.checkOrRestart(v);
+            node = child;
+            v = cv;
+        }
+    }
+
+    /**
+     * Iterate over the keys in this map in order. The iterator is
+     * weakly consistent (see the class comment).
+     * @return An iterator for the keys in this map.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+
+            /**
+             * The next key to return, null if done
+             */
+            K next = higherKey(null);
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public K next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                K toReturn = next;
+                next = higherKey(toReturn);
+                return toReturn;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,213 @@
+package impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import adt.Map;
+
+/**
+ * LoggedBTreeMap
+ *
+ * A PagedBTreeMap made durable by a WriteAheadLog. Each put() or
+ * remove() is logged and committed before it returns, but the tree's
+ * pages are written only at checkpoints, which happen every so many
+ * operations (and at close()). Between checkpoints the tree's file
+ * stages its writes in memory (see PageFile), so the file always
+ * holds the tree as of the last checkpoint; at startup the log's
+ * operations since then are replayed into it.
+ *
+ * The map may be used from several threads. Operations on the tree
+ * are done one at a time, but with group commit a thread waits for
+ * its log record to reach the disk after letting go of the tree, so
+ * the records of many operations can be forced to the disk at once.
+ * Without group commit, each operation forces the log itself before
+ * the next can begin. (Iteration is not synchronized.)
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+
+public class LoggedBTreeMap<K extends Comparable<K>, V> implements Map<K, V>, Closeable {
+
+    /**
+     * The tree holding the associations
+     */
+    private final PagedBTreeMap<K, V> tree;
+
+    /**
+     * The log of operations since the last checkpoint
+     */
+    private final WriteAheadLog<K, V> log;
+
+    /**
+     * Wait for commits outside the tree's lock?
+     */
+    private final boolean groupCommit;
+
+    /**
+     * The number of operations between checkpoints
+     */
+    private final int checkpointInterval;
+
+    /**
+     * The number of operations since the last checkpoint
+     */
+    private int sinceCheckpoint;
+
+    /**
+     * Open (or create) a logged map, recovering whatever was
+     * committed but not checkpointed.
+     * @param treePath Where the tree's file is
+     * @param logPath Where the log is
+     * @param minDegree The minimum degree of the tree
+     * @param keyCodec How to write keys
+     * @param valCodec How to write values
+     * @param poolPages The number of nodes to keep in memory
+     * @param groupCommit Whether to let operations from several
+     * threads share a force of the log
+     * @param checkpointInterval The number of operations between
+     * checkpoints
+     */
+    public LoggedBTreeMap(Path treePath, Path logPath, int minDegree,
+            PageCodec<K> keyCodec, PageCodec<V> valCodec, int poolPages,
+            boolean groupCommit, int checkpointInterval) throws IOException {
+        if (checkpointInterval < 1)
+            throw new IllegalArgumentException("Checkpoint interval: " + checkpointInterval);
+        this.groupCommit = groupCommit;
+        this.checkpointInterval = checkpointInterval;
+        log = new WriteAheadLog<K, V>(logPath, keyCodec, valCodec);
+        WriteAheadLog<K, V>.Recovery recovery = log.recover();
+        if (! recovery.images().isEmpty())
+            PageFile.restorePages(treePath, recovery.images());
+        tree = new PagedBTreeMap<K, V>(treePath, minDegree, keyCodec, valCodec, poolPages);
+        tree.file().stageWrites();
+        recovery.replay(tree);
+        if (recovery.operationCount() > 0 || ! recovery.images().isEmpty())
+            checkpoint();
+    }
+
+    /**
+     * Add an association to the map, durably.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        long lsn;
+        synchronized (tree) {
+            lsn = log.logPut(key, val);
+            tree.put(key, val);
+            afterOperation(lsn);
+        }
+        if (groupCommit)
+            commit(lsn);
+    }
+
+    /**
+     * Remove the association for this key, if it exists, durably.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        long lsn;
+        synchronized (tree) {
+            lsn = log.logRemove(key);
+            tree.remove(key);
+            afterOperation(lsn);
+        }
+        if (groupCommit)
+            commit(lsn);
+    }
+
+    /**
+     * Commit now if not using group commit, and checkpoint if it's
+     * time. Call while holding the tree's lock.
+     */
+    private void afterOperation(long lsn) {
+        if (! groupCommit)
+            commit(lsn);
+        if (++sinceCheckpoint >= checkpointInterval) {
+            try {
+                checkpoint();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    private void commit(long lsn) {
+        try {
+            log.commit(lsn);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        synchronized (tree) {
+            return tree.get(key);
+        }
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        synchronized (tree) {
+            return tree.containsKey(key);
+        }
+    }
+
+    /**
+     * Iterate over the keys in this map in order. This must not
+     * overlap with modifications.
+     * @return An iterator for the keys in this map.
+     */
+    public Iterator<K> iterator() {
+        return tree.iterator();
+    }
+
+    /**
+     * Write the tree's modified pages to its file (by way of the
+     * log, so a crash in the middle can be redone) and empty the log.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (tree) {
+            tree.flush();
+            final PageFile file = tree.file();
+            log.checkpoint(file.stagedPages(), new WriteAheadLog.PageWriter() {
+                public void writePages() throws IOException {
+                    file.applyStaged();
+                }
+            });
+            sinceCheckpoint = 0;
+        }
+    }
+
+    /**
+     * The number of times the log has been forced to the disk
+     */
+    public long logForces() {
+        return log.forces();
+    }
+
+    /**
+     * Checkpoint and close the files. The map can't be used afterwards.
+     */
+    public void close() throws IOException {
+        synchronized (tree) {
+            checkpoint();
+            log.close();
+            tree.close();
+        }
+    }
+
+}
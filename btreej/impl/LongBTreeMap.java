@@ -0,0 +1,478 @@
+package impl;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Stack;
+
+import adt.Map;
+
+/**
+ * LongBTreeMap
+ *
+ * A BTreeMap specialized to long keys. The keys are stored in
+ * long[] arrays in the nodes, so there is no boxing and no
+ * compareTo() call while searching; within a node, the search
+ * compiles down to comparisons that don't need unpredictable
+ * branches (see lowerBound()). The primitive versions of the
+ * operations (put(long, V) and so on) avoid boxing entirely;
+ * the Map versions with Long keys just unbox and call them.
+ *
+ * The algorithms are the same as in BTreeMap (CLRS, chapter 18),
+ * but leaves and internals share a single node class (leaves
+ * have no children array) so that a lookup makes no virtual calls.
+ *
+ * @param <V> The value-type of the map
+ */
+
+public class LongBTreeMap<V> implements Map<Long, V> {
+
+    /**
+     * Nodes with at most this many keys are searched with a
+     * linear scan; larger ones with a binary search.
+     */
+    private static final int LINEAR_SEARCH_MAX = 16;
+
+    /**
+     * All internal nodes (except the root) must have at least
+     * this many children--and no more than twice this many.
+     * This is equivalent to t in CLRS.
+     */
+    private final int minDegree;
+
+    /**
+     * A node in the tree.
+     */
+    private final class Node {
+
+        /**
+         * Array of keys, partially filled
+         */
+        final long[] keys;
+
+        /**
+         * Array of vals, partially filled
+         */
+        final V[] vals;
+
+        /**
+         * Array of children (one more than keys), null for leaves
+         */
+        final Node[] children;
+
+        /**
+         * The number of pairs currently stored
+         */
+        int n;
+
+        @SuppressWarnings("unchecked")
+        Node(boolean leaf) {
+            keys = new long[2 * minDegree - 1];
+            vals = (V[]) new Object[2 * minDegree - 1];
+            children = leaf ? null : new LongBTreeMap.Node[2 * minDegree];
+        }
+
+        boolean isLeaf() { return children == null; }
+
+        boolean isFull() { return n == keys.length; }
+
+        /**
+         * Find the index of the smallest key greater than or equal
+         * to the given key (n if there is none), as in
+         * BTreeMap.BNode.binarySearchKeys(). Small nodes are scanned,
+         * counting the keys less than the given one. Larger ones are
+         * binary searched, halving the range each time whatever the
+         * comparison is, so that the only thing the comparison decides
+         * is whether to add half to the base (which the JIT can turn
+         * into a conditional move).
+         * @param key
+         * @return The position of the key, or of the child where it would be
+         */
+        int lowerBound(long key) {
+            if (n <= LINEAR_SEARCH_MAX) {
+                int pos = 0;
+                for (int i = 0; i < n; i++)
+                    pos += keys[i] < key ? 1 : 0;
+                return pos;
+            }
+            // Invariant: the result is in [base, base + len]
+            int base = 0,
+                len = n;
+            while (len > 1) {
+                int half = len >>> 1;
+                base += keys[base + half - 1] < key ? half : 0;
+                len -= half;
+            }
+            return base + (keys[base] < key ? 1 : 0);
+        }
+
+        /**
+         * Move the pairs (and the children after them) in [pos, n)
+         * one position to the right to make room at pos.
+         */
+        void openAt(int pos) {
+            System.arraycopy(keys, pos, keys, pos + 1, n - pos);
+            System.arraycopy(vals, pos, vals, pos + 1, n - pos);
+            if (children != null)
+                System.arraycopy(children, pos + 1, children, pos + 2, n - pos);
+            n++;
+        }
+
+        /**
+         * Remove the pair at pos and the child just after it.
+         */
+        void closeAt(int pos) {
+            System.arraycopy(keys, pos + 1, keys, pos, n - pos - 1);
+            System.arraycopy(vals, pos + 1, vals, pos, n - pos - 1);
+            if (children != null) {
+                System.arraycopy(children, pos + 2, children, pos + 1, n - pos - 1);
+                children[n] = null;
+            }
+            n--;
+            vals[n] = null;
+        }
+    }
+
+    // ---- The B-Tree class itself begins here ----
+
+    /**
+     * The root of the tree, which may violate the
+     * B-tree properties if it is a leaf and not full.
+     */
+    private Node root;
+
+    /**
+     * To initialize a BTree, specify a minimum degree.
+     * The root is initially an empty leaf.
+     * @param minDegree
+     */
+    public LongBTreeMap(int minDegree) {
+        if (minDegree < 2)
+            throw new IllegalArgumentException("Minimum degree: " + minDegree);
+        this.minDegree = minDegree;
+        root = new Node(true);
+    }
+
+    /**
+     * Make a LongBTreeMap with a minimum degree chosen for 8-byte
+     * keys stored in the nodes (see NodeSizing).
+     */
+    public LongBTreeMap() {
+        this(NodeSizing.inlineKeysMinDegree(8));
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(long key, V val) {
+        // Taking the speculatively-insert approach, as in BTreeMap,
+        // we split a full node before we enter it. Handle a full
+        // root here.
+        if (root.isFull()) {
+            Node newRoot = new Node(false);
+            newRoot.children[0] = root;
+            root = newRoot;
+            splitChild(newRoot, 0);
+        }
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (pos < node.n && node.keys[pos] == key) {
+                node.vals[pos] = val;
+                return;
+            }
+            if (node.isLeaf()) {
+                node.openAt(pos);
+                node.keys[pos] = key;
+                node.vals[pos] = val;
+                return;
+            }
+            if (node.children[pos].isFull()) {
+                splitChild(node, pos);
+                if (key == node.keys[pos]) {
+                    node.vals[pos] = val;
+                    return;
+                }
+                if (key > node.keys[pos])
+                    pos++;
+            }
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(long key) {
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (pos < node.n && node.keys[pos] == key)
+                return node.vals[pos];
+            if (node.isLeaf())
+                return null;
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(long key) {
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (pos < node.n && node.keys[pos] == key)
+                return true;
+            if (node.isLeaf())
+                return false;
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(long key) {
+        delete(root, key);
+        // If the root lost its last key to a merge,
+        // its only child becomes the new root.
+        if (root.n == 0 && ! root.isLeaf())
+            root = root.children[0];
+    }
+
+    public void put(Long key, V val) { put(key.longValue(), val); }
+
+    public V get(Long key) { return get(key.longValue()); }
+
+    public boolean containsKey(Long key) { return containsKey(key.longValue()); }
+
+    public void remove(Long key) { remove(key.longValue()); }
+
+    // ---- Helpers for put and remove ----
+
+    /**
+     * Turn the full child at pos into two children, bringing
+     * its middle pair up into the parent, as in
+     * BTreeMap.Internal.splitChild().
+     * PRECONDITION: The parent is not full but the child is
+     */
+    private void splitChild(Node parent, int pos) {
+        assert ! parent.isFull() && parent.children[pos].isFull();
+        Node child = parent.children[pos],
+                sibling = new Node(child.isLeaf());
+        sibling.n = minDegree - 1;
+        System.arraycopy(child.keys, minDegree, sibling.keys, 0, sibling.n);
+        System.arraycopy(child.vals, minDegree, sibling.vals, 0, sibling.n);
+        if (! child.isLeaf()) {
+            System.arraycopy(child.children, minDegree, sibling.children, 0, minDegree);
+            for (int j = minDegree; j < child.children.length; j++)
+                child.children[j] = null;
+        }
+        parent.openAt(pos);
+        parent.keys[pos] = child.keys[minDegree - 1];
+        parent.vals[pos] = child.vals[minDegree - 1];
+        parent.children[pos + 1] = sibling;
+        for (int j = minDegree - 1; j < child.n; j++)
+            child.vals[j] = null;
+        child.n = minDegree - 1;
+    }
+
+    /**
+     * Delete the given key (and its val) from the subtree rooted
+     * at the given node, as in BTreeMap.BNode.delete().
+     * PRECONDITION: The node is the root or has at least
+     * minDegree keys (and hence can spare one)
+     */
+    private void delete(Node node, long key) {
+        while (true) {
+            assert node == root || node.n >= minDegree;
+            int pos = node.lowerBound(key);
+            boolean here = pos < node.n && node.keys[pos] == key;
+            if (node.isLeaf()) {
+                if (here)
+                    node.closeAt(pos);
+                return;
+            }
+            // Cases from CLRS pg 500-501
+            if (here) {
+                // 1a. The child before the key can spare a pair
+                if (node.children[pos].n >= minDegree) {
+                    Node leaf = node.children[pos];
+                    while (! leaf.isLeaf())
+                        leaf = leaf.children[fortifyChild(leaf, leaf.n)];
+                    node.keys[pos] = leaf.keys[leaf.n - 1];
+                    node.vals[pos] = leaf.vals[leaf.n - 1];
+                    leaf.closeAt(leaf.n - 1);
+                    return;
+                }
+                // 1b. The child after the key can spare a pair
+                if (node.children[pos + 1].n >= minDegree) {
+                    Node leaf = node.children[pos + 1];
+                    while (! leaf.isLeaf())
+                        leaf = leaf.children[fortifyChild(leaf, 0)];
+                    node.keys[pos] = leaf.keys[0];
+                    node.vals[pos] = leaf.vals[0];
+                    leaf.closeAt(0);
+                    return;
+                }
+                // 1c. Neither can, so merge them (with the key)
+                // and delete from the merged child
+                merge(node, pos);
+                node = node.children[pos];
+            }
+            // 2. If the key is anywhere, it's in the indicated child
+            else
+                node = node.children[fortifyChild(node, pos)];
+        }
+    }
+
+    /**
+     * Make sure the indicated child has at least minDegree keys
+     * before we descend into it, as in
+     * BTreeMap.Internal.fortifyChild().
+     * @return The position of the child to descend into now
+     */
+    private int fortifyChild(Node parent, int pos) {
+        Node child = parent.children[pos];
+        // 2a. Does that child have at least minDegree keys?
+        if (child.n >= minDegree)
+            return pos;
+        // 2bi. Does the sibling to the left have a pair to spare?
+        if (pos > 0 && parent.children[pos - 1].n >= minDegree) {
+            Node left = parent.children[pos - 1];
+            child.openAt(0);
+            if (! child.isLeaf()) {
+                child.children[1] = child.children[0];
+                child.children[0] = left.children[left.n];
+            }
+            child.keys[0] = parent.keys[pos - 1];
+            child.vals[0] = parent.vals[pos - 1];
+            parent.keys[pos - 1] = left.keys[left.n - 1];
+            parent.vals[pos - 1] = left.vals[left.n - 1];
+            left.closeAt(left.n - 1);
+            return pos;
+        }
+        // 2bii. Does the sibling to the right have a pair to spare?
+        if (pos < parent.n && parent.children[pos + 1].n >= minDegree) {
+            Node right = parent.children[pos + 1];
+            child.keys[child.n] = parent.keys[pos];
+            child.vals[child.n] = parent.vals[pos];
+            if (! child.isLeaf()) {
+                child.children[child.n + 1] = right.children[0];
+                System.arraycopy(right.children, 1, right.children, 0, right.n);
+                right.children[right.n] = null;
+            }
+            child.n++;
+            parent.keys[pos] = right.keys[0];
+            parent.vals[pos] = right.vals[0];
+            // shift the right sibling's pairs (its children are done)
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            System.arraycopy(right.vals, 1, right.vals, 0, right.n - 1);
+            right.n--;
+            right.vals[right.n] = null;
+            return pos;
+        }
+        // 2biii. Merge with the right sibling if there is one
+        if (pos < parent.n) {
+            merge(parent, pos);
+            return pos;
+        }
+        // 2biv. Otherwise merge into the left sibling
+        merge(parent, pos - 1);
+        return pos - 1;
+    }
+
+    /**
+     * Absorb the child at pos+1 and the pair between into the
+     * child at pos, as in BTreeMap's merge().
+     */
+    private void merge(Node parent, int pos) {
+        Node left = parent.children[pos],
+                right = parent.children[pos + 1];
+        assert left.n == minDegree - 1 && right.n == minDegree - 1;
+        left.keys[left.n] = parent.keys[pos];
+        left.vals[left.n] = parent.vals[pos];
+        System.arraycopy(right.keys, 0, left.keys, left.n + 1, right.n);
+        System.arraycopy(right.vals, 0, left.vals, left.n + 1, right.n);
+        if (! left.isLeaf())
+            System.arraycopy(right.children, 0, left.children, left.n + 1, right.n + 1);
+        left.n += right.n + 1;
+        parent.closeAt(pos);
+    }
+
+    // ---- Iteration ----
+
+    /**
+     * Simple class to act as a breadcrumb for our
+     * descent as we traverse the B-tree.
+     */
+    private class IteratorRecord {
+        Node node;
+        // the next key to return
+        int pos;
+        IteratorRecord(Node node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Iterate over the keys in this map in order. The iterator's
+     * nextLong() returns keys without boxing them.
+     * @return An iterator for the keys in this map.
+     */
+    public PrimitiveIterator.OfLong iterator() {
+        final Stack<IteratorRecord> breadcrumbs = new Stack<IteratorRecord>();
+        if (root.n > 0)
+            pushLeftmost(breadcrumbs, root);
+
+        return new PrimitiveIterator.OfLong() {
+
+            // Invariant: either the stack is empty (the iteration
+            // is done) or the record on top has pos < n, and the
+            // key at pos is the next one to return.
+
+            public boolean hasNext() {
+                return ! breadcrumbs.isEmpty();
+            }
+
+            public long nextLong() {
+                if (breadcrumbs.isEmpty())
+                    throw new NoSuchElementException();
+                IteratorRecord top = breadcrumbs.peek();
+                long toReturn = top.node.keys[top.pos];
+                top.pos++;
+                if (! top.node.isLeaf())
+                    pushLeftmost(breadcrumbs, top.node.children[top.pos]);
+                // pop the nodes that have no keys left to return
+                while (! breadcrumbs.isEmpty()
+                        && breadcrumbs.peek().pos >= breadcrumbs.peek().node.n)
+                    breadcrumbs.pop();
+                return toReturn;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Push breadcrumbs for the given node and its leftmost
+     * descendants, down to a leaf.
+     */
+    private void pushLeftmost(Stack<IteratorRecord> breadcrumbs, Node node) {
+        breadcrumbs.push(new IteratorRecord(node));
+        while (! node.isLeaf()) {
+            node = node.children[0];
+            breadcrumbs.push(new IteratorRecord(node));
+        }
+    }
+
+}
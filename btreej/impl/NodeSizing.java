@@ -0,0 +1,79 @@
+package impl;
+
+/**
+ * NodeSizing
+ *
+ * Default minimum degrees for the B-trees here, chosen from the
+ * sizes of cache lines and keys. Nodes that are too small make the
+ * tree taller, with a likely cache miss at every level; nodes that
+ * are too big make each search within a node touch more lines than
+ * it saves levels, and make splits and merges move more data.
+ *
+ * Where that balance falls depends on whether the keys are stored
+ * in the node itself (as in LongBTreeMap's long[] arrays) or are
+ * objects the node refers to (as in BTreeMap). With references,
+ * every key a search compares against is another object to fetch,
+ * so the node's array of references should stay small; keys stored
+ * in the node are compared in place and consecutive probes of a
+ * binary search share lines, so nodes can span more lines. The
+ * numbers of lines here come from DegreeExperiment: BTreeMap did
+ * best with minimum degrees of 16 to 32 for Integer, Long, and
+ * String keys, and LongBTreeMap with 32 or more.
+ */
+
+public class NodeSizing {
+
+    /**
+     * The size of a cache line, in bytes
+     */
+    public static final int CACHE_LINE = 64;
+
+    /**
+     * How many cache lines the keys of a node should span when
+     * the keys are stored in the node
+     */
+    private static final int INLINE_LINES = 8;
+
+    /**
+     * How many cache lines the key references of a node should
+     * span when the keys are objects
+     */
+    private static final int REFERENCE_LINES = 2;
+
+    /**
+     * The size of a (compressed) reference, in bytes
+     */
+    private static final int REFERENCE_BYTES = 4;
+
+    private NodeSizing() { }
+
+    /**
+     * The minimum degree for a node whose keys are stored in the
+     * node itself, such as in a primitive array.
+     * @param keyBytes The size of each key, in bytes
+     * @return A minimum degree, at least 2
+     */
+    public static int inlineKeysMinDegree(int keyBytes) {
+        if (keyBytes < 1)
+            throw new IllegalArgumentException("Key size: " + keyBytes);
+        return minDegreeFor(INLINE_LINES * CACHE_LINE / keyBytes);
+    }
+
+    /**
+     * The minimum degree for a node that holds references to
+     * its keys.
+     * @return A minimum degree, at least 2
+     */
+    public static int referenceKeysMinDegree() {
+        return minDegreeFor(REFERENCE_LINES * CACHE_LINE / REFERENCE_BYTES);
+    }
+
+    /**
+     * The minimum degree t whose full nodes (2t - 1 keys) come
+     * closest to the given number of keys, without going under 2.
+     */
+    private static int minDegreeFor(int keysPerNode) {
+        return Math.max(2, (keysPerNode + 1) / 2);
+    }
+
+}
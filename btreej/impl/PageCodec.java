@@ -0,0 +1,42 @@
+package impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageCodec
+ *
+ * Interface for function objects that write keys or values
+ * onto a page and read them back. Every item must take no more
+ * than maxSize() bytes, so that a node of a given capacity always
+ * fits in one fixed-size page.
+ *
+ * @param <T> The type of item being written
+ */
+
+public interface PageCodec<T> {
+
+    /**
+     * The most bytes that write() will ever use for one item.
+     * @return An upper bound on the encoded size of an item
+     */
+    int maxSize();
+
+    /**
+     * Write the item at the buffer's current position, advancing
+     * the position.
+     * @param page The buffer to write to
+     * @param item The item to write (never null)
+     * @throws IllegalArgumentException if the item is too big for
+     * this codec
+     */
+    void write(ByteBuffer page, T item);
+
+    /**
+     * Read an item at the buffer's current position, advancing
+     * the position.
+     * @param page The buffer to read from
+     * @return The item read
+     */
+    T read(ByteBuffer page);
+
+}
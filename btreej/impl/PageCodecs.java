@@ -0,0 +1,80 @@
+package impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * PageCodecs
+ *
+ * Class to contain static factory methods for the common
+ * page codecs.
+ */
+
+public class PageCodecs {
+
+    /**
+     * Charset for strings
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Make a codec for integers, four bytes each.
+     * @return A codec
+     */
+    public static PageCodec<Integer> forIntegers() {
+        return new PageCodec<Integer>() {
+            public int maxSize() { return 4; }
+            public void write(ByteBuffer page, Integer item) {
+                page.putInt(item);
+            }
+            public Integer read(ByteBuffer page) {
+                return page.getInt();
+            }
+        };
+    }
+
+    /**
+     * Make a codec for longs, eight bytes each.
+     * @return A codec
+     */
+    public static PageCodec<Long> forLongs() {
+        return new PageCodec<Long>() {
+            public int maxSize() { return 8; }
+            public void write(ByteBuffer page, Long item) {
+                page.putLong(item);
+            }
+            public Long read(ByteBuffer page) {
+                return page.getLong();
+            }
+        };
+    }
+
+    /**
+     * Make a codec for strings of bounded length, written as a
+     * two-byte length followed by UTF-8. A char takes at most three
+     * bytes in UTF-8 (a surrogate pair takes four for two chars).
+     * @param maxChars The greatest number of chars a string may have
+     * @return A codec
+     */
+    public static PageCodec<String> forStrings(final int maxChars) {
+        if (maxChars < 0 || 3 * maxChars > Short.MAX_VALUE)
+            throw new IllegalArgumentException("maxChars: " + maxChars);
+        return new PageCodec<String>() {
+            public int maxSize() { return 2 + 3 * maxChars; }
+            public void write(ByteBuffer page, String item) {
+                if (item.length() > maxChars)
+                    throw new IllegalArgumentException("String longer than "
+                            + maxChars + " chars: " + item);
+                byte[] bytes = item.getBytes(UTF8);
+                page.putShort((short) bytes.length);
+                page.put(bytes);
+            }
+            public String read(ByteBuffer page) {
+                byte[] bytes = new byte[page.getShort()];
+                page.get(bytes);
+                return new String(bytes, UTF8);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,376 @@
+package impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PageFile
+ *
+ * A file of fixed-size pages, read and written through a
+ * FileChannel. Page 0 is a header recording the page size,
+ * the number of pages, the head of a list of freed pages
+ * (threaded through the freed pages themselves), and a few
+ * slots that the client can use for its own bookkeeping
+ * (such as where the root of a tree is).
+ *
+ * Writes can be staged: after stageWrites(), every write (including
+ * the header's, at sync()) is held in memory instead of going to the
+ * file, and reads see the staged pages, until applyStaged(). This
+ * lets a write-ahead log record the page images first, so that the
+ * file only ever changes in ways the log can redo.
+ */
+
+public class PageFile implements Closeable {
+
+    /**
+     * Marks a file as one of ours
+     */
+    private static final int MAGIC = 0x50474631;
+
+    /**
+     * The number of client slots in the header
+     */
+    public static final int HEADER_SLOTS = 8;
+
+    /**
+     * Bytes used by the header: magic, page size, page count,
+     * free list head, and the client slots.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 * HEADER_SLOTS;
+
+    /**
+     * Indicates the end of the free list
+     */
+    private static final long NO_PAGE = -1;
+
+    /**
+     * The channel to the file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The size of every page, in bytes
+     */
+    private final int pageSize;
+
+    /**
+     * The number of pages in the file, including the header
+     */
+    private long pageCount;
+
+    /**
+     * The most recently freed page, or NO_PAGE
+     */
+    private long freeHead;
+
+    /**
+     * The client slots in the header
+     */
+    private final long[] slots;
+
+    /**
+     * Was the file created (rather than reopened) by this object?
+     */
+    private final boolean created;
+
+    /**
+     * Images of the pages written since staging began or was last
+     * applied, by page id (0 for the header); null if not staging
+     */
+    private TreeMap<Long, byte[]> staged;
+
+    /**
+     * Open the page file at the given path, creating it if it
+     * does not exist.
+     * @param path Where the file is
+     * @param pageSize The size of a page; must match the size
+     * the file was created with, if it already exists
+     * @throws IOException If the file can't be opened or isn't
+     * a page file with this page size
+     */
+    public PageFile(Path path, int pageSize) throws IOException {
+        if (pageSize < HEADER_SIZE)
+            throw new IllegalArgumentException("Page size too small: " + pageSize);
+        this.pageSize = pageSize;
+        this.slots = new long[HEADER_SLOTS];
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        created = channel.size() == 0;
+        if (created) {
+            pageCount = 1;
+            freeHead = NO_PAGE;
+            writeHeader();
+        }
+        else
+            readHeader();
+    }
+
+    /**
+     * Was this file newly created when opened?
+     * @return true if there were no pages before, false otherwise
+     */
+    public boolean isNew() {
+        return created;
+    }
+
+    /**
+     * The size of every page in this file
+     * @return The page size, in bytes
+     */
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * The number of pages, including the header and freed pages
+     * @return The page count
+     */
+    public long pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Retrieve a client slot from the header.
+     * @param i Which slot, in [0, HEADER_SLOTS)
+     * @return The value last stored there
+     */
+    public long getSlot(int i) {
+        return slots[i];
+    }
+
+    /**
+     * Store a value in a client slot of the header. This
+     * reaches the disk at the next sync().
+     * @param i Which slot, in [0, HEADER_SLOTS)
+     * @param value The value to store
+     */
+    public void setSlot(int i, long value) {
+        slots[i] = value;
+    }
+
+    /**
+     * Read a page into the given buffer, which is cleared and
+     * left with position 0 and limit pageSize.
+     * @param pageId The page to read; must have been allocated
+     * @param dst A buffer at least pageSize in capacity
+     */
+    public void readPage(long pageId, ByteBuffer dst) throws IOException {
+        checkPage(pageId);
+        dst.clear().limit(pageSize);
+        if (staged != null && staged.containsKey(pageId)) {
+            dst.put(staged.get(pageId)).flip();
+            return;
+        }
+        long offset = pageId * pageSize;
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, offset + dst.position());
+            if (read < 0) {
+                // a page allocated but never written reads as zeroes
+                while (dst.hasRemaining())
+                    dst.put((byte) 0);
+            }
+        }
+        dst.flip();
+    }
+
+    /**
+     * Write a page from the given buffer, from position 0 up
+     * to pageSize.
+     * @param pageId The page to write; must have been allocated
+     * @param src A buffer at least pageSize in capacity
+     */
+    public void writePage(long pageId, ByteBuffer src) throws IOException {
+        checkPage(pageId);
+        src.position(0).limit(pageSize);
+        if (staged != null) {
+            byte[] image = new byte[pageSize];
+            src.get(image);
+            staged.put(pageId, image);
+            return;
+        }
+        long offset = pageId * pageSize;
+        while (src.hasRemaining())
+            channel.write(src, offset + src.position());
+    }
+
+    /**
+     * Find a page for new data, reusing a freed page if there
+     * is one.
+     * @return The id of the page
+     */
+    public long allocatePage() throws IOException {
+        if (freeHead == NO_PAGE)
+            return pageCount++;
+        long toReturn = freeHead;
+        if (staged != null && staged.containsKey(toReturn)) {
+            freeHead = ByteBuffer.wrap(staged.get(toReturn)).getLong();
+            return toReturn;
+        }
+        ByteBuffer link = ByteBuffer.allocate(8);
+        long offset = toReturn * pageSize;
+        while (link.hasRemaining())
+            if (channel.read(link, offset + link.position()) < 0)
+                throw new IOException("Free list runs off the end of the file");
+        link.flip();
+        freeHead = link.getLong();
+        return toReturn;
+    }
+
+    /**
+     * Return a page to the free list. The caller must not have
+     * any cached copy of the page that might be written later.
+     * @param pageId The page to free
+     */
+    public void freePage(long pageId) throws IOException {
+        checkPage(pageId);
+        if (staged != null) {
+            byte[] image = new byte[pageSize];
+            ByteBuffer.wrap(image).putLong(freeHead);
+            staged.put(pageId, image);
+            freeHead = pageId;
+            return;
+        }
+        ByteBuffer link = ByteBuffer.allocate(8);
+        link.putLong(freeHead).flip();
+        long offset = pageId * pageSize;
+        while (link.hasRemaining())
+            channel.write(link, offset + link.position());
+        freeHead = pageId;
+    }
+
+    /**
+     * Write the header and force everything to the disk.
+     * (If staging, this only stages the header.)
+     */
+    public void sync() throws IOException {
+        if (staged != null) {
+            byte[] image = new byte[pageSize];
+            ByteBuffer.wrap(image).put(headerImage());
+            staged.put(0L, image);
+            return;
+        }
+        writeHeader();
+        channel.force(true);
+    }
+
+    /**
+     * Sync and close the file. If staging, the staged pages are
+     * dropped, not written.
+     */
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            if (staged == null)
+                sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Begin holding writes in memory (see the class comment).
+     */
+    public void stageWrites() {
+        if (staged == null)
+            staged = new TreeMap<Long, byte[]>();
+    }
+
+    /**
+     * The pages written since staging began or was last applied.
+     * @return Page images by page id, 0 being the header; not to
+     * be modified
+     */
+    public Map<Long, byte[]> stagedPages() {
+        return staged == null ? Collections.<Long, byte[]>emptyMap()
+                : Collections.unmodifiableMap(staged);
+    }
+
+    /**
+     * Write the staged pages to the file and force it to the disk.
+     * Staging continues afterwards, with no pages staged.
+     */
+    public void applyStaged() throws IOException {
+        if (staged == null)
+            return;
+        writeImages(channel, staged);
+        channel.force(true);
+        staged.clear();
+    }
+
+    /**
+     * Write page images straight into the page file at the given
+     * path (as when redoing them after a crash) and force them to
+     * the disk. Every image must be one page long.
+     * @param path Where the file is
+     * @param images Page images by page id, 0 being the header
+     */
+    public static void restorePages(Path path, Map<Long, byte[]> images)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            writeImages(channel, images);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void writeImages(FileChannel channel, Map<Long, byte[]> images)
+            throws IOException {
+        for (Map.Entry<Long, byte[]> image : images.entrySet()) {
+            ByteBuffer src = ByteBuffer.wrap(image.getValue());
+            long offset = image.getKey() * image.getValue().length;
+            while (src.hasRemaining())
+                channel.write(src, offset + src.position());
+        }
+    }
+
+    /**
+     * Make sure a page id refers to a data page.
+     * @param pageId The id to check
+     */
+    private void checkPage(long pageId) {
+        if (pageId < 1 || pageId >= pageCount)
+            throw new IndexOutOfBoundsException("Page " + pageId);
+    }
+
+    private ByteBuffer headerImage() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(pageSize).putLong(pageCount).putLong(freeHead);
+        for (int i = 0; i < slots.length; i++)
+            header.putLong(slots[i]);
+        header.flip();
+        return header;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = headerImage();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("Truncated page file header");
+        header.flip();
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a page file");
+        int storedSize = header.getInt();
+        if (storedSize != pageSize)
+            throw new IOException("Page size mismatch: file has " + storedSize
+                    + ", expected " + pageSize);
+        pageCount = header.getLong();
+        freeHead = header.getLong();
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = header.getLong();
+    }
+
+}
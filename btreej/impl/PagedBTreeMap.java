@@ -0,0 +1,900 @@
+package impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Stack;
+
+import adt.Map;
+
+/**
+ * PagedBTreeMap
+ *
+ * A B-tree map that lives in a file rather than on the heap, so it
+ * can grow much larger than memory. The algorithms are the same as
+ * in BTreeMap (CLRS, chapter 18), but each node is serialized to one
+ * fixed-size page of a PageFile, and children are referred to by
+ * page id rather than by reference. Nodes are read through a
+ * BufferPool, which keeps the recently used ones decoded in memory
+ * and writes back the ones that have been modified.
+ *
+ * Every node touched during an operation stays pinned in the pool
+ * until the operation is over, so a node can't be evicted (and a
+ * modification lost) while we still hold a reference to it. The
+ * iterator holds page ids, not nodes, between calls to next().
+ *
+ * Changes reach the file when pages are evicted, and all of them
+ * (including the location of the root) at flush() or close().
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+
+public class PagedBTreeMap<K extends Comparable<K>, V> implements Map<K, V>, Closeable {
+
+    /**
+     * Header slot holding the page id of the root
+     */
+    private static final int ROOT_SLOT = 0;
+
+    /**
+     * Header slot holding the minimum degree the file was made with
+     */
+    private static final int DEGREE_SLOT = 1;
+
+    /**
+     * Page kinds, the first byte on every node's page
+     */
+    private static final byte LEAF = 0, INTERNAL = 1;
+
+    /**
+     * All internal nodes (except the root in special
+     * underflow cases) must have at least this many
+     * children--and no more than twice this many children.
+     * This is equivalent to t in CLRS.
+     */
+    private final int minDegree;
+
+    /**
+     * For writing keys to pages and reading them back
+     */
+    private final PageCodec<K> keyCodec;
+
+    /**
+     * For writing values to pages and reading them back
+     */
+    private final PageCodec<V> valCodec;
+
+    /**
+     * The file holding the nodes
+     */
+    private final PageFile file;
+
+    /**
+     * The cache of decoded nodes
+     */
+    private final BufferPool<PNode> pool;
+
+    /**
+     * The page id of the root
+     */
+    private long rootId;
+
+    /**
+     * The pages pinned during the current operation
+     */
+    private final ArrayList<Long> pinned;
+
+    /**
+     * The pages of nodes that were merged away during the current
+     * operation, to be freed when it is over
+     */
+    private final ArrayList<Long> freed;
+
+    /**
+     * Scratch space for making sure keys and values fit their codecs
+     * before we modify anything
+     */
+    private final ByteBuffer check;
+
+    // --------- Classes for nodes in the tree --------------
+
+    /**
+     * Things common between leaves and internals
+     */
+    abstract class PNode {
+
+        /**
+         * The page this node lives on
+         */
+        final long pageId;
+
+        /**
+         * Array of keys, partially filled
+         */
+        K[] keys;
+
+        /**
+         * Array of vals, partially filled
+         */
+        V[] vals;
+
+        /**
+         * The number of pairs currently stored;
+         * this will also be one less than the number of
+         * children in internal nodes.
+         */
+        int n;
+
+        @SuppressWarnings("unchecked")
+        PNode(long pageId) {
+            this.pageId = pageId;
+            keys = (K[]) new Comparable[2 * minDegree - 1];
+            vals = (V[]) new Object[2 * minDegree - 1];
+            n = 0;
+        }
+
+        boolean isFull() { return n == keys.length;  }
+
+        /**
+         * Note that this node has been modified, so its page
+         * must be written back.
+         */
+        void touch() {
+            pool.markDirty(pageId);
+        }
+
+        /**
+         * In the given node, find the location (index) of the key
+         * or where it would go (the index of smallest greater than
+         * or equal to key). See BTreeMap.BNode.binarySearchKeys().
+         * @param key
+         * @return An index in the range [0, n]
+         */
+        int binarySearchKeys(K key) {
+            if (n == 0)
+                return 0;
+            int start = 0,
+                stop = n,
+                mid = n / 2;
+            int comparison = keys[mid].compareTo(key);
+            while (comparison != 0 && start != mid) {
+                if (comparison < 0)
+                    start = mid;
+                else
+                    stop = mid;
+                mid = (start + stop) / 2;
+                comparison = keys[mid].compareTo(key);
+            }
+            if (comparison < 0)
+                return mid + 1;
+            else
+                return mid;
+        }
+
+        /**
+         * Splits this node into two nodes. Valid only if
+         * this node is full.
+         * @return The new sibling to the right.
+         */
+        PNode split() {
+            assert isFull();
+            PNode sibling = makeSibling();
+            for (int j = 0; j < sibling.n; j++) {
+                sibling.keys[j] = keys[j+minDegree];
+                sibling.vals[j] = vals[j+minDegree];
+                keys[j+minDegree] = null;
+                vals[j+minDegree] = null;
+            }
+            n = minDegree - 1;
+            touch();
+            return sibling;
+        }
+
+        /**
+         * Remove the key/val at the given position, shifting
+         * the later ones over.
+         * @param pos The position to remove
+         * @return The association removed
+         */
+        Association removeKeyAt(int pos) {
+            Association toReturn = new Association(keys[pos], vals[pos]);
+            for (int i = pos; i < n - 1; i++) {
+                keys[i] = keys[i+1];
+                vals[i] = vals[i+1];
+            }
+            n--;
+            keys[n] = null;
+            vals[n] = null;
+            touch();
+            return toReturn;
+        }
+
+        /**
+         * Make room for a key/val at the given position, shifting
+         * the later ones over.
+         * @param pos The position to insert at
+         * @param key
+         * @param val
+         */
+        void insertKeyAt(int pos, K key, V val) {
+            for (int i = n; i > pos; i--) {
+                keys[i] = keys[i-1];
+                vals[i] = vals[i-1];
+            }
+            keys[pos] = key;
+            vals[pos] = val;
+            n++;
+            touch();
+        }
+
+        abstract Found search(K key);
+        abstract PNode makeSibling();
+        abstract void insertNonFull(K key, V val);
+        abstract boolean canDescend(int i);
+        abstract long childId(int i);
+        abstract void delete(K key);
+        abstract Association deletePred();
+        abstract Association deleteSucc();
+        abstract void merge(PNode sibling, K key, V val);
+        abstract Association shareRight(PNode sibling, K key, V val);
+        abstract Association shareLeft(PNode sibling, K key, V val);
+
+        /**
+         * Write this node onto its page.
+         */
+        void encode(ByteBuffer page) {
+            page.put(this instanceof PagedBTreeMap.Leaf ? LEAF : INTERNAL);
+            page.putInt(n);
+            for (int i = 0; i < n; i++) {
+                keyCodec.write(page, keys[i]);
+                if (vals[i] == null)
+                    page.put((byte) 0);
+                else {
+                    page.put((byte) 1);
+                    valCodec.write(page, vals[i]);
+                }
+            }
+        }
+
+        /**
+         * Read the key/vals of this node from its page.
+         */
+        void decode(ByteBuffer page) {
+            n = page.getInt();
+            for (int i = 0; i < n; i++) {
+                keys[i] = keyCodec.read(page);
+                vals[i] = page.get() == 0 ? null : valCodec.read(page);
+            }
+        }
+    }
+
+    /**
+     * Leaves have no extra attributes, but have different implementations
+     * for the operations.
+     */
+    class Leaf extends PNode {
+
+        Leaf(long pageId) {
+            super(pageId);
+        }
+
+        Found search(K key) {
+            int pos = binarySearchKeys(key);
+            return new Found(this, pos,
+                    pos < n && keys[pos].compareTo(key) == 0);
+        }
+
+        PNode makeSibling() {
+            PNode sibling = newLeaf();
+            sibling.n = minDegree - 1;
+            return sibling;
+        }
+
+        void insertNonFull(K key, V val) {
+            assert ! isFull();
+            insertKeyAt(binarySearchKeys(key), key, val);
+        }
+
+        boolean canDescend(int i) {
+            return false;
+        }
+
+        long childId(int i) {
+            throw new UnsupportedOperationException();
+        }
+
+        void delete(K key) {
+            assert pageId == rootId || n >= minDegree;
+            int pos = binarySearchKeys(key);
+            if (pos < n && keys[pos].compareTo(key) == 0)
+                removeKeyAt(pos);
+        }
+
+        Association deletePred() {
+            return removeKeyAt(n - 1);
+        }
+
+        Association deleteSucc() {
+            return removeKeyAt(0);
+        }
+
+        void merge(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n == minDegree - 1;
+            keys[n] = key;
+            vals[n] = val;
+            n++;
+            for (int i = 0; i < sibling.n; i++) {
+                keys[i + n] = sibling.keys[i];
+                vals[i + n] = sibling.vals[i];
+            }
+            n += sibling.n;
+            touch();
+            freed.add(sibling.pageId);
+        }
+
+        Association shareRight(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n >= minDegree;
+            insertKeyAt(n, key, val);
+            return sibling.removeKeyAt(0);
+        }
+
+        Association shareLeft(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n >= minDegree;
+            insertKeyAt(0, key, val);
+            return sibling.removeKeyAt(sibling.n - 1);
+        }
+    }
+
+    /**
+     * Internals differ from leaves in that they also have children,
+     * which are referred to by page id.
+     */
+    class Internal extends PNode {
+
+        /**
+         * Page ids of the children, partially filled (one more
+         * than keys and vals).
+         */
+        long[] children;
+
+        Internal(long pageId) {
+            super(pageId);
+            children = new long[2 * minDegree];
+        }
+
+        /**
+         * Fetch (and pin) the child at the given position.
+         */
+        PNode child(int i) {
+            return fetch(children[i]);
+        }
+
+        Found search(K key) {
+            int pos = binarySearchKeys(key);
+            if (pos < n && keys[pos].compareTo(key) == 0)
+                return new Found(this, pos, true);
+            else
+                return child(pos).search(key);
+        }
+
+        PNode makeSibling() {
+            Internal sibling = newInternal();
+            sibling.n = minDegree - 1;
+            for (int j = 0; j < sibling.n + 1; j++)
+                sibling.children[j] = children[j+minDegree];
+            return sibling;
+        }
+
+        void insertNonFull(K key, V val) {
+            assert ! isFull();
+            int i = binarySearchKeys(key);
+            if (child(i).isFull()) {
+                splitChild(i);
+                if (key.compareTo(keys[i]) > 0)
+                    i++;
+            }
+            child(i).insertNonFull(key, val);
+        }
+
+        /**
+         * Turn a child node into two new children.
+         * PRECONDITION: This node is not full but the
+         * indicated child is full
+         * @param pos The position of the child to split.
+         */
+        void splitChild(int pos) {
+            PNode child = child(pos);
+            assert ! isFull() && child.isFull();
+            K upKey = child.keys[minDegree - 1];
+            V upVal = child.vals[minDegree - 1];
+            PNode sibling = child.split();
+            child.keys[minDegree - 1] = null;
+            child.vals[minDegree - 1] = null;
+            for (int j = n; j >= pos+1; j--)
+                children[j+1] = children[j];
+            children[pos+1] = sibling.pageId;
+            insertKeyAt(pos, upKey, upVal);
+        }
+
+        boolean canDescend(int i) {
+            return i >= 0 && i <= n;
+        }
+
+        long childId(int i) {
+            if (! canDescend(i))
+                throw new IndexOutOfBoundsException();
+            return children[i];
+        }
+
+        /**
+         * Delete the given key (and its val) from the subtree
+         * rooted here, following the cases in CLRS pg 500-501;
+         * see BTreeMap.Internal.delete().
+         * @param key
+         */
+        void delete(K key) {
+            assert pageId == rootId || n >= minDegree;
+            int pos = binarySearchKeys(key);
+            if (pos < n && keys[pos].compareTo(key) == 0) {
+                PNode before = child(pos),
+                        after = child(pos+1);
+                Association replacement;
+                if (before.n >= minDegree)
+                    replacement = before.deletePred();
+                else if (after.n >= minDegree)
+                    replacement = after.deleteSucc();
+                else {
+                    before.merge(after, keys[pos], vals[pos]);
+                    removeAt(pos);
+                    before.delete(key);
+                    return;
+                }
+                keys[pos] = replacement.key;
+                vals[pos] = replacement.val;
+                touch();
+            }
+            else
+                child(fortifyChild(pos)).delete(key);
+        }
+
+        /**
+         * Make sure the indicated child has at least minDegree
+         * keys before we descend into it.
+         * See BTreeMap.Internal.fortifyChild().
+         * @param pos The position of the child we want to descend into
+         * @return The position of the child to descend into now
+         */
+        int fortifyChild(int pos) {
+            PNode child = child(pos);
+            if (child.n >= minDegree)
+                return pos;
+            if (pos > 0) {
+                PNode left = child(pos-1);
+                if (left.n >= minDegree) {
+                    Association up = child.shareLeft(left, keys[pos-1], vals[pos-1]);
+                    keys[pos-1] = up.key;
+                    vals[pos-1] = up.val;
+                    touch();
+                    return pos;
+                }
+            }
+            if (pos < n) {
+                PNode right = child(pos+1);
+                if (right.n >= minDegree) {
+                    Association up = child.shareRight(right, keys[pos], vals[pos]);
+                    keys[pos] = up.key;
+                    vals[pos] = up.val;
+                }
+                else {
+                    child.merge(right, keys[pos], vals[pos]);
+                    removeAt(pos);
+                }
+                touch();
+                return pos;
+            }
+            assert pos > 0;
+            child(pos-1).merge(child, keys[pos-1], vals[pos-1]);
+            removeAt(pos-1);
+            return pos-1;
+        }
+
+        /**
+         * Remove the key/val at the given position and the child
+         * just after it.
+         * @param pos The position of the key to remove
+         */
+        void removeAt(int pos) {
+            for (int i = pos + 1; i < n; i++)
+                children[i] = children[i+1];
+            removeKeyAt(pos);
+        }
+
+        Association deletePred() {
+            return child(fortifyChild(n)).deletePred();
+        }
+
+        Association deleteSucc() {
+            return child(fortifyChild(0)).deleteSucc();
+        }
+
+        void merge(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n == minDegree - 1;
+            Internal sib = (Internal) sibling;
+            keys[n] = key;
+            vals[n] = val;
+            n++;
+            for (int i = 0; i < sibling.n; i++) {
+                children[i + n] = sib.children[i];
+                keys[i + n] = sibling.keys[i];
+                vals[i + n] = sibling.vals[i];
+            }
+            children[sibling.n + n] = sib.children[sibling.n];
+            n += sibling.n;
+            touch();
+            freed.add(sibling.pageId);
+        }
+
+        Association shareRight(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n >= minDegree;
+            Internal sib = (Internal) sibling;
+            children[n+1] = sib.children[0];
+            insertKeyAt(n, key, val);
+            for (int i = 0; i < sibling.n; i++)
+                sib.children[i] = sib.children[i+1];
+            return sibling.removeKeyAt(0);
+        }
+
+        Association shareLeft(PNode sibling, K key, V val) {
+            assert n == minDegree - 1 && sibling.n >= minDegree;
+            Internal sib = (Internal) sibling;
+            for (int i = n + 1; i > 0; i--)
+                children[i] = children[i-1];
+            children[0] = sib.children[sibling.n];
+            insertKeyAt(0, key, val);
+            return sibling.removeKeyAt(sibling.n - 1);
+        }
+
+        void encode(ByteBuffer page) {
+            super.encode(page);
+            for (int i = 0; i <= n; i++)
+                page.putLong(children[i]);
+        }
+
+        void decode(ByteBuffer page) {
+            super.decode(page);
+            for (int i = 0; i <= n; i++)
+                children[i] = page.getLong();
+        }
+    }
+
+    // ---- The B-Tree class itself begins here ----
+
+    /**
+     * Open (or create) a paged B-tree map in the given file.
+     * @param path Where the file is
+     * @param minDegree The minimum degree; this must match the one
+     * the file was made with, if it already exists
+     * @param keyCodec How to write keys
+     * @param valCodec How to write values
+     * @param poolPages The number of nodes to keep in memory
+     * @throws IOException If the file can't be opened or was made
+     * for a tree of different shape
+     */
+    public PagedBTreeMap(Path path, int minDegree, PageCodec<K> keyCodec,
+            PageCodec<V> valCodec, int poolPages) throws IOException {
+        if (minDegree < 2)
+            throw new IllegalArgumentException("Minimum degree: " + minDegree);
+        this.minDegree = minDegree;
+        this.keyCodec = keyCodec;
+        this.valCodec = valCodec;
+        pinned = new ArrayList<Long>();
+        freed = new ArrayList<Long>();
+        check = ByteBuffer.allocate(Math.max(keyCodec.maxSize(), valCodec.maxSize()));
+        file = new PageFile(path, pageSize(minDegree, keyCodec, valCodec));
+        pool = new BufferPool<PNode>(file, new BufferPool.PageFormat<PNode>() {
+            public PNode decode(long pageId, ByteBuffer page) {
+                PNode node = page.get() == LEAF ? new Leaf(pageId) : new Internal(pageId);
+                node.decode(page);
+                return node;
+            }
+            public void encode(PNode item, ByteBuffer page) {
+                item.encode(page);
+            }
+        }, poolPages);
+        if (file.isNew()) {
+            rootId = newLeaf().pageId;
+            release();
+            file.setSlot(DEGREE_SLOT, minDegree);
+            flush();
+        }
+        else {
+            if (file.getSlot(DEGREE_SLOT) != minDegree)
+                throw new IOException("File was made with minimum degree "
+                        + file.getSlot(DEGREE_SLOT));
+            rootId = file.getSlot(ROOT_SLOT);
+        }
+    }
+
+    /**
+     * The size of a page big enough to hold any node.
+     * @return The page size, in bytes
+     */
+    private static int pageSize(int minDegree, PageCodec<?> keyCodec,
+            PageCodec<?> valCodec) {
+        int entry = keyCodec.maxSize() + 1 + valCodec.maxSize();
+        long size = 1 + 4 + (2L * minDegree - 1) * entry + 2L * minDegree * 8;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Nodes too big for a page");
+        return Math.max((int) size, 128);
+    }
+
+    /**
+     * Retrieve a node, pinning it until the end of the operation.
+     */
+    private PNode fetch(long pageId) {
+        PNode node = pool.pin(pageId);
+        pinned.add(pageId);
+        return node;
+    }
+
+    /**
+     * Make a new leaf on a fresh page, pinned until the end of
+     * the operation.
+     */
+    private Leaf newLeaf() {
+        Leaf leaf = (Leaf) pool.allocate(new BufferPool.Maker<PNode>() {
+            public PNode make(long pageId) { return new Leaf(pageId); }
+        });
+        pinned.add(leaf.pageId);
+        return leaf;
+    }
+
+    /**
+     * Make a new internal node on a fresh page, pinned until the
+     * end of the operation.
+     */
+    private Internal newInternal() {
+        Internal internal = (Internal) pool.allocate(new BufferPool.Maker<PNode>() {
+            public PNode make(long pageId) { return new Internal(pageId); }
+        });
+        pinned.add(internal.pageId);
+        return internal;
+    }
+
+    /**
+     * End an operation: unpin everything it pinned and free the
+     * pages of nodes that were merged away.
+     */
+    private void release() {
+        for (int i = 0; i < pinned.size(); i++)
+            pool.unpin(pinned.get(i));
+        pinned.clear();
+        for (int i = 0; i < freed.size(); i++)
+            pool.free(freed.get(i));
+        freed.clear();
+    }
+
+    /**
+     * Simple class to encapsulate the result of a search
+     * for a key: Was it found, and, if so, where is it?
+     */
+    private class Found {
+        PNode location;  // which node is it in?
+        int index;       // where is it in that node?
+        boolean found;   // wait, was it found at all?
+        public Found(PNode location, int index, boolean found) {
+            this.location = location;
+            this.index = index;
+            this.found = found;
+        }
+    }
+
+    /**
+     * Simple class to encapsulate a key and its value in the
+     * map.
+     */
+    private class Association {
+        K key;
+        V val;
+        Association(K key, V val) {
+            this.key = key;
+            this.val = val;
+        }
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     * @throws IllegalArgumentException If the key or value is too
+     * big for its codec
+     */
+    public void put(K key, V val) {
+        check.clear();
+        keyCodec.write(check, key);
+        if (val != null) {
+            check.clear();
+            valCodec.write(check, val);
+        }
+        try {
+            PNode root = fetch(rootId);
+            Found result = root.search(key);
+            if (result.found) {
+                result.location.vals[result.index] = val;
+                result.location.touch();
+            }
+            else {
+                if (root.isFull()) {
+                    Internal newRoot = newInternal();
+                    newRoot.children[0] = rootId;
+                    rootId = newRoot.pageId;
+                    newRoot.splitChild(0);
+                    root = newRoot;
+                }
+                root.insertNonFull(key, val);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        try {
+            Found result = fetch(rootId).search(key);
+            if (result.found)
+                return result.location.vals[result.index];
+            else
+                return null;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        try {
+            return fetch(rootId).search(key).found;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        try {
+            PNode root = fetch(rootId);
+            root.delete(key);
+            // If the root lost its last key to a merge,
+            // its only child becomes the new root.
+            if (root.n == 0 && root.canDescend(0)) {
+                freed.add(rootId);
+                rootId = root.childId(0);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Write every modified node and the location of the root to
+     * the file, and force it to the disk.
+     */
+    public void flush() throws IOException {
+        pool.flush();
+        file.setSlot(ROOT_SLOT, rootId);
+        file.sync();
+    }
+
+    /**
+     * The file holding the nodes, for a write-ahead log to stage
+     * and apply its writes (see LoggedBTreeMap)
+     */
+    PageFile file() {
+        return file;
+    }
+
+    /**
+     * Flush and close the file. The map can't be used afterwards.
+     */
+    public void close() throws IOException {
+        flush();
+        file.close();
+    }
+
+    /**
+     * Simple class to act as a breadcrumb for our
+     * descent as we traverse the B-tree. Since nodes may
+     * be evicted between calls to next(), this keeps the
+     * page id rather than the node.
+     */
+    private class IteratorRecord {
+        long pageId;
+        // we have visited the children up through (including)
+        // pos, so pos is the next key to return
+        int pos;
+        IteratorRecord(long pageId) {
+            this.pageId = pageId;
+            pos = 0;
+        }
+    }
+
+    /**
+     * Iterate over the keys in this map in order.
+     * @return An iterator for the keys in this map.
+     */
+    public Iterator<K> iterator() {
+        final Stack<IteratorRecord> breadcrumbs = new Stack<IteratorRecord>();
+        try {
+            if (fetch(rootId).n > 0)
+                pushLeftmost(breadcrumbs, rootId);
+        } finally {
+            release();
+        }
+
+        return new Iterator<K>() {
+
+            // Invariant: either the stack is empty (the iteration
+            // is done) or the record on top has pos < n, and the
+            // key at pos is the next one to return.
+
+            public boolean hasNext() {
+                return ! breadcrumbs.isEmpty();
+            }
+
+            public K next() {
+                if (breadcrumbs.isEmpty())
+                    throw new NoSuchElementException();
+                try {
+                    IteratorRecord top = breadcrumbs.peek();
+                    PNode node = fetch(top.pageId);
+                    K toReturn = node.keys[top.pos];
+                    top.pos++;
+                    if (node.canDescend(top.pos))
+                        pushLeftmost(breadcrumbs, node.childId(top.pos));
+                    while (! breadcrumbs.isEmpty()
+                            && breadcrumbs.peek().pos >= fetch(breadcrumbs.peek().pageId).n)
+                        breadcrumbs.pop();
+                    return toReturn;
+                } finally {
+                    release();
+                }
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Push breadcrumbs for the given node and its leftmost
+     * descendants, down to a leaf.
+     */
+    private void pushLeftmost(Stack<IteratorRecord> breadcrumbs, long pageId) {
+        breadcrumbs.push(new IteratorRecord(pageId));
+        PNode node = fetch(pageId);
+        while (node.canDescend(0)) {
+            pageId = node.childId(0);
+            breadcrumbs.push(new IteratorRecord(pageId));
+            node = fetch(pageId);
+        }
+    }
+
+}
@@ -0,0 +1,569 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Stack;
+
+import adt.Map;
+
+/**
+ * PrefixBTreeMap
+ *
+ * A BTreeMap specialized to String keys, with prefix compression
+ * in the nodes: each node stores the prefix common to all its keys
+ * once, and only the rest of each key (its suffix). Keys that share
+ * long prefixes (URLs, paths) then take much less room. A search
+ * checks the search key against a node's prefix once, after which
+ * it compares only suffixes, starting past the prefix.
+ *
+ * A node's prefix is kept as long as it can be when the node is
+ * made (by a split or a merge) and shortened when a key that
+ * doesn't share it is added; removing keys doesn't lengthen it.
+ *
+ * The algorithms are the same as in BTreeMap (CLRS, chapter 18),
+ * with leaves and internals sharing one node class as in
+ * LongBTreeMap. Keys that move between nodes (in splits, shares,
+ * and merges) are rebuilt in full and compressed again for the
+ * node they go to.
+ *
+ * @param <V> The value-type of the map
+ */
+
+public class PrefixBTreeMap<V> implements Map<String, V> {
+
+    /**
+     * All internal nodes (except the root) must have at least
+     * this many children--and no more than twice this many.
+     * This is equivalent to t in CLRS.
+     */
+    private final int minDegree;
+
+    /**
+     * A node in the tree.
+     */
+    private final class Node {
+
+        /**
+         * The prefix shared by all the keys in this node
+         */
+        String prefix;
+
+        /**
+         * Array of the rest of each key, partially filled
+         */
+        final String[] suffixes;
+
+        /**
+         * Array of vals, partially filled
+         */
+        final V[] vals;
+
+        /**
+         * Array of children (one more than keys), null for leaves
+         */
+        final Node[] children;
+
+        /**
+         * The number of pairs currently stored
+         */
+        int n;
+
+        @SuppressWarnings("unchecked")
+        Node(boolean leaf) {
+            prefix = "";
+            suffixes = new String[2 * minDegree - 1];
+            vals = (V[]) new Object[2 * minDegree - 1];
+            children = leaf ? null : new PrefixBTreeMap.Node[2 * minDegree];
+        }
+
+        boolean isLeaf() { return children == null; }
+
+        boolean isFull() { return n == suffixes.length; }
+
+        /**
+         * Rebuild the whole key at the given position.
+         */
+        String keyAt(int i) {
+            return prefix.isEmpty() ? suffixes[i] : prefix.concat(suffixes[i]);
+        }
+
+        /**
+         * Store a whole key at the given position, shortening the
+         * prefix first if the key doesn't share all of it.
+         */
+        void setKeyAt(int i, String key) {
+            if (n == 1) {
+                // the only key: all of it is prefix
+                prefix = key;
+                suffixes[0] = "";
+                return;
+            }
+            if (! key.startsWith(prefix))
+                shortenPrefix(commonPrefixLength(prefix, key, 0));
+            suffixes[i] = key.substring(prefix.length());
+        }
+
+        /**
+         * Cut the prefix down to the given length, moving the rest
+         * of it onto the front of every suffix.
+         */
+        void shortenPrefix(int length) {
+            String moved = prefix.substring(length);
+            for (int i = 0; i < n; i++)
+                if (suffixes[i] != null)
+                    suffixes[i] = moved.concat(suffixes[i]);
+            prefix = prefix.substring(0, length);
+        }
+
+        /**
+         * Lengthen the prefix as far as the keys allow. Since the
+         * keys are sorted, what the first and last have in common,
+         * all of them do.
+         */
+        void compress() {
+            if (n == 0)
+                return;
+            int extra = commonPrefixLength(suffixes[0], suffixes[n - 1], 0);
+            if (extra == 0)
+                return;
+            prefix = prefix.concat(suffixes[0].substring(0, extra));
+            for (int i = 0; i < n; i++)
+                suffixes[i] = suffixes[i].substring(extra);
+        }
+
+        /**
+         * Find the index of the smallest key greater than or equal
+         * to the given key (n if there is none), as in
+         * BTreeMap.BNode.binarySearchKeys(), but comparing the
+         * prefix only once.
+         * @param key
+         * @return The position of the key, or of the child where it would be
+         */
+        int lowerBound(String key) {
+            int p = prefix.length();
+            int common = commonPrefixLength(prefix, key, 0);
+            if (common < p) {
+                // The key and prefix differ at position common (or the
+                // key ends there, making it the lesser), so the key is
+                // less than all the keys here or greater than all.
+                if (common == key.length() || key.charAt(common) < prefix.charAt(common))
+                    return 0;
+                else
+                    return n;
+            }
+            int start = 0,
+                stop = n;
+            while (start < stop) {
+                int mid = (start + stop) >>> 1;
+                if (compareSuffix(suffixes[mid], key, p) < 0)
+                    start = mid + 1;
+                else
+                    stop = mid;
+            }
+            return start;
+        }
+
+        /**
+         * Does the key at pos (as found by lowerBound()) equal
+         * the given key?
+         */
+        boolean matches(int pos, String key) {
+            return pos < n && key.length() == prefix.length() + suffixes[pos].length()
+                    && key.startsWith(prefix)
+                    && key.startsWith(suffixes[pos], prefix.length());
+        }
+
+        /**
+         * Move the pairs (and the children after them) in [pos, n)
+         * one position to the right to make room at pos.
+         */
+        void openAt(int pos) {
+            System.arraycopy(suffixes, pos, suffixes, pos + 1, n - pos);
+            System.arraycopy(vals, pos, vals, pos + 1, n - pos);
+            if (children != null)
+                System.arraycopy(children, pos + 1, children, pos + 2, n - pos);
+            n++;
+        }
+
+        /**
+         * Remove the pair at pos and the child just after it.
+         */
+        void closeAt(int pos) {
+            System.arraycopy(suffixes, pos + 1, suffixes, pos, n - pos - 1);
+            System.arraycopy(vals, pos + 1, vals, pos, n - pos - 1);
+            if (children != null) {
+                System.arraycopy(children, pos + 2, children, pos + 1, n - pos - 1);
+                children[n] = null;
+            }
+            n--;
+            suffixes[n] = null;
+            vals[n] = null;
+        }
+    }
+
+    /**
+     * The length of the prefix that two strings have in common,
+     * looking at b from the given offset.
+     */
+    private static int commonPrefixLength(String a, String b, int offset) {
+        int limit = Math.min(a.length(), b.length() - offset);
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(offset + i))
+            i++;
+        return i;
+    }
+
+    /**
+     * Compare a suffix with the part of a key from the given
+     * offset, as String.compareTo() would.
+     */
+    private static int compareSuffix(String suffix, String key, int offset) {
+        int common = commonPrefixLength(suffix, key, offset);
+        if (common < suffix.length() && common < key.length() - offset)
+            return suffix.charAt(common) - key.charAt(offset + common);
+        return suffix.length() - (key.length() - offset);
+    }
+
+    // ---- The B-Tree class itself begins here ----
+
+    /**
+     * The root of the tree, which may violate the
+     * B-tree properties if it is a leaf and not full.
+     */
+    private Node root;
+
+    /**
+     * To initialize a BTree, specify a minimum degree.
+     * The root is initially an empty leaf.
+     * @param minDegree
+     */
+    public PrefixBTreeMap(int minDegree) {
+        if (minDegree < 2)
+            throw new IllegalArgumentException("Minimum degree: " + minDegree);
+        this.minDegree = minDegree;
+        root = new Node(true);
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(String key, V val) {
+        // Taking the speculatively-insert approach, as in BTreeMap,
+        // we split a full node before we enter it. Handle a full
+        // root here.
+        if (root.isFull()) {
+            Node newRoot = new Node(false);
+            newRoot.children[0] = root;
+            root = newRoot;
+            splitChild(newRoot, 0);
+        }
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (node.matches(pos, key)) {
+                node.vals[pos] = val;
+                return;
+            }
+            if (node.isLeaf()) {
+                node.openAt(pos);
+                node.setKeyAt(pos, key);
+                node.vals[pos] = val;
+                return;
+            }
+            if (node.children[pos].isFull()) {
+                splitChild(node, pos);
+                int comparison = key.compareTo(node.keyAt(pos));
+                if (comparison == 0) {
+                    node.vals[pos] = val;
+                    return;
+                }
+                if (comparison > 0)
+                    pos++;
+            }
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(String key) {
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (node.matches(pos, key))
+                return node.vals[pos];
+            if (node.isLeaf())
+                return null;
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(String key) {
+        Node node = root;
+        while (true) {
+            int pos = node.lowerBound(key);
+            if (node.matches(pos, key))
+                return true;
+            if (node.isLeaf())
+                return false;
+            node = node.children[pos];
+        }
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(String key) {
+        delete(root, key);
+        // If the root lost its last key to a merge,
+        // its only child becomes the new root.
+        if (root.n == 0 && ! root.isLeaf())
+            root = root.children[0];
+    }
+
+    // ---- Helpers for put and remove ----
+
+    /**
+     * Turn the full child at pos into two children, bringing
+     * its middle pair up into the parent, as in
+     * BTreeMap.Internal.splitChild(). Each half's prefix is
+     * then lengthened as far as its keys allow.
+     * PRECONDITION: The parent is not full but the child is
+     */
+    private void splitChild(Node parent, int pos) {
+        assert ! parent.isFull() && parent.children[pos].isFull();
+        Node child = parent.children[pos],
+                sibling = new Node(child.isLeaf());
+        sibling.n = minDegree - 1;
+        sibling.prefix = child.prefix;
+        System.arraycopy(child.suffixes, minDegree, sibling.suffixes, 0, sibling.n);
+        System.arraycopy(child.vals, minDegree, sibling.vals, 0, sibling.n);
+        if (! child.isLeaf()) {
+            System.arraycopy(child.children, minDegree, sibling.children, 0, minDegree);
+            for (int j = minDegree; j < child.children.length; j++)
+                child.children[j] = null;
+        }
+        String upKey = child.keyAt(minDegree - 1);
+        V upVal = child.vals[minDegree - 1];
+        for (int j = minDegree - 1; j < child.n; j++) {
+            child.suffixes[j] = null;
+            child.vals[j] = null;
+        }
+        child.n = minDegree - 1;
+        child.compress();
+        sibling.compress();
+        parent.openAt(pos);
+        parent.setKeyAt(pos, upKey);
+        parent.vals[pos] = upVal;
+        parent.children[pos + 1] = sibling;
+    }
+
+    /**
+     * Delete the given key (and its val) from the subtree rooted
+     * at the given node, as in BTreeMap.BNode.delete().
+     * PRECONDITION: The node is the root or has at least
+     * minDegree keys (and hence can spare one)
+     */
+    private void delete(Node node, String key) {
+        while (true) {
+            assert node == root || node.n >= minDegree;
+            int pos = node.lowerBound(key);
+            boolean here = node.matches(pos, key);
+            if (node.isLeaf()) {
+                if (here)
+                    node.closeAt(pos);
+                return;
+            }
+            // Cases from CLRS pg 500-501
+            if (here) {
+                // 1a. The child before the key can spare a pair
+                if (node.children[pos].n >= minDegree) {
+                    Node leaf = node.children[pos];
+                    while (! leaf.isLeaf())
+                        leaf = leaf.children[fortifyChild(leaf, leaf.n)];
+                    node.setKeyAt(pos, leaf.keyAt(leaf.n - 1));
+                    node.vals[pos] = leaf.vals[leaf.n - 1];
+                    leaf.closeAt(leaf.n - 1);
+                    return;
+                }
+                // 1b. The child after the key can spare a pair
+                if (node.children[pos + 1].n >= minDegree) {
+                    Node leaf = node.children[pos + 1];
+                    while (! leaf.isLeaf())
+                        leaf = leaf.children[fortifyChild(leaf, 0)];
+                    node.setKeyAt(pos, leaf.keyAt(0));
+                    node.vals[pos] = leaf.vals[0];
+                    leaf.closeAt(0);
+                    return;
+                }
+                // 1c. Neither can, so merge them (with the key)
+                // and delete from the merged child
+                merge(node, pos);
+                node = node.children[pos];
+            }
+            // 2. If the key is anywhere, it's in the indicated child
+            else
+                node = node.children[fortifyChild(node, pos)];
+        }
+    }
+
+    /**
+     * Make sure the indicated child has at least minDegree keys
+     * before we descend into it, as in
+     * BTreeMap.Internal.fortifyChild().
+     * @return The position of the child to descend into now
+     */
+    private int fortifyChild(Node parent, int pos) {
+        Node child = parent.children[pos];
+        // 2a. Does that child have at least minDegree keys?
+        if (child.n >= minDegree)
+            return pos;
+        // 2bi. Does the sibling to the left have a pair to spare?
+        if (pos > 0 && parent.children[pos - 1].n >= minDegree) {
+            Node left = parent.children[pos - 1];
+            child.openAt(0);
+            if (! child.isLeaf()) {
+                child.children[1] = child.children[0];
+                child.children[0] = left.children[left.n];
+            }
+            child.setKeyAt(0, parent.keyAt(pos - 1));
+            child.vals[0] = parent.vals[pos - 1];
+            parent.setKeyAt(pos - 1, left.keyAt(left.n - 1));
+            parent.vals[pos - 1] = left.vals[left.n - 1];
+            left.closeAt(left.n - 1);
+            return pos;
+        }
+        // 2bii. Does the sibling to the right have a pair to spare?
+        if (pos < parent.n && parent.children[pos + 1].n >= minDegree) {
+            Node right = parent.children[pos + 1];
+            child.n++;
+            child.setKeyAt(child.n - 1, parent.keyAt(pos));
+            child.vals[child.n - 1] = parent.vals[pos];
+            if (! child.isLeaf()) {
+                child.children[child.n] = right.children[0];
+                System.arraycopy(right.children, 1, right.children, 0, right.n);
+                right.children[right.n] = null;
+            }
+            parent.setKeyAt(pos, right.keyAt(0));
+            parent.vals[pos] = right.vals[0];
+            // shift the right sibling's pairs (its children are done)
+            System.arraycopy(right.suffixes, 1, right.suffixes, 0, right.n - 1);
+            System.arraycopy(right.vals, 1, right.vals, 0, right.n - 1);
+            right.n--;
+            right.suffixes[right.n] = null;
+            right.vals[right.n] = null;
+            return pos;
+        }
+        // 2biii. Merge with the right sibling if there is one
+        if (pos < parent.n) {
+            merge(parent, pos);
+            return pos;
+        }
+        // 2biv. Otherwise merge into the left sibling
+        merge(parent, pos - 1);
+        return pos - 1;
+    }
+
+    /**
+     * Absorb the child at pos+1 and the pair between into the
+     * child at pos, as in BTreeMap's merge(). The merged node's
+     * prefix is what the two had in common (with the key between).
+     */
+    private void merge(Node parent, int pos) {
+        Node left = parent.children[pos],
+                right = parent.children[pos + 1];
+        assert left.n == minDegree - 1 && right.n == minDegree - 1;
+        String middle = parent.keyAt(pos);
+        int base = left.n;
+        left.n += right.n + 1;
+        left.setKeyAt(base, middle);
+        left.vals[base] = parent.vals[pos];
+        for (int i = 0; i < right.n; i++) {
+            left.setKeyAt(base + 1 + i, right.keyAt(i));
+            left.vals[base + 1 + i] = right.vals[i];
+        }
+        if (! left.isLeaf())
+            System.arraycopy(right.children, 0, left.children, base + 1, right.n + 1);
+        left.compress();
+        parent.closeAt(pos);
+    }
+
+    // ---- Iteration ----
+
+    /**
+     * Simple class to act as a breadcrumb for our
+     * descent as we traverse the B-tree.
+     */
+    private class IteratorRecord {
+        Node node;
+        // the next key to return
+        int pos;
+        IteratorRecord(Node node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Iterate over the keys in this map in order.
+     * @return An iterator for the keys in this map.
+     */
+    public Iterator<String> iterator() {
+        final Stack<IteratorRecord> breadcrumbs = new Stack<IteratorRecord>();
+        if (root.n > 0)
+            pushLeftmost(breadcrumbs, root);
+
+        return new Iterator<String>() {
+
+            // Invariant: either the stack is empty (the iteration
+            // is done) or the record on top has pos < n, and the
+            // key at pos is the next one to return.
+
+            public boolean hasNext() {
+                return ! breadcrumbs.isEmpty();
+            }
+
+            public String next() {
+                if (breadcrumbs.isEmpty())
+                    throw new NoSuchElementException();
+                IteratorRecord top = breadcrumbs.peek();
+                String toReturn = top.node.keyAt(top.pos);
+                top.pos++;
+                if (! top.node.isLeaf())
+                    pushLeftmost(breadcrumbs, top.node.children[top.pos]);
+                // pop the nodes that have no keys left to return
+                while (! breadcrumbs.isEmpty()
+                        && breadcrumbs.peek().pos >= breadcrumbs.peek().node.n)
+                    breadcrumbs.pop();
+                return toReturn;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Push breadcrumbs for the given node and its leftmost
+     * descendants, down to a leaf.
+     */
+    private void pushLeftmost(Stack<IteratorRecord> breadcrumbs, Node node) {
+        breadcrumbs.push(new IteratorRecord(node));
+        while (! node.isLeaf()) {
+            node = node.children[0];
+            breadcrumbs.push(new IteratorRecord(node));
+        }
+    }
+
+}
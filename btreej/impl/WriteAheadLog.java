@@ -0,0 +1,423 @@
+package impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog
+ *
+ * An append-only log of put and remove operations on a map, for
+ * making a PagedBTreeMap durable without writing its pages on every
+ * operation. Each record is framed by its length and a CRC32 of its
+ * contents, so a record torn by a crash is recognized at recovery
+ * and it and anything after it are discarded.
+ *
+ * Appending a record only buffers it; commit() makes it durable.
+ * Commits use group commit: one committing thread (the leader)
+ * writes and forces everything buffered so far while the others
+ * wait, so all of the records appended during one force are made
+ * durable together by the next.
+ *
+ * A checkpoint logs the images of all the pages the tree has
+ * written since the last one, followed by a checkpoint record;
+ * once that is durable the pages can go to the tree's file, and
+ * then the log is truncated. Recovery redoes the images of the
+ * last complete checkpoint (in case the crash came while the pages
+ * were being written) and replays the operations logged after it.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+
+public class WriteAheadLog<K, V> implements Closeable {
+
+    /**
+     * Record types
+     */
+    private static final byte PUT = 1, REMOVE = 2, PAGE = 3, CHECKPOINT = 4;
+
+    /**
+     * Bytes of framing before each record: its length and CRC
+     */
+    private static final int FRAME = 8;
+
+    /**
+     * The channel to the log file
+     */
+    private final FileChannel channel;
+
+    /**
+     * For writing keys and values into records
+     */
+    private final PageCodec<K> keyCodec;
+
+    private final PageCodec<V> valCodec;
+
+    /**
+     * Records appended but not yet written
+     */
+    private ByteBuffer pending;
+
+    /**
+     * The buffer the leader is writing from, or is free for reuse
+     */
+    private ByteBuffer spare;
+
+    /**
+     * The sequence number of the last record appended and of the
+     * last one known to be on the disk
+     */
+    private long appendedLsn, durableLsn;
+
+    /**
+     * Is some thread writing and forcing the log right now?
+     */
+    private boolean flushing;
+
+    /**
+     * Set if a write to the log failed, after which nothing more
+     * can be committed
+     */
+    private IOException failure;
+
+    /**
+     * The number of times the log has been forced, for monitoring
+     */
+    private long forces;
+
+    /**
+     * Open the log at the given path, creating it if need be.
+     * Call recover() before appending anything.
+     * @param path Where the log is
+     * @param keyCodec How to write keys
+     * @param valCodec How to write values
+     */
+    public WriteAheadLog(Path path, PageCodec<K> keyCodec, PageCodec<V> valCodec)
+            throws IOException {
+        this.keyCodec = keyCodec;
+        this.valCodec = valCodec;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        pending = ByteBuffer.allocate(4096);
+        spare = ByteBuffer.allocate(4096);
+    }
+
+    // ---- Appending and committing ----
+
+    /**
+     * Append a record of a put.
+     * @return The record's sequence number, to commit
+     */
+    public synchronized long logPut(K key, V val) {
+        int size = 2 + keyCodec.maxSize() + (val == null ? 0 : valCodec.maxSize());
+        int start = beginRecord(size);
+        try {
+            pending.put(PUT);
+            keyCodec.write(pending, key);
+            if (val == null)
+                pending.put((byte) 0);
+            else {
+                pending.put((byte) 1);
+                valCodec.write(pending, val);
+            }
+        } catch (RuntimeException e) {
+            // the key or value didn't fit its codec; take it back
+            pending.position(start);
+            throw e;
+        }
+        return endRecord(start);
+    }
+
+    /**
+     * Append a record of a remove.
+     * @return The record's sequence number, to commit
+     */
+    public synchronized long logRemove(K key) {
+        int start = beginRecord(1 + keyCodec.maxSize());
+        try {
+            pending.put(REMOVE);
+            keyCodec.write(pending, key);
+        } catch (RuntimeException e) {
+            pending.position(start);
+            throw e;
+        }
+        return endRecord(start);
+    }
+
+    /**
+     * Make sure there is room for a record of at most the given
+     * size, and leave room for its frame.
+     * @return Where the record's frame begins
+     */
+    private int beginRecord(int maxSize) {
+        if (pending.remaining() < FRAME + maxSize) {
+            int capacity = pending.capacity();
+            while (capacity - pending.position() < FRAME + maxSize)
+                capacity *= 2;
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.position(start + FRAME);
+        return start;
+    }
+
+    /**
+     * Fill in the frame of the record just written.
+     * @return The record's sequence number
+     */
+    private long endRecord(int start) {
+        int length = pending.position() - start - FRAME;
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start + FRAME, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        return ++appendedLsn;
+    }
+
+    /**
+     * Wait until the given record (and all before it) is on the
+     * disk. If no other thread is writing the log, this one writes
+     * and forces everything appended so far; otherwise it waits for
+     * that thread, which may well have taken care of this record too.
+     * @param lsn The sequence number of the record
+     */
+    public void commit(long lsn) throws IOException {
+        ByteBuffer batch;
+        long upTo;
+        synchronized (this) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (failure != null)
+                throw new IOException("Log unusable after earlier failure", failure);
+            if (durableLsn >= lsn)
+                return;
+            // become the leader for everything appended so far
+            flushing = true;
+            batch = pending;
+            pending = spare;
+            spare = null;
+            upTo = appendedLsn;
+        }
+        IOException caught = null;
+        try {
+            batch.flip();
+            while (batch.hasRemaining())
+                channel.write(batch, channel.size());
+            channel.force(false);
+        } catch (IOException ioe) {
+            caught = ioe;
+        }
+        synchronized (this) {
+            flushing = false;
+            batch.clear();
+            spare = batch;
+            if (caught == null) {
+                durableLsn = upTo;
+                forces++;
+            }
+            else
+                failure = caught;
+            notifyAll();
+        }
+        if (caught != null)
+            throw caught;
+    }
+
+    // ---- Checkpoints ----
+
+    /**
+     * Function object for writing the checkpointed pages to the
+     * tree's file once their images are safe in the log.
+     */
+    public interface PageWriter {
+        void writePages() throws IOException;
+    }
+
+    /**
+     * Checkpoint: log the given page images, make them and every
+     * record before them durable, have them written to the tree's
+     * file, and truncate the log. The caller must keep anything
+     * from being appended until this returns.
+     * @param images The page images (by page id) written since the
+     * last checkpoint
+     * @param writer Writes the pages to the tree's file
+     */
+    public void checkpoint(Map<Long, byte[]> images, PageWriter writer)
+            throws IOException {
+        long lsn;
+        synchronized (this) {
+            for (Map.Entry<Long, byte[]> image : images.entrySet()) {
+                int start = beginRecord(9 + image.getValue().length);
+                pending.put(PAGE).putLong(image.getKey()).put(image.getValue());
+                endRecord(start);
+            }
+            int start = beginRecord(1);
+            pending.put(CHECKPOINT);
+            lsn = endRecord(start);
+        }
+        commit(lsn);
+        writer.writePages();
+        synchronized (this) {
+            while (flushing) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            channel.truncate(0);
+            channel.force(false);
+        }
+    }
+
+    // ---- Recovery ----
+
+    /**
+     * What recovery found in the log: the page images of the last
+     * complete checkpoint and the operations logged after it.
+     */
+    public class Recovery {
+
+        private final Map<Long, byte[]> images;
+
+        private final ArrayList<Object[]> operations;
+
+        Recovery(Map<Long, byte[]> images, ArrayList<Object[]> operations) {
+            this.images = images;
+            this.operations = operations;
+        }
+
+        /**
+         * The page images to redo before opening the tree
+         * @return Page images by page id, 0 being the header
+         */
+        public Map<Long, byte[]> images() {
+            return images;
+        }
+
+        /**
+         * The number of operations to replay
+         */
+        public int operationCount() {
+            return operations.size();
+        }
+
+        /**
+         * Replay the logged operations, in order, into the map.
+         * @param map The map, as of the last checkpoint
+         */
+        @SuppressWarnings("unchecked")
+        public void replay(adt.Map<K, V> map) {
+            for (Object[] operation : operations)
+                if (operation.length == 2)
+                    map.put((K) operation[0], (V) operation[1]);
+                else
+                    map.remove((K) operation[0]);
+        }
+    }
+
+    /**
+     * Read the log from the beginning, stopping at the first
+     * incomplete or corrupt record (and cutting the log off there).
+     * @return What needs redoing
+     */
+    public synchronized Recovery recover() throws IOException {
+        Map<Long, byte[]> checkpointed = new TreeMap<Long, byte[]>(),
+                images = new TreeMap<Long, byte[]>();
+        ArrayList<Object[]> operations = new ArrayList<Object[]>();
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer frame = ByteBuffer.allocate(FRAME);
+        CRC32 crc = new CRC32();
+        while (position + FRAME <= size) {
+            frame.clear();
+            readFully(frame, position);
+            int length = frame.getInt(0);
+            if (length <= 0 || position + FRAME + length > size)
+                break;
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, position + FRAME);
+            crc.reset();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != frame.getInt(4))
+                break;
+            record.flip();
+            switch (record.get()) {
+            case PUT:
+                K key = keyCodec.read(record);
+                V val = record.get() == 0 ? null : valCodec.read(record);
+                operations.add(new Object[] {key, val});
+                break;
+            case REMOVE:
+                operations.add(new Object[] {keyCodec.read(record)});
+                break;
+            case PAGE:
+                long pageId = record.getLong();
+                byte[] image = new byte[record.remaining()];
+                record.get(image);
+                images.put(pageId, image);
+                break;
+            case CHECKPOINT:
+                // everything before this is in the checkpointed pages
+                checkpointed = images;
+                images = new TreeMap<Long, byte[]>();
+                operations.clear();
+                break;
+            default:
+                throw new IOException("Unknown log record type");
+            }
+            position += FRAME + length;
+        }
+        // page images without a checkpoint record after them are
+        // from a checkpoint that didn't finish; the tree's file
+        // was not touched, so they are simply dropped
+        channel.truncate(position);
+        channel.force(false);
+        return new Recovery(checkpointed, operations);
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining())
+            if (channel.read(dst, position + dst.position()) < 0)
+                throw new IOException("Log ends unexpectedly");
+    }
+
+    /**
+     * The number of times the log has been forced to the disk
+     */
+    public synchronized long forces() {
+        return forces;
+    }
+
+    /**
+     * Commit everything appended and close the log.
+     */
+    public void close() throws IOException {
+        long lsn;
+        synchronized (this) {
+            lsn = appendedLsn;
+        }
+        commit(lsn);
+        channel.close();
+    }
+
+}
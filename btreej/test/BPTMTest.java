@@ -0,0 +1,40 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import impl.BPlusTreeMap;
+
+public class BPTMTest extends MapTest {
+
+    protected void reset() {
+        testMap = new BPlusTreeMap<String, String>(2);
+    }
+
+    @Test
+    public void rangeScans() {
+        BPlusTreeMap<Integer, Integer> map = new BPlusTreeMap<Integer, Integer>(2);
+        for (int i = 0; i < 200; i += 2)
+            map.put(i, i);
+        int expected = 51;
+        for (Iterator<Integer> it = map.range(51, 101); it.hasNext(); ) {
+            expected++;
+            assertEquals(expected, (int) it.next());
+            expected++;
+        }
+        assertEquals(101, expected);
+        expected = 0;
+        for (Iterator<Integer> it = map.headMap(50); it.hasNext(); expected += 2)
+            assertEquals(expected, (int) it.next());
+        assertEquals(50, expected);
+        expected = 190;
+        for (Iterator<Integer> it = map.tailMap(189); it.hasNext(); expected += 2)
+            assertEquals(expected, (int) it.next());
+        assertEquals(200, expected);
+        assertFalse(map.range(300, 400).hasNext());
+    }
+
+}
@@ -1,5 +1,15 @@
 package test;
 
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import adt.Map;
 import impl.BTreeMap;
 
 public class BTMTest extends MapTest {
@@ -8,4 +18,92 @@ public class BTMTest extends MapTest {
         testMap = new BTreeMap<String, String>(10);
     }
     
+    @Test
+    public void bulkLoad() {
+        for (int size = 0; size < 300; size += 37) {
+            ArrayList<Integer> keys = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++)
+                keys.add(2 * i);
+            BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(3,
+                    keys.iterator(), keys.iterator(), .75);
+            int expected = 0;
+            for (Iterator<Integer> it = map.iterator(); it.hasNext(); expected += 2)
+                assertEquals(expected, (int) it.next());
+            assertEquals(2 * size, expected);
+            // still a valid B-tree for further updates
+            for (int i = 0; i < size; i++) {
+                map.put(2 * i + 1, 2 * i + 1);
+                map.remove(2 * i);
+            }
+            for (int i = 0; i < 2 * size; i++)
+                assertEquals(i % 2 == 1, map.containsKey(i));
+        }
+    }
+
+    @Test
+    public void batchedOperations() {
+        BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(2);
+        Integer[] evens = new Integer[100];
+        for (int i = 0; i < evens.length; i++)
+            evens[i] = 2 * i;
+        map.putAll(evens, evens);
+        Integer[] all = new Integer[200];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        Integer[] results = new Integer[all.length];
+        map.getAll(all, results);
+        for (int i = 0; i < all.length; i++)
+            assertEquals(i % 2 == 0 ? (Integer) i : null, results[i]);
+        // overwrite the evens, add the odds
+        Integer[] negs = new Integer[all.length];
+        for (int i = 0; i < all.length; i++)
+            negs[i] = -i;
+        map.putAll(all, negs);
+        map.getAll(all, results);
+        for (int i = 0; i < all.length; i++)
+            assertEquals((Integer) (-i), results[i]);
+        int expected = 0;
+        for (Iterator<Integer> it = map.iterator(); it.hasNext(); expected++)
+            assertEquals(expected, (int) it.next());
+        assertEquals(all.length, expected);
+    }
+    
+    @Test
+    public void snapshots() {
+        Random randy = new Random(445);
+        BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(2);
+        TreeMap<Integer, Integer> current = new TreeMap<Integer, Integer>();
+        ArrayList<Map<Integer, Integer>> snaps = new ArrayList<Map<Integer, Integer>>();
+        ArrayList<TreeMap<Integer, Integer>> expected = new ArrayList<TreeMap<Integer, Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            if (i % 500 == 0) {
+                snaps.add(map.snapshot());
+                expected.add(new TreeMap<Integer, Integer>(current));
+            }
+            int key = randy.nextInt(400);
+            if (randy.nextInt(3) == 0) {
+                map.remove(key);
+                current.remove(key);
+            }
+            else {
+                map.put(key, i);
+                current.put(key, i);
+            }
+        }
+        expected.add(current);
+        snaps.add(map);
+        for (int s = 0; s < snaps.size(); s++) {
+            Iterator<Integer> it = snaps.get(s).iterator();
+            for (Integer key : expected.get(s).keySet()) {
+                assertEquals(key, it.next());
+                assertEquals(expected.get(s).get(key), snaps.get(s).get(key));
+            }
+            assertFalse(it.hasNext());
+        }
+        try {
+            snaps.get(0).put(1, 1);
+            fail();
+        } catch (UnsupportedOperationException uoe) { }
+    }
+
 }
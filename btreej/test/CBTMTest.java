@@ -0,0 +1,105 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import impl.ConcurrentBTreeMap;
+
+public class CBTMTest extends MapTest {
+
+    protected void reset() {
+        testMap = new ConcurrentBTreeMap<String, String>(3);
+    }
+
+    /**
+     * Several writers, each owning the keys congruent to its id,
+     * put and remove at random (recording what they expect in a
+     * private map) while readers check that any value found belongs
+     * to its key. Small nodes make splits and merges frequent.
+     */
+    @Test
+    public void concurrentStress() throws InterruptedException {
+        final int writers = 4, readers = 4, range = 4000, ops = 40000;
+        final ConcurrentBTreeMap<Integer, Integer> map =
+                new ConcurrentBTreeMap<Integer, Integer>(2);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final HashMap<Integer, HashMap<Integer, Integer>> expected =
+                new HashMap<Integer, HashMap<Integer, Integer>>();
+        Thread[] threads = new Thread[writers + readers];
+        for (int t = 0; t < writers; t++) {
+            final int id = t;
+            final HashMap<Integer, Integer> mine = new HashMap<Integer, Integer>();
+            expected.put(id, mine);
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random randy = new Random(id);
+                        for (int i = 0; i < ops; i++) {
+                            int key = randy.nextInt(range / writers) * writers + id;
+                            if (randy.nextInt(3) == 0) {
+                                map.remove(key);
+                                mine.remove(key);
+                                assertFalse(map.containsKey(key));
+                            }
+                            else {
+                                map.put(key, key * 10 + i % 10);
+                                mine.put(key, key * 10 + i % 10);
+                                assertEquals(mine.get(key), map.get(key));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (int t = writers; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random randy = new Random(id);
+                        for (int i = 0; i < ops; i++) {
+                            int key = randy.nextInt(range);
+                            Integer val = map.get(key);
+                            assertTrue(val == null || val / 10 == key);
+                            if (i % 1000 == 0) {
+                                Integer last = null;
+                                for (Iterator<Integer> it = map.iterator(); it.hasNext(); ) {
+                                    Integer current = it.next();
+                                    assertTrue(last == null || last < current);
+                                    last = current;
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        int count = 0;
+        for (Iterator<Integer> it = map.iterator(); it.hasNext(); count++) {
+            Integer key = it.next();
+            assertEquals(expected.get(key % writers).get(key), map.get(key));
+        }
+        int total = 0;
+        for (HashMap<Integer, Integer> mine : expected.values())
+            total += mine.size();
+        assertEquals(total, count);
+    }
+
+}
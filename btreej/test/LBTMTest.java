@@ -0,0 +1,65 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import impl.LongBTreeMap;
+
+public class LBTMTest {
+
+    /**
+     * Random puts and removes, checked against java.util.TreeMap,
+     * for node sizes on both sides of the linear-search cutoff.
+     */
+    @Test
+    public void againstTreeMap() {
+        Random randy = new Random(345);
+        int[] degrees = {2, 3, 8, 20};
+        for (int minDegree : degrees) {
+            LongBTreeMap<Integer> map = new LongBTreeMap<Integer>(minDegree);
+            TreeMap<Long, Integer> expected = new TreeMap<Long, Integer>();
+            for (int i = 0; i < 20000; i++) {
+                long key = randy.nextInt(3000) - 1500L;
+                if (randy.nextInt(3) == 0) {
+                    map.remove(key);
+                    expected.remove(key);
+                }
+                else {
+                    map.put(key, Integer.valueOf(i));
+                    expected.put(key, i);
+                }
+                assertEquals(expected.get(key), map.get(key));
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            PrimitiveIterator.OfLong it = map.iterator();
+            for (long key : expected.keySet()) {
+                assertTrue(it.hasNext());
+                assertEquals(key, it.nextLong());
+            }
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void extremesAndBoxing() {
+        LongBTreeMap<String> map = new LongBTreeMap<String>(2);
+        long[] keys = {Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1, 1L << 40};
+        for (long key : keys)
+            map.put(key, "v" + key);
+        for (long key : keys)
+            assertEquals("v" + key, map.get(Long.valueOf(key)));
+        assertFalse(map.containsKey(2L));
+        Iterator<Long> it = map.iterator();
+        assertEquals(Long.MIN_VALUE, (long) it.next());
+        map.remove(Long.valueOf(Long.MIN_VALUE));
+        assertNull(map.get(Long.MIN_VALUE));
+        assertEquals("v" + Long.MAX_VALUE, map.get(Long.MAX_VALUE));
+    }
+
+}
@@ -0,0 +1,83 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+import impl.LoggedBTreeMap;
+import impl.PageCodecs;
+
+public class LogBTMTest extends MapTest {
+
+    protected File tempFile(String suffix) {
+        try {
+            File file = File.createTempFile("logbtm", suffix);
+            file.delete();
+            file.deleteOnExit();
+            return file;
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    protected LoggedBTreeMap<String, String> open(File tree, File log, int interval) {
+        try {
+            return new LoggedBTreeMap<String, String>(tree.toPath(), log.toPath(), 3,
+                    PageCodecs.forStrings(20), PageCodecs.forStrings(20), 4, true, interval);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    protected void reset() {
+        testMap = open(tempFile(".db"), tempFile(".log"), 7);
+    }
+
+    /**
+     * Copy the files out from under an open map (as if the process
+     * died right then) and recover from the copies, whose log also
+     * ends with a torn record.
+     */
+    @Test
+    public void recoverAfterCrash() throws IOException {
+        File tree = tempFile(".db"), log = tempFile(".log");
+        LoggedBTreeMap<String, String> map = open(tree, log, 5);
+        testMap = map;
+        populate(data.length / 2);
+        testMap.remove("Alaska");
+        testMap.put("Texas", "Austin");
+
+        File treeCopy = tempFile(".db"), logCopy = tempFile(".log");
+        Files.copy(tree.toPath(), treeCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(log.toPath(), logCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        map.close();
+        RandomAccessFile torn = new RandomAccessFile(logCopy, "rw");
+        torn.seek(torn.length());
+        torn.writeInt(100);
+        torn.writeInt(12345);
+        torn.write(new byte[] {1, 2, 3});
+        torn.close();
+
+        testMap = open(treeCopy, logCopy, 5);
+        for (int i = 0; i < data.length; i += 2)
+            if (data[i].equals("Alaska"))
+                assertFalse(testMap.containsKey(data[i]));
+            else if (data[i].equals("Texas"))
+                assertEquals("Austin", testMap.get(data[i]));
+            else
+                assertEquals(data[i+1], testMap.get(data[i]));
+        // and it keeps working after recovery
+        testMap.put("Wisconsin", "Madison");
+        ((LoggedBTreeMap<String, String>) testMap).close();
+        testMap = open(treeCopy, logCopy, 5);
+        assertEquals("Madison", testMap.get("Wisconsin"));
+        assertEquals("Austin", testMap.get("Texas"));
+    }
+
+}
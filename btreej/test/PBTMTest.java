@@ -0,0 +1,75 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import impl.PageCodecs;
+import impl.PagedBTreeMap;
+
+public class PBTMTest extends MapTest {
+
+    protected File tempFile() {
+        try {
+            File file = File.createTempFile("pbtm", ".db");
+            file.delete();
+            file.deleteOnExit();
+            return file;
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    protected PagedBTreeMap<String, String> open(File file, int poolPages) {
+        try {
+            return new PagedBTreeMap<String, String>(file.toPath(), 3,
+                    PageCodecs.forStrings(20), PageCodecs.forStrings(20), poolPages);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    protected void reset() {
+        testMap = open(tempFile(), 4);
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        File file = tempFile();
+        PagedBTreeMap<String, String> map = open(file, 4);
+        testMap = map;
+        populate(data.length / 2);
+        testMap.remove("Alaska");
+        map.close();
+        testMap = open(file, 4);
+        for (int i = 0; i < data.length; i += 2)
+            if (data[i].equals("Alaska"))
+                assertFalse(testMap.containsKey(data[i]));
+            else
+                assertEquals(data[i+1], testMap.get(data[i]));
+    }
+
+    @Test
+    public void biggerThanPool() {
+        testMap = open(tempFile(), 4);
+        for (int i = 0; i < 2000; i++)
+            testMap.put("k" + (i * 7919 % 2000), "v" + i);
+        for (int i = 0; i < 2000; i += 2)
+            testMap.remove("k" + i);
+        String last = null;
+        int count = 0;
+        for (Iterator<String> it = testMap.iterator(); it.hasNext(); ) {
+            String key = it.next();
+            assertTrue(last == null || last.compareTo(key) < 0);
+            assertEquals(1, Integer.parseInt(key.substring(1)) % 2);
+            last = key;
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+
+}
@@ -0,0 +1,51 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import impl.PrefixBTreeMap;
+
+public class PrefixBTMTest extends MapTest {
+
+    protected void reset() {
+        testMap = new PrefixBTreeMap<String>(2);
+    }
+
+    /**
+     * URL-like keys sharing prefixes of different lengths (including
+     * keys that are prefixes of others), checked against TreeMap.
+     */
+    @Test
+    public void sharedPrefixes() {
+        String[] prefixes = {"http://example.com/a/", "http://example.com/b/",
+                "http://example.org/", "http://", ""};
+        Random randy = new Random(345);
+        PrefixBTreeMap<Integer> map = new PrefixBTreeMap<Integer>(3);
+        TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            String key = prefixes[randy.nextInt(prefixes.length)] + randy.nextInt(500);
+            key = key.substring(0, Math.max(0, key.length() - randy.nextInt(3)));
+            if (randy.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            }
+            else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Iterator<String> it = map.iterator();
+        for (String key : expected.keySet()) {
+            assertEquals(key, it.next());
+            assertTrue(map.containsKey(key));
+        }
+        assertFalse(it.hasNext());
+    }
+
+}
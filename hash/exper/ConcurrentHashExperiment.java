@@ -0,0 +1,97 @@
+package exper;
+
+import impl.BasicHashMap;
+import impl.ConcurrentBasicHashMap;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * ConcurrentHashExperiment
+ *
+ * Throughput of ConcurrentBasicHashMap against a BasicHashMap behind
+ * a single lock, for a read-mostly and a write-heavy mix of operations
+ * at 1 to 64 threads (or up to the number given on the command line).
+ * Both start with the same number of buckets; BasicHashMap never
+ * resizes, so it gets enough for the whole key range.
+ */
+public class ConcurrentHashExperiment {
+
+    private static final int RANGE = 1000000;
+
+    private static final int OPS = 4000000;
+
+    /**
+     * A BasicHashMap with every operation synchronized on one lock
+     */
+    private static class LockedBasicHashMap<K, V> implements Map<K, V> {
+        private final BasicHashMap<K, V> map;
+        LockedBasicHashMap(int size) { map = new BasicHashMap<K, V>(size); }
+        public synchronized void put(K key, V val) { map.put(key, val); }
+        public synchronized V get(K key) { return map.get(key); }
+        public synchronized boolean containsKey(K key) { return map.containsKey(key); }
+        public synchronized void remove(K key) { map.remove(key); }
+        public Iterator<K> iterator() { return map.iterator(); }
+    }
+
+    /**
+     * Run the given number of threads against the map, splitting
+     * OPS operations among them.
+     * @param readPercent The percentage of operations that are gets;
+     * the rest are split between puts and removes
+     * @return Operations per second
+     */
+    private static double runExperiment(final Map<Integer, Integer> map, int threads,
+            final int readPercent) throws InterruptedException {
+        Random randy = new Random(345);
+        for (int i = 0; i < RANGE / 2; i++)
+            map.put(randy.nextInt(RANGE), i);
+        final int perThread = OPS / threads;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random randy = new Random(seed);
+                    for (int i = 0; i < perThread; i++) {
+                        int key = randy.nextInt(RANGE);
+                        int op = randy.nextInt(100);
+                        if (op < readPercent)
+                            map.get(key);
+                        else if (op % 2 == 0)
+                            map.put(key, i);
+                        else
+                            map.remove(key);
+                    }
+                }
+            });
+        }
+        long fore = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        long aft = System.nanoTime();
+        return (double) threads * perThread / ((aft - fore) / 1e9);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int[] mixes = {95, 50};
+        for (int readPercent : mixes) {
+            System.out.println(readPercent + "% reads (ops/sec):");
+            System.out.println("threads\tlocked\t\tconcurrent");
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double locked = runExperiment(new LockedBasicHashMap<Integer, Integer>(RANGE),
+                        threads, readPercent);
+                double concurrent = runExperiment(
+                        new ConcurrentBasicHashMap<Integer, Integer>(RANGE, 64),
+                        threads, readPercent);
+                System.out.printf("%d\t%.0f\t%.0f\n", threads, locked, concurrent);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package exper;
+
+import impl.HashFunction;
+import impl.UniversalHashFactory;
+
+import java.util.Random;
+
+/**
+ * HashFamilyExperiment
+ *
+ * Compares the hash families in UniversalHashFactory for quality
+ * and speed. Each family hashes a million keys of a few kinds
+ * (sequential Integers, Integers spaced 1024 apart, and random
+ * Strings) into as many buckets. Quality is given as the sum of
+ * the squared bucket sizes over the number of keys (about 2 for a
+ * truly random function, at most 3 expected for these families)
+ * and the size of the biggest bucket; speed as nanoseconds per
+ * hash, after a warmup, not counting the keys' own hashCode()
+ * (the Strings cache theirs). Once several families have run, the
+ * call to hash() is megamorphic and slower for all of them; to time
+ * one family alone, give (part of) its name on the command line.
+ */
+public class HashFamilyExperiment {
+
+    private static final int N = 1 << 20;
+
+    /**
+     * A prime near N, for the families that take a p
+     */
+    private static final int M = 1048573;
+
+    private static final int ROUNDS = 20;
+
+    private interface Family {
+        String name();
+        HashFunction<Object> make(Random random);
+    }
+
+    private static void run(Family family, String kind, Object[] keys) {
+        HashFunction<Object> h = family.make(new Random(345));
+        int[] buckets = new int[M];
+        for (Object key : keys)
+            buckets[h.hash(key)]++;
+        long squares = 0;
+        int max = 0;
+        for (int count : buckets) {
+            squares += (long) count * count;
+            max = Math.max(max, count);
+        }
+
+        long sum = 0;
+        for (int r = 0; r < ROUNDS; r++)
+            for (Object key : keys)
+                sum += h.hash(key);
+        long fore = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+            for (Object key : keys)
+                sum += h.hash(key);
+        long time = System.nanoTime() - fore;
+        if (sum == 42)
+            System.out.print("");
+        System.out.printf("%-16s%-12s%.3f\t\t%d\t%.2f\n", family.name(), kind,
+                (double) squares / keys.length, max, (double) time / ROUNDS / keys.length);
+    }
+
+    public static void main(String[] args) {
+        Family[] families = {
+            new Family() {
+                public String name() { return "mod p (int)"; }
+                public HashFunction<Object> make(Random random) {
+                    return UniversalHashFactory.makeHashFunction(Integer.MAX_VALUE, M);
+                }
+            },
+            new Family() {
+                public String name() { return "mod 2^32+15"; }
+                public HashFunction<Object> make(Random random) {
+                    return UniversalHashFactory.makeHashFunction(M, random);
+                }
+            },
+            new Family() {
+                public String name() { return "mod 2^61-1"; }
+                public HashFunction<Object> make(Random random) {
+                    return UniversalHashFactory.makeMersenneHash(M, random);
+                }
+            },
+            new Family() {
+                public String name() { return "multiply-shift"; }
+                public HashFunction<Object> make(Random random) {
+                    return UniversalHashFactory.makeMultiplyShift(M, random);
+                }
+            },
+            new Family() {
+                public String name() { return "tabulation"; }
+                public HashFunction<Object> make(Random random) {
+                    return UniversalHashFactory.makeTabulation(M, random);
+                }
+            },
+        };
+        Random randy = new Random(345);
+        Object[] sequential = new Object[N], strided = new Object[N], strings = new Object[N];
+        for (int i = 0; i < N; i++) {
+            sequential[i] = i;
+            strided[i] = i * 1024;
+            strings[i] = Long.toString(randy.nextLong(), 36);
+            strings[i].hashCode();
+        }
+        System.out.println("family\t\tkeys\t    squares/n\tmax\tns/hash");
+        for (Family family : families) {
+            if (args.length > 0 && ! family.name().contains(args[0]))
+                continue;
+            run(family, "sequential", sequential);
+            run(family, "strided", strided);
+            run(family, "strings", strings);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package exper;
+
+import impl.CuckooHashMap;
+import impl.LinProbHashMap;
+import impl.RobinHoodHashMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * LookupLatencyExperiment
+ *
+ * Latency of individual gets, of keys present and keys missing, in
+ * linear probing and Robin Hood maps at a high load factor and in a
+ * cuckoo map, all holding the same million random Integer keys.
+ * Each get is timed separately; the table shows percentiles and the
+ * worst case in nanoseconds (which include the timer's own overhead,
+ * a few tens of nanoseconds). Each map's gets are run a few times
+ * first to let the JIT warm up.
+ */
+public class LookupLatencyExperiment {
+
+    private static final int SIZE = 1000000;
+
+    private static final int WARMUPS = 3;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private interface MapMaker {
+        String name();
+        Map<Integer, Integer> make();
+    }
+
+    private static long[] runTrial(Map<Integer, Integer> map, Integer[] keys) {
+        long[] times = new long[keys.length];
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            long fore = System.nanoTime();
+            if (map.get(keys[i]) != null)
+                found++;
+            times[i] = System.nanoTime() - fore;
+        }
+        if (found == -1)
+            throw new AssertionError();
+        return times;
+    }
+
+    private static void report(String name, long[] times) {
+        Arrays.sort(times);
+        System.out.print(name);
+        for (double p : PERCENTILES)
+            System.out.print("\t" + times[(int) Math.ceil(p / 100 * times.length) - 1]);
+        System.out.println("\t" + times[times.length - 1]);
+    }
+
+    public static void main(String[] args) {
+        MapMaker[] makers = {
+            new MapMaker() {
+                public String name() { return "linear .9"; }
+                public Map<Integer, Integer> make() {
+                    return new LinProbHashMap<Integer, Integer>(19, false, .9);
+                }
+            },
+            new MapMaker() {
+                public String name() { return "robin hood .9"; }
+                public Map<Integer, Integer> make() {
+                    return new RobinHoodHashMap<Integer, Integer>(19, .9);
+                }
+            },
+            new MapMaker() {
+                public String name() { return "cuckoo"; }
+                public Map<Integer, Integer> make() {
+                    return new CuckooHashMap<Integer, Integer>(19, 345);
+                }
+            },
+        };
+        Random randy = new Random(345);
+        Integer[] present = new Integer[SIZE], missing = new Integer[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            present[i] = randy.nextInt();
+            missing[i] = randy.nextInt();
+        }
+        System.out.print("map\t");
+        for (double p : PERCENTILES)
+            System.out.print("\tp" + p);
+        System.out.println("\tmax");
+        for (MapMaker maker : makers) {
+            Map<Integer, Integer> map = maker.make();
+            for (Integer key : present)
+                map.put(key, key);
+            for (int i = 0; i < WARMUPS; i++) {
+                runTrial(map, present);
+                runTrial(map, missing);
+            }
+            report(maker.name() + " hit", runTrial(map, present));
+            report(maker.name() + " miss", runTrial(map, missing));
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package exper;
+
+import impl.MinimalPerfectHash;
+
+import java.util.Random;
+
+/**
+ * MPHExperiment
+ *
+ * Build time, size, and lookup time of MinimalPerfectHash for
+ * growing numbers of random String keys, up to 10 million (or the
+ * number given on the command line). The build time per key should
+ * stay about the same as the number of keys grows.
+ */
+public class MPHExperiment {
+
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) {
+        int maxKeys = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Random randy = new Random(345);
+        System.out.println("keys\tbuild ms\tns/key\tbits/key\tlookup ns");
+        for (int n = 10000; n <= maxKeys; n *= 10) {
+            String[] keys = new String[n];
+            for (int i = 0; i < n; i++)
+                keys[i] = Long.toString(randy.nextLong(), 36);
+            // once to warm up, then timed
+            MinimalPerfectHash.build(keys);
+            long fore = System.nanoTime();
+            MinimalPerfectHash<String> hash = MinimalPerfectHash.build(keys);
+            long build = System.nanoTime() - fore;
+
+            long sum = 0;
+            fore = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++)
+                sum += hash.index(keys[i % n]);
+            long lookup = System.nanoTime() - fore;
+            if (sum < 0)
+                throw new AssertionError();
+            System.out.printf("%d\t%.1f\t\t%.0f\t%.2f\t\t%.1f\n", n, build / 1e6,
+                    (double) build / n, hash.bitsPerKey(), (double) lookup / LOOKUPS);
+        }
+    }
+
+}
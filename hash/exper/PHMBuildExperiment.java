@@ -0,0 +1,63 @@
+package exper;
+
+import impl.PerfectHashMap;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * PHMBuildExperiment
+ *
+ * Build time of PerfectHashMap for growing numbers of random
+ * Integer keys, up to 1 million (or the number given on the command
+ * line), on fork-join pools of 1, 2, 4, ... threads up to the number
+ * of processors. Each build is done once to warm up, then timed
+ * several times and averaged. Results are milliseconds per build,
+ * with the speedup over one thread.
+ */
+public class PHMBuildExperiment {
+
+    private static final int TRIALS = 5;
+
+    private static Integer[] makeKeys(int n, Random randy) {
+        Set<Integer> seen = new HashSet<Integer>();
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; ) {
+            int key = randy.nextInt();
+            if (seen.add(key))
+                keys[i++] = key;
+        }
+        return keys;
+    }
+
+    private static double time(Integer[] keys, ForkJoinPool pool) {
+        new PerfectHashMap<Integer, Integer>(keys, pool, 345);
+        long fore = System.nanoTime();
+        for (int i = 0; i < TRIALS; i++)
+            new PerfectHashMap<Integer, Integer>(keys, pool, 345);
+        return (System.nanoTime() - fore) / 1e6 / TRIALS;
+    }
+
+    public static void main(String[] args) {
+        int maxKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int processors = Runtime.getRuntime().availableProcessors();
+        Random randy = new Random(345);
+        System.out.println("processors: " + processors);
+        System.out.println("keys\tthreads\tbuild ms\tspeedup");
+        for (int n = 10000; n <= maxKeys; n *= 10) {
+            Integer[] keys = makeKeys(n, randy);
+            double one = 0;
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                double ms = time(keys, pool);
+                pool.shutdown();
+                if (threads == 1)
+                    one = ms;
+                System.out.printf("%d\t%d\t%.1f\t\t%.2f\n", n, threads, ms, one / ms);
+            }
+        }
+    }
+
+}
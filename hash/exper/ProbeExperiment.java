@@ -0,0 +1,158 @@
+package exper;
+
+import impl.LinProbHashMap;
+import impl.PrimeSource;
+import impl.RobinHoodHashMap;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * ProbeExperiment
+ *
+ * Compares plain linear probing (LinProbHashMap) with Robin Hood
+ * probing (RobinHoodHashMap) at load factors from 0.5 to 0.95. Each
+ * map gets a table of the same (prime) size, so that filling it to
+ * the given load doesn't rehash, and then the experiment reports:
+ * the distribution of probe lengths (how far keys are from their
+ * ideal places), as the mean, 99th percentile, and longest, and the
+ * percent of keys in power-of-two ranges of probe lengths; and the
+ * time per operation of puts, successful and unsuccessful gets,
+ * and remove-then-put churn, in nanoseconds. Each configuration is
+ * run once first to let the JIT warm up.
+ */
+public class ProbeExperiment {
+
+    private static final int CAPACITY = PrimeSource.nextOrEqPrime(1 << 20);
+
+    private static final double[] LOADS = {.5, .6, .7, .8, .85, .9, .95};
+
+    private static final int LOOKUPS = 1000000;
+
+    /**
+     * Function object for making maps with room for CAPACITY keys
+     * without rehashing
+     */
+    private interface MapMaker {
+        String name();
+        Map<Integer, Integer> make();
+        int[] histogram(Map<Integer, Integer> map);
+    }
+
+    private static final MapMaker[] MAKERS = {
+        new MapMaker() {
+            public String name() { return "linear"; }
+            public Map<Integer, Integer> make() {
+                return new LinProbHashMap<Integer, Integer>(CAPACITY, false, .99);
+            }
+            public int[] histogram(Map<Integer, Integer> map) {
+                return ((LinProbHashMap<Integer, Integer>) map).probeLengthHistogram();
+            }
+        },
+        new MapMaker() {
+            public String name() { return "robinhood"; }
+            public Map<Integer, Integer> make() {
+                return new RobinHoodHashMap<Integer, Integer>(CAPACITY, .99);
+            }
+            public int[] histogram(Map<Integer, Integer> map) {
+                return ((RobinHoodHashMap<Integer, Integer>) map).probeLengthHistogram();
+            }
+        },
+    };
+
+    /**
+     * Make the given number of distinct random keys.
+     */
+    private static Integer[] distinctKeys(Random randy, int size, HashSet<Integer> used) {
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; ) {
+            int x = randy.nextInt();
+            if (used.add(x))
+                keys[i++] = x;
+        }
+        return keys;
+    }
+
+    /**
+     * Fill a map to the given load, time it, and print a row of
+     * each table.
+     * @return The rows: histogram summary then times
+     */
+    private static String[] runTrial(MapMaker maker, double load) {
+        Random randy = new Random(345);
+        HashSet<Integer> used = new HashSet<Integer>();
+        Integer[] keys = distinctKeys(randy, (int) (load * CAPACITY), used);
+        Integer[] missing = distinctKeys(randy, LOOKUPS, used);
+        Map<Integer, Integer> map = maker.make();
+
+        long fore = System.nanoTime();
+        for (int i = 0; i < keys.length; i++)
+            map.put(keys[i], i);
+        double put = (System.nanoTime() - fore) / (double) keys.length;
+
+        int found = 0;
+        fore = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++)
+            if (map.get(keys[i % keys.length]) != null)
+                found++;
+        double hit = (System.nanoTime() - fore) / (double) LOOKUPS;
+
+        fore = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++)
+            if (map.get(missing[i]) != null)
+                found++;
+        double miss = (System.nanoTime() - fore) / (double) LOOKUPS;
+        if (found != LOOKUPS)
+            throw new AssertionError("Wrong lookups");
+
+        // replace old keys with new ones, keeping the load the same
+        int churned = Math.min(keys.length, LOOKUPS);
+        fore = System.nanoTime();
+        for (int i = 0; i < churned; i++) {
+            map.remove(keys[i]);
+            map.put(missing[i], i);
+        }
+        double churn = (System.nanoTime() - fore) / (double) churned;
+
+        int[] histogram = maker.histogram(map);
+        long total = 0, count = 0;
+        for (int d = 0; d < histogram.length; d++) {
+            total += (long) d * histogram[d];
+            count += histogram[d];
+        }
+        int p99 = 0;
+        for (long below = 0; below < .99 * count; p99++)
+            below += histogram[p99];
+        StringBuilder hist = new StringBuilder(String.format("%s\t%.2f\t%.2f\t%d\t%d",
+                maker.name(), load, (double) total / count, p99 - 1, histogram.length - 1));
+        for (int lo = 0; lo < histogram.length; lo = lo == 0 ? 1 : 2 * lo) {
+            long inRange = 0;
+            for (int d = lo; d < histogram.length && d < (lo == 0 ? 1 : 2 * lo); d++)
+                inRange += histogram[d];
+            hist.append(String.format("\t%.2f", 100.0 * inRange / count));
+        }
+        return new String[] {hist.toString(),
+                String.format("%s\t%.2f\t%.1f\t%.1f\t%.1f\t%.1f",
+                        maker.name(), load, put, hit, miss, churn)};
+    }
+
+    public static void main(String[] args) {
+        StringBuilder hists = new StringBuilder(), times = new StringBuilder();
+        for (double load : LOADS)
+            for (MapMaker maker : MAKERS) {
+                runTrial(maker, load);
+                String[] rows = runTrial(maker, load);
+                hists.append(rows[0]).append('\n');
+                times.append(rows[1]).append('\n');
+            }
+        System.out.println("Probe lengths (percent of keys in each range of lengths):");
+        System.out.println("probing\tload\tmean\tp99\tmax\t0\t1\t2-3\t4-7\t8-15\t16-31\t...");
+        System.out.println(hists);
+        System.out.println("Time (ns/op):");
+        System.out.println("probing\tload\tput\thit\tmiss\tchurn");
+        System.out.println(times);
+    }
+
+}
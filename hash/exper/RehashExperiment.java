@@ -0,0 +1,69 @@
+package exper;
+
+import impl.LinProbHashMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * RehashExperiment
+ *
+ * Latency of individual puts into a growing LinProbHashMap, with
+ * rehashing all at once versus incrementally. Each put is timed
+ * separately; the table shows percentiles and the worst case in
+ * nanoseconds, along with the total time. Each mode is run a few
+ * times first to let the JIT warm up.
+ *
+ * Run it with a heap big enough that the timed trial doesn't
+ * collect (say -Xms3g -Xmx3g -Xmn2500m -XX:+AlwaysPreTouch), or
+ * the worst cases are just GC pauses. With that, rehashing all at
+ * once took a worst-case put of about 160 ms at the last resize;
+ * incrementally, the worst case was about 5 ms, almost all of it
+ * allocating and zeroing the new table, at the cost of slower
+ * typical puts while both tables are in use.
+ */
+public class RehashExperiment {
+
+    private static final int SIZE = 2000000;
+
+    private static final int WARMUPS = 3;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private static long[] runTrial(boolean incremental, Integer[] keys) {
+        LinProbHashMap<Integer, Integer> map =
+                new LinProbHashMap<Integer, Integer>(19, incremental);
+        long[] times = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            long fore = System.nanoTime();
+            map.put(keys[i], keys[i]);
+            times[i] = System.nanoTime() - fore;
+        }
+        return times;
+    }
+
+    public static void main(String[] args) {
+        Random randy = new Random(345);
+        Integer[] keys = new Integer[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            keys[i] = randy.nextInt();
+        System.out.print("mode");
+        for (double p : PERCENTILES)
+            System.out.print("\tp" + p);
+        System.out.println("\tmax\ttotal ms");
+        for (boolean incremental : new boolean[] {false, true}) {
+            for (int i = 0; i < WARMUPS; i++)
+                runTrial(incremental, keys);
+            long[] times = runTrial(incremental, keys);
+            long total = 0;
+            for (long t : times)
+                total += t;
+            Arrays.sort(times);
+            System.out.print(incremental ? "incremental" : "all-at-once");
+            for (double p : PERCENTILES)
+                System.out.print("\t" + times[(int) Math.ceil(p / 100 * SIZE) - 1]);
+            System.out.printf("\t%d\t%.1f\n", times[SIZE - 1], total / 1e6);
+        }
+    }
+
+}
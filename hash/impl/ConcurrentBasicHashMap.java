@@ -0,0 +1,308 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import adt.Map;
+
+/**
+ * ConcurrentBasicHashMap
+ *
+ * A thread-safe version of BasicHashMap's separate chaining. The
+ * buckets are split by hash into stripes, each with its own table
+ * and its own lock, so writers to different stripes don't wait for
+ * each other, and when a stripe's table fills up it is resized
+ * (under its own lock) while the other stripes go on working.
+ *
+ * Reads take no locks. The nodes' keys and links are final, so a
+ * chain never changes under a reader: put adds a node at the head
+ * of its chain, remove copies the nodes ahead of the one removed,
+ * and a resize builds its new table out of new nodes, leaving the
+ * old table intact for readers that are still using it. A reader
+ * that overlaps a write may or may not see it; the iterator,
+ * likewise, reflects the map at some point at or after its
+ * creation, and never throws ConcurrentModificationException.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+public class ConcurrentBasicHashMap<K, V> implements Map<K, V> {
+
+    private static class Node<KK, VV> {
+        final int hash;
+        final KK key;
+        volatile VV val;
+        final Node<KK, VV> next;
+        public Node(int hash, KK key, VV val, Node<KK, VV> next) {
+            this.hash = hash;
+            this.key = key;
+            this.val = val;
+            this.next = next;
+        }
+        public String toString() {
+            return "(" + key + " " + val + ")";
+        }
+    }
+
+    /**
+     * A stripe: a table of buckets, whose lock is held to change it.
+     */
+    private static class Stripe<KK, VV> {
+
+        /**
+         * The buckets, replaced (never changed in place) by a resize.
+         * The array's elements are read and written with volatile
+         * semantics, so a reader sees fully-made nodes.
+         */
+        volatile AtomicReferenceArray<Node<KK, VV>> buckets;
+
+        /**
+         * The number of associations; written only under the lock.
+         */
+        int count;
+
+        Stripe(int size) {
+            buckets = new AtomicReferenceArray<Node<KK, VV>>(size);
+        }
+    }
+
+    /**
+     * The fraction of a stripe's buckets that may hold associations,
+     * on average, before its table is doubled.
+     */
+    private static final double MAX_LOAD = .75;
+
+    /**
+     * The stripes; their number is a power of two.
+     */
+    private final Stripe<K, V>[] stripes;
+
+    /**
+     * How far to shift a hash right to get its stripe (the stripe
+     * comes from the high bits and the bucket from the low bits,
+     * so that the buckets of a stripe are all in use).
+     */
+    private final int stripeShift;
+
+    /**
+     * Constructor.
+     * @param size The number of buckets to start with, in all.
+     * @param concurrency The number of stripes (rounded up to a power
+     * of two), roughly the number of writers that can work at once.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentBasicHashMap(int size, int concurrency) {
+        if (size < 1 || concurrency < 1)
+            throw new IllegalArgumentException("Size " + size
+                    + ", concurrency " + concurrency);
+        int bits = 0;
+        while ((1 << bits) < concurrency)
+            bits++;
+        stripeShift = 32 - bits;
+        stripes = new Stripe[1 << bits];
+        int perStripe = 1;
+        while (perStripe * stripes.length < size)
+            perStripe <<= 1;
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe<K, V>(perStripe);
+    }
+
+    public ConcurrentBasicHashMap() {
+        this(64, 16);
+    }
+
+    /**
+     * Spread the bits of the key's hash code, since tables here are
+     * powers of two and only some of the bits choose a bucket.
+     * @param key The key
+     * @return A hash mixing all the bits of key.hashCode()
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe<K, V> stripeFor(int hash) {
+        return stripes[stripeShift == 32 ? 0 : hash >>> stripeShift];
+    }
+
+    /**
+     * Find the node with an association for the given key, if any,
+     * without locking.
+     * @param key The key whose node we're retrieving
+     * @return The node for that key, null if none exists
+     */
+    private Node<K, V> getNode(K key) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> buckets = stripeFor(h).buckets;
+        for (Node<K, V> current = buckets.get(h & (buckets.length() - 1));
+                current != null; current = current.next)
+            if (current.hash == h && key.equals(current.key))
+                return current;
+        return null;
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        int h = hash(key);
+        Stripe<K, V> stripe = stripeFor(h);
+        synchronized (stripe) {
+            AtomicReferenceArray<Node<K, V>> buckets = stripe.buckets;
+            int index = h & (buckets.length() - 1);
+            Node<K, V> first = buckets.get(index);
+            for (Node<K, V> current = first; current != null; current = current.next)
+                if (current.hash == h && key.equals(current.key)) {
+                    current.val = val;
+                    return;
+                }
+            if (stripe.count + 1 > MAX_LOAD * buckets.length()) {
+                buckets = resize(stripe);
+                index = h & (buckets.length() - 1);
+                first = buckets.get(index);
+            }
+            buckets.set(index, new Node<K, V>(h, key, val, first));
+            stripe.count++;
+        }
+    }
+
+    /**
+     * Double the stripe's table, copying the nodes so that the old
+     * table stays as it was for readers still using it. (Caller must
+     * hold the stripe's lock.)
+     * @return The new table
+     */
+    private AtomicReferenceArray<Node<K, V>> resize(Stripe<K, V> stripe) {
+        AtomicReferenceArray<Node<K, V>> old = stripe.buckets;
+        int mask = 2 * old.length() - 1;
+        // Fill in a plain array, then publish it all at once
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] filled = new Node[mask + 1];
+        for (int i = 0; i < old.length(); i++)
+            for (Node<K, V> current = old.get(i); current != null; current = current.next) {
+                int index = current.hash & mask;
+                filled[index] = new Node<K, V>(current.hash, current.key,
+                        current.val, filled[index]);
+            }
+        AtomicReferenceArray<Node<K, V>> buckets = new AtomicReferenceArray<Node<K, V>>(filled);
+        stripe.buckets = buckets;
+        return buckets;
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        Node<K, V> association = getNode(key);
+        return association == null ? null : association.val;
+    }
+
+    /**
+     * Test whether an association exists for this key.
+     * @param key The key to test
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Remove the association for this key, if it exists. The nodes
+     * ahead of it in its chain are copied, and the copies linked to
+     * the node after it.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        int h = hash(key);
+        Stripe<K, V> stripe = stripeFor(h);
+        synchronized (stripe) {
+            AtomicReferenceArray<Node<K, V>> buckets = stripe.buckets;
+            int index = h & (buckets.length() - 1);
+            Node<K, V> first = buckets.get(index);
+            Node<K, V> target = first;
+            while (target != null && ! (target.hash == h && key.equals(target.key)))
+                target = target.next;
+            if (target == null)
+                return;
+            Node<K, V> rest = target.next;
+            for (Node<K, V> current = first; current != target; current = current.next)
+                rest = new Node<K, V>(current.hash, current.key, current.val, rest);
+            buckets.set(index, rest);
+            stripe.count--;
+        }
+    }
+
+    /**
+     * Get an iterator for all the keys in this map. It goes through
+     * the stripes in order, taking each one's table as it is when
+     * the iterator reaches it.
+     * @return An iterator over the set of keys.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+
+            /**
+             * The stripe being iterated over
+             */
+            int stripe = 0;
+
+            /**
+             * That stripe's table, as of when we reached it
+             */
+            AtomicReferenceArray<Node<K, V>> buckets = stripes[0].buckets;
+
+            /**
+             * The bucket after the one containing the current node
+             */
+            int pos = 0;
+
+            /**
+             * The node of the next key to return, null when the
+             * iteration is done
+             */
+            Node<K, V> next = advance(null);
+
+            /**
+             * Find the node after the given one, moving on to later
+             * buckets and stripes as needed.
+             */
+            Node<K, V> advance(Node<K, V> current) {
+                Node<K, V> following = current == null ? null : current.next;
+                while (following == null) {
+                    if (pos == buckets.length()) {
+                        if (++stripe == stripes.length)
+                            return null;
+                        buckets = stripes[stripe].buckets;
+                        pos = 0;
+                    }
+                    else
+                        following = buckets.get(pos++);
+                }
+                return following;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public K next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                K toReturn = next.key;
+                next = advance(next);
+                return toReturn;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
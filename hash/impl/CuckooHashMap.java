@@ -0,0 +1,468 @@
+package impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import adt.Map;
+
+/**
+ * CuckooHashMap
+ *
+ * Cuckoo hashing: two tables, each with its own hash function, and
+ * a key is always in the slot its function picks in one table or the
+ * other, or else in a small stash on the side. So get looks at two
+ * slots and at most STASH_SIZE more, however full the map is or
+ * however the keys happen to cluster; none of the work a lookup does
+ * depends on the other keys. Put does the extra work: a key whose
+ * slot in the first table is taken evicts the key there, which moves
+ * to its slot in the other table, evicting whatever is there, and so
+ * on. A chain of evictions that goes on too long (it's probably
+ * going around a cycle) leaves its last key in the stash, and when
+ * the stash is full the map is rehashed with new hash functions.
+ *
+ * The hash functions come from UniversalHashFactory's tabulation
+ * family, under which cuckoo hashing behaves about as it would with
+ * truly random functions. Keys with equal hash codes have the same
+ * two slots under every function, so no rehash can separate them;
+ * a key left over when both its slots already hold keys with its
+ * hash code goes instead to an overflow list, checked after the
+ * stash. Only such groups of colliding keys (more than two of them,
+ * with the stash full) ever reach it, so ordinary lookups still
+ * look at no more than the two slots and the stash.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+public class CuckooHashMap<K, V> implements Map<K, V> {
+
+    /**
+     * The number of keys the stash holds.
+     */
+    private static final int STASH_SIZE = 4;
+
+    /**
+     * The fraction of both tables' slots that may be full before
+     * they are made bigger; cuckoo hashing with two functions almost
+     * always fails beyond one half.
+     */
+    private static final double MAX_LOAD = .45;
+
+    /**
+     * The number of rehashes in a row, with new functions (or, every
+     * third time, bigger tables), after which a put gives up.
+     */
+    private static final int MAX_REHASHES = 12;
+
+    /**
+     * The tables of keys and the parallel tables of values.
+     */
+    private K[] keys1, keys2;
+    private V[] values1, values2;
+
+    /**
+     * The stash, filled from the front.
+     */
+    private K[] stashKeys;
+    private V[] stashValues;
+    private int stashed;
+
+    /**
+     * The overflow list, for keys that share both slots with keys
+     * having the same hash code, filled from the front.
+     */
+    private K[] overflowKeys;
+    private V[] overflowValues;
+    private int overflowed;
+
+    /**
+     * The key and value that insert() couldn't place, if any.
+     */
+    private K leftoverKey;
+    private V leftoverValue;
+
+    /**
+     * The hash functions for the two tables.
+     */
+    private HashFunction<Object> h1, h2;
+
+    /**
+     * The number of pairs, in the tables and the stash.
+     */
+    private int pairs;
+
+    /**
+     * The longest eviction chain a put follows, about 6 lg of the
+     * tables' size.
+     */
+    private int maxKicks;
+
+    /**
+     * Source of the hash functions.
+     */
+    private final Random random;
+
+    /**
+     * Constructor allowing the original table size and the seed for
+     * the hash functions to be specified.
+     * @param initKeyCap The initial size of each of the two tables.
+     * @param seed The seed from which the hash functions are drawn
+     */
+    @SuppressWarnings("unchecked")
+    public CuckooHashMap(int initKeyCap, long seed) {
+        if (initKeyCap < 2)
+            throw new IllegalArgumentException("Capacity: " + initKeyCap);
+        random = new Random(seed);
+        stashKeys = (K[]) new Object[STASH_SIZE];
+        stashValues = (V[]) new Object[STASH_SIZE];
+        overflowKeys = (K[]) new Object[STASH_SIZE];
+        overflowValues = (V[]) new Object[STASH_SIZE];
+        makeTables(initKeyCap);
+    }
+
+    /**
+     * Constructor allowing the original table size to be specified.
+     * @param initKeyCap The initial size of each of the two tables.
+     */
+    public CuckooHashMap(int initKeyCap) {
+        this(initKeyCap, new Random().nextLong());
+    }
+
+    public CuckooHashMap() {
+        this(19);
+    }
+
+    /**
+     * Make new, empty tables of the given size, and new hash
+     * functions for them.
+     */
+    @SuppressWarnings("unchecked")
+    private void makeTables(int size) {
+        keys1 = (K[]) new Object[size];
+        keys2 = (K[]) new Object[size];
+        values1 = (V[]) new Object[size];
+        values2 = (V[]) new Object[size];
+        h1 = UniversalHashFactory.makeTabulation(size, random);
+        h2 = UniversalHashFactory.makeTabulation(size, random);
+        maxKicks = 6 * (32 - Integer.numberOfLeadingZeros(size));
+    }
+
+    /**
+     * Find the key in the stash.
+     * @return Its index there, or -1 if it isn't in the stash
+     */
+    private int stashIndex(K key) {
+        for (int i = 0; i < stashed; i++)
+            if (stashKeys[i].equals(key))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Find the key in the overflow list.
+     * @return Its index there, or -1 if it isn't in the list
+     */
+    private int overflowIndex(K key) {
+        for (int i = 0; i < overflowed; i++)
+            if (overflowKeys[i].equals(key))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Is the key one that no rehash can place, because both its
+     * slots hold keys with the same hash code (which will always
+     * share those slots with it)?
+     */
+    private boolean unplaceable(K key) {
+        int code = key.hashCode();
+        K first = keys1[h1.hash(key)], second = keys2[h2.hash(key)];
+        return first != null && first.hashCode() == code
+                && second != null && second.hashCode() == code;
+    }
+
+    /**
+     * Add a pair to the overflow list.
+     */
+    private void overflow(K key, V val) {
+        if (overflowed == overflowKeys.length) {
+            overflowKeys = Arrays.copyOf(overflowKeys, 2 * overflowed);
+            overflowValues = Arrays.copyOf(overflowValues, 2 * overflowed);
+        }
+        overflowKeys[overflowed] = key;
+        overflowValues[overflowed] = val;
+        overflowed++;
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        int i = h1.hash(key);
+        if (keys1[i] != null && keys1[i].equals(key)) {
+            values1[i] = val;
+            return;
+        }
+        int j = h2.hash(key);
+        if (keys2[j] != null && keys2[j].equals(key)) {
+            values2[j] = val;
+            return;
+        }
+        int s = stashIndex(key);
+        if (s != -1) {
+            stashValues[s] = val;
+            return;
+        }
+        int o = overflowIndex(key);
+        if (o != -1) {
+            overflowValues[o] = val;
+            return;
+        }
+        if (pairs + 1 > MAX_LOAD * 2 * keys1.length)
+            rehash(PrimeSource.nextTableSize(keys1.length));
+        if (! insert(key, val))
+            rehash(keys1.length);
+        pairs++;
+    }
+
+    /**
+     * Place a key that isn't in the map, evicting other keys as
+     * needed, and stashing the last one if the chain of evictions
+     * gets too long (or putting it in the overflow list, if no
+     * functions could place it).
+     * @return false if the stash was full, so that the key or one
+     * it evicted is left over in leftoverKey (the map must then be
+     * rehashed)
+     */
+    private boolean insert(K key, V val) {
+        for (int kick = 0; kick < maxKicks; kick++) {
+            int i = h1.hash(key);
+            K evictedKey = keys1[i];
+            V evictedValue = values1[i];
+            keys1[i] = key;
+            values1[i] = val;
+            if (evictedKey == null)
+                return true;
+            int j = h2.hash(evictedKey);
+            key = keys2[j];
+            val = values2[j];
+            keys2[j] = evictedKey;
+            values2[j] = evictedValue;
+            if (key == null)
+                return true;
+        }
+        // keys that share both slots with keys having the same hash
+        // code go to the overflow list, leaving the stash for the
+        // keys that are only unlucky
+        if (unplaceable(key)) {
+            overflow(key, val);
+            return true;
+        }
+        if (stashed == STASH_SIZE) {
+            leftoverKey = key;
+            leftoverValue = val;
+            return false;
+        }
+        stashKeys[stashed] = key;
+        stashValues[stashed] = val;
+        stashed++;
+        return true;
+    }
+
+    /**
+     * Move all the pairs, including any that insert() left over and
+     * those in the overflow list, into new tables with new hash
+     * functions, trying again (every third time with bigger tables)
+     * until they all fit (insert() putting the keys that can't be
+     * placed under any functions in the overflow list).
+     * @param size The size for the new tables
+     * @throws IllegalStateException if they don't fit after
+     * MAX_REHASHES tries (which with any reasonable hash codes
+     * essentially never happens)
+     */
+    private void rehash(int size) {
+        @SuppressWarnings("unchecked")
+        K[] allKeys = (K[]) new Object[pairs + 1];
+        @SuppressWarnings("unchecked")
+        V[] allValues = (V[]) new Object[pairs + 1];
+        int n = 0;
+        for (int i = 0; i < keys1.length; i++) {
+            if (keys1[i] != null) {
+                allKeys[n] = keys1[i];
+                allValues[n++] = values1[i];
+            }
+            if (keys2[i] != null) {
+                allKeys[n] = keys2[i];
+                allValues[n++] = values2[i];
+            }
+        }
+        for (int i = 0; i < stashed; i++) {
+            allKeys[n] = stashKeys[i];
+            allValues[n++] = stashValues[i];
+        }
+        for (int i = 0; i < overflowed; i++) {
+            allKeys[n] = overflowKeys[i];
+            allValues[n++] = overflowValues[i];
+        }
+        if (leftoverKey != null) {
+            allKeys[n] = leftoverKey;
+            allValues[n++] = leftoverValue;
+        }
+
+        leftoverKey = null;
+        leftoverValue = null;
+        for (int attempt = 1; ; attempt++) {
+            if (attempt > MAX_REHASHES)
+                throw new IllegalStateException("Too many keys with equal hash codes");
+            makeTables(size);
+            for (int i = 0; i < stashed; i++) {
+                stashKeys[i] = null;
+                stashValues[i] = null;
+            }
+            stashed = 0;
+            for (int i = 0; i < overflowed; i++) {
+                overflowKeys[i] = null;
+                overflowValues[i] = null;
+            }
+            overflowed = 0;
+            boolean placed = true;
+            for (int i = 0; i < n && placed; i++)
+                placed = insert(allKeys[i], allValues[i]);
+            if (placed)
+                return;
+            leftoverKey = null;
+            leftoverValue = null;
+            if (attempt % 3 == 0)
+                size = PrimeSource.nextTableSize(size);
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        int i = h1.hash(key);
+        if (keys1[i] != null && keys1[i].equals(key))
+            return values1[i];
+        int j = h2.hash(key);
+        if (keys2[j] != null && keys2[j].equals(key))
+            return values2[j];
+        int s = stashIndex(key);
+        if (s != -1)
+            return stashValues[s];
+        int o = overflowIndex(key);
+        return o == -1 ? null : overflowValues[o];
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        int i = h1.hash(key);
+        if (keys1[i] != null && keys1[i].equals(key))
+            return true;
+        int j = h2.hash(key);
+        return keys2[j] != null && keys2[j].equals(key) || stashIndex(key) != -1
+                || overflowIndex(key) != -1;
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        int i = h1.hash(key);
+        if (keys1[i] != null && keys1[i].equals(key)) {
+            keys1[i] = null;
+            values1[i] = null;
+            pairs--;
+            return;
+        }
+        int j = h2.hash(key);
+        if (keys2[j] != null && keys2[j].equals(key)) {
+            keys2[j] = null;
+            values2[j] = null;
+            pairs--;
+            return;
+        }
+        int s = stashIndex(key);
+        if (s != -1) {
+            stashed--;
+            stashKeys[s] = stashKeys[stashed];
+            stashValues[s] = stashValues[stashed];
+            stashKeys[stashed] = null;
+            stashValues[stashed] = null;
+            pairs--;
+            return;
+        }
+        int o = overflowIndex(key);
+        if (o != -1) {
+            overflowed--;
+            overflowKeys[o] = overflowKeys[overflowed];
+            overflowValues[o] = overflowValues[overflowed];
+            overflowKeys[overflowed] = null;
+            overflowValues[overflowed] = null;
+            pairs--;
+        }
+    }
+
+    /**
+     * Return an iterator over the keys: the first table's, the
+     * second's, the stash's, then the overflow list's.
+     * @return The iterator.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            /**
+             * The position of the next key, counting through the
+             * first table, then the second, the stash, and the
+             * overflow list
+             */
+            int pos = advance(0);
+
+            /**
+             * The key at a position, null if it's an empty slot
+             */
+            K keyAt(int p) {
+                if (p < keys1.length)
+                    return keys1[p];
+                p -= keys1.length;
+                if (p < keys2.length)
+                    return keys2[p];
+                p -= keys2.length;
+                if (p < stashed)
+                    return stashKeys[p];
+                return overflowKeys[p - stashed];
+            }
+
+            /**
+             * The first position at or after p with a key
+             */
+            int advance(int p) {
+                int end = keys1.length + keys2.length + stashed + overflowed;
+                while (p < end && keyAt(p) == null)
+                    p++;
+                return p;
+            }
+
+            public boolean hasNext() {
+                return pos < keys1.length + keys2.length + stashed + overflowed;
+            }
+
+            public K next() {
+                if (! hasNext()) throw new NoSuchElementException();
+                K key = keyAt(pos);
+                pos = advance(pos + 1);
+                return key;
+            }
+        };
+    }
+
+}
@@ -1,5 +1,6 @@
 package impl;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -11,6 +12,16 @@ import adt.Map;
  * Quick hack-up of a linear-probing approach to
  * a hash map.
  *
+ * The table grows to about twice its size when it is half full
+ * (or some other given fraction full).
+ * Normally all the pairs are moved to the new table at once, which
+ * makes the put that triggers it take time proportional to the size
+ * of the map. In incremental mode, the old table is kept alongside
+ * the new one and each put and remove moves a few of its slots
+ * over, so no single operation pays for the whole rehash. Lookups
+ * check both tables while a rehash is under way; they don't move
+ * anything, so it's safe to call get() while iterating.
+ *
  * @author Thomas VanDrunen
  * CSCI 345, Wheaton College
  * July 30, 2014
@@ -32,22 +43,94 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
     private V[] values;
     
     /**
-     * The number of pairs, needed to know when to
-     * rehash.
+     * The number of pairs (in both tables, during an incremental
+     * rehash), needed to know when to rehash.
      */
     private int pairs;
-    
+
+    /**
+     * Whether to rehash incrementally.
+     */
+    private final boolean incremental;
+
+    /**
+     * The fraction of the table that may be full before rehashing.
+     */
+    private final double maxLoad;
+
+    /**
+     * The table being emptied into keys and values during an
+     * incremental rehash, null otherwise.
+     */
+    private K[] oldKeys;
+
+    /**
+     * Parallel array containing the old table's values.
+     */
+    private V[] oldValues;
+
+    /**
+     * The next slot of the old table to move. The old table is
+     * emptied from a null slot backwards, so that every slot moved
+     * is the last of its cluster, and moving it can't cut off any
+     * other key from its ideal place.
+     */
+    private int cursor;
+
+    /**
+     * The number of slots of the old table not yet visited.
+     */
+    private int remaining;
+
+    /**
+     * How many old slots each put or remove moves during an
+     * incremental rehash. The new table is about twice as big as
+     * the old, so with a maximum load of 1/2 the old table is empty
+     * long before the new one is half full. (With very low maximum
+     * loads, rehash() finishes the old table off first.)
+     */
+    private static final int SLOTS_PER_STEP = 4;
+
     /**
      * Constructor allowing the original table size
      * to be specified.
      * @param initKeyCap The initial capacity of the number of keys.
      */
-    @SuppressWarnings("unchecked")
     public LinProbHashMap(int initKeyCap) {
-        // TODO
+        this(initKeyCap, false);
+    }
+
+    /**
+     * Constructor allowing the original table size to be specified
+     * and incremental rehashing to be turned on.
+     * @param initKeyCap The initial capacity of the number of keys.
+     * @param incremental Whether to spread each rehash over later
+     * puts and removes.
+     */
+    public LinProbHashMap(int initKeyCap, boolean incremental) {
+        this(initKeyCap, incremental, .5);
+    }
+
+    /**
+     * Constructor allowing the original table size, incremental
+     * rehashing, and the maximum load factor to be specified.
+     * @param initKeyCap The initial capacity of the number of keys.
+     * @param incremental Whether to spread each rehash over later
+     * puts and removes.
+     * @param maxLoad The fraction of the table that may be full,
+     * strictly between 0 and 1.
+     */
+    @SuppressWarnings("unchecked")
+    public LinProbHashMap(int initKeyCap, boolean incremental, double maxLoad) {
+        if (initKeyCap < 2)
+            throw new IllegalArgumentException("Capacity: " + initKeyCap);
+        if (! (maxLoad > 0 && maxLoad < 1))
+            throw new IllegalArgumentException("Load factor: " + maxLoad);
     	keys = (K[]) new Object[initKeyCap];
     	values = (V[]) new Object[initKeyCap];
     	pairs = 0;
+    	this.incremental = incremental;
+    	this.maxLoad = maxLoad;
     }
 
     public LinProbHashMap() {
@@ -55,74 +138,115 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
     }
 
     /**
-     * Compute a hash appropriate for the number of keys.
+     * Compute a hash appropriate for the given table size.
      * This follows Sedgewick's advice on avoiding
      * negative keys from Java's hashCode() (see pg 461
      * and 478-479).
      * @param key The key whose ideal index to compute
+     * @param length The size of the table
      * @return The index where they key ideally would be.
      */
-    private int hash(K key) {
-        return (key.hashCode() & 0x7fffffff) % keys.length;
+    private int hash(K key, int length) {
+        return (key.hashCode() & 0x7fffffff) % length;
     }
     
     /**
-     * Compute the index where the key is or could be.
+     * Compute the index in the given table where the key is or
+     * could be.
      * @param key The key whose index to find.
+     * @param table The keys of the table to search.
      * @return The index containing this key, if it exists, or
      * one where the key could go, if it doesn't yet exist.
      */
-    private int findIndex(K key) {
-    	//TODO
-    	//assume the list is not full
-    	int h = hash(key);
-        for(int i = 0; i<keys.length; i++){
+    private int findIndex(K key, K[] table) {
+    	//assume the table is not full
+    	int h = hash(key, table.length);
+        for(int i = 0; i<table.length; i++){
         	//next hash
-        	int nh = (h + i) % keys.length;
-        	if(keys[nh] == null) return nh;
-        	if(keys[nh].equals(key)) return nh;
+        	int nh = (h + i) % table.length;
+        	if(table[nh] == null) return nh;
+        	if(table[nh].equals(key)) return nh;
         }
         return -1;
     }
 
     /**
-     * Add an association to the map. (If the map is full,
-     * the rehash.)
+     * Add an association to the map. (If the map is too full,
+     * then rehash.)
      * @param key The key to this association
      * @param val The value to which this key is associated
      */
     public void put(K key, V val) {
-        // TODO
-        if(!containsKey(key)){
-        	int index = findIndex(key);
-        	keys[index] = key;
-        	values[index] = val;
-        	//check full or not
-        	pairs ++;
-        	if(pairs == keys.length) rehash();
-        }else{
-        	int index = findIndex(key);
-        	values[index] = val;
+        if (oldKeys != null) {
+            step();
+            if (oldKeys != null) {
+                int index = findIndex(key, oldKeys);
+                if (oldKeys[index] != null) {
+                    oldValues[index] = val;
+                    return;
+                }
+            }
         }
+        int index = findIndex(key, keys);
+        if (keys[index] == null) {
+            keys[index] = key;
+            values[index] = val;
+            pairs++;
+            // always leave an empty slot to stop probes
+            if (pairs >= maxLoad * keys.length || pairs + 1 == keys.length)
+                rehash();
+        } else
+            values[index] = val;
     }
 
     /**
-     * Make the arrays grow, and reinsert the keys.
+     * Make the arrays grow, and reinsert the keys (or, in incremental
+     * mode, start moving them).
      */
+    @SuppressWarnings("unchecked")
     private void rehash() {
+        while (oldKeys != null)
+            step();
+
+        int newSize = PrimeSource.nextTableSize(keys.length);
         
-        int newSize = PrimeSource.nextOrEqPrime(keys.length + 1);
-        
-        K[] oldKeys = keys;
-        V[] oldValues = values;
+        oldKeys = keys;
+        oldValues = values;
         
         keys = (K[]) new Object[newSize];
         values = (V[]) new Object[newSize];
-        pairs = 0;
 
-        for (int i = 0; i < oldKeys.length; i++)
-            if (oldKeys[i] != null)
-                put(oldKeys[i], oldValues[i]);
+        int start = 0;
+        while (oldKeys[start] != null)
+            start++;
+        cursor = start;
+        remaining = oldKeys.length;
+        
+        if (! incremental)
+            while (oldKeys != null)
+                step();
+    }
+
+    /**
+     * Move up to SLOTS_PER_STEP slots of the old table into the new
+     * one, dropping the old table once it's empty.
+     */
+    private void step() {
+        for (int i = 0; i < SLOTS_PER_STEP && remaining > 0; i++) {
+            if (oldKeys[cursor] != null) {
+                int index = findIndex(oldKeys[cursor], keys);
+                keys[index] = oldKeys[cursor];
+                values[index] = oldValues[cursor];
+                oldKeys[cursor] = null;
+                oldValues[cursor] = null;
+            }
+            cursor = (cursor + oldKeys.length - 1) % oldKeys.length;
+            remaining--;
+        }
+        if (remaining == 0) {
+            oldKeys = null;
+            oldValues = null;
+        }
     }
 
     /**
@@ -131,11 +255,15 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
      * @return The value associated with this key, null if none exists
      */
     public V get(K key) {
-        int index = findIndex(key);
-        if (keys[index] == null)
-            return null;
-        else
+        int index = findIndex(key, keys);
+        if (keys[index] != null)
             return values[index];
+        if (oldKeys != null) {
+            index = findIndex(key, oldKeys);
+            if (oldKeys[index] != null)
+                return oldValues[index];
+        }
+        return null;
     }
 
     /**
@@ -144,7 +272,8 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
      * @return true if there is an association for this key, false otherwise
      */
     public boolean containsKey(K key) {
-        return keys[findIndex(key)] != null;
+        return keys[findIndex(key, keys)] != null
+                || (oldKeys != null && oldKeys[findIndex(key, oldKeys)] != null);
     }
 
     /**
@@ -159,6 +288,7 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
      * position is not in the range "between" (increasing index
      * with wrap-around) the gap and the position, then return -1,
      * that is, the key ideally goes "before" the gap.
+     * @param table The keys of the table the gap is in
      * @param gap The place we're measuring relative to; assumed to hold null
      * @param position The position of the key we're measuring; assumed
      * to hold a nonnull value.
@@ -166,18 +296,13 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
      * the key in the given position ideally comes before, exactly at,
      * or after the gap.
      */
-    private int compareIdealPlace(int gap, int position) {
-
-        // TODO
-    	K key = keys[position];
-    	int h = hash(key) % keys.length;
+    private int compareIdealPlace(K[] table, int gap, int position) {
+    	int h = hash(table[position], table.length);
     	if(h == gap) return 0;
-    	if(h > position && h < gap) return -1;
-    	if(h > gap && h < position) return 1;
-        // (suggested helper function for remove())
-    	//should never reach here
-        return -2;
-        
+    	// distances from the gap, traveling forward with wrap-around
+    	int idealDist = (h - gap + table.length) % table.length;
+    	int posDist = (position - gap + table.length) % table.length;
+    	return idealDist <= posDist ? 1 : -1;
     }
     
     /**
@@ -185,46 +310,99 @@ public class LinProbHashMap<K, V> implements Map<K, V> {
      * @param key The key to remove
      */
     public void remove(K key) {
-        // TODO
-    	int gap = findIndex(key);
-    	keys[gap] = null;
-    	values[gap] = null;
+        if (oldKeys != null) {
+            step();
+            if (oldKeys != null) {
+                int index = findIndex(key, oldKeys);
+                if (oldKeys[index] != null) {
+                    removeAt(oldKeys, oldValues, index);
+                    return;
+                }
+            }
+        }
+        int index = findIndex(key, keys);
+        if (keys[index] != null)
+            removeAt(keys, values, index);
+    }
+
+    /**
+     * Empty the given slot and close the gap by shifting back
+     * later keys in its cluster that ideally go at or before
+     * the gap.
+     * @param table The keys of the table to remove from
+     * @param vals The parallel values of that table
+     * @param gap The slot to empty; assumed to hold a key
+     */
+    private void removeAt(K[] table, V[] vals, int gap) {
+    	table[gap] = null;
+    	vals[gap] = null;
     	pairs --;
-    	int pos = (gap + 1) % keys.length;
-    	while(keys[pos] != null){
-    		if(compareIdealPlace(gap, pos) == 0){
-    			keys[gap] = keys[pos];
-    			values[gap] = values[pos];
-    			keys[pos] = null;
-    			values[pos] = null;
+    	int pos = (gap + 1) % table.length;
+    	while(table[pos] != null){
+    		if(compareIdealPlace(table, gap, pos) <= 0){
+    			table[gap] = table[pos];
+    			vals[gap] = vals[pos];
+    			table[pos] = null;
+    			vals[pos] = null;
     			gap = pos;
-    			pos = (gap + 1) % keys.length;
-        	}else{
-        		pos = (pos + 1) % keys.length;
         	}
+    		pos = (pos + 1) % table.length;
     	}
     }
     
+    /**
+     * Count the keys by probe length, for studying how well the
+     * table is working (including the old table, during an
+     * incremental rehash).
+     * @return An array whose element at index d is the number of
+     * keys d slots from their ideal places; its last element is
+     * nonzero (unless the map is empty).
+     */
+    public int[] probeLengthHistogram() {
+        int[] histogram = countProbeLengths(keys, new int[0]);
+        if (oldKeys != null)
+            histogram = countProbeLengths(oldKeys, histogram);
+        return histogram;
+    }
+
+    /**
+     * Add the probe lengths of the keys in the given table to a
+     * histogram, making it longer if needed.
+     */
+    private int[] countProbeLengths(K[] table, int[] histogram) {
+        for (int i = 0; i < table.length; i++)
+            if (table[i] != null) {
+                int d = (i - hash(table[i], table.length) + table.length)
+                        % table.length;
+                if (d >= histogram.length)
+                    histogram = Arrays.copyOf(histogram, d + 1);
+                histogram[d]++;
+            }
+        return histogram;
+    }
+
     /**
      * Return an iterator over the keys of this map.
      * @return The iterator.
      */
     public Iterator<K> iterator() {
-        // TODO
         return new Iterator<K>(){
         	int count = 0;
         	int pos = 0;
 			public boolean hasNext() {
-				// TODO 
 				return count < pairs;
 			}
 
 			public K next() {
-				// TODO 
-				assert((count < pairs) == true);
-				while(keys[pos] == null && pos < keys.length) pos++;
+				if (! hasNext()) throw new NoSuchElementException();
+				K key;
+				do {
+				    key = pos < keys.length ? keys[pos]
+				            : oldKeys[pos - keys.length];
+				    pos++;
+				} while (key == null);
 				count++;
-				return keys[pos++];
+				return key;
 			}
         	
         };
@@ -0,0 +1,280 @@
+package impl;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import adt.Map;
+
+/**
+ * LongLongHashMap
+ *
+ * A linear-probing hash map (as in LinProbHashMap) specialized to
+ * long keys and values, which are kept in parallel long[] arrays, so
+ * there's no boxing and no hashCode() or equals() call. A slot
+ * holding the key 0 counts as empty; the key 0 itself, if it's in
+ * the map, is kept in separate fields.
+ *
+ * The primitive versions of the operations (put(long, long) and so on)
+ * don't allocate anything. Since there's no null to return for a
+ * missing key, the primitive lookup is getOrDefault(), which takes
+ * the value to return instead. The Map versions with Long keys
+ * and values just unbox and call them.
+ */
+public class LongLongHashMap implements Map<Long, Long> {
+
+    /**
+     * Array containing keys, 0 for an empty slot.
+     */
+    private long[] keys;
+
+    /**
+     * Parallel array containing values.
+     */
+    private long[] values;
+
+    /**
+     * The number of pairs in the table (not counting key 0).
+     */
+    private int pairs;
+
+    /**
+     * Whether the key 0 is in the map.
+     */
+    private boolean hasZeroKey;
+
+    /**
+     * The value associated with key 0, if it's in the map.
+     */
+    private long zeroKeyValue;
+
+    /**
+     * The fraction of the table that may be full before rehashing.
+     */
+    private final double maxLoad;
+
+    /**
+     * Constructor allowing the original table size and the maximum
+     * load factor to be specified.
+     * @param initKeyCap The initial capacity of the number of keys.
+     * @param maxLoad The fraction of the table that may be full,
+     * strictly between 0 and 1.
+     */
+    public LongLongHashMap(int initKeyCap, double maxLoad) {
+        if (initKeyCap < 2)
+            throw new IllegalArgumentException("Capacity: " + initKeyCap);
+        if (! (maxLoad > 0 && maxLoad < 1))
+            throw new IllegalArgumentException("Load factor: " + maxLoad);
+        keys = new long[initKeyCap];
+        values = new long[initKeyCap];
+        pairs = 0;
+        this.maxLoad = maxLoad;
+    }
+
+    /**
+     * Constructor allowing the original table size to be specified.
+     * @param initKeyCap The initial capacity of the number of keys.
+     */
+    public LongLongHashMap(int initKeyCap) {
+        this(initKeyCap, .5);
+    }
+
+    public LongLongHashMap() {
+        this(19);
+    }
+
+    /**
+     * Compute the ideal index of a key in a table of the given size.
+     */
+    private static int hash(long key, int length) {
+        return ((int) (key ^ (key >>> 32)) & 0x7fffffff) % length;
+    }
+
+    /**
+     * Compute the index where the (nonzero) key is or could be.
+     * @param key The key whose index to find.
+     * @return The index containing this key, if it exists, or
+     * the empty slot where the key could go, if it doesn't.
+     */
+    private int findIndex(long key) {
+        int i = hash(key, keys.length);
+        while (keys[i] != 0 && keys[i] != key)
+            if (++i == keys.length)
+                i = 0;
+        return i;
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(long key, long val) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroKeyValue = val;
+            return;
+        }
+        int index = findIndex(key);
+        if (keys[index] == 0)
+            insertAt(index, key, val);
+        else
+            values[index] = val;
+    }
+
+    /**
+     * Add an association to the map unless the key already has one.
+     * @param key The key to this association
+     * @param val The value to associate with the key if it has none
+     * @return The value now associated with the key: the one it
+     * already had, or val if it had none
+     */
+    public long putIfAbsent(long key, long val) {
+        if (key == 0) {
+            if (! hasZeroKey) {
+                hasZeroKey = true;
+                zeroKeyValue = val;
+            }
+            return zeroKeyValue;
+        }
+        int index = findIndex(key);
+        if (keys[index] != 0)
+            return values[index];
+        insertAt(index, key, val);
+        return val;
+    }
+
+    /**
+     * Fill the given empty slot, rehashing if that makes
+     * the table too full.
+     */
+    private void insertAt(int index, long key, long val) {
+        keys[index] = key;
+        values[index] = val;
+        pairs++;
+        // always leave an empty slot to stop probes
+        if (pairs >= maxLoad * keys.length || pairs + 1 == keys.length)
+            rehash();
+    }
+
+    /**
+     * Make the arrays grow, and reinsert the keys.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        int newSize = PrimeSource.nextTableSize(keys.length);
+        keys = new long[newSize];
+        values = new long[newSize];
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != 0) {
+                int index = findIndex(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+    }
+
+    /**
+     * Get the value for a key, or a given value if the key isn't
+     * in the map.
+     * @param key The key whose value we're retrieving.
+     * @param defaultVal The value to return if the key has none
+     * @return The value associated with this key, or defaultVal
+     */
+    public long getOrDefault(long key, long defaultVal) {
+        if (key == 0)
+            return hasZeroKey ? zeroKeyValue : defaultVal;
+        int index = findIndex(key);
+        return keys[index] == 0 ? defaultVal : values[index];
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(long key) {
+        if (key == 0)
+            return hasZeroKey;
+        return keys[findIndex(key)] != 0;
+    }
+
+    /**
+     * Remove the association for this key, if it exists. Later keys
+     * in its cluster that ideally go at or before the emptied slot
+     * are shifted back.
+     * @param key The key to remove
+     */
+    public void remove(long key) {
+        if (key == 0) {
+            hasZeroKey = false;
+            return;
+        }
+        int gap = findIndex(key);
+        if (keys[gap] == 0)
+            return;
+        pairs--;
+        int length = keys.length;
+        int pos = gap + 1 == length ? 0 : gap + 1;
+        while (keys[pos] != 0) {
+            // the key at pos can fill the gap unless its ideal
+            // place is after the gap (and at or before pos)
+            int ideal = hash(keys[pos], length);
+            if ((pos - ideal + length) % length >= (pos - gap + length) % length) {
+                keys[gap] = keys[pos];
+                values[gap] = values[pos];
+                gap = pos;
+            }
+            pos = pos + 1 == length ? 0 : pos + 1;
+        }
+        keys[gap] = 0;
+    }
+
+    public void put(Long key, Long val) { put(key.longValue(), val.longValue()); }
+
+    public Long get(Long key) {
+        long k = key.longValue();
+        if (k == 0)
+            return hasZeroKey ? Long.valueOf(zeroKeyValue) : null;
+        int index = findIndex(k);
+        return keys[index] == 0 ? null : Long.valueOf(values[index]);
+    }
+
+    public boolean containsKey(Long key) { return containsKey(key.longValue()); }
+
+    public void remove(Long key) { remove(key.longValue()); }
+
+    /**
+     * Iterate over the keys in this map, in no particular order.
+     * The iterator's nextLong() returns keys without boxing them.
+     * @return An iterator for the keys in this map.
+     */
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            int count = 0;
+            // -1 while key 0 is still to be returned
+            int pos = hasZeroKey ? -1 : 0;
+
+            public boolean hasNext() {
+                return count < pairs + (hasZeroKey ? 1 : 0);
+            }
+
+            public long nextLong() {
+                if (! hasNext())
+                    throw new NoSuchElementException();
+                count++;
+                if (pos == -1) {
+                    pos = 0;
+                    return 0;
+                }
+                while (keys[pos] == 0)
+                    pos++;
+                return keys[pos++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
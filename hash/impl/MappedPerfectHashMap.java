@@ -0,0 +1,259 @@
+package impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import adt.Map;
+
+/**
+ * MappedPerfectHashMap
+ *
+ * A read-only map for a static dictionary saved in a file: write()
+ * saves the keys and values along with a MinimalPerfectHash for the
+ * keys, and the constructor maps the file into memory and answers
+ * get() and containsKey() from the mapping. Opening the file reads
+ * only its header and the hash function (a few bits per key); the
+ * keys and values are read straight from the mapped pages when
+ * they're looked up, so startup takes about the same time however
+ * big the dictionary is, and processes mapping the same file share
+ * one copy of it in the page cache.
+ *
+ * The file holds:
+ *   the header: a magic number, the number of pairs n, and the
+ *     position of the offset table (all big-endian);
+ *   the hash function, as written by MinimalPerfectHash.writeTo();
+ *   the offset table, at a multiple of 8: n+1 longs, the positions
+ *     in the file where each record starts and (for the last) where
+ *     the records end;
+ *   the records, in the order of their keys' indices, each one
+ *     the key's length as an int, then the key's and value's bytes.
+ * Files are limited to 2GB, the most one MappedByteBuffer can map.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+public class MappedPerfectHashMap<K, V> implements Map<K, V> {
+
+    /**
+     * Identifies the file format.
+     */
+    private static final int MAGIC = 0x50484d31; // "PHM1"
+
+    /**
+     * Bytes in the header.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The mapped file. Only absolute gets are used on it, and
+     * duplicates of it, so that lookups can run concurrently.
+     */
+    private final MappedByteBuffer mapped;
+
+    /**
+     * The hash function for the keys.
+     */
+    private final MinimalPerfectHash<K> hash;
+
+    /**
+     * The position in the file of the offset table.
+     */
+    private final int offsets;
+
+    private final RecordCodec<K> keyCodec;
+
+    private final RecordCodec<V> valueCodec;
+
+    /**
+     * Save keys and values in a file for a MappedPerfectHashMap.
+     * @param path The file to write, replaced if it exists
+     * @param keys The keys, which must be distinct
+     * @param values The values, in the same order as the keys
+     * @param keyCodec The codec for the keys
+     * @param valueCodec The codec for the values
+     * @throws IllegalArgumentException if the arrays' lengths differ,
+     * a key or value is null, a key is repeated, or the file would
+     * be too big to map
+     * @throws UncheckedIOException if the file can't be written
+     */
+    public static <K, V> void write(Path path, K[] keys, V[] values,
+            RecordCodec<K> keyCodec, RecordCodec<V> valueCodec) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException(keys.length + " keys but "
+                    + values.length + " values");
+        MinimalPerfectHash<K> hash = MinimalPerfectHash.build(keys);
+        int n = keys.length;
+
+        // Encode the records in the order of the keys' indices
+        byte[][] keyBytes = new byte[n][], valueBytes = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            if (keys[i] == null || values[i] == null)
+                throw new IllegalArgumentException("Null key or value at " + i);
+            int index = hash.index(keys[i]);
+            keyBytes[index] = keyCodec.encode(keys[i]);
+            valueBytes[index] = valueCodec.encode(values[i]);
+        }
+        long offsets = HEADER_SIZE + hash.serializedSize();
+        offsets = (offsets + 7) & ~7L;
+        long position = offsets + 8L * (n + 1);
+        long[] starts = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            starts[i] = position;
+            position += 4 + keyBytes[i].length + valueBytes[i].length;
+        }
+        starts[n] = position;
+        if (position > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("File would be " + position + " bytes");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeLong(offsets);
+            out.write(hash.toByteArray());
+            for (long i = HEADER_SIZE + hash.serializedSize(); i < offsets; i++)
+                out.write(0);
+            for (long start : starts)
+                out.writeLong(start);
+            for (int i = 0; i < n; i++) {
+                out.writeInt(keyBytes[i].length);
+                out.write(keyBytes[i]);
+                out.write(valueBytes[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open a file made by write().
+     * @param path The file
+     * @param keyCodec The codec the keys were written with
+     * @param valueCodec The codec the values were written with
+     * @throws IllegalArgumentException if the file isn't one
+     * write() made
+     * @throws UncheckedIOException if the file can't be read
+     */
+    public MappedPerfectHashMap(Path path, RecordCodec<K> keyCodec,
+            RecordCodec<V> valueCodec) {
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_SIZE)
+                throw new IllegalArgumentException("Not a perfect hash file: " + path);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (mapped.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a perfect hash file: " + path);
+        int n = mapped.getInt(4);
+        long offsetTable = mapped.getLong(8);
+        ByteBuffer hashBytes = mapped.duplicate();
+        hashBytes.position(HEADER_SIZE);
+        hash = MinimalPerfectHash.readFrom(hashBytes);
+        if (hash.size() != n || offsetTable < hashBytes.position()
+                || offsetTable + 8L * (n + 1) > mapped.capacity()
+                || mapped.getLong((int) offsetTable + 8 * n) != mapped.capacity())
+            throw new IllegalArgumentException("Corrupt perfect hash file: " + path);
+        offsets = (int) offsetTable;
+    }
+
+    /**
+     * A view of the mapped file from one position to another.
+     */
+    private ByteBuffer slice(int from, int to) {
+        ByteBuffer view = mapped.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view;
+    }
+
+    /**
+     * Where the record with the given index starts.
+     */
+    private int recordStart(int index) {
+        return (int) mapped.getLong(offsets + 8 * index);
+    }
+
+    /**
+     * Find the record for a key.
+     * @return The index of the key's record, or -1 if the key isn't
+     * in the map
+     */
+    private int find(K key) {
+        int index = hash.index(key);
+        if (index == -1)
+            return -1;
+        int start = recordStart(index);
+        int keyLength = mapped.getInt(start);
+        return key.equals(keyCodec.decode(slice(start + 4, start + 4 + keyLength)))
+                ? index : -1;
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        int index = find(key);
+        if (index == -1)
+            return null;
+        int start = recordStart(index);
+        return valueCodec.decode(slice(start + 4 + mapped.getInt(start),
+                recordStart(index + 1)));
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * Unsupported; the map is read-only.
+     */
+    public void put(K key, V val) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Unsupported; the map is read-only.
+     */
+    public void remove(K key) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Return an iterator over the keys, decoding each from the file.
+     * @return The iterator.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            int index = 0;
+            public boolean hasNext() {
+                return index < hash.size();
+            }
+            public K next() {
+                if (! hasNext()) throw new NoSuchElementException();
+                int start = recordStart(index++);
+                return keyCodec.decode(slice(start + 4, start + 4 + mapped.getInt(start)));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,515 @@
+package impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MinimalPerfectHash
+ *
+ * A minimal perfect hash function for a set of keys known ahead of
+ * time: it maps the n keys to the indices 0 through n-1, with no
+ * two keys sharing an index. It doesn't store the keys themselves,
+ * so a key that isn't in the set gets an arbitrary index; a map
+ * built on it (see MinimalPerfectHashMap) must keep the keys to
+ * check against. For large sets of keys, it takes a little under
+ * 3 bits per key.
+ *
+ * The construction is "hash and displace," as in CHD (Belazzougui,
+ * Botelho, and Dietzfelbinger, "Hash, displace, and compress," 2009)
+ * and PTHash (Pibiri and Trani, 2021). Each key gets a 64-bit
+ * fingerprint, which picks one of about n/5 buckets. Then, going
+ * from the biggest bucket to the smallest, each bucket is given the
+ * first "pilot" number that sends all its keys to free slots of a
+ * table slightly bigger than n (the key's slot comes from its
+ * fingerprint and a hash of its bucket's pilot). Most buckets find a
+ * pilot after a handful of tries because most of the table is still
+ * free when the big buckets are placed, so the whole build takes
+ * time linear in n. The pilots are stored as fixed-width indices
+ * into a dictionary of the distinct pilots used. Keys that land in
+ * the slots past n are sent to the free slots below n by a small
+ * remapping table, making the function minimal.
+ *
+ * To make the hard-to-place big buckets fewer, the buckets are
+ * skewed as in PTHash: 60% of the keys go to 30% of the buckets.
+ *
+ * @param <K> The type of the keys
+ */
+public class MinimalPerfectHash<K> {
+
+    /**
+     * The average number of keys in a bucket; more keys per bucket
+     * means fewer pilots to store but longer searches for them.
+     */
+    private static final double KEYS_PER_BUCKET = 5;
+
+    /**
+     * The fraction of the table the keys fill before remapping.
+     */
+    private static final double LOAD = .99;
+
+    /**
+     * The fraction of the keys, and of the buckets, in the dense
+     * part of the buckets.
+     */
+    private static final double DENSE_KEYS = .6, DENSE_BUCKETS = .3;
+
+    /**
+     * The seed used when none is given.
+     */
+    private static final long DEFAULT_SEED = 0x5eed345L;
+
+    /**
+     * How many seeds to try when keys' fingerprints collide.
+     */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * Pilots to try for a bucket before giving up on a seed; in
+     * practice the biggest pilots needed are far smaller.
+     */
+    private static final int MAX_PILOT = 1 << 24;
+
+    /**
+     * Identifies the serialized form.
+     */
+    private static final int MAGIC = 0x4d504831; // "MPH1"
+
+    /**
+     * The number of keys, and of the table's slots and buckets.
+     */
+    private final int n, m, buckets;
+
+    /**
+     * The number of buckets in the dense part.
+     */
+    private final int denseBuckets;
+
+    /**
+     * Fingerprints whose low 32 bits are below this go to the dense
+     * part of the buckets.
+     */
+    private final long denseThreshold;
+
+    /**
+     * Multipliers to map a fingerprint's low bits onto a bucket in
+     * each part (as slot() scales to the table, but for the part's
+     * share of the range of those bits).
+     */
+    private final long denseMultiplier, sparseMultiplier;
+
+    /**
+     * The seed for the fingerprints.
+     */
+    private final long seed;
+
+    /**
+     * The distinct pilots used, and their hashes.
+     */
+    private int[] dictionary;
+    private long[] pilotHashes;
+
+    /**
+     * Each bucket's pilot, as an index into dictionary, packed in
+     * pilotWidth bits each.
+     */
+    private long[] pilotWords;
+    private int pilotWidth;
+
+    /**
+     * For each slot at or past n, the free slot below n that it's
+     * sent to, packed in remapWidth bits each.
+     */
+    private long[] remapWords;
+    private int remapWidth;
+
+    /**
+     * Set up the shape of the table for n keys; the pilots and
+     * remapping are filled in by place() or readFrom().
+     */
+    private MinimalPerfectHash(int n, long seed) {
+        this.n = n;
+        this.seed = seed;
+        m = n == 0 ? 0 : Math.max(n + 1, (int) Math.ceil(n / LOAD));
+        buckets = Math.max(1, (int) Math.ceil(n / KEYS_PER_BUCKET));
+        if (buckets == 1) {
+            denseBuckets = 1;
+            denseThreshold = 1L << 32;
+        } else {
+            denseBuckets = Math.max(1, (int) (DENSE_BUCKETS * buckets));
+            denseThreshold = (long) (DENSE_KEYS * (1L << 32));
+        }
+        denseMultiplier = ((long) denseBuckets << 32) / denseThreshold;
+        sparseMultiplier = buckets == denseBuckets ? 0
+                : ((long) (buckets - denseBuckets) << 32) / ((1L << 32) - denseThreshold);
+    }
+
+    // ---- Hashing ----
+
+    /**
+     * Finish a 64-bit hash so that every bit of the input affects
+     * every bit of the output (MurmurHash3's fmix64).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * A 64-bit hash of the key. Strings (and other CharSequences) and
+     * Longs are hashed from their contents, so that distinct keys
+     * almost never collide; other keys are hashed from hashCode(),
+     * so keys with equal hash codes can't be told apart.
+     * @param key The key
+     * @param seed A seed choosing among hash functions
+     * @return The key's fingerprint
+     */
+    public static long fingerprint(Object key, long seed) {
+        long h;
+        if (key instanceof CharSequence) {
+            // FNV-1a, 64-bit, over the chars
+            CharSequence chars = (CharSequence) key;
+            h = 0xcbf29ce484222325L ^ seed;
+            for (int i = 0; i < chars.length(); i++)
+                h = (h ^ chars.charAt(i)) * 0x100000001b3L;
+        }
+        else if (key instanceof Long)
+            h = (Long) key ^ seed;
+        else
+            h = key.hashCode() ^ seed;
+        return mix(h);
+    }
+
+    /**
+     * The bucket for a fingerprint, from its low 32 bits.
+     */
+    private int bucket(long print) {
+        long low = print & 0xffffffffL;
+        if (low < denseThreshold)
+            return (int) ((low * denseMultiplier) >>> 32);
+        return denseBuckets + (int) (((low - denseThreshold) * sparseMultiplier) >>> 32);
+    }
+
+    /**
+     * The hash of a pilot, to be combined with fingerprints.
+     */
+    private static long pilotHash(int pilot) {
+        return mix(pilot ^ 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * The slot for a fingerprint given its bucket's pilot hash: the
+     * two combined, multiplied so that every bit affects the high 32
+     * bits, and those scaled to the table size.
+     */
+    private int slot(long print, long pilotHash) {
+        long z = (print ^ pilotHash) * 0x9e3779b97f4a7c15L;
+        return (int) (((z >>> 32) * m) >>> 32);
+    }
+
+    /**
+     * Compute the index for a key.
+     * @param key The key
+     * @return The key's index, from 0 through size()-1, if it's one of
+     * the keys the function was built for; otherwise some index in
+     * that range (or -1 if there were no keys)
+     */
+    public int index(K key) {
+        if (n == 0)
+            return -1;
+        long print = fingerprint(key, seed);
+        long pilot = pilotHashes[(int) getBits(pilotWords, bucket(print), pilotWidth)];
+        int slot = slot(print, pilot);
+        return slot < n ? slot : (int) getBits(remapWords, slot - n, remapWidth);
+    }
+
+    /**
+     * @return The number of keys
+     */
+    public int size() {
+        return n;
+    }
+
+    // ---- Packed arrays of fixed-width values ----
+
+    /**
+     * The number of bits needed to write the numbers up to max.
+     */
+    private static int bitsFor(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    private static long[] pack(int[] values, int width) {
+        long[] words = new long[(int) (((long) values.length * width + 63) >>> 6)];
+        if (width == 0)
+            return words; // the values are all 0
+        for (int i = 0; i < values.length; i++) {
+            long bit = (long) i * width;
+            int word = (int) (bit >>> 6), shift = (int) (bit & 63);
+            words[word] |= (long) values[i] << shift;
+            if (shift + width > 64)
+                words[word + 1] |= (long) values[i] >>> (64 - shift);
+        }
+        return words;
+    }
+
+    private static long getBits(long[] words, int i, int width) {
+        if (width == 0)
+            return 0;
+        long bit = (long) i * width;
+        int word = (int) (bit >>> 6), shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if (shift + width > 64)
+            value |= words[word + 1] << (64 - shift);
+        return value & (-1L >>> (64 - width));
+    }
+
+    // ---- Construction ----
+
+    /**
+     * Build a minimal perfect hash function for the given keys.
+     * @param keys The keys, which must be distinct
+     * @return The function
+     * @throws IllegalArgumentException if a key is repeated, or if
+     * keys can't be told apart (see fingerprint())
+     */
+    public static <K> MinimalPerfectHash<K> build(K[] keys) {
+        return build(keys, DEFAULT_SEED);
+    }
+
+    /**
+     * Build a minimal perfect hash function for the given keys,
+     * starting from a given seed (the same keys and seed always give
+     * the same function).
+     * @param keys The keys, which must be distinct
+     * @param seed The seed for the keys' fingerprints; if two keys'
+     * fingerprints collide, later seeds are tried
+     * @return The function
+     * @throws IllegalArgumentException if a key is repeated, or if
+     * keys can't be told apart (see fingerprint())
+     */
+    public static <K> MinimalPerfectHash<K> build(K[] keys, long seed) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            MinimalPerfectHash<K> result = new MinimalPerfectHash<K>(keys.length,
+                    seed + attempt * 0x9e3779b97f4a7c15L);
+            if (result.place(keys))
+                return result;
+        }
+        throw new IllegalArgumentException("Keys' hash codes collide");
+    }
+
+    /**
+     * Find the pilots and remapping for the keys.
+     * @return false if two keys' fingerprints collide, or a bucket
+     * can't be placed (so another seed is needed)
+     */
+    private boolean place(K[] keys) {
+        // Sort the fingerprints by bucket
+        long[] prints = new long[n];
+        int[] bucketOf = new int[n];
+        int[] start = new int[buckets + 1];
+        for (int i = 0; i < n; i++) {
+            prints[i] = fingerprint(keys[i], seed);
+            bucketOf[i] = bucket(prints[i]);
+            start[bucketOf[i] + 1]++;
+        }
+        int maxSize = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxSize = Math.max(maxSize, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        long[] sorted = new long[n];
+        int[] sortedKeys = new int[n];
+        int[] next = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < n; i++) {
+            sortedKeys[next[bucketOf[i]]] = i;
+            sorted[next[bucketOf[i]]++] = prints[i];
+        }
+
+        // Equal fingerprints are in the same bucket
+        for (int b = 0; b < buckets; b++)
+            for (int i = start[b]; i < start[b + 1]; i++)
+                for (int j = i + 1; j < start[b + 1]; j++)
+                    if (sorted[i] == sorted[j]) {
+                        K key = keys[sortedKeys[i]];
+                        if (key.equals(keys[sortedKeys[j]]))
+                            throw new IllegalArgumentException("Duplicate key: " + key);
+                        return false;
+                    }
+
+        // Order the buckets from biggest to smallest
+        int[] bySize = new int[maxSize + 2];
+        for (int b = 0; b < buckets; b++)
+            bySize[maxSize - (start[b + 1] - start[b]) + 1]++;
+        for (int s = 0; s <= maxSize; s++)
+            bySize[s + 1] += bySize[s];
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++)
+            order[bySize[maxSize - (start[b + 1] - start[b])]++] = b;
+
+        // Find each bucket's pilot
+        long[] taken = new long[(m + 63) >>> 6];
+        int[] pilots = new int[buckets];
+        int[] slots = new int[maxSize];
+        for (int b : order) {
+            if (start[b] == start[b + 1])
+                break; // the rest are empty, and keep pilot 0
+            for (int pilot = 0; ; pilot++) {
+                if (pilot == MAX_PILOT)
+                    return false;
+                long hash = pilotHash(pilot);
+                int placed = 0;
+                for (int i = start[b]; i < start[b + 1]; i++) {
+                    int slot = slot(sorted[i], hash);
+                    if ((taken[slot >>> 6] & (1L << slot)) != 0)
+                        break;
+                    int j = 0;
+                    while (j < placed && slots[j] != slot)
+                        j++;
+                    if (j < placed)
+                        break;
+                    slots[placed++] = slot;
+                }
+                if (placed == start[b + 1] - start[b]) {
+                    for (int j = 0; j < placed; j++)
+                        taken[slots[j] >>> 6] |= 1L << slots[j];
+                    pilots[b] = pilot;
+                    break;
+                }
+            }
+        }
+
+        // Store the pilots as indices into a dictionary of the
+        // distinct ones
+        int[] distinct = pilots.clone();
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < distinct.length; i++)
+            if (i == 0 || distinct[i] != distinct[i - 1])
+                distinct[count++] = distinct[i];
+        dictionary = Arrays.copyOf(distinct, count);
+        int[] indices = new int[buckets];
+        for (int b = 0; b < buckets; b++)
+            indices[b] = Arrays.binarySearch(dictionary, pilots[b]);
+        pilotWidth = bitsFor(dictionary.length - 1);
+        pilotWords = pack(indices, pilotWidth);
+        hashPilots();
+
+        // Send the taken slots past n to the free ones below n
+        int[] remap = new int[m - n];
+        int free = 0;
+        for (int slot = n; slot < m; slot++)
+            if ((taken[slot >>> 6] & (1L << slot)) != 0) {
+                while ((taken[free >>> 6] & (1L << free)) != 0)
+                    free++;
+                remap[slot - n] = free++;
+            }
+        remapWidth = bitsFor(Math.max(0, n - 1));
+        remapWords = pack(remap, remapWidth);
+        return true;
+    }
+
+    private void hashPilots() {
+        pilotHashes = new long[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++)
+            pilotHashes[i] = pilotHash(dictionary[i]);
+    }
+
+    // ---- Serialization ----
+
+    /**
+     * @return The number of bytes writeTo() writes
+     */
+    public int serializedSize() {
+        return 6 * 4 + 8 + 4 * dictionary.length
+                + 8 * (pilotWords.length + remapWords.length);
+    }
+
+    /**
+     * @return The average number of bits per key in the serialized form
+     */
+    public double bitsPerKey() {
+        return 8.0 * serializedSize() / n;
+    }
+
+    /**
+     * Write this function to a buffer, at its position.
+     * @param buffer A buffer with serializedSize() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(n).putLong(seed)
+                .putInt(dictionary.length).putInt(pilotWidth)
+                .putInt(pilotWords.length).putInt(remapWords.length);
+        for (int pilot : dictionary)
+            buffer.putInt(pilot);
+        for (long word : pilotWords)
+            buffer.putLong(word);
+        for (long word : remapWords)
+            buffer.putLong(word);
+    }
+
+    /**
+     * @return This function in serialized form
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(serializedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Read a function written by writeTo(), from the buffer's
+     * position (leaving the position after it).
+     * @param buffer The buffer to read
+     * @return The function
+     * @throws IllegalArgumentException if the buffer doesn't hold one
+     */
+    public static <K> MinimalPerfectHash<K> readFrom(ByteBuffer buffer) {
+        if (buffer.remaining() < 32 || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a minimal perfect hash");
+        int n = buffer.getInt();
+        long seed = buffer.getLong();
+        if (n < 0)
+            throw new IllegalArgumentException("Bad size: " + n);
+        MinimalPerfectHash<K> result = new MinimalPerfectHash<K>(n, seed);
+        int dictionaryLength = buffer.getInt();
+        result.pilotWidth = buffer.getInt();
+        int pilotWordCount = buffer.getInt(), remapWordCount = buffer.getInt();
+        result.remapWidth = bitsFor(Math.max(0, n - 1));
+        if (dictionaryLength < 1 || result.pilotWidth != bitsFor(dictionaryLength - 1)
+                || pilotWordCount != (int) (((long) result.buckets * result.pilotWidth + 63) >>> 6)
+                || remapWordCount != (int) (((long) (result.m - n) * result.remapWidth + 63) >>> 6)
+                || (long) dictionaryLength * 4 + (pilotWordCount + (long) remapWordCount) * 8
+                        > buffer.remaining())
+            throw new IllegalArgumentException("Corrupt minimal perfect hash");
+        result.dictionary = new int[dictionaryLength];
+        for (int i = 0; i < dictionaryLength; i++)
+            result.dictionary[i] = buffer.getInt();
+        result.pilotWords = new long[pilotWordCount];
+        for (int i = 0; i < pilotWordCount; i++)
+            result.pilotWords[i] = buffer.getLong();
+        result.remapWords = new long[remapWordCount];
+        for (int i = 0; i < remapWordCount; i++)
+            result.remapWords[i] = buffer.getLong();
+        // every index() must land in the dictionary and then below n
+        for (int i = 0; i < result.buckets; i++)
+            if (getBits(result.pilotWords, i, result.pilotWidth) >= dictionaryLength)
+                throw new IllegalArgumentException("Corrupt minimal perfect hash");
+        for (int i = 0; i < result.m - n; i++)
+            if (getBits(result.remapWords, i, result.remapWidth) >= n)
+                throw new IllegalArgumentException("Corrupt minimal perfect hash");
+        result.hashPilots();
+        return result;
+    }
+
+    /**
+     * Read a function from its serialized form.
+     * @param bytes An array made by toByteArray()
+     * @return The function
+     * @throws IllegalArgumentException if the array doesn't hold one
+     */
+    public static <K> MinimalPerfectHash<K> fromByteArray(byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+
+}
@@ -0,0 +1,144 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import adt.Map;
+
+/**
+ * MinimalPerfectHashMap
+ *
+ * A map for keys known ahead of time, like PerfectHashMap, but using
+ * a MinimalPerfectHash: the keys and values are kept in arrays of
+ * exactly as many slots as there are keys, and a lookup is one hash
+ * computation and one equals() check. As in PerfectHashMap, put()
+ * works only with the keys given to the constructor (it throws an
+ * IllegalArgumentException for others), while get() and containsKey()
+ * work as expected with any key.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+public class MinimalPerfectHashMap<K, V> implements Map<K, V> {
+
+    /**
+     * The hash function, mapping the known keys to 0 through n-1
+     */
+    private final MinimalPerfectHash<K> hash;
+
+    /**
+     * The known keys, each at its index
+     */
+    private final K[] keys;
+
+    /**
+     * The values, at their keys' indices
+     */
+    private final V[] values;
+
+    /**
+     * Whether each key is in the map (that is, has been put and not
+     * removed since)
+     */
+    private final boolean[] present;
+
+    /**
+     * The number of keys in the map
+     */
+    private int size;
+
+    /**
+     * Constructor. Takes the keys (all known ahead of time) and
+     * builds a minimal perfect hash function for them.
+     * @param knownKeys The keys, which must be distinct
+     */
+    @SuppressWarnings("unchecked")
+    public MinimalPerfectHashMap(K[] knownKeys) {
+        hash = MinimalPerfectHash.build(knownKeys);
+        keys = (K[]) new Object[knownKeys.length];
+        values = (V[]) new Object[knownKeys.length];
+        present = new boolean[knownKeys.length];
+        for (K key : knownKeys)
+            keys[hash.index(key)] = key;
+    }
+
+    /**
+     * The index of the key, or -1 if it isn't one of the known keys.
+     */
+    private int find(K key) {
+        int index = hash.index(key);
+        return index >= 0 && keys[index].equals(key) ? index : -1;
+    }
+
+    /**
+     * Add an association to the map.
+     * @param key The key to this association, one of those given
+     * to the constructor
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        int index = find(key);
+        if (index == -1)
+            throw new IllegalArgumentException("Unknown key: " + key);
+        if (! present[index]) {
+            present[index] = true;
+            size++;
+        }
+        values[index] = val;
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        int index = find(key);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        int index = find(key);
+        return index != -1 && present[index];
+    }
+
+    /**
+     * Remove the association for this key, if it exists.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        int index = find(key);
+        if (index != -1 && present[index]) {
+            present[index] = false;
+            values[index] = null;
+            size--;
+        }
+    }
+
+    /**
+     * Return an iterator over the keys in this map.
+     * @return The iterator.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            int count = 0;
+            int pos = 0;
+            public boolean hasNext() {
+                return count < size;
+            }
+            public K next() {
+                if (! hasNext()) throw new NoSuchElementException();
+                while (! present[pos])
+                    pos++;
+                count++;
+                return keys[pos++];
+            }
+        };
+    }
+
+}
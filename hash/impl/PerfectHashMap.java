@@ -1,13 +1,12 @@
 package impl;
 
-import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import adt.Map;
-import adt.Set;
-import impl.ListSet;
 
 /**
  * PerfectHashMap
@@ -17,6 +16,12 @@ import impl.ListSet;
  * if used with a key that doesn't exist. However, we assume put
  * will never be called using a key that isn't supplied to the
  * constructor; behavior is unspecified otherwise.
+ *
+ * The buckets' secondary maps are independent of each other, so they
+ * are built in parallel on a fork-join pool. Each bucket draws its
+ * hash functions from its own random number generator, seeded from
+ * the map's seed and the bucket's number, so the same keys and seed
+ * always make the same map, however the work is divided among threads.
  * 
  * @author Thomas VanDrunen
  * CSCI 345, Wheaton College
@@ -57,47 +62,37 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
         HashFunction<Object> h;
         
         /**
-         * Constructor. Given a set of keys, make appropriately
-         * size arrays and a hash set that makes no collisions.
-         * @param givenKeys
+         * Constructor. Given some keys, make appropriately
+         * size arrays and a hash function that makes no collisions.
+         * @param givenKeys An array containing the keys
+         * @param from The index of the first key for this map
+         * @param to The index after the last key for this map
+         * @param random The random number generator to draw hash
+         * functions from
          */
-        SecondaryMap(Set<K> givenKeys) {
-            // TODO
-        	m = givenKeys.size() * givenKeys.size();
-        	keys = (K[]) new Object[m];
-        	values = (V[]) new Object[m];
-        	
-        	UniversalHashFactory hFactory = new UniversalHashFactory();
-//        	int p = new PrimeSource().nextOrEqPrime(findMax(givenKeys));
-        	int p = new PrimeSource().nextOrEqPrime(100*100);
-        	boolean hasCollision = true;
-        	while(hasCollision){
-        		hasCollision = false;
-        		boolean[] collision = new boolean[m];
-        		h = hFactory.makeHashFunction(p, m, 100);
-        		Iterator<K> it = givenKeys.iterator();
-        		while(it.hasNext()){
-        			K key = it.next();
-        			if(collision[(h.hash(key)& 0x7fffffff) % m]){
-        				hasCollision = true;
-        				break;
-        			}else{
-        				collision[(h.hash(key)& 0x7fffffff) % m] = true;
-        			}
-        		}
-        	}
+        @SuppressWarnings("unchecked")
+        SecondaryMap(K[] givenKeys, int from, int to, Random random) {
+            int size = to - from;
+            m = size * size;
+            keys = (K[]) new Object[m];
+            values = (V[]) new Object[m];
+            // the keys' hash codes are distinct (the outer constructor
+            // checks), so some function makes no collisions
+            boolean hasCollision = true;
+            while (hasCollision) {
+                hasCollision = false;
+                boolean[] taken = new boolean[m];
+                h = UniversalHashFactory.makeHashFunction(m, random);
+                for (int i = from; i < to && ! hasCollision; i++) {
+                    int pos = h.hash(givenKeys[i]);
+                    if (taken[pos])
+                        hasCollision = true;
+                    else
+                        taken[pos] = true;
+                }
+            }
         }
-        
-        private int findMax(Set<K> givenKeys){
-        	int max = Integer.MIN_VALUE;
-        	for(K key: givenKeys){
-        		if((key.hashCode() & 0x7fffffff) % 100 > max){
-        			max = (key.hashCode() & 0x7fffffff) % 100; 
-        		}
-        	}
-        	return max;
-        }
-        
+
         /**
          * Add an association to the map. We assume the given
          * key was known ahead of time.
@@ -190,9 +185,15 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
     private SecondaryMap[] secondaries;
 
     /**
-     * A prime number greater than the greatest hash value
+     * The seed used when none is given.
      */
-    private int p;
+    private static final long DEFAULT_SEED = 345;
+
+    /**
+     * The number of buckets below which a fork-join task builds
+     * its buckets itself instead of splitting them.
+     */
+    private static final int BUCKETS_PER_TASK = 256;
 
     /**
      * A parameter to the hash function; here, the number of keys
@@ -210,34 +211,122 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
      * set things up to guarantee no collisions.
      * @param keys
      */
-    @SuppressWarnings("unchecked")
     public PerfectHashMap(K[] keys) {
-        // TODO
-    	int m = keys.length;
-    	int p = new PrimeSource().nextOrEqPrime(findMax(keys));
-    	UniversalHashFactory hFactory = new UniversalHashFactory();
-    	h = hFactory.makeHashFunction(p, m, 100);
-    	secondaries = new PerfectHashMap.SecondaryMap[m];
-    	Set<K>[] list = new Set[m];
-    	for(int i = 0; i<list.length; i++){
-    		list[i] = new ListSet<K>();
-    	}
-    	for(int i = 0; i< keys.length; i++){
-    		list[h.hash(keys[i]) % m].add(keys[i]);
-    	}
-    	for(int i = 0; i<list.length; i++){
-    		secondaries[i] = new SecondaryMap(list[i]);
-    	}
+        this(keys, ForkJoinPool.commonPool(), DEFAULT_SEED);
     }
-    
-    private int findMax(K[] keys){
-    	int max = Integer.MIN_VALUE;
-    	for(int i = 0; i < keys.length; i++){
-    		if((keys[i].hashCode() & 0x7fffffff) % 100 > max){
-    			max = (keys[i].hashCode() & 0x7fffffff) % 100; 
-    		}
-    	}
-    	return max;
+
+    /**
+     * Constructor. Takes the keys (all known ahead of time) to
+     * set things up to guarantee no collisions, building the
+     * secondary maps on the given pool.
+     * @param keys The keys, which must be distinct and have distinct
+     * hash codes
+     * @param pool The pool to build the secondary maps on
+     * @param seed The seed from which all the hash functions are drawn
+     * @throws IllegalArgumentException if a key is repeated or two
+     * keys have the same hash code
+     */
+    @SuppressWarnings("unchecked")
+    public PerfectHashMap(K[] keys, ForkJoinPool pool, long seed) {
+        m = keys.length;
+        secondaries = new PerfectHashMap.SecondaryMap[m];
+        if (m == 0)
+            return;
+        checkHashCodes(keys);
+        Random random = new Random(seed);
+
+        // Find a primary function whose buckets' squared sizes
+        // (the sizes of their secondary maps) sum to at most 4m;
+        // the expected sum is under 2m, so this takes few tries.
+        int[] bucketOf = new int[m];
+        int[] start;
+        long squares;
+        do {
+            h = UniversalHashFactory.makeHashFunction(m, random);
+            start = new int[m + 1];
+            for (int i = 0; i < m; i++) {
+                bucketOf[i] = h.hash(keys[i]);
+                start[bucketOf[i] + 1]++;
+            }
+            squares = 0;
+            for (int i = 1; i <= m; i++)
+                squares += (long) start[i] * start[i];
+        } while (squares > 4L * m);
+
+        // Group the keys by bucket
+        for (int i = 0; i < m; i++)
+            start[i + 1] += start[i];
+        final K[] grouped = (K[]) new Object[m];
+        int[] next = start.clone();
+        for (int i = 0; i < m; i++)
+            grouped[next[bucketOf[i]]++] = keys[i];
+
+        pool.invoke(new BuildSecondaries(grouped, start, seed, 0, m));
+    }
+
+    /**
+     * Make sure no two keys have the same hash code (as duplicate
+     * keys do). Such keys collide under every function, so neither
+     * the primary function's bound nor a secondary map could ever
+     * be met.
+     * @throws IllegalArgumentException if two keys' hash codes are
+     * equal
+     */
+    private static void checkHashCodes(Object[] keys) {
+        int[] codes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            codes[i] = keys[i].hashCode();
+        Arrays.sort(codes);
+        for (int i = 1; i < codes.length; i++) {
+            if (codes[i] != codes[i - 1])
+                continue;
+            // find two keys with that code for the message
+            Object first = null;
+            for (Object key : keys) {
+                if (key.hashCode() != codes[i])
+                    continue;
+                if (first == null)
+                    first = key;
+                else
+                    throw new IllegalArgumentException(first.equals(key)
+                            ? "Duplicate key: " + key
+                            : "Keys with equal hash codes: " + first + ", " + key);
+            }
+        }
+    }
+
+    /**
+     * Fork-join task to build the secondary maps for a range of
+     * buckets, splitting the range in half until it's small.
+     */
+    private class BuildSecondaries extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final K[] grouped;
+        final int[] start;
+        final long seed;
+        final int from, to;
+
+        BuildSecondaries(K[] grouped, int[] start, long seed, int from, int to) {
+            this.grouped = grouped;
+            this.start = start;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= BUCKETS_PER_TASK) {
+                for (int i = from; i < to; i++)
+                    secondaries[i] = new SecondaryMap(grouped, start[i], start[i + 1],
+                            new Random(seed * 0x9e3779b97f4a7c15L + i));
+            }
+            else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BuildSecondaries(grouped, start, seed, from, mid),
+                        new BuildSecondaries(grouped, start, seed, mid, to));
+            }
+        }
     }
     
     /**
@@ -247,6 +336,7 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
      * @param val The value to which this key is associated
      */
     public void put(K key, V val) {
+        if (m == 0) return;
         secondaries[h.hash(key)].put(key, val);
     }
 
@@ -256,6 +346,7 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
      * @return The value associated with this key, null if none exists
      */
    public V get(K key) {
+       if (m == 0) return null;
        return secondaries[h.hash(key)].get(key);
    }
 
@@ -265,6 +356,7 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
     * @return true if there is an association for this key, false otherwise
     */
     public boolean containsKey(K key) {
+        if (m == 0) return false;
         return secondaries[h.hash(key)].containsKey(key);
     }
 
@@ -273,6 +365,7 @@ public class PerfectHashMap<K, V> implements Map<K, V> {
      * @param key The key to remove
      */
     public void remove(K key) {
+        if (m == 0) return;
         secondaries[h.hash(key)].remove(key);
     }
     
@@ -1,9 +1,20 @@
 package impl;
 
+import java.util.Arrays;
+
 /**
  * PrimeSource
  * 
  * A class to contain static methods for generating prime numbers.
+ *
+ * Primes are found with a sieve of Eratosthenes over the odd numbers,
+ * one bit per number, which is extended when a bigger prime is asked
+ * for: its size at least doubles, and only the new part is sieved,
+ * a segment at a time, by the primes already found. Beyond
+ * CACHE_LIMIT, rather than keep a sieve that big, each search sieves
+ * just a window of numbers starting where it starts.
+ *
+ * The methods are synchronized, since the sieve is shared.
  * 
  * @author Thomas VanDrunen
  * CSCI 345, Wheaton College
@@ -13,45 +24,152 @@ package impl;
 public class PrimeSource {
 
     /**
-     * An array of a bunch of primes, indicated by index
+     * Bit i (of word i / 64) is set if 2i + 1 is composite (or 1).
+     */
+    private static long[] composite = new long[0];
+
+    /**
+     * The sieve covers the numbers less than this, a multiple of 128.
+     */
+    private static int limit = 0;
+
+    /**
+     * The sieve grows no bigger than this (2^26 numbers, 4MB).
+     */
+    private static final int CACHE_LIMIT = 1 << 26;
+
+    /**
+     * Numbers sieved at a time, in a segment or a window.
+     */
+    private static final int SEGMENT = 1 << 18;
+
+    /**
+     * Good sizes for hash tables: primes, each about twice the last,
+     * and each about halfway between powers of two.
      */
-    private static boolean[] primes;
-    
+    private static final int[] TABLE_SIZES = {
+        53, 97, 193, 389, 769, 1543, 3079, 6151, 12289, 24593, 49157,
+        98317, 196613, 393241, 786433, 1572869, 3145739, 6291469,
+        12582917, 25165843, 50331653, 100663319, 201326611, 402653189,
+        805306457, 1610612741 };
+
     /**
-     * Recompute the array of primes (such as when we want
-     * more than we had before)
+     * Extend the sieve to cover (at least) the numbers less than bound,
+     * or up to CACHE_LIMIT if bound is bigger.
      * @param bound An upper bound on the numbers we're considering for
      * prime candidacy.
      */
-    public static void sieve(int bound) {
-        primes = new boolean[bound];
-        for (int i = 2; i < primes.length; i++)
-            primes[i] = true;
-        for (int i = 2; i < primes.length; i++)
-            if (primes[i])
-                for (int j = i * i; j < primes.length; j += i)
-                    primes[j] = false;
+    public static synchronized void sieve(int bound) {
+        if (bound <= limit || limit == CACHE_LIMIT)
+            return;
+        int newLimit = Math.max(Math.min(bound, CACHE_LIMIT), 2 * limit);
+        newLimit = Math.min((newLimit + 127) & ~127, CACHE_LIMIT);
+        composite = Arrays.copyOf(composite, newLimit / 128);
+        if (limit == 0) {
+            composite[0] = 1; // 1 isn't prime
+            sieveSegment(composite, 0, 128);
+            limit = 128;
+        }
+        // Each segment ends by twice its start, so the primes
+        // that sieve it are all below it, already found.
+        while (limit < newLimit) {
+            int end = (int) Math.min((long) limit + Math.min(limit, SEGMENT), newLimit);
+            sieveSegment(composite, limit, end);
+            limit = end;
+        }
+    }
+
+    /**
+     * Cross off the odd multiples, from lo (inclusive) to hi
+     * (exclusive), of the odd primes whose squares are below hi;
+     * bit i of bits stands for lo + 2i + 1 (lo is even). The primes
+     * are taken from the sieve, which must cover their range.
+     */
+    private static void sieveSegment(long[] bits, long lo, long hi) {
+        boolean inSieve = bits == composite;
+        for (int p = 3; (long) p * p < hi; p += 2) {
+            if (isComposite(p))
+                continue;
+            long start = Math.max((long) p * p, (lo + p - 1) / p * p);
+            if ((start & 1) == 0)
+                start += p;
+            for (long j = start; j < hi; j += 2 * p) {
+                long i = inSieve ? j >>> 1 : (j - lo) >>> 1;
+                bits[(int) (i >>> 6)] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Is this odd number, which the sieve covers, composite?
+     */
+    private static boolean isComposite(int x) {
+        return (composite[x >>> 7] & (1L << (x >>> 1))) != 0;
     }
-    
+
     /**
      * Find the next prime number greater than or equal to the given one.
      * @param x
      * @return
      */
-    public static int nextOrEqPrime(int x) {
-        if (x < 2) return 2;
-        while (x >= primes.length || ! primes[x]) 
-            if (x >= primes.length) {
-                sieve(primes.length + 1000);
+    public static synchronized int nextOrEqPrime(int x) {
+        if (x <= 2) return 2;
+        x |= 1;
+        if (x < CACHE_LIMIT) {
+            sieve(x + 1);
+            // Look for a clear bit at or after x's, a word at a time
+            int word = x >>> 7;
+            long free = ~composite[word] & (-1L << (x >>> 1));
+            while (free == 0) {
+                if (++word == composite.length) {
+                    if (limit == CACHE_LIMIT)
+                        return windowedSearch(CACHE_LIMIT + 1);
+                    sieve(limit + 1);
+                }
+                free = ~composite[word];
             }
-            else
-                x++;
-        
-        return x;
+            return word * 128 + 2 * Long.numberOfTrailingZeros(free) + 1;
+        }
+        return windowedSearch(x);
     }
-    
-    static {
-        sieve(100);
+
+    /**
+     * Find the next prime at or after odd x, beyond the sieve, by
+     * sieving windows of numbers from x on.
+     */
+    private static int windowedSearch(int x) {
+        sieve(CACHE_LIMIT);
+        long[] window = new long[SEGMENT / 128];
+        for (long lo = x - 1; lo <= Integer.MAX_VALUE; lo += SEGMENT) {
+            long hi = Math.min(lo + SEGMENT, Integer.MAX_VALUE + 1L);
+            Arrays.fill(window, 0);
+            sieveSegment(window, lo, hi);
+            for (int i = 0; i < window.length; i++) {
+                long free = ~window[i];
+                if (free != 0) {
+                    long prime = lo + 128L * i + 2 * Long.numberOfTrailingZeros(free) + 1;
+                    if (prime < hi)
+                        return (int) prime;
+                }
+            }
+        }
+        throw new AssertionError("Integer.MAX_VALUE is prime");
+    }
+
+    /**
+     * Find a good size for a hash table bigger than one of the
+     * given size: the next of a list of primes that roughly double,
+     * so usually no search is needed.
+     * @param current The size of the table now
+     * @return A prime size, bigger than current
+     */
+    public static int nextTableSize(int current) {
+        int i = Arrays.binarySearch(TABLE_SIZES, current + 1);
+        if (i < 0)
+            i = -i - 1;
+        if (i < TABLE_SIZES.length)
+            return TABLE_SIZES[i];
+        return nextOrEqPrime((int) Math.min(2L * current + 1, Integer.MAX_VALUE));
     }
 
 }
@@ -0,0 +1,31 @@
+package impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RecordCodec
+ *
+ * Interface for function objects that turn keys or values into
+ * bytes for a file and read them back.
+ *
+ * @param <T> The type of item being written
+ */
+
+public interface RecordCodec<T> {
+
+    /**
+     * Encode an item.
+     * @param item The item to encode (never null)
+     * @return Its bytes
+     */
+    byte[] encode(T item);
+
+    /**
+     * Decode an item from all the bytes from the buffer's position
+     * to its limit.
+     * @param buffer The buffer to read from
+     * @return The item read
+     */
+    T decode(ByteBuffer buffer);
+
+}
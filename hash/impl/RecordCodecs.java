@@ -0,0 +1,67 @@
+package impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * RecordCodecs
+ *
+ * Class to contain static factory methods for the common
+ * record codecs.
+ */
+
+public class RecordCodecs {
+
+    /**
+     * Charset for strings
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Make a codec for integers, four bytes each.
+     * @return A codec
+     */
+    public static RecordCodec<Integer> forIntegers() {
+        return new RecordCodec<Integer>() {
+            public byte[] encode(Integer item) {
+                return ByteBuffer.allocate(4).putInt(item).array();
+            }
+            public Integer decode(ByteBuffer buffer) {
+                return buffer.getInt(buffer.position());
+            }
+        };
+    }
+
+    /**
+     * Make a codec for longs, eight bytes each.
+     * @return A codec
+     */
+    public static RecordCodec<Long> forLongs() {
+        return new RecordCodec<Long>() {
+            public byte[] encode(Long item) {
+                return ByteBuffer.allocate(8).putLong(item).array();
+            }
+            public Long decode(ByteBuffer buffer) {
+                return buffer.getLong(buffer.position());
+            }
+        };
+    }
+
+    /**
+     * Make a codec for strings, written in UTF-8.
+     * @return A codec
+     */
+    public static RecordCodec<String> forStrings() {
+        return new RecordCodec<String>() {
+            public byte[] encode(String item) {
+                return item.getBytes(UTF8);
+            }
+            public String decode(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return new String(bytes, UTF8);
+            }
+        };
+    }
+
+}
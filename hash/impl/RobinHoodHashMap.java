@@ -0,0 +1,269 @@
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import adt.Map;
+
+/**
+ * RobinHoodHashMap
+ *
+ * Linear probing with Robin Hood insertion: a key being placed
+ * takes the slot of any key it passes that is closer to its own
+ * ideal place, and that key continues down the table instead. That
+ * keeps the distances of keys from their ideal places (their probe
+ * lengths) close to each other, so that the longest probes are much
+ * shorter than with plain linear probing at the same load, and a
+ * search for a missing key can stop as soon as it reaches a key
+ * closer to its ideal place than the search has traveled. Removal
+ * shifts the rest of the cluster back a slot instead of leaving
+ * a tombstone.
+ *
+ * @param <K> The key-type of the map
+ * @param <V> The value-type of the map
+ */
+public class RobinHoodHashMap<K, V> implements Map<K, V> {
+
+    /**
+     * Array containing keys.
+     */
+    private K[] keys;
+
+    /**
+     * Parallel array containing values.
+     */
+    private V[] values;
+
+    /**
+     * Parallel array containing the (nonnegative) hash codes of
+     * the keys, so probe distances can be found without calling
+     * hashCode() again.
+     */
+    private int[] hashes;
+
+    /**
+     * The number of pairs.
+     */
+    private int pairs;
+
+    /**
+     * The fraction of the table that may be full before rehashing.
+     */
+    private final double maxLoad;
+
+    /**
+     * Constructor allowing the original table size and the maximum
+     * load factor to be specified.
+     * @param initKeyCap The initial capacity of the number of keys.
+     * @param maxLoad The fraction of the table that may be full,
+     * strictly between 0 and 1.
+     */
+    @SuppressWarnings("unchecked")
+    public RobinHoodHashMap(int initKeyCap, double maxLoad) {
+        if (initKeyCap < 2)
+            throw new IllegalArgumentException("Capacity: " + initKeyCap);
+        if (! (maxLoad > 0 && maxLoad < 1))
+            throw new IllegalArgumentException("Load factor: " + maxLoad);
+        keys = (K[]) new Object[initKeyCap];
+        values = (V[]) new Object[initKeyCap];
+        hashes = new int[initKeyCap];
+        pairs = 0;
+        this.maxLoad = maxLoad;
+    }
+
+    /**
+     * Constructor allowing the original table size to be specified.
+     * @param initKeyCap The initial capacity of the number of keys.
+     */
+    public RobinHoodHashMap(int initKeyCap) {
+        this(initKeyCap, .9);
+    }
+
+    public RobinHoodHashMap() {
+        this(19);
+    }
+
+    /**
+     * The hash code of the key, made nonnegative.
+     */
+    private static int hashOf(Object key) {
+        return key.hashCode() & 0x7fffffff;
+    }
+
+    /**
+     * How far the key in the given slot is from its ideal place.
+     * @param i A slot holding a key
+     * @return Its probe length, from 0 (in its ideal place) up
+     */
+    private int distance(int i) {
+        int d = i - hashes[i] % keys.length;
+        return d < 0 ? d + keys.length : d;
+    }
+
+    /**
+     * Find the slot containing the key.
+     * @param key The key to look for
+     * @return The slot where the key is, or -1 if it isn't in the map
+     */
+    private int findIndex(K key) {
+        int h = hashOf(key);
+        int i = h % keys.length;
+        for (int d = 0; keys[i] != null && distance(i) >= d; d++) {
+            if (hashes[i] == h && keys[i].equals(key))
+                return i;
+            if (++i == keys.length)
+                i = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Add an association to the map. (If the map is too full,
+     * then rehash.)
+     * @param key The key to this association
+     * @param val The value to which this key is associated
+     */
+    public void put(K key, V val) {
+        int index = findIndex(key);
+        if (index != -1)
+            values[index] = val;
+        else {
+            if (pairs + 1 > maxLoad * keys.length)
+                rehash();
+            insert(key, val, hashOf(key));
+            pairs++;
+        }
+    }
+
+    /**
+     * Place a key known not to be in the table, displacing keys
+     * closer to their ideal places than the key being placed is.
+     */
+    private void insert(K key, V val, int h) {
+        int i = h % keys.length;
+        int d = 0;
+        while (keys[i] != null) {
+            int resident = distance(i);
+            if (resident < d) {
+                K tempKey = keys[i];
+                V tempVal = values[i];
+                int tempHash = hashes[i];
+                keys[i] = key;
+                values[i] = val;
+                hashes[i] = h;
+                key = tempKey;
+                val = tempVal;
+                h = tempHash;
+                d = resident;
+            }
+            if (++i == keys.length)
+                i = 0;
+            d++;
+        }
+        keys[i] = key;
+        values[i] = val;
+        hashes[i] = h;
+    }
+
+    /**
+     * Make the arrays grow, and reinsert the keys.
+     */
+    @SuppressWarnings("unchecked")
+    private void rehash() {
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        int[] oldHashes = hashes;
+
+        int newSize = PrimeSource.nextTableSize(keys.length);
+        keys = (K[]) new Object[newSize];
+        values = (V[]) new Object[newSize];
+        hashes = new int[newSize];
+
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != null)
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+    }
+
+    /**
+     * Get the value for a key.
+     * @param key The key whose value we're retrieving.
+     * @return The value associated with this key, null if none exists
+     */
+    public V get(K key) {
+        int index = findIndex(key);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * Test if this map contains an association for this key.
+     * @param key The key to test.
+     * @return true if there is an association for this key, false otherwise
+     */
+    public boolean containsKey(K key) {
+        return findIndex(key) != -1;
+    }
+
+    /**
+     * Remove the association for this key, if it exists. The keys
+     * after it in its cluster are shifted back one slot, up to
+     * the first that is already in its ideal place.
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        int gap = findIndex(key);
+        if (gap == -1)
+            return;
+        pairs--;
+        int next = gap + 1 == keys.length ? 0 : gap + 1;
+        while (keys[next] != null && distance(next) > 0) {
+            keys[gap] = keys[next];
+            values[gap] = values[next];
+            hashes[gap] = hashes[next];
+            gap = next;
+            next = gap + 1 == keys.length ? 0 : gap + 1;
+        }
+        keys[gap] = null;
+        values[gap] = null;
+    }
+
+    /**
+     * Count the keys by probe length, for studying how well the
+     * table is working.
+     * @return An array whose element at index d is the number of
+     * keys d slots from their ideal places; its last element is
+     * nonzero (unless the map is empty).
+     */
+    public int[] probeLengthHistogram() {
+        int longest = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != null)
+                longest = Math.max(longest, distance(i));
+        int[] histogram = new int[pairs == 0 ? 0 : longest + 1];
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != null)
+                histogram[distance(i)]++;
+        return histogram;
+    }
+
+    /**
+     * Return an iterator over the keys of this map.
+     * @return The iterator.
+     */
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            int count = 0;
+            int pos = 0;
+            public boolean hasNext() {
+                return count < pairs;
+            }
+            public K next() {
+                if (! hasNext()) throw new NoSuchElementException();
+                while (keys[pos] == null)
+                    pos++;
+                count++;
+                return keys[pos++];
+            }
+        };
+    }
+
+}
@@ -6,7 +6,13 @@ import java.util.Random;
  * UniversalHashFactory
  * 
  * Class to contain static factory methods for hash functions from
- * the Hpm families, commonly called "universal hash functions."
+ * the Hpm families, commonly called "universal hash functions,"
+ * and from some families that are faster to compute:
+ * multiply-shift, which needs no division at all; tabulation,
+ * which needs only table lookups and xors; and Hpm with the
+ * Mersenne prime 2^61 - 1, whose mod is a shift and an add.
+ * Each of these maps its 32-bit hash to [0, m) by taking the high
+ * half of its product with m, rather than by a mod.
  * 
  * @author Thomas VanDrunen
  * CSCI 345, Wheaton College
@@ -23,16 +29,18 @@ public class UniversalHashFactory {
     /**
      * Make a universal hash function with the given p and m parameters
      * for objects, using the object's inherent hashCode() method.
+     * The arithmetic is done in longs, which can't overflow
+     * for any int p.
      * @param p A prime number
      * @param m The exclusive upper bound on the range of hash values
      * @return A hash function
      */
     public static HashFunction<Object> makeHashFunction(final int p, final int m) {
-        final int a = m <= 1 ? 0 : randy.nextInt(p-1) + 1;
-        final int b = m <= 1 ? 0 : randy.nextInt(p);
+        final long a = m <= 1 ? 0 : randy.nextInt(p-1) + 1;
+        final long b = m <= 1 ? 0 : randy.nextInt(p);
         return new HashFunction<Object>() {
             public int hash(Object key) {
-                return ((a * (key.hashCode() & 0x7fffffff) + b) % p) % m;
+                return (int) (((a * (key.hashCode() & 0x7fffffff) + b) % p) % m);
             }
         };
     }
@@ -50,11 +58,164 @@ public class UniversalHashFactory {
      */
     public static HashFunction<Object> makeHashFunction(final int p, final int m,
             final int f) {
-        final int a = m <= 1 ? 0 : randy.nextInt(p-1) + 1;
-        final int b = m <= 1 ? 0 : randy.nextInt(p);
+        final long a = m <= 1 ? 0 : randy.nextInt(p-1) + 1;
+        final long b = m <= 1 ? 0 : randy.nextInt(p);
         return new HashFunction<Object>() {
             public int hash(Object key) {
-                return ((a * ((key.hashCode() & 0x7fffffff) % f) + b) % p) % m;
+                return (int) (((a * ((key.hashCode() & 0x7fffffff) % f) + b) % p) % m);
+            }
+        };
+    }
+
+    /**
+     * The least prime greater than 2^32, so that a p of it tells
+     * apart all the hash codes there are.
+     */
+    public static final long BIG_PRIME = 4294967311L;
+
+    /**
+     * Make a universal hash function with p = BIG_PRIME and the given
+     * m for objects, using all 32 bits of the object's inherent
+     * hashCode() method (so two keys collide under every function
+     * only if their hash codes are equal), with the function drawn
+     * using the given random number generator (so a generator with a
+     * given seed always makes the same function). The product a * k
+     * would overflow a long, so it's done in two halves.
+     * @param m The exclusive upper bound on the range of hash values
+     * @param random The random number generator to draw from
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeHashFunction(final int m, Random random) {
+        final long p = BIG_PRIME;
+        final long a = m <= 1 ? 0 : (random.nextLong() >>> 1) % (p - 1) + 1;
+        final long b = m <= 1 ? 0 : (random.nextLong() >>> 1) % p;
+        return new HashFunction<Object>() {
+            public int hash(Object key) {
+                long k = key.hashCode() & 0xffffffffL;
+                long x = ((a >>> 16) * k) % p;
+                x = ((x << 16) + (a & 0xffff) * k + b) % p;
+                return (int) (x % m);
+            }
+        };
+    }
+
+    /**
+     * Map a hash spread evenly over 32 bits to [0, m), by taking the
+     * high 32 bits of its (unsigned) product with m; about as even
+     * as hash % m, but with a multiply instead of a divide.
+     */
+    private static int reduce(int hash, int m) {
+        return (int) (((hash & 0xffffffffL) * m) >>> 32);
+    }
+
+    /**
+     * Make a hash function from the multiply-shift family for
+     * objects, using the object's inherent hashCode() method:
+     * (a * k + b) in 64 bits, overflow and all, shifted down to its
+     * high 32 bits, which, for a random a and b, are 2-universal
+     * (Dietzfelbinger's multiply-add-shift).
+     * @param m The exclusive upper bound on the range of hash values
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeMultiplyShift(int m) {
+        return makeMultiplyShift(m, randy);
+    }
+
+    /**
+     * Make a hash function from the multiply-shift family, drawn
+     * using the given random number generator.
+     * @param m The exclusive upper bound on the range of hash values
+     * @param random The random number generator to draw from
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeMultiplyShift(final int m, Random random) {
+        final long a = random.nextLong();
+        final long b = random.nextLong();
+        return new HashFunction<Object>() {
+            public int hash(Object key) {
+                long k = key.hashCode() & 0xffffffffL;
+                return reduce((int) ((a * k + b) >>> 32), m);
+            }
+        };
+    }
+
+    /**
+     * Make a hash function from the simple tabulation family for
+     * objects, using the object's inherent hashCode() method: each
+     * of the hash code's four bytes looks up a random int in its own
+     * table, and the four are xored together. The family is
+     * 3-independent, and behaves in linear probing and cuckoo hashing
+     * nearly as well as a truly random function.
+     * @param m The exclusive upper bound on the range of hash values
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeTabulation(int m) {
+        return makeTabulation(m, randy);
+    }
+
+    /**
+     * Make a hash function from the simple tabulation family, drawn
+     * using the given random number generator.
+     * @param m The exclusive upper bound on the range of hash values
+     * @param random The random number generator to draw from
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeTabulation(final int m, Random random) {
+        // The four tables side by side, 4KB in all
+        final int[] table = new int[4 * 256];
+        for (int i = 0; i < table.length; i++)
+            table[i] = random.nextInt();
+        return new HashFunction<Object>() {
+            public int hash(Object key) {
+                int k = key.hashCode();
+                return reduce(table[k & 0xff]
+                        ^ table[256 + ((k >>> 8) & 0xff)]
+                        ^ table[512 + ((k >>> 16) & 0xff)]
+                        ^ table[768 + (k >>> 24)], m);
+            }
+        };
+    }
+
+    /**
+     * The Mersenne prime 2^61 - 1.
+     */
+    private static final long MERSENNE_61 = (1L << 61) - 1;
+
+    /**
+     * Make a hash function from the Hpm family with p = 2^61 - 1, for
+     * objects, using the object's inherent hashCode() method. Since p
+     * is a Mersenne prime, x mod p is (x & p) + (x >>> 61), less p if
+     * that's too big, so there's no division; and since p is much
+     * bigger than any hash code, no two hash codes collide mod p.
+     * @param m The exclusive upper bound on the range of hash values
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeMersenneHash(int m) {
+        return makeMersenneHash(m, randy);
+    }
+
+    /**
+     * Make a hash function from the Hpm family with p = 2^61 - 1,
+     * drawn using the given random number generator.
+     * @param m The exclusive upper bound on the range of hash values
+     * @param random The random number generator to draw from
+     * @return A hash function
+     */
+    public static HashFunction<Object> makeMersenneHash(final int m, Random random) {
+        final long a = (random.nextLong() >>> 3) % (MERSENNE_61 - 1) + 1;
+        final long b = (random.nextLong() >>> 3) % MERSENNE_61;
+        return new HashFunction<Object>() {
+            public int hash(Object key) {
+                long k = key.hashCode() & 0xffffffffL;
+                // a * k is up to 93 bits: split it at bit 61 and fold
+                long low = a * k;
+                long high = Math.multiplyHigh(a, k);
+                long x = (low & MERSENNE_61) + ((low >>> 61) | (high << 3)) + b;
+                x = (x & MERSENNE_61) + (x >>> 61);
+                if (x >= MERSENNE_61)
+                    x -= MERSENNE_61;
+                // the top 32 of x's 61 bits
+                return reduce((int) (x >>> 29), m);
             }
         };
     }
@@ -0,0 +1,104 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import impl.ConcurrentBasicHashMap;
+
+public class CBHMapTest extends MapTest {
+
+    protected void reset() {
+        testMap = new ConcurrentBasicHashMap<String, String>(5, 4);
+    }
+
+    /**
+     * Several writers, each owning the keys congruent to its id,
+     * put and remove at random (recording what they expect in a
+     * private map) while readers check that any value found belongs
+     * to its key. The map starts tiny so that stripes resize often
+     * while the readers are at work.
+     */
+    @Test
+    public void concurrentStress() throws InterruptedException {
+        final int writers = 4, readers = 4, range = 20000, ops = 40000;
+        final ConcurrentBasicHashMap<Integer, Integer> map =
+                new ConcurrentBasicHashMap<Integer, Integer>(1, 4);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final HashMap<Integer, HashMap<Integer, Integer>> expected =
+                new HashMap<Integer, HashMap<Integer, Integer>>();
+        Thread[] threads = new Thread[writers + readers];
+        for (int t = 0; t < writers; t++) {
+            final int id = t;
+            final HashMap<Integer, Integer> mine = new HashMap<Integer, Integer>();
+            expected.put(id, mine);
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random randy = new Random(id);
+                        for (int i = 0; i < ops; i++) {
+                            int key = randy.nextInt(range / writers) * writers + id;
+                            if (randy.nextInt(4) == 0) {
+                                map.remove(key);
+                                mine.remove(key);
+                                assertFalse(map.containsKey(key));
+                            }
+                            else {
+                                map.put(key, key * 10 + i % 10);
+                                mine.put(key, key * 10 + i % 10);
+                                assertEquals(mine.get(key), map.get(key));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (int t = writers; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random randy = new Random(id);
+                        for (int i = 0; i < ops; i++) {
+                            int key = randy.nextInt(range);
+                            Integer val = map.get(key);
+                            assertTrue(val == null || val / 10 == key);
+                            if (i % 1000 == 0) {
+                                HashSet<Integer> seen = new HashSet<Integer>();
+                                for (Iterator<Integer> it = map.iterator(); it.hasNext(); )
+                                    assertTrue(seen.add(it.next()));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        int count = 0;
+        for (Iterator<Integer> it = map.iterator(); it.hasNext(); count++) {
+            Integer key = it.next();
+            assertEquals(expected.get(key % writers).get(key), map.get(key));
+        }
+        int total = 0;
+        for (HashMap<Integer, Integer> mine : expected.values())
+            total += mine.size();
+        assertEquals(total, count);
+    }
+
+}
@@ -0,0 +1,70 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import adt.Map;
+import impl.CuckooHashMap;
+
+public class CuckooHMapTest extends MapTest {
+    protected void reset() {
+        testMap = new CuckooHashMap<String, String>(2, 345);
+    }
+
+    protected Map<Integer, Integer> makeIntegerMap() {
+        return new CuckooHashMap<Integer, Integer>(2, 12);
+    }
+
+    /**
+     * A key whose hash code equals another's shares both its slots;
+     * a few of them fit, using the stash.
+     */
+    @Test
+    public void equalHashCodes() {
+        CuckooHashMap<Long, Integer> map = new CuckooHashMap<Long, Integer>(19, 345);
+        // Long's hash code is its high half xor its low half
+        for (int i = 0; i < 6; i++)
+            map.put(((long) i << 32) | i, i);
+        for (int i = 0; i < 6; i++)
+            assertEquals(Integer.valueOf(i), map.get(((long) i << 32) | i));
+        map.remove(3L << 32 | 3);
+        assertFalse(map.containsKey(3L << 32 | 3));
+        assertEquals(Integer.valueOf(5), map.get(5L << 32 | 5));
+    }
+
+    /**
+     * Many strings with the same hash code ("Aa" and "BB" have equal
+     * ones, so all strings made of them do), mixed with other keys
+     * and through rehashes, all go in and come back out.
+     */
+    @Test
+    public void manyEqualHashCodes() {
+        CuckooHashMap<String, Integer> map = new CuckooHashMap<String, Integer>(2, 345);
+        String[] colliding = new String[256];
+        for (int i = 0; i < colliding.length; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int bit = 0; bit < 8; bit++)
+                key.append((i >>> bit & 1) == 0 ? "Aa" : "BB");
+            colliding[i] = key.toString();
+            map.put(colliding[i], i);
+            map.put("other" + i, -i);
+        }
+        for (int i = 0; i < colliding.length; i++) {
+            assertEquals(colliding[0].hashCode(), colliding[i].hashCode());
+            assertEquals(Integer.valueOf(i), map.get(colliding[i]));
+            assertEquals(Integer.valueOf(-i), map.get("other" + i));
+        }
+        map.put(colliding[7], 700);
+        assertEquals(Integer.valueOf(700), map.get(colliding[7]));
+        for (int i = 0; i < colliding.length; i += 2)
+            map.remove(colliding[i]);
+        int count = 0;
+        for (String key : map)
+            if (key.hashCode() == colliding[0].hashCode())
+                count++;
+        assertEquals(colliding.length / 2, count);
+        for (int i = 0; i < colliding.length; i++)
+            assertEquals(i % 2 == 1, map.containsKey(colliding[i]));
+    }
+}
@@ -0,0 +1,99 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import impl.HashFunction;
+import impl.UniversalHashFactory;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashFamilyTest {
+
+    private interface Family {
+        HashFunction<Object> make(int m, Random random);
+    }
+
+    private static final Family[] FAMILIES = {
+        new Family() {
+            public HashFunction<Object> make(int m, Random random) {
+                return UniversalHashFactory.makeHashFunction(m, random);
+            }
+        },
+        new Family() {
+            public HashFunction<Object> make(int m, Random random) {
+                return UniversalHashFactory.makeMultiplyShift(m, random);
+            }
+        },
+        new Family() {
+            public HashFunction<Object> make(int m, Random random) {
+                return UniversalHashFactory.makeTabulation(m, random);
+            }
+        },
+        new Family() {
+            public HashFunction<Object> make(int m, Random random) {
+                return UniversalHashFactory.makeMersenneHash(m, random);
+            }
+        },
+    };
+
+    @Test
+    public void inRange() {
+        Random randy = new Random(345);
+        for (Family family : FAMILIES)
+            for (int m : new int[] {1, 2, 7, 1000, Integer.MAX_VALUE}) {
+                HashFunction<Object> h = family.make(m, randy);
+                for (int i = 0; i < 10000; i++) {
+                    int hash = h.hash(randy.nextInt());
+                    assertTrue(hash >= 0 && hash < m);
+                }
+                assertTrue(h.hash(Integer.MIN_VALUE) < m && h.hash(-1) < m);
+            }
+    }
+
+    @Test
+    public void sameSeedSameFunction() {
+        for (Family family : FAMILIES) {
+            HashFunction<Object> h1 = family.make(1000, new Random(12)),
+                    h2 = family.make(1000, new Random(12));
+            for (int i = 0; i < 1000; i++)
+                assertEquals(h1.hash("key" + i), h2.hash("key" + i));
+        }
+    }
+
+    /**
+     * Sequential and strided keys, which a poor hash piles into a
+     * few buckets, should spread out: with collision probability at
+     * most 2/m, the expected sum of the squared bucket sizes is at
+     * most 3n (and 2n for a truly random function).
+     */
+    @Test
+    public void spread() {
+        int n = 1 << 16;
+        for (Family family : FAMILIES)
+            for (int stride : new int[] {1, 1024, 1 << 15}) {
+                int[] buckets = new int[n];
+                HashFunction<Object> h = family.make(n, new Random(stride));
+                for (int i = 0; i < n; i++)
+                    buckets[h.hash(i * stride)]++;
+                long squares = 0;
+                for (int count : buckets)
+                    squares += (long) count * count;
+                assertTrue("stride " + stride + ": " + squares, squares < 4L * n);
+            }
+    }
+
+    @Test
+    public void oldFamilyDoesNotOverflow() {
+        int p = Integer.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            HashFunction<Object> h = UniversalHashFactory.makeHashFunction(p, 100);
+            for (int k = 0; k < 1000; k++) {
+                int hash = h.hash(Integer.MAX_VALUE - k);
+                assertTrue(hash >= 0 && hash < 100);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package test;
+
+import org.junit.Test;
+
+import adt.Map;
+import impl.LinProbHashMap;
+
+public class IncLPHMapTest extends MapTest {
+    protected void reset() {
+        testMap = new LinProbHashMap<String, String>(19, true);
+    }
+
+    protected Map<Integer, Integer> makeIntegerMap() {
+        return new LinProbHashMap<Integer, Integer>(2, true);
+    }
+
+    /**
+     * Iterate (and look up each key) often enough through many
+     * incremental rehashes that many of the iterations happen while
+     * a rehash is under way.
+     */
+    @Test
+    public void duringRehash() {
+        checkAgainstHashMap(new LinProbHashMap<Integer, Integer>(2, true),
+                intKeys(20000), INT_VALUES, 50000, 997);
+    }
+}
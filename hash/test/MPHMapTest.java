@@ -0,0 +1,113 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import impl.MinimalPerfectHash;
+import impl.MinimalPerfectHashMap;
+
+public class MPHMapTest extends PHMapTest {
+
+    protected void reset() {
+        testMap = new MinimalPerfectHashMap<String, String>(allKeys);
+    }
+
+    /**
+     * Check that the function maps the keys onto 0 through n-1,
+     * and does the same after a round trip through a byte array.
+     */
+    private static <K> void checkMinimal(K[] keys, MinimalPerfectHash<K> hash) {
+        boolean[] hit = new boolean[keys.length];
+        for (K key : keys) {
+            int index = hash.index(key);
+            assertFalse(hit[index]);
+            hit[index] = true;
+        }
+        MinimalPerfectHash<K> copy = MinimalPerfectHash.fromByteArray(hash.toByteArray());
+        for (K key : keys)
+            assertEquals(hash.index(key), copy.index(key));
+    }
+
+    @Test
+    public void minimalForManySizes() {
+        Random randy = new Random(345);
+        for (int n : new int[] {0, 1, 2, 3, 5, 10, 100, 1000, 100000}) {
+            Long[] keys = new Long[n];
+            for (int i = 0; i < n; i++)
+                keys[i] = randy.nextLong();
+            MinimalPerfectHash<Long> hash = MinimalPerfectHash.build(keys);
+            assertEquals(n, hash.size());
+            checkMinimal(keys, hash);
+            if (n >= 100000)
+                assertTrue(hash.bitsPerKey() < 3.5);
+        }
+        String[] words = new String[50000];
+        for (int i = 0; i < words.length; i++)
+            words[i] = "key" + i;
+        checkMinimal(words, MinimalPerfectHash.build(words));
+        // hash codes of "Aa" and "BB" collide, but fingerprints don't
+        checkMinimal(new String[] {"Aa", "BB", "AaAa", "BBBB", "AaBB"},
+                MinimalPerfectHash.build(new String[] {"Aa", "BB", "AaAa", "BBBB", "AaBB"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateKeys() {
+        MinimalPerfectHash.build(new String[] {"a", "b", "a"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptBytes() {
+        byte[] bytes = MinimalPerfectHash.build(allKeys).toByteArray();
+        MinimalPerfectHash.fromByteArray(Arrays.copyOf(bytes, bytes.length - 8));
+    }
+
+    /**
+     * A remap word count that doesn't fit the number of keys is
+     * rejected, even though the buffer holds that many words.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptRemapCount() {
+        ByteBuffer bytes = ByteBuffer.wrap(MinimalPerfectHash.build(allKeys).toByteArray());
+        int remapWordCount = bytes.getInt(28);
+        assertTrue(remapWordCount > 0);
+        bytes.putInt(28, remapWordCount - 1);
+        MinimalPerfectHash.fromByteArray(bytes.array());
+    }
+
+    /**
+     * A pilot index past the end of the dictionary is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptPilotIndex() {
+        // find a function whose dictionary length isn't a power of
+        // two, so that some index that fits in the width is too big
+        ByteBuffer bytes;
+        int dictionaryLength;
+        for (int n = 100; ; n += 100) {
+            Long[] keys = new Long[n];
+            for (int i = 0; i < n; i++)
+                keys[i] = (long) i;
+            bytes = ByteBuffer.wrap(MinimalPerfectHash.build(keys).toByteArray());
+            dictionaryLength = bytes.getInt(16);
+            if (Integer.bitCount(dictionaryLength) != 1)
+                break;
+        }
+        int pilotWidth = bytes.getInt(20);
+        int firstPilotWord = 32 + 4 * dictionaryLength;
+        long word = bytes.getLong(firstPilotWord);
+        word = word & (-1L << pilotWidth) | dictionaryLength;
+        bytes.putLong(firstPilotWord, word);
+        MinimalPerfectHash.fromByteArray(bytes.array());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKey() {
+        reset();
+        testMap.put("Wisconsin", "Madison");
+    }
+}
@@ -2,7 +2,10 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -233,4 +236,100 @@ public abstract class MapTest {
 
 	}
 
+	/* Randomized testing against java.util.HashMap */
+
+	/**
+	 * Makes the keys for checkAgainstHashMap().
+	 */
+	protected interface KeyMaker<K> {
+		K make(Random randy);
+	}
+
+	/**
+	 * Makes the values for checkAgainstHashMap(), from the number
+	 * of the operation.
+	 */
+	protected interface ValueMaker<V> {
+		V make(int i);
+	}
+
+	/**
+	 * Mix puts, removes (a third of the operations), and lookups on
+	 * the map, checking each against java.util.HashMap, along with
+	 * containsKey on another key. Every so often, and at the end,
+	 * iterate over the map, checking that each key comes once, with
+	 * the right value, and that no key is missed.
+	 * @param map The map to check, which should start empty
+	 * @param keys Makes random keys
+	 * @param values Makes values
+	 * @param operations The number of puts and removes
+	 * @param iterateEvery The number of operations between iterations
+	 * @return The map's expected contents, for further checks
+	 */
+	protected static <K, V> HashMap<K, V> checkAgainstHashMap(Map<K, V> map,
+			KeyMaker<K> keys, ValueMaker<V> values, int operations, int iterateEvery) {
+		Random randy = new Random(345);
+		HashMap<K, V> expected = new HashMap<K, V>();
+		for (int i = 1; i <= operations; i++) {
+			K key = keys.make(randy);
+			if (randy.nextInt(3) == 0) {
+				map.remove(key);
+				expected.remove(key);
+			} else {
+				V val = values.make(i);
+				map.put(key, val);
+				expected.put(key, val);
+			}
+			assertEquals(expected.get(key), map.get(key));
+			K other = keys.make(randy);
+			assertEquals(expected.containsKey(other), map.containsKey(other));
+			if (i % iterateEvery == 0 || i == operations) {
+				HashSet<K> seen = new HashSet<K>();
+				for (Iterator<K> it = map.iterator(); it.hasNext(); ) {
+					K k = it.next();
+					assertTrue("Repeated key: " + k, seen.add(k));
+					assertEquals(expected.get(k), map.get(k));
+				}
+				assertEquals(expected.keySet(), seen);
+			}
+		}
+		return expected;
+	}
+
+	/**
+	 * Keys from -1000 up to (not including) bound - 1000.
+	 */
+	protected static KeyMaker<Integer> intKeys(final int bound) {
+		return new KeyMaker<Integer>() {
+			public Integer make(Random randy) {
+				return randy.nextInt(bound) - 1000;
+			}
+		};
+	}
+
+	/**
+	 * The values 1, 2, 3, ...
+	 */
+	protected static final ValueMaker<Integer> INT_VALUES = new ValueMaker<Integer>() {
+		public Integer make(int i) {
+			return i;
+		}
+	};
+
+	/**
+	 * A new, empty map of the class being tested, with Integer keys
+	 * and values, for randomOperations(); or null if the class can't
+	 * take keys it wasn't built for (as with perfect hashing).
+	 */
+	protected Map<Integer, Integer> makeIntegerMap() {
+		return null;
+	}
+
+	@Test
+	public void randomOperations() {
+		Map<Integer, Integer> map = makeIntegerMap();
+		if (map != null)
+			checkAgainstHashMap(map, intKeys(20000), INT_VALUES, 100000, 100000);
+	}
+
 }
@@ -0,0 +1,101 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import impl.MappedPerfectHashMap;
+import impl.RecordCodecs;
+
+public class MappedPHMapTest {
+
+    private static final String[] data = new MapTest() {
+        protected void reset() { }
+    }.data;
+
+    private static final String[] otherData = { "Wisconsin", "Oklahoma", "Washington", "" };
+
+    @Test
+    public void writeAndMap() throws IOException {
+        String[] keys = new String[data.length / 2], values = new String[data.length / 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = data[2 * i];
+            values[i] = data[2 * i + 1];
+        }
+        Path path = Files.createTempFile("phm", ".dat");
+        try {
+            MappedPerfectHashMap.write(path, keys, values,
+                    RecordCodecs.forStrings(), RecordCodecs.forStrings());
+            MappedPerfectHashMap<String, String> map = new MappedPerfectHashMap<String, String>(
+                    path, RecordCodecs.forStrings(), RecordCodecs.forStrings());
+            for (int i = 0; i < keys.length; i++) {
+                assertTrue(map.containsKey(keys[i]));
+                assertEquals(values[i], map.get(keys[i]));
+            }
+            for (String key : otherData) {
+                assertFalse(map.containsKey(key));
+                assertNull(map.get(key));
+            }
+            HashSet<String> seen = new HashSet<String>();
+            for (Iterator<String> it = map.iterator(); it.hasNext(); )
+                assertTrue(seen.add(it.next()));
+            assertEquals(keys.length, seen.size());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void manyNumbers() throws IOException {
+        Long[] keys = new Long[20000];
+        Integer[] values = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 1000003L - 7;
+            values[i] = i;
+        }
+        Path path = Files.createTempFile("phm", ".dat");
+        try {
+            MappedPerfectHashMap.write(path, keys, values,
+                    RecordCodecs.forLongs(), RecordCodecs.forIntegers());
+            MappedPerfectHashMap<Long, Integer> map = new MappedPerfectHashMap<Long, Integer>(
+                    path, RecordCodecs.forLongs(), RecordCodecs.forIntegers());
+            for (int i = 0; i < keys.length; i++)
+                assertEquals(values[i], map.get(keys[i]));
+            assertNull(map.get(-8L));
+            assertFalse(map.containsKey(1L));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAHashFile() throws IOException {
+        Path path = Files.createTempFile("phm", ".dat");
+        try {
+            Files.write(path, "this is not a perfect hash file".getBytes("UTF-8"));
+            new MappedPerfectHashMap<String, String>(path,
+                    RecordCodecs.forStrings(), RecordCodecs.forStrings());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly() throws IOException {
+        Path path = Files.createTempFile("phm", ".dat");
+        try {
+            MappedPerfectHashMap.write(path, new String[] {"a"}, new String[] {"b"},
+                    RecordCodecs.forStrings(), RecordCodecs.forStrings());
+            new MappedPerfectHashMap<String, String>(path,
+                    RecordCodecs.forStrings(), RecordCodecs.forStrings()).put("a", "c");
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
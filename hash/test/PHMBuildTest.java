@@ -0,0 +1,95 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import impl.PerfectHashMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PHMBuildTest {
+
+    /**
+     * Integer keys, whose hash codes (unlike Strings') are
+     * sure to be distinct
+     */
+    private static Integer[] makeKeys(int n) {
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = (int) (i * 2654435761L);
+        return keys;
+    }
+
+    private static List<Integer> order(PerfectHashMap<Integer, Integer> map) {
+        List<Integer> order = new ArrayList<Integer>();
+        for (Iterator<Integer> it = map.iterator(); it.hasNext(); )
+            order.add(it.next());
+        return order;
+    }
+
+    private static PerfectHashMap<Integer, Integer> build(Integer[] keys, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            PerfectHashMap<Integer, Integer> map =
+                    new PerfectHashMap<Integer, Integer>(keys, pool, 12345);
+            for (int i = 0; i < keys.length; i++)
+                map.put(keys[i], i);
+            return map;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sameMapForAnyParallelism() {
+        Integer[] keys = makeKeys(20000);
+        List<Integer> expected = order(build(keys, 1));
+        assertEquals(keys.length, expected.size());
+        for (int parallelism = 2; parallelism <= 8; parallelism *= 2)
+            assertEquals(expected, order(build(keys, parallelism)));
+    }
+
+    @Test
+    public void manyKeys() {
+        Integer[] keys = makeKeys(200000);
+        PerfectHashMap<Integer, Integer> map = build(keys, 4);
+        for (int i = 0; i < keys.length; i++)
+            assertEquals(Integer.valueOf(i), map.get(keys[i]));
+        assertTrue(! map.containsKey(-1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void duplicateKeys() {
+        new PerfectHashMap<String, Integer>(new String[] {"a", "b", "a"});
+    }
+
+    @Test(expected=IllegalArgumentException.class, timeout=5000)
+    public void manyDuplicateKeys() {
+        new PerfectHashMap<String, Integer>(new String[] {"a", "a", "a", "a", "a"});
+    }
+
+    /**
+     * "Aa" and "BB" have the same hash code, and so do all the
+     * strings made of them.
+     */
+    @Test(expected=IllegalArgumentException.class, timeout=5000)
+    public void equalHashCodes() {
+        new PerfectHashMap<String, Integer>(new String[]
+                {"AaAa", "AaBB", "BBAa", "BBBB", "AaAaAa", "BBBBBB", "c"});
+    }
+
+    @Test
+    public void noKeys() {
+        PerfectHashMap<String, Integer> map =
+                new PerfectHashMap<String, Integer>(new String[0]);
+        assertEquals(null, map.get("a"));
+        assertTrue(! map.containsKey("a"));
+        map.remove("a");
+        assertTrue(! map.iterator().hasNext());
+    }
+
+}
@@ -0,0 +1,95 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import impl.IntIntHashMap;
+import impl.LongLongHashMap;
+import impl.LongObjectHashMap;
+
+public class PrimHMapTest {
+
+    /**
+     * Random puts and removes, checked against java.util.HashMap
+     * by MapTest's check. The keys include 0 and negatives.
+     */
+    @Test
+    public void intIntAgainstHashMap() {
+        IntIntHashMap map = new IntIntHashMap(2, .5);
+        HashMap<Integer, Integer> expected = MapTest.checkAgainstHashMap(map,
+                MapTest.intKeys(4000), MapTest.INT_VALUES, 50000, 50000);
+        for (PrimitiveIterator.OfInt it = map.iterator(); it.hasNext(); ) {
+            int key = it.nextInt();
+            assertEquals(expected.get(key).intValue(), map.getOrDefault(key, -1));
+        }
+    }
+
+    @Test
+    public void longLongAgainstHashMap() {
+        MapTest.checkAgainstHashMap(new LongLongHashMap(2, .9),
+                new MapTest.KeyMaker<Long>() {
+                    public Long make(Random randy) {
+                        // keys that differ only in their high words
+                        return ((long) randy.nextInt(60) << 32) + randy.nextInt(60) - 10;
+                    }
+                },
+                new MapTest.ValueMaker<Long>() {
+                    public Long make(int i) {
+                        return i * 1000000007L;
+                    }
+                }, 50000, 50000);
+    }
+
+    @Test
+    public void longObjectAgainstHashMap() {
+        MapTest.checkAgainstHashMap(new LongObjectHashMap<String>(),
+                new MapTest.KeyMaker<Long>() {
+                    public Long make(Random randy) {
+                        return randy.nextInt(4000) - 1000L;
+                    }
+                },
+                new MapTest.ValueMaker<String>() {
+                    public String make(int i) {
+                        return "v" + i;
+                    }
+                }, 50000, 50000);
+    }
+
+    /**
+     * getOrDefault and putIfAbsent, including on the key 0, which
+     * isn't kept in the table.
+     */
+    @Test
+    public void defaultsAndPutIfAbsent() {
+        IntIntHashMap counts = new IntIntHashMap();
+        for (int key : new int[] {0, 5, 0, -5, 5, 0})
+            counts.put(key, counts.getOrDefault(key, 0) + 1);
+        assertEquals(3, counts.getOrDefault(0, 0));
+        assertEquals(2, counts.getOrDefault(5, 0));
+        assertEquals(1, counts.getOrDefault(-5, 0));
+        assertEquals(-1, counts.getOrDefault(6, -1));
+        assertNull(counts.get(Integer.valueOf(6)));
+
+        LongLongHashMap ids = new LongLongHashMap();
+        assertEquals(7, ids.putIfAbsent(0, 7));
+        assertEquals(7, ids.putIfAbsent(0, 8));
+        assertEquals(9, ids.putIfAbsent(Long.MIN_VALUE, 9));
+        assertEquals(9, ids.putIfAbsent(Long.MIN_VALUE, 10));
+        ids.remove(0);
+        assertFalse(ids.containsKey(0));
+        assertEquals(11, ids.putIfAbsent(0, 11));
+
+        LongObjectHashMap<String> names = new LongObjectHashMap<String>();
+        assertEquals("a", names.putIfAbsent(0, "a"));
+        assertEquals("a", names.putIfAbsent(0, "b"));
+        assertEquals("z", names.getOrDefault(1, "z"));
+        names.remove(Long.valueOf(0));
+        assertNull(names.get(0));
+        assertFalse(names.iterator().hasNext());
+    }
+}
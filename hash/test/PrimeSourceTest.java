@@ -0,0 +1,54 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import impl.PrimeSource;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrimeSourceTest {
+
+    private static int slowNextPrime(int x) {
+        if (x <= 2)
+            return 2;
+        return BigInteger.valueOf(x - 1).nextProbablePrime().intValue();
+    }
+
+    @Test
+    public void smallNumbers() {
+        for (int x = -5; x < 20000; x++)
+            assertEquals("" + x, slowNextPrime(x), PrimeSource.nextOrEqPrime(x));
+    }
+
+    @Test
+    public void largeNumbers() {
+        Random randy = new Random(345);
+        for (int bits = 15; bits <= 31; bits++)
+            for (int i = 0; i < 20; i++) {
+                int x = (int) ((randy.nextLong() >>> 1) % (1L << bits));
+                assertEquals("" + x, slowNextPrime(x), PrimeSource.nextOrEqPrime(x));
+            }
+        assertEquals(Integer.MAX_VALUE, PrimeSource.nextOrEqPrime(Integer.MAX_VALUE - 1));
+        assertEquals(Integer.MAX_VALUE, PrimeSource.nextOrEqPrime(Integer.MAX_VALUE));
+        assertEquals(67108879, PrimeSource.nextOrEqPrime(1 << 26));
+        assertEquals(67108859, PrimeSource.nextOrEqPrime((1 << 26) - 5));
+    }
+
+    @Test
+    public void tableSizes() {
+        int size = 1;
+        while (size < Integer.MAX_VALUE) {
+            int next = PrimeSource.nextTableSize(size);
+            assertTrue(next > size);
+            assertEquals(next, PrimeSource.nextOrEqPrime(next));
+            assertTrue(size < 53 || next < 2.1 * size);
+            size = next;
+        }
+        assertEquals(53, PrimeSource.nextTableSize(19));
+        assertEquals(97, PrimeSource.nextTableSize(53));
+    }
+
+}
@@ -0,0 +1,35 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import adt.Map;
+import impl.RobinHoodHashMap;
+
+public class RHHMapTest extends MapTest {
+    protected void reset() {
+        testMap = new RobinHoodHashMap<String, String>();
+    }
+
+    protected Map<Integer, Integer> makeIntegerMap() {
+        return new RobinHoodHashMap<Integer, Integer>(2, .95);
+    }
+
+    /**
+     * At a high load factor, the probe length histogram counts
+     * every key.
+     */
+    @Test
+    public void probeHistogram() {
+        RobinHoodHashMap<Integer, Integer> map = new RobinHoodHashMap<Integer, Integer>(2, .95);
+        HashMap<Integer, Integer> expected =
+                checkAgainstHashMap(map, intKeys(5000), INT_VALUES, 50000, 50000);
+        int counted = 0;
+        for (int count : map.probeLengthHistogram())
+            counted += count;
+        assertEquals(expected.size(), counted);
+    }
+}